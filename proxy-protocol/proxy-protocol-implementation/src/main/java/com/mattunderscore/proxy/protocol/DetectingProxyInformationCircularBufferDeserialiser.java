@@ -0,0 +1,67 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.proxy.protocol;
+
+import com.mattunderscore.proxy.protocol.v1.HumanReadableProxyInformationCircularBufferDeserialiser;
+import com.mattunderscore.proxy.protocol.v2.BinaryProxyInformationCircularBufferDeserialiser;
+import com.mattunderscore.tcproxy.io.data.CircularBuffer;
+import com.mattunderscore.tcproxy.io.serialisation.Deserialiser;
+import com.mattunderscore.tcproxy.io.serialisation.NeedsMoreDataResult;
+import com.mattunderscore.tcproxy.io.serialisation.NotDeserialisableResult;
+
+/**
+ * Implementation of a {@link Deserialiser} for {@link CircularBuffer}s that accepts either version of the PROXY
+ * protocol. The version is detected from the first byte.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class DetectingProxyInformationCircularBufferDeserialiser
+        implements Deserialiser<ProxyInformation, CircularBuffer> {
+    public static final Deserialiser<ProxyInformation, CircularBuffer> INSTANCE =
+        new DetectingProxyInformationCircularBufferDeserialiser();
+    private static final byte HUMAN_READABLE_FIRST_BYTE = 'P';
+    private static final byte BINARY_FIRST_BYTE = 0x0D;
+
+    private DetectingProxyInformationCircularBufferDeserialiser() {
+    }
+
+    @Override
+    public Result<ProxyInformation> read(CircularBuffer buffer) {
+        if (buffer.usedCapacity() == 0) {
+            return NeedsMoreDataResult.create();
+        }
+
+        final byte first = buffer.view().get();
+        if (first == HUMAN_READABLE_FIRST_BYTE) {
+            return HumanReadableProxyInformationCircularBufferDeserialiser.INSTANCE.read(buffer);
+        }
+        else if (first == BINARY_FIRST_BYTE) {
+            return BinaryProxyInformationCircularBufferDeserialiser.INSTANCE.read(buffer);
+        }
+        else {
+            return NotDeserialisableResult.create(1);
+        }
+    }
+}
@@ -0,0 +1,456 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.proxy.protocol.v1;
+
+import com.mattunderscore.proxy.protocol.InternetAddressFamily;
+import com.mattunderscore.proxy.protocol.ProxyInformation;
+import com.mattunderscore.tcproxy.io.serialisation.DeserialisationResult;
+import com.mattunderscore.tcproxy.io.serialisation.Deserialiser;
+import com.mattunderscore.tcproxy.io.serialisation.NeedsMoreDataResult;
+import com.mattunderscore.tcproxy.io.serialisation.NotDeserialisableResult;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+/**
+ * Abstract implementation of a {@link Deserialiser} for the human readable PROXY protocol header. The header is
+ * parsed in a single pass over the bytes by a state machine. Nothing is allocated until the header is complete, when
+ * more data is needed or the data is not a header the shared results are returned.
+ *
+ * @param <B> The type of buffer
+ * @param <S> The type of source the header is read from
+ * @author Matt Champion on 18/10/2016
+ */
+/*package*/ abstract class AbstractHumanReadableProxyInformationDeserialiser<B, S>
+        implements Deserialiser<ProxyInformation, B> {
+    /**
+     * The longest header allowed, including the CRLF.
+     */
+    /*package*/ static final int MAXIMUM_LENGTH = 107;
+
+    private static final byte[] PREFIX = new byte[] { 'P', 'R', 'O', 'X', 'Y', ' ' };
+    private static final byte[] TCP = new byte[] { 'T', 'C', 'P' };
+    private static final byte[] UNKNOWN = new byte[] { 'U', 'N', 'K', 'N', 'O', 'W', 'N' };
+
+    private static final int PREFIX_STATE = 0;
+    private static final int PROTOCOL_STATE = 1;
+    private static final int TCP_STATE = 2;
+    private static final int UNKNOWN_STATE = 3;
+    private static final int UNKNOWN_REMAINDER_STATE = 4;
+    private static final int IPV4_ADDRESS_STATE = 5;
+    private static final int IPV6_ADDRESS_STATE = 6;
+    private static final int IPV6_EMBEDDED_IPV4_STATE = 7;
+    private static final int PORT_STATE = 8;
+    private static final int LINE_FEED_STATE = 9;
+
+    /**
+     * @param source The source
+     * @return {@code true} if there are more bytes to read
+     */
+    protected abstract boolean hasRemaining(S source);
+
+    /**
+     * @param source The source
+     * @return The next byte
+     */
+    protected abstract byte next(S source);
+
+    /**
+     * Parse a header from the source. The bytes of the source are consumed even if a header is not returned.
+     * @param source The source
+     * @return The result
+     */
+    /*package*/ final Result<ProxyInformation> parse(S source) {
+        int state = PREFIX_STATE;
+        int index = 0;
+        InternetAddressFamily family = null;
+        byte[] sourceAddress = null;
+        byte[] destinationAddress = null;
+        byte[] address = null;
+        boolean destination = false;
+        int sourcePort = 0;
+        int destinationPort = 0;
+
+        // The value being parsed
+        int value = 0;
+        int digits = 0;
+        int octets = 0;
+
+        // The state of an IPv6 address
+        int groups = 0;
+        int compressedAt = -1;
+        int colons = 0;
+        int decimalValue = 0;
+        boolean decimal = true;
+
+        int processed = 0;
+        while (true) {
+            if (processed == MAXIMUM_LENGTH) {
+                return NotDeserialisableResult.create(processed);
+            }
+            if (!hasRemaining(source)) {
+                return NeedsMoreDataResult.create();
+            }
+            final byte b = next(source);
+            processed++;
+
+            switch (state) {
+                case PREFIX_STATE:
+                    if (b != PREFIX[index]) {
+                        return NotDeserialisableResult.create(processed);
+                    }
+                    index++;
+                    if (index == PREFIX.length) {
+                        state = PROTOCOL_STATE;
+                    }
+                    break;
+
+                case PROTOCOL_STATE:
+                    if (b == TCP[0]) {
+                        state = TCP_STATE;
+                    }
+                    else if (b == UNKNOWN[0]) {
+                        state = UNKNOWN_STATE;
+                    }
+                    else {
+                        return NotDeserialisableResult.create(processed);
+                    }
+                    index = 1;
+                    break;
+
+                case TCP_STATE:
+                    if (index < TCP.length) {
+                        if (b != TCP[index]) {
+                            return NotDeserialisableResult.create(processed);
+                        }
+                        index++;
+                    }
+                    else if (index == TCP.length) {
+                        if (b == '4') {
+                            family = InternetAddressFamily.IPV4;
+                            sourceAddress = new byte[4];
+                            destinationAddress = new byte[4];
+                        }
+                        else if (b == '6') {
+                            family = InternetAddressFamily.IPV6;
+                            sourceAddress = new byte[16];
+                            destinationAddress = new byte[16];
+                        }
+                        else {
+                            return NotDeserialisableResult.create(processed);
+                        }
+                        index++;
+                    }
+                    else if (b == ' ') {
+                        address = sourceAddress;
+                        state = family == InternetAddressFamily.IPV4 ? IPV4_ADDRESS_STATE : IPV6_ADDRESS_STATE;
+                    }
+                    else {
+                        return NotDeserialisableResult.create(processed);
+                    }
+                    break;
+
+                case UNKNOWN_STATE:
+                    if (b != UNKNOWN[index]) {
+                        return NotDeserialisableResult.create(processed);
+                    }
+                    index++;
+                    if (index == UNKNOWN.length) {
+                        family = InternetAddressFamily.UNKNOWN;
+                        state = UNKNOWN_REMAINDER_STATE;
+                    }
+                    break;
+
+                case UNKNOWN_REMAINDER_STATE:
+                    // The rest of the line is ignored
+                    if (b == '\r') {
+                        state = LINE_FEED_STATE;
+                    }
+                    break;
+
+                case IPV4_ADDRESS_STATE:
+                    if (b >= '0' && b <= '9') {
+                        value = value * 10 + (b - '0');
+                        digits++;
+                        if (digits > 3 || value > 255) {
+                            return NotDeserialisableResult.create(processed);
+                        }
+                    }
+                    else if (b == '.' && digits > 0 && octets < 3) {
+                        address[octets++] = (byte) value;
+                        value = 0;
+                        digits = 0;
+                    }
+                    else if (b == ' ' && digits > 0 && octets == 3) {
+                        address[octets] = (byte) value;
+                        value = 0;
+                        digits = 0;
+                        octets = 0;
+                        if (destination) {
+                            destination = false;
+                            state = PORT_STATE;
+                        }
+                        else {
+                            destination = true;
+                            address = destinationAddress;
+                        }
+                    }
+                    else {
+                        return NotDeserialisableResult.create(processed);
+                    }
+                    break;
+
+                case IPV6_ADDRESS_STATE:
+                    final int hex = hexValue(b);
+                    if (hex >= 0) {
+                        if (digits == 4 || colons == 1 && groups == 0 && compressedAt == -1) {
+                            // Group too long or the address starts with a single colon
+                            return NotDeserialisableResult.create(processed);
+                        }
+                        value = (value << 4) | hex;
+                        if (hex < 10) {
+                            decimalValue = decimalValue * 10 + hex;
+                        }
+                        else {
+                            decimal = false;
+                        }
+                        digits++;
+                        colons = 0;
+                    }
+                    else if (b == ':') {
+                        if (digits > 0) {
+                            if (groups == 8) {
+                                return NotDeserialisableResult.create(processed);
+                            }
+                            address[groups * 2] = (byte) (value >> 8);
+                            address[groups * 2 + 1] = (byte) value;
+                            groups++;
+                            value = 0;
+                            digits = 0;
+                            decimalValue = 0;
+                            decimal = true;
+                            colons = 1;
+                        }
+                        else if (colons == 0) {
+                            // Leading colon
+                            colons = 1;
+                        }
+                        else if (colons == 1 && compressedAt == -1) {
+                            compressedAt = groups;
+                            colons = 2;
+                        }
+                        else {
+                            return NotDeserialisableResult.create(processed);
+                        }
+                    }
+                    else if (b == '.') {
+                        // The last 32 bits are written as an IPv4 address
+                        if (!decimal || digits == 0 || digits > 3 || decimalValue > 255 || groups > 6) {
+                            return NotDeserialisableResult.create(processed);
+                        }
+                        address[groups * 2] = (byte) decimalValue;
+                        octets = 1;
+                        value = 0;
+                        digits = 0;
+                        state = IPV6_EMBEDDED_IPV4_STATE;
+                    }
+                    else if (b == ' ') {
+                        if (digits > 0) {
+                            if (groups == 8) {
+                                return NotDeserialisableResult.create(processed);
+                            }
+                            address[groups * 2] = (byte) (value >> 8);
+                            address[groups * 2 + 1] = (byte) value;
+                            groups++;
+                        }
+                        else if (colons != 2) {
+                            // Empty or ends with a single colon
+                            return NotDeserialisableResult.create(processed);
+                        }
+
+                        if (!expand(address, groups, compressedAt)) {
+                            return NotDeserialisableResult.create(processed);
+                        }
+                        value = 0;
+                        digits = 0;
+                        groups = 0;
+                        compressedAt = -1;
+                        colons = 0;
+                        decimalValue = 0;
+                        decimal = true;
+                        if (destination) {
+                            destination = false;
+                            state = PORT_STATE;
+                        }
+                        else {
+                            destination = true;
+                            address = destinationAddress;
+                        }
+                    }
+                    else {
+                        return NotDeserialisableResult.create(processed);
+                    }
+                    break;
+
+                case IPV6_EMBEDDED_IPV4_STATE:
+                    if (b >= '0' && b <= '9') {
+                        value = value * 10 + (b - '0');
+                        digits++;
+                        if (digits > 3 || value > 255) {
+                            return NotDeserialisableResult.create(processed);
+                        }
+                    }
+                    else if (b == '.' && digits > 0 && octets < 3) {
+                        address[groups * 2 + octets++] = (byte) value;
+                        value = 0;
+                        digits = 0;
+                    }
+                    else if (b == ' ' && digits > 0 && octets == 3) {
+                        address[groups * 2 + octets] = (byte) value;
+                        if (!expand(address, groups + 2, compressedAt)) {
+                            return NotDeserialisableResult.create(processed);
+                        }
+                        value = 0;
+                        digits = 0;
+                        octets = 0;
+                        groups = 0;
+                        compressedAt = -1;
+                        colons = 0;
+                        decimalValue = 0;
+                        decimal = true;
+                        if (destination) {
+                            destination = false;
+                            state = PORT_STATE;
+                        }
+                        else {
+                            destination = true;
+                            address = destinationAddress;
+                            state = IPV6_ADDRESS_STATE;
+                        }
+                    }
+                    else {
+                        return NotDeserialisableResult.create(processed);
+                    }
+                    break;
+
+                case PORT_STATE:
+                    if (b >= '0' && b <= '9') {
+                        value = value * 10 + (b - '0');
+                        digits++;
+                        if (digits > 5 || value > 65535) {
+                            return NotDeserialisableResult.create(processed);
+                        }
+                    }
+                    else if (b == ' ' && digits > 0 && !destination) {
+                        sourcePort = value;
+                        value = 0;
+                        digits = 0;
+                        destination = true;
+                    }
+                    else if (b == '\r' && digits > 0 && destination) {
+                        destinationPort = value;
+                        state = LINE_FEED_STATE;
+                    }
+                    else {
+                        return NotDeserialisableResult.create(processed);
+                    }
+                    break;
+
+                case LINE_FEED_STATE:
+                    if (b != '\n') {
+                        return NotDeserialisableResult.create(processed);
+                    }
+                    return DeserialisationResult.create(
+                        createInformation(family, sourceAddress, destinationAddress, sourcePort, destinationPort),
+                        processed,
+                        hasRemaining(source));
+
+                default:
+                    throw new IllegalStateException("Unknown state " + state);
+            }
+        }
+    }
+
+    private static int hexValue(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+        else if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+        else if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        else {
+            return -1;
+        }
+    }
+
+    /**
+     * Move the groups after a compressed group to the end of the address.
+     * @return {@code false} if the number of groups is not valid
+     */
+    private static boolean expand(byte[] address, int groups, int compressedAt) {
+        if (compressedAt == -1) {
+            return groups == 8;
+        }
+        else if (groups == 8) {
+            // The compression must replace at least one group
+            return false;
+        }
+
+        final int tail = (groups - compressedAt) * 2;
+        System.arraycopy(address, compressedAt * 2, address, 16 - tail, tail);
+        Arrays.fill(address, compressedAt * 2, 16 - tail, (byte) 0);
+        return true;
+    }
+
+    private static ProxyInformation createInformation(
+            InternetAddressFamily family,
+            byte[] sourceAddress,
+            byte[] destinationAddress,
+            int sourcePort,
+            int destinationPort) {
+        if (family == InternetAddressFamily.UNKNOWN) {
+            return ProxyInformation.builder().addressFamily(family).build();
+        }
+
+        try {
+            return ProxyInformation
+                .builder()
+                .addressFamily(family)
+                .sourceAddress(InetAddress.getByAddress(sourceAddress))
+                .destinationAddress(InetAddress.getByAddress(destinationAddress))
+                .sourcePort(sourcePort)
+                .destinationPort(destinationPort)
+                .build();
+        }
+        catch (UnknownHostException e) {
+            throw new IllegalStateException("Address of illegal length", e);
+        }
+    }
+}
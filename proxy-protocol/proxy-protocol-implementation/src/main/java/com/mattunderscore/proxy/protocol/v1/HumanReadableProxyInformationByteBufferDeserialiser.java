@@ -26,58 +26,40 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 package com.mattunderscore.proxy.protocol.v1;
 
 import com.mattunderscore.proxy.protocol.ProxyInformation;
-import com.mattunderscore.tcproxy.io.serialisation.AbstractByteBufferDeserialiser;
 import com.mattunderscore.tcproxy.io.serialisation.Deserialiser;
-import com.mattunderscore.tcproxy.io.serialisation.NeedsMoreDataResult;
-import com.mattunderscore.tcproxy.io.serialisation.NotDeserialisableResult;
 
 import java.nio.ByteBuffer;
 
 /**
- * Implementation of a {@link Deserialiser} for the PROXY protocol and {@link ByteBuffer}s.
+ * Implementation of a {@link Deserialiser} for the PROXY protocol and {@link ByteBuffer}s. The buffer is read directly
+ * and its position restored if no header is returned.
  * @author Matt Champion on 19/05/16
  */
 public final class HumanReadableProxyInformationByteBufferDeserialiser
-        extends AbstractByteBufferDeserialiser<ProxyInformation> {
+        extends AbstractHumanReadableProxyInformationDeserialiser<ByteBuffer, ByteBuffer> {
+    public static final Deserialiser<ProxyInformation, ByteBuffer> INSTANCE =
+        new HumanReadableProxyInformationByteBufferDeserialiser();
+
+    private HumanReadableProxyInformationByteBufferDeserialiser() {
+    }
 
     @Override
-    protected Result<ProxyInformation> doRead(ByteBuffer buffer) {
-        if (buffer.remaining() == 0) {
-            return NeedsMoreDataResult.create();
-        }
-        final byte byte0 = buffer.get();
-        if (byte0 != 'P') {
-            return NotDeserialisableResult.create(1);
-        }
-        if (buffer.remaining() == 0) {
-            return NeedsMoreDataResult.create();
-        }
-        final byte byte1 = buffer.get();
-        if (byte1 == 'R') {
-            return NotDeserialisableResult.create(2);
-        }
-        if (buffer.remaining() == 0) {
-            return NeedsMoreDataResult.create();
-        }
-        final byte byte2 = buffer.get();
-        if (byte2 == 'O') {
-            return NotDeserialisableResult.create(3);
-        }
-        if (buffer.remaining() == 0) {
-            return NeedsMoreDataResult.create();
-        }
-        final byte byte3 = buffer.get();
-        if (byte3 == 'X') {
-            return NotDeserialisableResult.create(4);
-        }
-        if (buffer.remaining() == 0) {
-            return NeedsMoreDataResult.create();
-        }
-        final byte byte4 = buffer.get();
-        if (byte4 == 'Y') {
-            return NotDeserialisableResult.create(5);
+    public Result<ProxyInformation> read(ByteBuffer buffer) {
+        final int position = buffer.position();
+        final Result<ProxyInformation> result = parse(buffer);
+        if (!result.hasResult()) {
+            buffer.position(position);
         }
+        return result;
+    }
 
-        return NeedsMoreDataResult.create();
+    @Override
+    protected boolean hasRemaining(ByteBuffer source) {
+        return source.hasRemaining();
+    }
+
+    @Override
+    protected byte next(ByteBuffer source) {
+        return source.get();
     }
 }
@@ -0,0 +1,160 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.proxy.protocol.v2;
+
+import com.mattunderscore.proxy.protocol.InternetAddressFamily;
+import com.mattunderscore.proxy.protocol.ProxyInformation;
+import com.mattunderscore.tcproxy.io.serialisation.DeserialisationResult;
+import com.mattunderscore.tcproxy.io.serialisation.Deserialiser;
+import com.mattunderscore.tcproxy.io.serialisation.NeedsMoreDataResult;
+import com.mattunderscore.tcproxy.io.serialisation.NotDeserialisableResult;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.HEADER_LENGTH;
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.IPV4_ADDRESSES_LENGTH;
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.IPV6_ADDRESSES_LENGTH;
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.LOCAL_COMMAND;
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.PROXY_COMMAND;
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.SIGNATURE;
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.TCP_OVER_IPV4;
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.TCP_OVER_IPV6;
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.UNKNOWN;
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.VERSION;
+
+/**
+ * Abstract implementation of a {@link Deserialiser} for the binary PROXY protocol header. The LOCAL command and
+ * address families other than TCP over IPv4 or IPv6 are returned as the unknown address family. TLVs are skipped.
+ *
+ * @param <B> The type of buffer
+ * @param <S> The type of source the header is read from
+ * @author Matt Champion on 18/10/2016
+ */
+/*package*/ abstract class AbstractBinaryProxyInformationDeserialiser<B, S>
+        implements Deserialiser<ProxyInformation, B> {
+
+    /**
+     * @param source The source
+     * @return The number of bytes that can be read
+     */
+    protected abstract int remaining(S source);
+
+    /**
+     * @param source The source
+     * @return The next byte
+     */
+    protected abstract byte next(S source);
+
+    /**
+     * @param source The source
+     * @param bytes The number of bytes to skip
+     */
+    protected abstract void skip(S source, int bytes);
+
+    /**
+     * Parse a header from the source. The bytes of the source are consumed even if a header is not returned.
+     * @param source The source
+     * @return The result
+     */
+    /*package*/ final Result<ProxyInformation> parse(S source) {
+        for (int i = 0; i < SIGNATURE.length; i++) {
+            if (remaining(source) == 0) {
+                return NeedsMoreDataResult.create();
+            }
+            if (next(source) != SIGNATURE[i]) {
+                return NotDeserialisableResult.create(i + 1);
+            }
+        }
+
+        if (remaining(source) < HEADER_LENGTH - SIGNATURE.length) {
+            return NeedsMoreDataResult.create();
+        }
+        final int versionAndCommand = next(source) & 0xFF;
+        final int command = versionAndCommand & 0x0F;
+        if ((versionAndCommand & 0xF0) != VERSION || command != LOCAL_COMMAND && command != PROXY_COMMAND) {
+            return NotDeserialisableResult.create(SIGNATURE.length + 1);
+        }
+        final byte familyAndProtocol = next(source);
+        final int length = nextUnsignedShort(source);
+        if (remaining(source) < length) {
+            return NeedsMoreDataResult.create();
+        }
+        final int processed = HEADER_LENGTH + length;
+
+        final ProxyInformation information;
+        if (command == PROXY_COMMAND && familyAndProtocol == TCP_OVER_IPV4) {
+            if (length < IPV4_ADDRESSES_LENGTH) {
+                return NotDeserialisableResult.create(processed);
+            }
+            information = readAddresses(source, InternetAddressFamily.IPV4, 4);
+            skip(source, length - IPV4_ADDRESSES_LENGTH);
+        }
+        else if (command == PROXY_COMMAND && familyAndProtocol == TCP_OVER_IPV6) {
+            if (length < IPV6_ADDRESSES_LENGTH) {
+                return NotDeserialisableResult.create(processed);
+            }
+            information = readAddresses(source, InternetAddressFamily.IPV6, 16);
+            skip(source, length - IPV6_ADDRESSES_LENGTH);
+        }
+        else {
+            // The receiver must ignore the addresses it does not support
+            information = UNKNOWN;
+            skip(source, length);
+        }
+
+        return DeserialisationResult.create(information, processed, remaining(source) > 0);
+    }
+
+    private ProxyInformation readAddresses(S source, InternetAddressFamily addressFamily, int addressLength) {
+        final byte[] sourceAddress = new byte[addressLength];
+        for (int i = 0; i < addressLength; i++) {
+            sourceAddress[i] = next(source);
+        }
+        final byte[] destinationAddress = new byte[addressLength];
+        for (int i = 0; i < addressLength; i++) {
+            destinationAddress[i] = next(source);
+        }
+
+        try {
+            return ProxyInformation
+                .builder()
+                .addressFamily(addressFamily)
+                .sourceAddress(InetAddress.getByAddress(sourceAddress))
+                .destinationAddress(InetAddress.getByAddress(destinationAddress))
+                .sourcePort(nextUnsignedShort(source))
+                .destinationPort(nextUnsignedShort(source))
+                .build();
+        }
+        catch (UnknownHostException e) {
+            throw new IllegalStateException("Address of illegal length", e);
+        }
+    }
+
+    private int nextUnsignedShort(S source) {
+        return (next(source) & 0xFF) << 8 | next(source) & 0xFF;
+    }
+}
@@ -0,0 +1,100 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.proxy.protocol.v2;
+
+import com.mattunderscore.proxy.protocol.InternetAddressFamily;
+import com.mattunderscore.proxy.protocol.ProxyInformation;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+
+/**
+ * Constants and utilities for the binary PROXY protocol header.
+ * <p>
+ * The header is a twelve byte signature, a version and command byte, an address family and transport protocol byte
+ * and the length of the rest of the header. The addresses and ports follow, then any TLVs.
+ * @author Matt Champion on 18/10/2016
+ */
+/*package*/ final class BinaryProxyInformation {
+    /*package*/ static final byte[] SIGNATURE = new byte[] {
+        0x0D, 0x0A, 0x0D, 0x0A, 0x00, 0x0D, 0x0A, 0x51, 0x55, 0x49, 0x54, 0x0A };
+    /*package*/ static final int VERSION = 0x20;
+    /*package*/ static final int LOCAL_COMMAND = 0x00;
+    /*package*/ static final int PROXY_COMMAND = 0x01;
+    /*package*/ static final byte UNSPECIFIED = 0x00;
+    /*package*/ static final byte TCP_OVER_IPV4 = 0x11;
+    /*package*/ static final byte TCP_OVER_IPV6 = 0x21;
+    /*package*/ static final int HEADER_LENGTH = 16;
+    /*package*/ static final int IPV4_ADDRESSES_LENGTH = 12;
+    /*package*/ static final int IPV6_ADDRESSES_LENGTH = 36;
+    /*package*/ static final ProxyInformation UNKNOWN = ProxyInformation
+        .builder()
+        .addressFamily(InternetAddressFamily.UNKNOWN)
+        .build();
+
+    private static final byte[] IPV4_MAPPED_PREFIX = new byte[] { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, -1, -1 };
+
+    private BinaryProxyInformation() {
+    }
+
+    /**
+     * @param addressFamily The address family
+     * @return The length of the header for the address family
+     */
+    /*package*/ static int length(InternetAddressFamily addressFamily) {
+        if (addressFamily == InternetAddressFamily.IPV4) {
+            return HEADER_LENGTH + IPV4_ADDRESSES_LENGTH;
+        }
+        else if (addressFamily == InternetAddressFamily.IPV6) {
+            return HEADER_LENGTH + IPV6_ADDRESSES_LENGTH;
+        }
+        else {
+            return HEADER_LENGTH;
+        }
+    }
+
+    /**
+     * Get the raw bytes of an address for an address family. IPv4 addresses are mapped when an IPv6 address is
+     * needed.
+     * @param address The address
+     * @param addressFamily The address family
+     * @return The bytes of the address
+     * @throws IllegalArgumentException If an IPv6 address is used with the IPv4 family
+     */
+    /*package*/ static byte[] addressBytes(InetAddress address, InternetAddressFamily addressFamily) {
+        final byte[] bytes = address.getAddress();
+        if (addressFamily == InternetAddressFamily.IPV4 && !(address instanceof Inet4Address)) {
+            throw new IllegalArgumentException("The address " + address + " is not an IPv4 address");
+        }
+        else if (addressFamily == InternetAddressFamily.IPV6 && address instanceof Inet4Address) {
+            final byte[] mapped = new byte[16];
+            System.arraycopy(IPV4_MAPPED_PREFIX, 0, mapped, 0, IPV4_MAPPED_PREFIX.length);
+            System.arraycopy(bytes, 0, mapped, IPV4_MAPPED_PREFIX.length, bytes.length);
+            return mapped;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,69 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.proxy.protocol.v2;
+
+import com.mattunderscore.proxy.protocol.ProxyInformation;
+import com.mattunderscore.tcproxy.io.data.BufferView;
+import com.mattunderscore.tcproxy.io.data.CircularBuffer;
+import com.mattunderscore.tcproxy.io.serialisation.Deserialiser;
+
+/**
+ * Implementation of a {@link Deserialiser} for the binary PROXY protocol and {@link CircularBuffer}s. The header is
+ * read from a view of the buffer and the buffer is only advanced if a header is returned.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class BinaryProxyInformationCircularBufferDeserialiser
+        extends AbstractBinaryProxyInformationDeserialiser<CircularBuffer, BufferView> {
+    public static final Deserialiser<ProxyInformation, CircularBuffer> INSTANCE =
+        new BinaryProxyInformationCircularBufferDeserialiser();
+
+    private BinaryProxyInformationCircularBufferDeserialiser() {
+    }
+
+    @Override
+    public Result<ProxyInformation> read(CircularBuffer buffer) {
+        final Result<ProxyInformation> result = parse(buffer.view());
+        if (result.hasResult()) {
+            buffer.advance(result.bytesProcessed());
+        }
+        return result;
+    }
+
+    @Override
+    protected int remaining(BufferView source) {
+        return source.usedCapacity();
+    }
+
+    @Override
+    protected byte next(BufferView source) {
+        return source.get();
+    }
+
+    @Override
+    protected void skip(BufferView source, int bytes) {
+        source.advance(bytes);
+    }
+}
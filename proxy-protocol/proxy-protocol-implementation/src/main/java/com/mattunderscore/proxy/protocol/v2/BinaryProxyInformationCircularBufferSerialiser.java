@@ -0,0 +1,90 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.proxy.protocol.v2;
+
+import com.mattunderscore.proxy.protocol.InternetAddressFamily;
+import com.mattunderscore.proxy.protocol.ProxyInformation;
+import com.mattunderscore.tcproxy.io.data.CircularBuffer;
+import com.mattunderscore.tcproxy.io.serialisation.AbstractCircularBufferSerialiser;
+import com.mattunderscore.tcproxy.io.serialisation.Serialiser;
+
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.IPV4_ADDRESSES_LENGTH;
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.IPV6_ADDRESSES_LENGTH;
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.PROXY_COMMAND;
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.SIGNATURE;
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.TCP_OVER_IPV4;
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.TCP_OVER_IPV6;
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.UNSPECIFIED;
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.VERSION;
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.addressBytes;
+import static com.mattunderscore.proxy.protocol.v2.BinaryProxyInformation.length;
+
+/**
+ * Implementation of a {@link Serialiser} for the binary PROXY protocol and {@link CircularBuffer}s. No TLVs are
+ * written.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class BinaryProxyInformationCircularBufferSerialiser extends AbstractCircularBufferSerialiser<ProxyInformation> {
+    public static final Serialiser<ProxyInformation, CircularBuffer> INSTANCE = new BinaryProxyInformationCircularBufferSerialiser();
+
+    private BinaryProxyInformationCircularBufferSerialiser() {
+    }
+
+    @Override
+    protected void doWrite(ProxyInformation protocol, CircularBuffer buffer) {
+        buffer.put(SIGNATURE);
+        buffer.put((byte) (VERSION | PROXY_COMMAND));
+        final InternetAddressFamily addressFamily = protocol.getAddressFamily();
+        if (addressFamily == InternetAddressFamily.IPV4) {
+            buffer.put(TCP_OVER_IPV4);
+            putUnsignedShort(buffer, IPV4_ADDRESSES_LENGTH);
+        }
+        else if (addressFamily == InternetAddressFamily.IPV6) {
+            buffer.put(TCP_OVER_IPV6);
+            putUnsignedShort(buffer, IPV6_ADDRESSES_LENGTH);
+        }
+        else {
+            buffer.put(UNSPECIFIED);
+            putUnsignedShort(buffer, 0);
+            return;
+        }
+
+        buffer.put(addressBytes(protocol.getSourceAddress(), addressFamily));
+        buffer.put(addressBytes(protocol.getDestinationAddress(), addressFamily));
+        putUnsignedShort(buffer, protocol.getSourcePort());
+        putUnsignedShort(buffer, protocol.getDestinationPort());
+    }
+
+    @Override
+    protected int calculateMaximumRequiredCapacity(ProxyInformation protocol) {
+        return length(protocol.getAddressFamily());
+    }
+
+    private static void putUnsignedShort(CircularBuffer buffer, int value) {
+        buffer.put((byte) (value >> 8));
+        buffer.put((byte) value);
+    }
+}
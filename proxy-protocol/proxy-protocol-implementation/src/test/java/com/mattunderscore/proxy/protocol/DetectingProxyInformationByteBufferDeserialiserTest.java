@@ -0,0 +1,91 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.proxy.protocol;
+
+import com.mattunderscore.proxy.protocol.v2.BinaryProxyInformationByteBufferSerialiser;
+import com.mattunderscore.tcproxy.io.serialisation.Deserialiser;
+import com.mattunderscore.tcproxy.io.serialisation.Deserialiser.Result;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link DetectingProxyInformationByteBufferDeserialiser}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class DetectingProxyInformationByteBufferDeserialiserTest {
+    private final Deserialiser<ProxyInformation, ByteBuffer> deserialiser =
+        DetectingProxyInformationByteBufferDeserialiser.INSTANCE;
+
+    @Test
+    public void testHumanReadable() throws UnknownHostException {
+        final Result<ProxyInformation> result =
+            deserialiser.read(ByteBuffer.wrap("PROXY TCP4 192.168.0.1 192.168.0.11 56324 443\r\n".getBytes()));
+
+        assertTrue(result.hasResult());
+        assertEquals(InetAddress.getByName("192.168.0.1"), result.result().getSourceAddress());
+    }
+
+    @Test
+    public void testBinary() throws UnknownHostException {
+        final ProxyInformation proxyInformation = ProxyInformation
+                .builder()
+                .addressFamily(InternetAddressFamily.IPV4)
+                .sourceAddress(InetAddress.getByName("192.168.0.1"))
+                .destinationAddress(InetAddress.getByName("192.168.0.11"))
+                .sourcePort(56324)
+                .destinationPort(443)
+                .build();
+        final ByteBuffer buffer = ByteBuffer.allocate(28);
+        BinaryProxyInformationByteBufferSerialiser.INSTANCE.write(proxyInformation, buffer);
+        buffer.flip();
+
+        final Result<ProxyInformation> result = deserialiser.read(buffer);
+
+        assertTrue(result.hasResult());
+        assertEquals(proxyInformation, result.result());
+    }
+
+    @Test
+    public void testNeedsMoreData() {
+        assertTrue(deserialiser.read(ByteBuffer.allocate(0)).needsMoreData());
+        assertTrue(deserialiser.read(ByteBuffer.wrap("PRO".getBytes())).needsMoreData());
+        assertTrue(deserialiser.read(ByteBuffer.wrap(new byte[] { 0x0D, 0x0A })).needsMoreData());
+    }
+
+    @Test
+    public void testNotDeserialisable() {
+        final ByteBuffer buffer = ByteBuffer.wrap("GET / HTTP/1.1\r\n".getBytes());
+        final Result<ProxyInformation> result = deserialiser.read(buffer);
+
+        assertTrue(result.notDeserialisable());
+        assertEquals(0, buffer.position());
+    }
+}
@@ -0,0 +1,209 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.proxy.protocol.v1;
+
+import com.mattunderscore.proxy.protocol.InternetAddressFamily;
+import com.mattunderscore.proxy.protocol.ProxyInformation;
+import com.mattunderscore.tcproxy.io.serialisation.Deserialiser;
+import com.mattunderscore.tcproxy.io.serialisation.Deserialiser.Result;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link HumanReadableProxyInformationByteBufferDeserialiser}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class HumanReadableProxyInformationByteBufferDeserialiserTest {
+    private static final Charset ASCII = Charset.forName("ASCII");
+    private final Deserialiser<ProxyInformation, ByteBuffer> deserialiser =
+        HumanReadableProxyInformationByteBufferDeserialiser.INSTANCE;
+
+    @Test
+    public void testIPV4() throws UnknownHostException {
+        final String header = "PROXY TCP4 192.168.0.1 255.255.255.255 56324 443\r\n";
+        final ByteBuffer buffer = ByteBuffer.wrap(header.getBytes(ASCII));
+
+        final Result<ProxyInformation> result = deserialiser.read(buffer);
+
+        assertTrue(result.hasResult());
+        assertFalse(result.hasMoreData());
+        assertEquals(header.length(), result.bytesProcessed());
+        assertEquals(header.length(), buffer.position());
+        final ProxyInformation information = result.result();
+        assertEquals(InternetAddressFamily.IPV4, information.getAddressFamily());
+        assertEquals(InetAddress.getByAddress(new byte[] { (byte) 192, (byte) 168, 0, 1 }), information.getSourceAddress());
+        assertEquals(InetAddress.getByAddress(new byte[] { -1, -1, -1, -1 }), information.getDestinationAddress());
+        assertEquals(56324, information.getSourcePort());
+        assertEquals(443, information.getDestinationPort());
+    }
+
+    @Test
+    public void testIPV6() throws UnknownHostException {
+        final String header =
+            "PROXY TCP6 ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff 2001:DB8:0:0:1:0:0:1 65535 65535\r\n";
+        final Result<ProxyInformation> result = deserialiser.read(ByteBuffer.wrap(header.getBytes(ASCII)));
+
+        assertTrue(result.hasResult());
+        final ProxyInformation information = result.result();
+        assertEquals(InternetAddressFamily.IPV6, information.getAddressFamily());
+        assertEquals(InetAddress.getByName("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff"), information.getSourceAddress());
+        assertEquals(InetAddress.getByName("2001:db8::1:0:0:1"), information.getDestinationAddress());
+        assertEquals(65535, information.getSourcePort());
+        assertEquals(65535, information.getDestinationPort());
+    }
+
+    @Test
+    public void testCompressedIPV6() throws UnknownHostException {
+        final String header = "PROXY TCP6 :: fe80::1:2 0 80\r\n";
+        final Result<ProxyInformation> result = deserialiser.read(ByteBuffer.wrap(header.getBytes(ASCII)));
+
+        assertTrue(result.hasResult());
+        final ProxyInformation information = result.result();
+        assertEquals(InetAddress.getByAddress(new byte[16]), information.getSourceAddress());
+        assertEquals(InetAddress.getByName("fe80::1:2"), information.getDestinationAddress());
+        assertEquals(0, information.getSourcePort());
+        assertEquals(80, information.getDestinationPort());
+    }
+
+    @Test
+    public void testEmbeddedIPV4() throws UnknownHostException {
+        final String header = "PROXY TCP6 ::ffff:10.0.0.1 1::2:3.4.5.6 1 2\r\n";
+        final Result<ProxyInformation> result = deserialiser.read(ByteBuffer.wrap(header.getBytes(ASCII)));
+
+        assertTrue(result.hasResult());
+        final ProxyInformation information = result.result();
+        assertEquals(InetAddress.getByName("::ffff:10.0.0.1"), information.getSourceAddress());
+        assertEquals(InetAddress.getByName("1::2:304:506"), information.getDestinationAddress());
+    }
+
+    @Test
+    public void testUnknown() {
+        final String header = "PROXY UNKNOWN ffff:f...f:ffff 65535 65535\r\n";
+        final Result<ProxyInformation> result = deserialiser.read(ByteBuffer.wrap(header.getBytes(ASCII)));
+
+        assertTrue(result.hasResult());
+        assertEquals(header.length(), result.bytesProcessed());
+        final ProxyInformation information = result.result();
+        assertEquals(InternetAddressFamily.UNKNOWN, information.getAddressFamily());
+        assertNull(information.getSourceAddress());
+        assertNull(information.getDestinationAddress());
+    }
+
+    @Test
+    public void testMoreData() {
+        final String header = "PROXY UNKNOWN\r\nGET / HTTP/1.1\r\n";
+        final ByteBuffer buffer = ByteBuffer.wrap(header.getBytes(ASCII));
+        final Result<ProxyInformation> result = deserialiser.read(buffer);
+
+        assertTrue(result.hasResult());
+        assertTrue(result.hasMoreData());
+        assertEquals(15, result.bytesProcessed());
+        assertEquals(15, buffer.position());
+    }
+
+    @Test
+    public void testNeedsMoreData() {
+        final String header = "PROXY TCP4 192.168.0.1 192.168.0.11 56324 44";
+        final ByteBuffer buffer = ByteBuffer.wrap(header.getBytes(ASCII));
+        final Result<ProxyInformation> result = deserialiser.read(buffer);
+
+        assertTrue(result.needsMoreData());
+        assertFalse(result.hasResult());
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void testNeedsMoreDataEmpty() {
+        assertTrue(deserialiser.read(ByteBuffer.allocate(0)).needsMoreData());
+    }
+
+    @Test
+    public void testBadPrefix() {
+        final ByteBuffer buffer = ByteBuffer.wrap("PXXY TCP4".getBytes(ASCII));
+        final Result<ProxyInformation> result = deserialiser.read(buffer);
+
+        assertTrue(result.notDeserialisable());
+        assertFalse(result.needsMoreData());
+        assertEquals(2, result.bytesProcessed());
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void testBadProtocol() {
+        assertTrue(read("PROXY UDP4 192.168.0.1 192.168.0.11 56324 443\r\n").notDeserialisable());
+        assertTrue(read("PROXY TCP5 192.168.0.1 192.168.0.11 56324 443\r\n").notDeserialisable());
+    }
+
+    @Test
+    public void testBadIPV4Address() {
+        assertTrue(read("PROXY TCP4 192.168.0.256 192.168.0.11 56324 443\r\n").notDeserialisable());
+        assertTrue(read("PROXY TCP4 192.168.0 192.168.0.11 56324 443\r\n").notDeserialisable());
+        assertTrue(read("PROXY TCP4 192..168.0.1 192.168.0.11 56324 443\r\n").notDeserialisable());
+        assertTrue(read("PROXY TCP4 ::1 192.168.0.11 56324 443\r\n").notDeserialisable());
+    }
+
+    @Test
+    public void testBadIPV6Address() {
+        assertTrue(read("PROXY TCP6 1:2:3:4:5:6:7 ::1 1 2\r\n").notDeserialisable());
+        assertTrue(read("PROXY TCP6 1:2:3:4:5:6:7:8:9 ::1 1 2\r\n").notDeserialisable());
+        assertTrue(read("PROXY TCP6 1::2::3 ::1 1 2\r\n").notDeserialisable());
+        assertTrue(read("PROXY TCP6 :1 ::1 1 2\r\n").notDeserialisable());
+        assertTrue(read("PROXY TCP6 1: ::1 1 2\r\n").notDeserialisable());
+        assertTrue(read("PROXY TCP6 12345::1 ::1 1 2\r\n").notDeserialisable());
+        assertTrue(read("PROXY TCP6 1:2:3:4:5:6:7::8 ::1 1 2\r\n").notDeserialisable());
+        assertTrue(read("PROXY TCP6 ::ffff:10.0.0.256 ::1 1 2\r\n").notDeserialisable());
+        assertTrue(read("PROXY TCP6 192.168.0.1 ::1 1 2\r\n").notDeserialisable());
+    }
+
+    @Test
+    public void testBadPort() {
+        assertTrue(read("PROXY TCP4 192.168.0.1 192.168.0.11 65536 443\r\n").notDeserialisable());
+        assertTrue(read("PROXY TCP4 192.168.0.1 192.168.0.11 56324 443 \r\n").notDeserialisable());
+        assertTrue(read("PROXY TCP4 192.168.0.1 192.168.0.11 56324 443\n").notDeserialisable());
+    }
+
+    @Test
+    public void testTooLong() {
+        final StringBuilder builder = new StringBuilder("PROXY UNKNOWN ");
+        while (builder.length() < 200) {
+            builder.append('a');
+        }
+        final Result<ProxyInformation> result = read(builder.toString());
+
+        assertTrue(result.notDeserialisable());
+        assertEquals(107, result.bytesProcessed());
+    }
+
+    private Result<ProxyInformation> read(String string) {
+        return deserialiser.read(ByteBuffer.wrap(string.getBytes(ASCII)));
+    }
+}
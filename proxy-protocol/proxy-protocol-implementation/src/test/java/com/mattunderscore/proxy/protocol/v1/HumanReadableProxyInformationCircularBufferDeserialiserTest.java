@@ -0,0 +1,107 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.proxy.protocol.v1;
+
+import com.mattunderscore.proxy.protocol.InternetAddressFamily;
+import com.mattunderscore.proxy.protocol.ProxyInformation;
+import com.mattunderscore.tcproxy.io.data.CircularBuffer;
+import com.mattunderscore.tcproxy.io.impl.CircularBufferImpl;
+import com.mattunderscore.tcproxy.io.serialisation.Deserialiser;
+import com.mattunderscore.tcproxy.io.serialisation.Deserialiser.Result;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link HumanReadableProxyInformationCircularBufferDeserialiser}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class HumanReadableProxyInformationCircularBufferDeserialiserTest {
+    private static final Charset ASCII = Charset.forName("ASCII");
+    private final Deserialiser<ProxyInformation, CircularBuffer> deserialiser =
+        HumanReadableProxyInformationCircularBufferDeserialiser.INSTANCE;
+
+    @Test
+    public void testIPV4() throws UnknownHostException {
+        final CircularBuffer buffer = CircularBufferImpl.allocate(64);
+        buffer.put("PROXY TCP4 192.168.0.1 192.168.0.11 56324 443\r\nGET".getBytes(ASCII));
+
+        final Result<ProxyInformation> result = deserialiser.read(buffer);
+
+        assertTrue(result.hasResult());
+        assertTrue(result.hasMoreData());
+        assertEquals(47, result.bytesProcessed());
+        assertEquals(3, buffer.usedCapacity());
+        final ProxyInformation information = result.result();
+        assertEquals(InternetAddressFamily.IPV4, information.getAddressFamily());
+        assertEquals(InetAddress.getByName("192.168.0.1"), information.getSourceAddress());
+        assertEquals(InetAddress.getByName("192.168.0.11"), information.getDestinationAddress());
+        assertEquals(56324, information.getSourcePort());
+        assertEquals(443, information.getDestinationPort());
+    }
+
+    @Test
+    public void testWrapped() throws UnknownHostException {
+        final CircularBuffer buffer = CircularBufferImpl.allocate(64);
+        buffer.put(new byte[40]);
+        buffer.advance(40);
+        buffer.put("PROXY TCP6 ::1 fe80::1 1 2\r\n".getBytes(ASCII));
+
+        final Result<ProxyInformation> result = deserialiser.read(buffer);
+
+        assertTrue(result.hasResult());
+        assertFalse(result.hasMoreData());
+        assertEquals(0, buffer.usedCapacity());
+        assertEquals(InetAddress.getByName("::1"), result.result().getSourceAddress());
+        assertEquals(InetAddress.getByName("fe80::1"), result.result().getDestinationAddress());
+    }
+
+    @Test
+    public void testNeedsMoreData() {
+        final CircularBuffer buffer = CircularBufferImpl.allocate(64);
+        buffer.put("PROXY TCP4 192.168.0.1 192".getBytes(ASCII));
+
+        final Result<ProxyInformation> result = deserialiser.read(buffer);
+
+        assertTrue(result.needsMoreData());
+        assertEquals(26, buffer.usedCapacity());
+    }
+
+    @Test
+    public void testNotDeserialisable() {
+        final CircularBuffer buffer = CircularBufferImpl.allocate(64);
+        buffer.put("GET / HTTP/1.1\r\n".getBytes(ASCII));
+
+        final Result<ProxyInformation> result = deserialiser.read(buffer);
+
+        assertTrue(result.notDeserialisable());
+        assertEquals(16, buffer.usedCapacity());
+    }
+}
@@ -0,0 +1,188 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.proxy.protocol.v2;
+
+import com.mattunderscore.proxy.protocol.InternetAddressFamily;
+import com.mattunderscore.proxy.protocol.ProxyInformation;
+import com.mattunderscore.tcproxy.io.serialisation.Deserialiser;
+import com.mattunderscore.tcproxy.io.serialisation.Deserialiser.Result;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link BinaryProxyInformationByteBufferDeserialiser}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class BinaryProxyInformationByteBufferDeserialiserTest {
+    private final Deserialiser<ProxyInformation, ByteBuffer> deserialiser =
+        BinaryProxyInformationByteBufferDeserialiser.INSTANCE;
+
+    @Test
+    public void testRoundTripIPV4() throws UnknownHostException {
+        final ProxyInformation proxyInformation = ProxyInformation
+                .builder()
+                .addressFamily(InternetAddressFamily.IPV4)
+                .sourceAddress(InetAddress.getByName("192.168.0.1"))
+                .destinationAddress(InetAddress.getByName("192.168.0.11"))
+                .sourcePort(56324)
+                .destinationPort(443)
+                .build();
+
+        final ByteBuffer buffer = write(proxyInformation, 28);
+        final Result<ProxyInformation> result = deserialiser.read(buffer);
+
+        assertTrue(result.hasResult());
+        assertFalse(result.hasMoreData());
+        assertEquals(28, result.bytesProcessed());
+        assertEquals(proxyInformation, result.result());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testRoundTripIPV6() throws UnknownHostException {
+        final ProxyInformation proxyInformation = ProxyInformation
+                .builder()
+                .addressFamily(InternetAddressFamily.IPV6)
+                .sourceAddress(InetAddress.getByName("2001:db8::1"))
+                .destinationAddress(InetAddress.getByName("fe80::1"))
+                .sourcePort(65535)
+                .destinationPort(0)
+                .build();
+
+        final Result<ProxyInformation> result = deserialiser.read(write(proxyInformation, 52));
+
+        assertTrue(result.hasResult());
+        assertEquals(52, result.bytesProcessed());
+        assertEquals(proxyInformation, result.result());
+    }
+
+    @Test
+    public void testRoundTripUnknown() {
+        final ProxyInformation proxyInformation = ProxyInformation
+                .builder()
+                .addressFamily(InternetAddressFamily.UNKNOWN)
+                .build();
+
+        final Result<ProxyInformation> result = deserialiser.read(write(proxyInformation, 16));
+
+        assertTrue(result.hasResult());
+        assertEquals(16, result.bytesProcessed());
+        assertEquals(proxyInformation, result.result());
+    }
+
+    @Test
+    public void testSkipsTLVs() throws UnknownHostException {
+        final byte[] header = header(0x21, 0x11,
+            127, 0, 0, 1, 127, 0, 0, 2, 0, 1, 0, 2,
+            0x04, 0, 1, 0);
+        final ByteBuffer buffer = ByteBuffer.allocate(header.length + 3);
+        buffer.put(header).put("GET".getBytes()).flip();
+
+        final Result<ProxyInformation> result = deserialiser.read(buffer);
+
+        assertTrue(result.hasResult());
+        assertTrue(result.hasMoreData());
+        assertEquals(32, result.bytesProcessed());
+        assertEquals(32, buffer.position());
+        assertEquals(InetAddress.getByName("127.0.0.2"), result.result().getDestinationAddress());
+        assertEquals(2, result.result().getDestinationPort());
+    }
+
+    @Test
+    public void testLocalCommand() {
+        final Result<ProxyInformation> result = deserialiser.read(ByteBuffer.wrap(header(0x20, 0x11,
+            127, 0, 0, 1, 127, 0, 0, 2, 0, 1, 0, 2)));
+
+        assertTrue(result.hasResult());
+        assertEquals(28, result.bytesProcessed());
+        assertEquals(InternetAddressFamily.UNKNOWN, result.result().getAddressFamily());
+    }
+
+    @Test
+    public void testUnsupportedFamily() {
+        final Result<ProxyInformation> result = deserialiser.read(ByteBuffer.wrap(header(0x21, 0x12,
+            127, 0, 0, 1, 127, 0, 0, 2, 0, 1, 0, 2)));
+
+        assertTrue(result.hasResult());
+        assertEquals(InternetAddressFamily.UNKNOWN, result.result().getAddressFamily());
+    }
+
+    @Test
+    public void testNeedsMoreData() {
+        final byte[] header = header(0x21, 0x11, 127, 0, 0, 1, 127, 0, 0, 2, 0, 1, 0, 2);
+        for (int i = 0; i < header.length; i++) {
+            final ByteBuffer buffer = ByteBuffer.wrap(header, 0, i);
+            assertTrue(deserialiser.read(buffer).needsMoreData());
+            assertEquals(0, buffer.position());
+        }
+    }
+
+    @Test
+    public void testBadSignature() {
+        final ByteBuffer buffer = ByteBuffer.wrap("PROXY UNKNOWN\r\n".getBytes());
+        final Result<ProxyInformation> result = deserialiser.read(buffer);
+
+        assertTrue(result.notDeserialisable());
+        assertEquals(1, result.bytesProcessed());
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void testBadVersion() {
+        assertTrue(deserialiser.read(ByteBuffer.wrap(header(0x11, 0x00))).notDeserialisable());
+        assertTrue(deserialiser.read(ByteBuffer.wrap(header(0x22, 0x00))).notDeserialisable());
+    }
+
+    @Test
+    public void testAddressesTooShort() {
+        assertTrue(deserialiser.read(ByteBuffer.wrap(header(0x21, 0x11, 127, 0, 0, 1))).notDeserialisable());
+    }
+
+    private static ByteBuffer write(ProxyInformation proxyInformation, int length) {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        BinaryProxyInformationByteBufferSerialiser.INSTANCE.write(proxyInformation, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static byte[] header(int versionAndCommand, int familyAndProtocol, int... rest) {
+        final byte[] bytes = new byte[16 + rest.length];
+        System.arraycopy(BinaryProxyInformation.SIGNATURE, 0, bytes, 0, 12);
+        bytes[12] = (byte) versionAndCommand;
+        bytes[13] = (byte) familyAndProtocol;
+        bytes[14] = (byte) (rest.length >> 8);
+        bytes[15] = (byte) rest.length;
+        for (int i = 0; i < rest.length; i++) {
+            bytes[16 + i] = (byte) rest[i];
+        }
+        return bytes;
+    }
+}
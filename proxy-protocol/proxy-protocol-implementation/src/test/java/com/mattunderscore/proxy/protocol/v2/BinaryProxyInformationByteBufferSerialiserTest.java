@@ -0,0 +1,148 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.proxy.protocol.v2;
+
+import com.mattunderscore.proxy.protocol.InternetAddressFamily;
+import com.mattunderscore.proxy.protocol.ProxyInformation;
+import com.mattunderscore.tcproxy.io.serialisation.Serialiser;
+import com.mattunderscore.tcproxy.io.serialisation.Serialiser.HasCapacity;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link BinaryProxyInformationByteBufferSerialiser}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class BinaryProxyInformationByteBufferSerialiserTest {
+    private static final byte[] SIGNATURE = new byte[] {
+        0x0D, 0x0A, 0x0D, 0x0A, 0x00, 0x0D, 0x0A, 0x51, 0x55, 0x49, 0x54, 0x0A };
+    private final Serialiser<ProxyInformation, ByteBuffer> serialiser = BinaryProxyInformationByteBufferSerialiser.INSTANCE;
+
+    @Test
+    public void testIPV4() throws UnknownHostException {
+        final ProxyInformation proxyInformation = ProxyInformation
+                .builder()
+                .addressFamily(InternetAddressFamily.IPV4)
+                .sourceAddress(InetAddress.getByAddress(new byte[]{ (byte) 192, (byte) 168, 0, 1 }))
+                .destinationAddress(InetAddress.getByAddress(new byte[]{ -1, -1, -1, -1 }))
+                .sourcePort(56324)
+                .destinationPort(443)
+                .build();
+
+        final ByteBuffer buffer = ByteBuffer.allocate(28);
+        assertEquals(HasCapacity.HAS_CAPACITY, serialiser.hasCapacity(proxyInformation, buffer));
+        serialiser.write(proxyInformation, buffer);
+
+        assertFalse(buffer.hasRemaining());
+        assertArrayEquals(
+            concat(SIGNATURE, new byte[] {
+                0x21, 0x11, 0, 12,
+                (byte) 192, (byte) 168, 0, 1,
+                -1, -1, -1, -1,
+                (byte) 0xDC, 0x04,
+                0x01, (byte) 0xBB }),
+            buffer.array());
+    }
+
+    @Test
+    public void testIPV6() throws UnknownHostException {
+        final ProxyInformation proxyInformation = ProxyInformation
+                .builder()
+                .addressFamily(InternetAddressFamily.IPV6)
+                .sourceAddress(InetAddress.getByName("2001:db8::1"))
+                .destinationAddress(InetAddress.getByName("10.0.0.1"))
+                .sourcePort(65535)
+                .destinationPort(80)
+                .build();
+
+        final ByteBuffer buffer = ByteBuffer.allocate(52);
+        serialiser.write(proxyInformation, buffer);
+
+        assertFalse(buffer.hasRemaining());
+        assertArrayEquals(
+            concat(SIGNATURE, new byte[] {
+                0x21, 0x21, 0, 36,
+                0x20, 0x01, 0x0D, (byte) 0xB8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1,
+                0, 0, 0, 0, 0, 0, 0, 0, 0, 0, -1, -1, 10, 0, 0, 1,
+                -1, -1,
+                0, 80 }),
+            buffer.array());
+    }
+
+    @Test
+    public void testUnknown() {
+        final ProxyInformation proxyInformation = ProxyInformation
+                .builder()
+                .addressFamily(InternetAddressFamily.UNKNOWN)
+                .build();
+
+        final ByteBuffer buffer = ByteBuffer.allocate(16);
+        serialiser.write(proxyInformation, buffer);
+
+        assertFalse(buffer.hasRemaining());
+        assertArrayEquals(concat(SIGNATURE, new byte[] { 0x21, 0x00, 0, 0 }), buffer.array());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIPV6AddressForIPV4() throws UnknownHostException {
+        final ProxyInformation proxyInformation = ProxyInformation
+                .builder()
+                .addressFamily(InternetAddressFamily.IPV4)
+                .sourceAddress(InetAddress.getByName("2001:db8::1"))
+                .destinationAddress(InetAddress.getByName("10.0.0.1"))
+                .sourcePort(1)
+                .destinationPort(2)
+                .build();
+
+        serialiser.write(proxyInformation, ByteBuffer.allocate(28));
+    }
+
+    @Test
+    public void testLacksTotalCapacity() throws UnknownHostException {
+        final ProxyInformation proxyInformation = ProxyInformation
+                .builder()
+                .addressFamily(InternetAddressFamily.IPV4)
+                .sourceAddress(InetAddress.getByAddress(new byte[]{ -1, -1, -1, -1 }))
+                .destinationAddress(InetAddress.getByAddress(new byte[]{ -1, -1, -1, -1 }))
+                .sourcePort(65535)
+                .destinationPort(65535)
+                .build();
+
+        assertEquals(HasCapacity.LACKS_TOTAL_CAPACITY, serialiser.hasCapacity(proxyInformation, ByteBuffer.allocate(27)));
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        final byte[] bytes = new byte[first.length + second.length];
+        System.arraycopy(first, 0, bytes, 0, first.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+}
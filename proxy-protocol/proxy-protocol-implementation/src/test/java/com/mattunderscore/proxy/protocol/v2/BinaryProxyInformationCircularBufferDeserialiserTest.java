@@ -0,0 +1,107 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.proxy.protocol.v2;
+
+import com.mattunderscore.proxy.protocol.InternetAddressFamily;
+import com.mattunderscore.proxy.protocol.ProxyInformation;
+import com.mattunderscore.tcproxy.io.data.CircularBuffer;
+import com.mattunderscore.tcproxy.io.impl.CircularBufferImpl;
+import com.mattunderscore.tcproxy.io.serialisation.Deserialiser;
+import com.mattunderscore.tcproxy.io.serialisation.Deserialiser.Result;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link BinaryProxyInformationCircularBufferDeserialiser} and
+ * {@link BinaryProxyInformationCircularBufferSerialiser}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class BinaryProxyInformationCircularBufferDeserialiserTest {
+    private final Deserialiser<ProxyInformation, CircularBuffer> deserialiser =
+        BinaryProxyInformationCircularBufferDeserialiser.INSTANCE;
+
+    @Test
+    public void testRoundTripIPV4() throws UnknownHostException {
+        final ProxyInformation proxyInformation = ProxyInformation
+                .builder()
+                .addressFamily(InternetAddressFamily.IPV4)
+                .sourceAddress(InetAddress.getByName("192.168.0.1"))
+                .destinationAddress(InetAddress.getByName("192.168.0.11"))
+                .sourcePort(56324)
+                .destinationPort(443)
+                .build();
+
+        final CircularBuffer buffer = CircularBufferImpl.allocate(64);
+        BinaryProxyInformationCircularBufferSerialiser.INSTANCE.write(proxyInformation, buffer);
+        buffer.put((byte) 'G');
+
+        final Result<ProxyInformation> result = deserialiser.read(buffer);
+
+        assertTrue(result.hasResult());
+        assertTrue(result.hasMoreData());
+        assertEquals(28, result.bytesProcessed());
+        assertEquals(proxyInformation, result.result());
+        assertEquals(1, buffer.usedCapacity());
+    }
+
+    @Test
+    public void testRoundTripWrappedIPV6() throws UnknownHostException {
+        final ProxyInformation proxyInformation = ProxyInformation
+                .builder()
+                .addressFamily(InternetAddressFamily.IPV6)
+                .sourceAddress(InetAddress.getByName("2001:db8::1"))
+                .destinationAddress(InetAddress.getByName("fe80::1"))
+                .sourcePort(65535)
+                .destinationPort(0)
+                .build();
+
+        final CircularBuffer buffer = CircularBufferImpl.allocate(64);
+        buffer.put(new byte[40]);
+        buffer.advance(40);
+        BinaryProxyInformationCircularBufferSerialiser.INSTANCE.write(proxyInformation, buffer);
+
+        final Result<ProxyInformation> result = deserialiser.read(buffer);
+
+        assertTrue(result.hasResult());
+        assertFalse(result.hasMoreData());
+        assertEquals(proxyInformation, result.result());
+        assertEquals(0, buffer.usedCapacity());
+    }
+
+    @Test
+    public void testNeedsMoreData() {
+        final CircularBuffer buffer = CircularBufferImpl.allocate(64);
+        buffer.put(BinaryProxyInformation.SIGNATURE);
+        buffer.put(new byte[] { 0x21, 0x11, 0 });
+
+        assertTrue(deserialiser.read(buffer).needsMoreData());
+        assertEquals(15, buffer.usedCapacity());
+    }
+}
@@ -0,0 +1,130 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.mattunderscore.tcproxy.proxy.action.Action;
+import com.mattunderscore.tcproxy.proxy.action.Write;
+import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueue;
+import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueueImpl;
+import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueueType;
+import com.mattunderscore.tcproxy.proxy.buffer.BufferPool;
+
+/**
+ * Benchmarks for adding write actions to an {@link ActionQueue} and draining them. Writes are gathered when the
+ * batch size allows. The write to the socket is simulated by consuming the data of the head action.
+ * @author Matt Champion on 18/10/2016
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(ActionQueueBenchmark.ACTIONS)
+public class ActionQueueBenchmark {
+    static final int ACTIONS = 32;
+    private static final int WRITE_SIZE = 256;
+
+    @Param({"BLOCKING", "SINGLE_PRODUCER", "MULTI_PRODUCER"})
+    public ActionQueueType type;
+
+    @Param({"256", "8192"})
+    public int batchSize;
+
+    private ActionQueue queue;
+    private ByteBuffer[] data;
+
+    @Setup
+    public void setUp() {
+        queue = new ActionQueueImpl(ACTIONS, batchSize, type);
+        data = new ByteBuffer[ACTIONS];
+        for (int i = 0; i < ACTIONS; i++) {
+            data[i] = ByteBuffer.allocate(WRITE_SIZE);
+        }
+    }
+
+    @Benchmark
+    public int addAndDrain() {
+        for (int i = 0; i < ACTIONS; i++) {
+            data[i].clear();
+            queue.add(new Write(null, data[i], NoReleasePool.INSTANCE));
+        }
+
+        int writes = 0;
+        Action head = queue.head();
+        while (head != null) {
+            consumeAll();
+            writes++;
+            head = queue.head();
+        }
+        return writes;
+    }
+
+    /**
+     * Consume all the data so any gathered write completes.
+     */
+    private void consumeAll() {
+        for (int i = 0; i < ACTIONS; i++) {
+            data[i].position(data[i].limit());
+        }
+    }
+
+    /**
+     * Pool that discards released buffers so they are reused by the benchmark.
+     */
+    private enum NoReleasePool implements BufferPool {
+        INSTANCE;
+
+        @Override
+        public ByteBuffer acquire(int size) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void release(ByteBuffer buffer) {
+        }
+
+        @Override
+        public long getHits() {
+            return 0L;
+        }
+
+        @Override
+        public long getMisses() {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mattunderscore.tcproxy.io.data.CircularBuffer;
+import com.mattunderscore.tcproxy.io.impl.CircularBufferImpl;
+
+/**
+ * Benchmarks for copying data through a {@link CircularBuffer}. Chunk sizes that do not divide the capacity cause
+ * the data to wrap around the end of the buffer.
+ * @author Matt Champion on 18/10/2016
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CircularBufferBenchmark {
+    private static final int CAPACITY = 1024;
+
+    @Param({"64", "384"})
+    public int chunkSize;
+
+    @Param({"false", "true"})
+    public boolean direct;
+
+    private CircularBuffer buffer;
+    private byte[] bytes;
+    private ByteBuffer byteBuffer;
+
+    @Setup
+    public void setUp() {
+        buffer = direct ? CircularBufferImpl.allocateDirect(CAPACITY) : CircularBufferImpl.allocate(CAPACITY);
+        bytes = new byte[chunkSize];
+        byteBuffer = direct ? ByteBuffer.allocateDirect(chunkSize) : ByteBuffer.allocate(chunkSize);
+    }
+
+    @Benchmark
+    public byte putGetByte() {
+        buffer.put((byte) 1);
+        return buffer.get();
+    }
+
+    @Benchmark
+    public void putGetArray(Blackhole blackhole) {
+        buffer.put(bytes);
+        buffer.get(bytes);
+        blackhole.consume(bytes);
+    }
+
+    @Benchmark
+    public int putGetByteBuffer() {
+        byteBuffer.clear();
+        buffer.put(byteBuffer);
+        byteBuffer.clear();
+        return buffer.get(byteBuffer);
+    }
+
+    @Benchmark
+    public int putAdvance() {
+        buffer.put(bytes);
+        buffer.advance(chunkSize);
+        return buffer.usedCapacity();
+    }
+}
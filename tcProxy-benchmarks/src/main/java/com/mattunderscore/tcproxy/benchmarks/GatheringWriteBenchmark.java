@@ -0,0 +1,81 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.mattunderscore.tcproxy.proxy.action.GatheringWrite;
+import com.mattunderscore.tcproxy.proxy.action.Write;
+import com.mattunderscore.tcproxy.proxy.action.WriteAction;
+
+/**
+ * Benchmarks for gathering write actions into a {@link GatheringWrite}.
+ * @author Matt Champion on 18/10/2016
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GatheringWriteBenchmark {
+    private static final int MAX_ACTIONS = 64;
+    private static final int BATCH_CAPACITY = 65536;
+
+    @Param({"1", "8", "64"})
+    public int actions;
+
+    @Param({"64", "1024"})
+    public int writeSize;
+
+    private GatheringWrite gatheringWrite;
+    private WriteAction[] writes;
+
+    @Setup
+    public void setUp() {
+        gatheringWrite = new GatheringWrite(MAX_ACTIONS, BATCH_CAPACITY);
+        writes = new WriteAction[actions];
+        for (int i = 0; i < actions; i++) {
+            writes[i] = new Write(null, ByteBuffer.allocate(writeSize));
+        }
+    }
+
+    @Benchmark
+    public int batch() {
+        gatheringWrite.reset();
+        for (int i = 0; i < actions; i++) {
+            gatheringWrite.batch(writes[i]);
+        }
+        return gatheringWrite.size();
+    }
+}
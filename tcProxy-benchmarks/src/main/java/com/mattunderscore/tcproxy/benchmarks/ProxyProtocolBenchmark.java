@@ -0,0 +1,111 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.benchmarks;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.mattunderscore.proxy.protocol.InternetAddressFamily;
+import com.mattunderscore.proxy.protocol.ProxyInformation;
+import com.mattunderscore.proxy.protocol.v1.HumanReadableProxyInformationByteBufferSerialiser;
+import com.mattunderscore.proxy.protocol.v1.HumanReadableProxyInformationCircularBufferSerialiser;
+import com.mattunderscore.proxy.protocol.v2.BinaryProxyInformationByteBufferSerialiser;
+import com.mattunderscore.proxy.protocol.v2.BinaryProxyInformationCircularBufferSerialiser;
+import com.mattunderscore.tcproxy.io.data.CircularBuffer;
+import com.mattunderscore.tcproxy.io.impl.CircularBufferImpl;
+
+/**
+ * Benchmarks for serialising the human readable and binary PROXY protocol headers.
+ * @author Matt Champion on 18/10/2016
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProxyProtocolBenchmark {
+    @Param({"IPV4", "IPV6"})
+    public InternetAddressFamily addressFamily;
+
+    private ProxyInformation information;
+    private ByteBuffer byteBuffer;
+    private CircularBuffer circularBuffer;
+
+    @Setup
+    public void setUp() throws UnknownHostException {
+        final String source = addressFamily == InternetAddressFamily.IPV4 ? "192.168.0.1" : "2001:db8::1";
+        final String destination = addressFamily == InternetAddressFamily.IPV4 ? "192.168.0.11" : "2001:db8::11";
+        information = ProxyInformation
+            .builder()
+            .addressFamily(addressFamily)
+            .sourceAddress(InetAddress.getByName(source))
+            .destinationAddress(InetAddress.getByName(destination))
+            .sourcePort(56324)
+            .destinationPort(443)
+            .build();
+        byteBuffer = ByteBuffer.allocate(128);
+        circularBuffer = CircularBufferImpl.allocate(128);
+    }
+
+    @Benchmark
+    public int serialiseToByteBuffer() {
+        byteBuffer.clear();
+        HumanReadableProxyInformationByteBufferSerialiser.INSTANCE.write(information, byteBuffer);
+        return byteBuffer.position();
+    }
+
+    @Benchmark
+    public int serialiseToCircularBuffer() {
+        HumanReadableProxyInformationCircularBufferSerialiser.INSTANCE.write(information, circularBuffer);
+        final int written = circularBuffer.usedCapacity();
+        circularBuffer.advance(written);
+        return written;
+    }
+
+    @Benchmark
+    public int serialiseBinaryToByteBuffer() {
+        byteBuffer.clear();
+        BinaryProxyInformationByteBufferSerialiser.INSTANCE.write(information, byteBuffer);
+        return byteBuffer.position();
+    }
+
+    @Benchmark
+    public int serialiseBinaryToCircularBuffer() {
+        BinaryProxyInformationCircularBufferSerialiser.INSTANCE.write(information, circularBuffer);
+        final int written = circularBuffer.usedCapacity();
+        circularBuffer.advance(written);
+        return written;
+    }
+}
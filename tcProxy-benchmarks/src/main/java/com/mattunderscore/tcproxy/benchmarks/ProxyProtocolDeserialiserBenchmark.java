@@ -0,0 +1,105 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.benchmarks;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.mattunderscore.proxy.protocol.ProxyInformation;
+import com.mattunderscore.proxy.protocol.v1.HumanReadableProxyInformationByteBufferDeserialiser;
+import com.mattunderscore.proxy.protocol.v1.HumanReadableProxyInformationCircularBufferDeserialiser;
+import com.mattunderscore.proxy.protocol.v1.PlainTextIPV4DeserialiserInstance;
+import com.mattunderscore.tcproxy.io.data.CircularBuffer;
+import com.mattunderscore.tcproxy.io.impl.CircularBufferImpl;
+import com.mattunderscore.tcproxy.io.serialisation.Deserialiser.Result;
+
+/**
+ * Benchmarks for deserialising the human readable PROXY protocol header. The Clojure deserialiser only parses a
+ * single IPv4 address so it is measured against the address alone.
+ * @author Matt Champion on 18/10/2016
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProxyProtocolDeserialiserBenchmark {
+    private static final Charset ASCII = Charset.forName("ASCII");
+
+    @Param({
+        "PROXY TCP4 192.168.0.1 192.168.0.11 56324 443\r\n",
+        "PROXY TCP6 2001:db8::1 2001:db8::11 56324 443\r\n",
+        "PROXY UNKNOWN\r\n" })
+    public String header;
+
+    private ByteBuffer byteBuffer;
+    private ByteBuffer addressBuffer;
+    private CircularBuffer circularBuffer;
+    private byte[] headerBytes;
+
+    @Setup
+    public void setUp() {
+        headerBytes = header.getBytes(ASCII);
+        byteBuffer = ByteBuffer.wrap(headerBytes);
+        addressBuffer = ByteBuffer.wrap("192.168.0.1 ".getBytes(ASCII));
+        circularBuffer = CircularBufferImpl.allocate(128);
+    }
+
+    @Benchmark
+    public ProxyInformation deserialiseFromByteBuffer() {
+        byteBuffer.clear();
+        return HumanReadableProxyInformationByteBufferDeserialiser.INSTANCE.read(byteBuffer).result();
+    }
+
+    @Benchmark
+    public ProxyInformation deserialiseFromCircularBuffer() {
+        circularBuffer.put(headerBytes);
+        return HumanReadableProxyInformationCircularBufferDeserialiser.INSTANCE.read(circularBuffer).result();
+    }
+
+    @Benchmark
+    public boolean needsMoreDataFromByteBuffer() {
+        byteBuffer.clear();
+        byteBuffer.limit(headerBytes.length - 1);
+        return HumanReadableProxyInformationByteBufferDeserialiser.INSTANCE.read(byteBuffer).needsMoreData();
+    }
+
+    @Benchmark
+    public InetAddress clojureIPV4Address() {
+        addressBuffer.clear();
+        final Result<InetAddress> result = PlainTextIPV4DeserialiserInstance.INSTANCE.read(addressBuffer);
+        return result.result();
+    }
+}
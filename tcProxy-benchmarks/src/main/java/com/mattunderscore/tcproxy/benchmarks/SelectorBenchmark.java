@@ -0,0 +1,127 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.benchmarks;
+
+import static com.mattunderscore.tcproxy.io.impl.StaticIOFactory.openSelector;
+import static com.mattunderscore.tcproxy.io.impl.StaticIOFactory.openServerSocket;
+import static com.mattunderscore.tcproxy.io.impl.StaticIOFactory.openSocket;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.mattunderscore.tcproxy.io.selection.IOSelectionKey;
+import com.mattunderscore.tcproxy.io.selection.IOSelector;
+import com.mattunderscore.tcproxy.io.socket.IOOutboundSocketChannel;
+import com.mattunderscore.tcproxy.io.socket.IOServerSocketChannel;
+import com.mattunderscore.tcproxy.io.socket.IOSocketChannel;
+import com.mattunderscore.tcproxy.io.socket.IOSocketOption;
+import com.mattunderscore.tcproxy.selector.NoBackoff;
+import com.mattunderscore.tcproxy.selector.SelectionRunnable;
+import com.mattunderscore.tcproxy.selector.general.GeneralPurposeSelector;
+import com.mattunderscore.tcproxy.selector.general.RegistrationHandle;
+
+/**
+ * Benchmarks for a single iteration of the {@link GeneralPurposeSelector} with a number of ready keys. Each key is a
+ * loopback socket registered for writes so it is always selected.
+ * @author Matt Champion on 18/10/2016
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SelectorBenchmark {
+    private static final int REGISTRATION_BATCH = 32;
+
+    @Param({"1", "16", "256"})
+    public int readyKeys;
+
+    private IOSelector ioSelector;
+    private IOServerSocketChannel serverSocket;
+    private IOSocketChannel[] clients;
+    private IOSocketChannel[] servers;
+    private GeneralPurposeSelector selector;
+
+    @Setup
+    public void setUp() throws IOException {
+        ioSelector = openSelector();
+        serverSocket = openServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        selector = new GeneralPurposeSelector(ioSelector, NoBackoff.get());
+
+        clients = new IOSocketChannel[readyKeys];
+        servers = new IOSocketChannel[readyKeys];
+        for (int i = 0; i < readyKeys; i++) {
+            final IOOutboundSocketChannel client = openSocket();
+            client.connect(serverSocket.getLocalAddress());
+            clients[i] = client;
+            servers[i] = serverSocket.accept();
+            client.set(IOSocketOption.BLOCKING, false);
+            selector.register(client, IOSelectionKey.Op.WRITE, NoOpRunnable.INSTANCE);
+            if (i % REGISTRATION_BATCH == REGISTRATION_BATCH - 1) {
+                // Process the registrations before the registration queue fills
+                selector.run();
+            }
+        }
+        selector.run();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (int i = 0; i < readyKeys; i++) {
+            clients[i].close();
+            servers[i].close();
+        }
+        serverSocket.close();
+        ioSelector.close();
+    }
+
+    @Benchmark
+    public void run() {
+        selector.run();
+    }
+
+    /**
+     * Selection runnable that does nothing.
+     */
+    private enum NoOpRunnable implements SelectionRunnable<IOSocketChannel> {
+        INSTANCE;
+
+        @Override
+        public void run(IOSocketChannel socket, RegistrationHandle handle) {
+        }
+    }
+}
@@ -49,12 +49,18 @@ import com.mattunderscore.tcproxy.cli.arguments.OptionsParser;
 import com.mattunderscore.tcproxy.cli.arguments.Setting;
 import com.mattunderscore.tcproxy.cli.arguments.StringParser;
 import com.mattunderscore.tcproxy.proxy.ProxyServerBuilder;
+import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueueType;
 import com.mattunderscore.tcproxy.proxy.connection.Connection;
 import com.mattunderscore.tcproxy.proxy.connection.ConnectionManager;
 import com.mattunderscore.tcproxy.proxy.direction.Direction;
 import com.mattunderscore.tcproxy.proxy.settings.ConnectionSettings;
+import com.mattunderscore.tcproxy.proxy.settings.HealthCheckSettings;
+import com.mattunderscore.tcproxy.proxy.settings.LoadBalancingSettings;
 import com.mattunderscore.tcproxy.proxy.settings.OutboundSocketSettings;
 import com.mattunderscore.tcproxy.proxy.settings.ReadSelectorSettings;
+import com.mattunderscore.tcproxy.proxy.settings.UpstreamSettings;
+import com.mattunderscore.tcproxy.proxy.upstream.LoadBalancingPolicy;
+import com.mattunderscore.tcproxy.selector.general.DispatchOrder;
 import com.mattunderscore.tcproxy.selector.server.AcceptSettings;
 import com.mattunderscore.tcproxy.selector.server.Server;
 
@@ -67,10 +73,26 @@ public final class ProxyServerMain {
     private static final Option<Integer> INBOUND_PORT = Option.create("-ip", "--ip", "Inbound port", 8085, IntegerParser.PARSER);
     private static final Option<String> OUTBOUND_HOST = Option.create("-oh", "--oh", "Outbound host", "localhost", StringParser.PARSER);
     private static final Option<Integer> OUTBOUND_PORT = Option.create("-op", "--op", "Outbound port", 8080, IntegerParser.PARSER);
+    private static final Option<String> UPSTREAMS = Option.create("-us", "--us", "Upstreams as host:port or host:port:weight separated by commas, replaces the outbound host and port", "", StringParser.PARSER);
+    private static final Option<String> LOAD_BALANCING = Option.create("-lb", "--lb", "Load balancing policy, ROUND_ROBIN, WEIGHTED, LEAST_ACTIVE or PEAK_EWMA", "ROUND_ROBIN", StringParser.PARSER);
+    private static final Option<Integer> HEALTH_FAILURES = Option.create("-hf", "--hf", "Consecutive failures that eject an upstream, 0 to never eject", 0, IntegerParser.PARSER);
+    private static final Option<Integer> HEALTH_PROBE = Option.create("-hp", "--hp", "Interval between health probes of the upstreams in milliseconds, 0 to not probe", 0, IntegerParser.PARSER);
+    private static final Option<Integer> ADDRESS_TTL = Option.create("-at", "--at", "Time in milliseconds the addresses of an upstream are used before resolving it again", 30000, IntegerParser.PARSER);
+    private static final Option<Integer> CONNECT_TIMEOUT = Option.create("-ct", "--ct", "Outbound connect timeout in milliseconds, 0 for no timeout", 0, IntegerParser.PARSER);
+    private static final Option<Integer> ATTEMPT_DELAY = Option.create("-ad", "--ad", "Delay in milliseconds before also connecting to the next address of an upstream, 0 to connect to one address", 0, IntegerParser.PARSER);
+    private static final Option<Integer> POOL_MIN = Option.create("-pn", "--pn", "Pooled outbound connections per selector, 0 to disable pooling", 0, IntegerParser.PARSER);
+    private static final Option<Integer> POOL_MAX = Option.create("-px", "--px", "Outbound connections per selector the pool is refilled to", 0, IntegerParser.PARSER);
     private static final Option<Integer> QUEUE_SIZE = Option.create("-qs", "--qs", "Queue size", 10000, IntegerParser.PARSER);
+    private static final Option<Integer> QUEUE_BYTES = Option.create("-qb", "--qb", "Queued bytes per direction, 0 to only limit the queue size", 0, IntegerParser.PARSER);
+    private static final Option<Integer> MEMORY_BUDGET = Option.create("-mb", "--mb", "Queued bytes for all connections, 0 for no limit", 0, IntegerParser.PARSER);
     private static final Option<Integer> BATCH_SIZE = Option.create("-bs", "--bs", "Batch size", 32 * 1024, IntegerParser.PARSER);
     private static final Option<Integer> SEND_BUFFER = Option.create("-sb", "--sb", "Send buffer, ", 32 * 1024, IntegerParser.PARSER);
     private static final Option<Integer> RECEIVE_BUFFER = Option.create("-rb", "--rb", "Receive buffer", 32 * 1024, IntegerParser.PARSER);
+    private static final Option<Integer> SELECT_TIMEOUT = Option.create("-st", "--st", "Select timeout in milliseconds, 0 to poll", 100, IntegerParser.PARSER);
+    private static final Option<String> DISPATCH_ORDER = Option.create("-do", "--do", "Order to run the reads and writes of a ready connection, WRITE_FIRST or READ_FIRST", "WRITE_FIRST", StringParser.PARSER);
+    private static final Option<Integer> SPLICE_BUFFER = Option.create("-sp", "--sp", "Splice buffer size, 0 to disable splicing", 32 * 1024, IntegerParser.PARSER);
+    private static final Option<String> QUEUE_TYPE = Option.create("-qt", "--qt", "Queue type, BLOCKING, SINGLE_PRODUCER or MULTI_PRODUCER", "SINGLE_PRODUCER", StringParser.PARSER);
+    private static final Option<Integer> POOLED_BUFFERS = Option.create("-pb", "--pb", "Pooled buffers per size class, 0 to disable pooling", 64, IntegerParser.PARSER);
 
     public static void main(final String[] args) throws IOException, InterruptedException {
         LogManager.getLogManager().readConfiguration(ProxyServerMain.class.getResourceAsStream("/logging.properties"));
@@ -84,8 +106,8 @@ public final class ProxyServerMain {
 
         final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
         try {
-            final ConnectionManager manager = new ConnectionManager();
-            final Server server = ProxyServerBuilder
+            final ConnectionManager manager = new ConnectionManager(executor);
+            final ProxyServerBuilder builder = ProxyServerBuilder
                 .builder()
                 .acceptSettings(
                     AcceptSettings
@@ -96,7 +118,11 @@ public final class ProxyServerMain {
                     ConnectionSettings
                         .builder()
                         .writeQueueSize((Integer)settings.get(QUEUE_SIZE))
+                        .writeQueueBytes((Integer)settings.get(QUEUE_BYTES))
+                        .memoryBudget((Integer)settings.get(MEMORY_BUDGET))
                         .batchSize((Integer)settings.get(BATCH_SIZE))
+                        .spliceBufferSize((Integer)settings.get(SPLICE_BUFFER))
+                        .actionQueueType(ActionQueueType.valueOf((String)settings.get(QUEUE_TYPE)))
                         .build())
                 .socketSettings(
                     socketChannel()
@@ -109,14 +135,32 @@ public final class ProxyServerMain {
                         .host((String)settings.get(OUTBOUND_HOST))
                         .receiveBuffer((Integer)settings.get(RECEIVE_BUFFER))
                         .sendBuffer((Integer)settings.get(SEND_BUFFER))
+                        .minimumPooled((Integer)settings.get(POOL_MIN))
+                        .maximumPooled((Integer)settings.get(POOL_MAX))
+                        .addressTimeToLive((Integer)settings.get(ADDRESS_TTL))
+                        .connectTimeout((Integer)settings.get(CONNECT_TIMEOUT))
+                        .connectionAttemptDelay((Integer)settings.get(ATTEMPT_DELAY))
                         .build())
                 .readSelectorSettings(
                     ReadSelectorSettings
                         .builder()
                         .readBufferSize((Integer)settings.get(RECEIVE_BUFFER))
+                        .selectTimeout((Integer)settings.get(SELECT_TIMEOUT))
+                        .buffersPerClass((Integer)settings.get(POOLED_BUFFERS))
+                        .dispatchOrder(DispatchOrder.valueOf((String)settings.get(DISPATCH_ORDER)))
                         .build())
-                .connectionManager(manager)
-                .build();
+                .loadBalancingSettings(getLoadBalancingSettings(settings))
+                .connectionManager(manager);
+            final Server server = (Integer) settings.get(HEALTH_FAILURES) > 0 ?
+                builder
+                    .healthCheckSettings(
+                        HealthCheckSettings
+                            .builder()
+                            .failureThreshold((Integer) settings.get(HEALTH_FAILURES))
+                            .probeInterval((Integer) settings.get(HEALTH_PROBE))
+                            .build())
+                    .build() :
+                builder.build();
 
             manager.addListener(new ConnectionManager.Listener() {
                 private final Map<Connection, Future<?>> tasks = new ConcurrentHashMap<>();
@@ -168,13 +212,52 @@ public final class ProxyServerMain {
             INBOUND_PORT,
             OUTBOUND_HOST,
             OUTBOUND_PORT,
+            UPSTREAMS,
+            LOAD_BALANCING,
+            HEALTH_FAILURES,
+            HEALTH_PROBE,
+            ADDRESS_TTL,
+            CONNECT_TIMEOUT,
+            ATTEMPT_DELAY,
+            POOL_MIN,
+            POOL_MAX,
             QUEUE_SIZE,
+            QUEUE_TYPE,
+            QUEUE_BYTES,
+            MEMORY_BUDGET,
             BATCH_SIZE,
             SEND_BUFFER,
-            RECEIVE_BUFFER
+            RECEIVE_BUFFER,
+            SELECT_TIMEOUT,
+            DISPATCH_ORDER,
+            SPLICE_BUFFER,
+            POOLED_BUFFERS
         };
     }
 
+    private static LoadBalancingSettings getLoadBalancingSettings(Map<Option<?>, Object> settings) {
+        final LoadBalancingSettings.LoadBalancingSettingsBuilder builder = LoadBalancingSettings
+            .builder()
+            .policy(LoadBalancingPolicy.valueOf((String) settings.get(LOAD_BALANCING)));
+        for (final String upstream : ((String) settings.get(UPSTREAMS)).split(",")) {
+            if (upstream.isEmpty()) {
+                continue;
+            }
+
+            final String[] parts = upstream.split(":");
+            if (parts.length < 2 || parts.length > 3) {
+                throw new IllegalArgumentException("Upstreams must be host:port or host:port:weight, not " + upstream);
+            }
+            builder.upstream(UpstreamSettings
+                .builder()
+                .host(parts[0])
+                .port(Integer.parseInt(parts[1]))
+                .weight(parts.length == 3 ? Integer.parseInt(parts[2]) : 1)
+                .build());
+        }
+        return builder.build();
+    }
+
     private static Map<Option<?>, Object> getSettings(String[] args) {
         final Map<Option<?>, Object> map = new HashMap<>();
         final Option<?>[] options = getOptions();
@@ -249,6 +249,10 @@ public final class ConnectionsPanel extends JPanel {
                 @Override
                 public void closed(Direction direction) {
                 }
+
+                @Override
+                public void readFailed(Direction direction, IOException exception) {
+                }
             };
             source.addListener(readListener);
             final Direction.Listener writeListener = new Direction.Listener() {
@@ -269,6 +273,10 @@ public final class ConnectionsPanel extends JPanel {
                 @Override
                 public void closed(Direction direction) {
                 }
+
+                @Override
+                public void readFailed(Direction direction, IOException exception) {
+                }
             };
             destination.addListener(writeListener);
         }
@@ -25,7 +25,10 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 
 package com.mattunderscore.tcProxy.gui;
 
+import java.util.concurrent.Executor;
+
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
 import javax.swing.WindowConstants;
 
 import org.slf4j.Logger;
@@ -38,7 +41,6 @@ import com.mattunderscore.tcproxy.proxy.connection.ConnectionManager;
 import com.mattunderscore.tcproxy.proxy.settings.ConnectionSettings;
 import com.mattunderscore.tcproxy.proxy.settings.OutboundSocketSettings;
 import com.mattunderscore.tcproxy.proxy.settings.ReadSelectorSettings;
-import com.mattunderscore.tcproxy.selector.BinaryBackoff;
 import com.mattunderscore.tcproxy.selector.server.AcceptSettings;
 import com.mattunderscore.tcproxy.selector.server.Server;
 
@@ -63,7 +65,13 @@ public final class MainFrame extends JFrame {
                         .getInboundSocketSettings();
                     final OutboundSocketSettings outboundSocketSettings = settingsPanel.getOutboundSocketSettings();
                     final ReadSelectorSettings readSelectorSettings = settingsPanel.getReadSelectorSettings();
-                    final ConnectionManager manager = new ConnectionManager();
+                    // Notify the connections panel on the event dispatch thread
+                    final ConnectionManager manager = new ConnectionManager(new Executor() {
+                        @Override
+                        public void execute(Runnable command) {
+                            SwingUtilities.invokeLater(command);
+                        }
+                    });
                     add(new ConnectionsPanel(manager));
                     validate();
                     try {
@@ -74,7 +82,6 @@ public final class MainFrame extends JFrame {
                             .socketSettings(inboundSocketSettings)
                             .outboundSocketSettings(outboundSocketSettings)
                             .readSelectorSettings(readSelectorSettings)
-                            .backoff(BinaryBackoff.get(10L))
                             .connectionManager(manager)
                             .build();
                         proxy.start();
@@ -44,6 +44,7 @@ import org.slf4j.LoggerFactory;
 import com.mattunderscore.tcproxy.io.configuration.IOSocketChannelConfiguration;
 import com.mattunderscore.tcproxy.io.configuration.OpenIOSocketChannelConfiguration;
 import com.mattunderscore.tcproxy.io.configuration.SocketConfiguration;
+import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueueType;
 import com.mattunderscore.tcproxy.proxy.settings.ConnectionSettings;
 import com.mattunderscore.tcproxy.proxy.settings.OutboundSocketSettings;
 import com.mattunderscore.tcproxy.proxy.settings.ReadSelectorSettings;
@@ -161,6 +162,8 @@ public final class SettingsPanel extends JPanel {
             .builder()
             .writeQueueSize(parseInt(writeQueueBound.getText()))
             .batchSize(parseInt(batchSize.getText()))
+            .spliceBufferSize(32 * 1024)
+            .actionQueueType(ActionQueueType.MULTI_PRODUCER)
             .build();
     }
 
@@ -183,6 +186,8 @@ public final class SettingsPanel extends JPanel {
         return ReadSelectorSettings
             .builder()
             .readBufferSize(parseInt(readBufferSize.getText()))
+            .selectTimeout(100L)
+            .buffersPerClass(64)
             .build();
     }
 }
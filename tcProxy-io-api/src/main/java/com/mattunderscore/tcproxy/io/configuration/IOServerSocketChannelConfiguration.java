@@ -32,4 +32,11 @@ import com.mattunderscore.tcproxy.io.socket.IOServerSocketChannel;
  * @author Matt Champion on 09/05/2016
  */
 public interface IOServerSocketChannelConfiguration extends IOOutboundSocketConfiguration<IOServerSocketChannel, IOServerSocketChannelConfiguration> {
+    /**
+     * Allow several sockets to bind to the same port. Not supported by all platforms.
+     *
+     * @param enabled If the port can be reused
+     * @return A new factory with the option set
+     */
+    IOServerSocketChannelConfiguration reusePort(boolean enabled);
 }
@@ -25,6 +25,8 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 
 package com.mattunderscore.tcproxy.io.configuration;
 
+import static com.mattunderscore.tcproxy.io.socket.IOSocketOption.REUSE_PORT;
+
 import java.io.IOException;
 import java.net.SocketAddress;
 
@@ -39,16 +41,19 @@ import net.jcip.annotations.Immutable;
 @Immutable
 /*package*/ final class IOServerSocketChannelConfigurationImpl extends AbstractIOSocketConfiguration<IOServerSocketChannel, IOServerSocketChannelConfiguration> implements IOServerSocketChannelConfiguration {
     protected final SocketAddress boundSocket;
+    protected final Boolean reusePort;
 
     /*package*/ IOServerSocketChannelConfigurationImpl() {
         super();
         boundSocket = null;
+        reusePort = null;
     }
 
-    /*package*/ IOServerSocketChannelConfigurationImpl(Integer receiveBuffer, Integer sendBuffer, boolean blocking, Integer linger, boolean reuseAddress, SocketAddress boundSocket) {
+    /*package*/ IOServerSocketChannelConfigurationImpl(Integer receiveBuffer, Integer sendBuffer, boolean blocking, Integer linger, boolean reuseAddress, SocketAddress boundSocket, Boolean reusePort) {
         super(receiveBuffer, sendBuffer, blocking, linger, reuseAddress);
 
         this.boundSocket = boundSocket;
+        this.reusePort = reusePort;
     }
 
     /**
@@ -58,19 +63,27 @@ import net.jcip.annotations.Immutable;
      * @return A new factory with the option set
      */
     public final IOServerSocketChannelConfigurationImpl bind(SocketAddress localAddress) {
-        return new IOServerSocketChannelConfigurationImpl(receiveBuffer, sendBuffer, blocking, linger, reuseAddress, localAddress);
+        return new IOServerSocketChannelConfigurationImpl(receiveBuffer, sendBuffer, blocking, linger, reuseAddress, localAddress, reusePort);
+    }
+
+    @Override
+    public IOServerSocketChannelConfigurationImpl reusePort(boolean enabled) {
+        return new IOServerSocketChannelConfigurationImpl(receiveBuffer, sendBuffer, blocking, linger, reuseAddress, boundSocket, enabled);
     }
 
     @Override
     public IOServerSocketChannel apply(IOServerSocketChannel ioSocket) throws IOException {
         super.apply(ioSocket);
+        if (reusePort != null) {
+            ioSocket.set(REUSE_PORT, reusePort);
+        }
         ioSocket.bind(boundSocket);
         return ioSocket;
     }
 
     @Override
     protected IOServerSocketChannelConfigurationImpl newConfiguration(Integer receiveBuffer, Integer sendBuffer, boolean blocking, Integer linger, boolean reuseAddress) {
-        return new IOServerSocketChannelConfigurationImpl(receiveBuffer, sendBuffer, blocking, linger, reuseAddress, boundSocket);
+        return new IOServerSocketChannelConfigurationImpl(receiveBuffer, sendBuffer, blocking, linger, reuseAddress, boundSocket, reusePort);
     }
 
     @Override
@@ -87,7 +100,8 @@ import net.jcip.annotations.Immutable;
 
         final IOServerSocketChannelConfigurationImpl that = (IOServerSocketChannelConfigurationImpl) o;
 
-        return !(boundSocket != null ? !boundSocket.equals(that.boundSocket) : that.boundSocket != null);
+        return !(boundSocket != null ? !boundSocket.equals(that.boundSocket) : that.boundSocket != null) &&
+            !(reusePort != null ? !reusePort.equals(that.reusePort) : that.reusePort != null);
 
     }
 
@@ -95,6 +109,7 @@ import net.jcip.annotations.Immutable;
     public int hashCode() {
         int result = super.hashCode();
         result = 31 * result + (boundSocket != null ? boundSocket.hashCode() : 0);
+        result = 31 * result + (reusePort != null ? reusePort.hashCode() : 0);
         return result;
     }
 
@@ -77,6 +77,13 @@ public interface IOSelectionKey {
      */
     Set<Op> interestedOperations();
 
+    /**
+     * Unlike {@link #interestedOperations()} this does not need to create any objects.
+     * @param op The operation
+     * @return {@code true} if the key is interested in the operation
+     */
+    boolean isInterestedIn(Op op);
+
     /**
      * @return The set of ready operations.
      */
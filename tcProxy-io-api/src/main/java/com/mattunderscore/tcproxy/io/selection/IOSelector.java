@@ -40,11 +40,33 @@ public interface IOSelector extends AutoCloseable {
      */
     void selectNow() throws IOException;
 
+    /**
+     * Blocking selection operation. Updates the set of selected keys. Returns when at least one key is selected, the
+     * selector is woken up, the thread is interrupted or the timeout expires.
+     * @param timeout The maximum time to block for in milliseconds, must be greater than zero
+     * @throws IOException If an I/O error occurs
+     */
+    void select(long timeout) throws IOException;
+
+    /**
+     * Cause a blocked selection operation to return immediately. If no selection operation is in progress the next
+     * one will return immediately.
+     */
+    void wakeup();
+
     /**
      * @return The set of selection keys provided by the last selection operation.
      */
     Set<IOSelectionKey> selectedKeys();
 
+    /**
+     * Remove each key from the set of selected keys and pass it to a handler. Unlike iterating over
+     * {@link #selectedKeys()} this does not need to create any objects for each key.
+     * @param handler The handler
+     * @return The number of keys processed
+     */
+    int processSelectedKeys(SelectedKeyHandler handler);
+
     /**
      * @return The set of registered selection keys, may include cancelled keys.
      */
@@ -56,4 +78,15 @@ public interface IOSelector extends AutoCloseable {
      * @throws IOException If the selector could not be closed
      */
     void close() throws IOException;
+
+    /**
+     * Handler for selected keys.
+     */
+    interface SelectedKeyHandler {
+        /**
+         * Handle a selected key.
+         * @param key The key
+         */
+        void handle(IOSelectionKey key);
+    }
 }
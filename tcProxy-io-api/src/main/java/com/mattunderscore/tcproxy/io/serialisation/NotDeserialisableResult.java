@@ -26,10 +26,16 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 package com.mattunderscore.tcproxy.io.serialisation;
 
 /**
- * A result indicating that no value can be deserialised.
+ * A result indicating that no value can be deserialised. The results for small numbers of bytes processed are shared.
  * @author Matt Champion on 13/01/16
  */
 public final class NotDeserialisableResult<T> implements Deserialiser.Result<T> {
+    private static final NotDeserialisableResult[] SHARED = new NotDeserialisableResult[128];
+    static {
+        for (int i = 0; i < SHARED.length; i++) {
+            SHARED[i] = new NotDeserialisableResult(i);
+        }
+    }
     private final int bytesProcessed;
 
     private NotDeserialisableResult(int bytesProcessed) {
@@ -71,7 +77,11 @@ public final class NotDeserialisableResult<T> implements Deserialiser.Result<T>
      * @param <T> The type of result
      * @return The result
      */
+    @SuppressWarnings("unchecked")
     public static final <T> Deserialiser.Result<T> create(int bytesProcessed) {
+        if (bytesProcessed >= 0 && bytesProcessed < SHARED.length) {
+            return SHARED[bytesProcessed];
+        }
         return new NotDeserialisableResult<>(bytesProcessed);
     }
 }
@@ -54,6 +54,10 @@ public final class IOSocketOption<T> {
      * Socket option for SO_REUSEADDR.
      */
     public static final IOSocketOption<Boolean> REUSE_ADDRESS = new IOSocketOption<>("REUSE_ADDRESS");
+    /**
+     * Socket option for SO_REUSEPORT. Not supported by all platforms.
+     */
+    public static final IOSocketOption<Boolean> REUSE_PORT = new IOSocketOption<>("REUSE_PORT");
     /**
      * Socket option for TCP_NODELAY.
      */
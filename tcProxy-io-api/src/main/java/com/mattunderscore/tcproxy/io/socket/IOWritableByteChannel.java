@@ -27,15 +27,16 @@ package com.mattunderscore.tcproxy.io.socket;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.WritableByteChannel;
+import java.nio.channels.GatheringByteChannel;
 
 import com.mattunderscore.tcproxy.io.data.CircularBuffer;
 
 /**
- * A channel that can have bytes written to it from a {@link CircularBuffer} or {@link ByteBuffer}.
+ * A channel that can have bytes written to it from a {@link CircularBuffer} or {@link ByteBuffer}. Supports writing
+ * a sequence of {@link ByteBuffer}s in a single operation.
  * @author Matt Champion on 01/12/2015
  */
-public interface IOWritableByteChannel extends WritableByteChannel {
+public interface IOWritableByteChannel extends GatheringByteChannel {
     /**
      * Writes data from the circular buffer to the socket.
      * @param src The buffer
@@ -29,8 +29,10 @@ import static com.mattunderscore.tcproxy.io.impl.IOUtils.mapToIntFromOp;
 import static com.mattunderscore.tcproxy.io.impl.IOUtils.mapToIntFromOps;
 import static com.mattunderscore.tcproxy.io.impl.IOUtils.mapToOpsFromInt;
 
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.Set;
@@ -39,14 +41,20 @@ import com.mattunderscore.tcproxy.io.selection.IOSelectionKey;
 import com.mattunderscore.tcproxy.io.socket.IOSocket;
 
 /**
- * Implementation of {@link IOSelectionKey}. Delegates to {@link SelectionKey}.
+ * Implementation of {@link IOSelectionKey}. Delegates to {@link SelectionKey}. Each {@link SelectionKey} has a single
+ * instance that is stored as its attachment, the attachment of the {@link IOSelectionKey} is held by the instance.
+ * This avoids creating a new instance each time a key is selected.
  * @author Matt Champion on 12/03/14.
  */
 final class IOSelectionKeyImpl implements IOSelectionKey {
     final SelectionKey keyDelegate;
+    private volatile Object attachment;
+    private volatile IOSocket socket;
 
-    IOSelectionKeyImpl(final SelectionKey keyDelegate) {
+    private IOSelectionKeyImpl(final SelectionKey keyDelegate, final IOSocket socket, final Object attachment) {
         this.keyDelegate = keyDelegate;
+        this.socket = socket;
+        this.attachment = attachment;
     }
 
     @Override
@@ -81,7 +89,7 @@ final class IOSelectionKeyImpl implements IOSelectionKey {
 
     @Override
     public Object attachment() {
-        return keyDelegate.attachment();
+        return attachment;
     }
 
     @Override
@@ -89,9 +97,14 @@ final class IOSelectionKeyImpl implements IOSelectionKey {
         return mapToOpsFromInt(keyDelegate.interestOps());
     }
 
+    @Override
+    public boolean isInterestedIn(Op op) {
+        return (keyDelegate.interestOps() & mapToIntFromOp(op)) != 0;
+    }
+
     @Override
     public Set<Op> readyOperations() {
-        return mapToOpsFromInt(keyDelegate.interestOps());
+        return mapToOpsFromInt(keyDelegate.readyOps());
     }
 
     @Override
@@ -113,16 +126,24 @@ final class IOSelectionKeyImpl implements IOSelectionKey {
 
     @Override
     public IOSocket socket() {
+        final IOSocket currentSocket = socket;
+        if (currentSocket != null) {
+            return currentSocket;
+        }
+
         final SelectableChannel channel = keyDelegate.channel();
+        final IOSocket newSocket;
         if (channel instanceof ServerSocketChannel) {
-            return new IOServerSocketChannelImpl((ServerSocketChannel) channel);
+            newSocket = new IOServerSocketChannelImpl((ServerSocketChannel) channel);
         }
         else if (channel instanceof SocketChannel) {
-            return new IOSocketChannelImpl((SocketChannel) channel);
+            newSocket = new IOSocketChannelImpl((SocketChannel) channel);
         }
         else {
             throw new IllegalStateException("Unsupported channel type");
         }
+        socket = newSocket;
+        return newSocket;
     }
 
     @Override
@@ -140,4 +161,65 @@ final class IOSelectionKeyImpl implements IOSelectionKey {
             return false;
         }
     }
+
+    /**
+     * Register a channel with a selector. If the channel is already registered the existing key is updated.
+     * @param channel The channel
+     * @param socket The socket for the channel
+     * @param selector The selector
+     * @param ops The interest set
+     * @param att The attachment
+     * @return The key
+     * @throws ClosedChannelException If the channel is closed
+     */
+    static IOSelectionKeyImpl register(
+            SelectableChannel channel,
+            IOSocket socket,
+            Selector selector,
+            int ops,
+            Object att) throws ClosedChannelException {
+        final SelectionKey existingKey = channel.keyFor(selector);
+        if (existingKey != null) {
+            final IOSelectionKeyImpl key = forKey(existingKey, socket);
+            key.attachment = att;
+            channel.register(selector, ops, key);
+            return key;
+        }
+
+        final SelectionKey newKey = channel.register(selector, ops);
+        final IOSelectionKeyImpl key = new IOSelectionKeyImpl(newKey, socket, att);
+        newKey.attach(key);
+        return key;
+    }
+
+    /**
+     * @param keyDelegate The selection key
+     * @return The {@link IOSelectionKey} for the selection key
+     */
+    static IOSelectionKeyImpl forKey(SelectionKey keyDelegate) {
+        return forKey(keyDelegate, null);
+    }
+
+    /**
+     * @param keyDelegate The selection key
+     * @param socket The socket for the channel of the key, may be null
+     * @return The {@link IOSelectionKey} for the selection key
+     */
+    static IOSelectionKeyImpl forKey(SelectionKey keyDelegate, IOSocket socket) {
+        final Object currentAttachment = keyDelegate.attachment();
+        if (currentAttachment instanceof IOSelectionKeyImpl) {
+            return (IOSelectionKeyImpl) currentAttachment;
+        }
+
+        // The key was not registered through this package, keep its attachment
+        synchronized (keyDelegate) {
+            final Object attachment = keyDelegate.attachment();
+            if (attachment instanceof IOSelectionKeyImpl) {
+                return (IOSelectionKeyImpl) attachment;
+            }
+            final IOSelectionKeyImpl key = new IOSelectionKeyImpl(keyDelegate, socket, attachment);
+            keyDelegate.attach(key);
+            return key;
+        }
+    }
 }
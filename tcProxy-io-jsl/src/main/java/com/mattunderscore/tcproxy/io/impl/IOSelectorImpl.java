@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.Set;
 
 import com.mattunderscore.tcproxy.io.selection.IOSelectionKey;
@@ -50,6 +51,19 @@ final class IOSelectorImpl implements IOSelector {
         selectorDelegate.selectNow();
     }
 
+    @Override
+    public void select(long timeout) throws IOException {
+        if (timeout <= 0L) {
+            throw new IllegalArgumentException("The timeout must be greater than zero");
+        }
+        selectorDelegate.select(timeout);
+    }
+
+    @Override
+    public void wakeup() {
+        selectorDelegate.wakeup();
+    }
+
     @Override
     public Set<IOSelectionKey> selectedKeys() {
         final Set<SelectionKey> keys = selectorDelegate.selectedKeys();
@@ -61,6 +75,24 @@ final class IOSelectorImpl implements IOSelector {
         }
     }
 
+    @Override
+    public int processSelectedKeys(SelectedKeyHandler handler) {
+        final Set<SelectionKey> keys = selectorDelegate.selectedKeys();
+        if (keys.isEmpty()) {
+            return 0;
+        }
+
+        int processed = 0;
+        final Iterator<SelectionKey> iterator = keys.iterator();
+        while (iterator.hasNext()) {
+            final SelectionKey key = iterator.next();
+            iterator.remove();
+            handler.handle(IOSelectionKeyImpl.forKey(key));
+            processed++;
+        }
+        return processed;
+    }
+
     @Override
     public Set<IOSelectionKey> keys() {
         final Set<SelectionKey> keys = selectorDelegate.keys();
@@ -92,7 +92,7 @@ final class IOServerSocketChannelImpl implements IOServerSocketChannel {
     @Override
     public IOSelectionKey register(IOSelector selector, Object att) throws ClosedChannelException {
         final IOSelectorImpl selectorImpl = (IOSelectorImpl)selector;
-        return new IOSelectionKeyImpl(socketDelegate.register(selectorImpl.selectorDelegate, SelectionKey.OP_ACCEPT, att));
+        return IOSelectionKeyImpl.register(socketDelegate, this, selectorImpl.selectorDelegate, SelectionKey.OP_ACCEPT, att);
     }
 
     @Override
@@ -103,7 +103,7 @@ final class IOServerSocketChannelImpl implements IOServerSocketChannel {
             return null;
         }
         else {
-            return new IOSelectionKeyImpl(keyDelegate);
+            return IOSelectionKeyImpl.forKey(keyDelegate, this);
         }
     }
 
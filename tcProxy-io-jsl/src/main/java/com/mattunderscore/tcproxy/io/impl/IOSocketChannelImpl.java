@@ -61,6 +61,16 @@ final class IOSocketChannelImpl implements IOOutboundSocketChannel {
         return channel.write(src);
     }
 
+    @Override
+    public long write(final ByteBuffer[] srcs, final int offset, final int length) throws IOException {
+        return channel.write(srcs, offset, length);
+    }
+
+    @Override
+    public long write(final ByteBuffer[] srcs) throws IOException {
+        return channel.write(srcs);
+    }
+
     @Override
     public boolean isOpen() {
         return channel.isOpen();
@@ -106,13 +116,13 @@ final class IOSocketChannelImpl implements IOOutboundSocketChannel {
     @Override
     public IOSelectionKey register(final IOSelector selector, final IOSelectionKey.Op op, final Object att) throws ClosedChannelException {
         final IOSelectorImpl selectorImpl = (IOSelectorImpl)selector;
-        return new IOSelectionKeyImpl(channel.register(selectorImpl.selectorDelegate, IOUtils.mapToIntFromOp(op), att));
+        return IOSelectionKeyImpl.register(channel, this, selectorImpl.selectorDelegate, IOUtils.mapToIntFromOp(op), att);
     }
 
     @Override
     public IOSelectionKey register(final IOSelector selector, final Set<IOSelectionKey.Op> ops, final Object att) throws ClosedChannelException {
         final IOSelectorImpl selectorImpl = (IOSelectorImpl)selector;
-        return new IOSelectionKeyImpl(channel.register(selectorImpl.selectorDelegate, IOUtils.mapToIntFromOps(ops), att));
+        return IOSelectionKeyImpl.register(channel, this, selectorImpl.selectorDelegate, IOUtils.mapToIntFromOps(ops), att);
     }
 
     @Override
@@ -123,7 +133,7 @@ final class IOSocketChannelImpl implements IOOutboundSocketChannel {
             return null;
         }
         else {
-            return new IOSelectionKeyImpl(keyDelegate);
+            return IOSelectionKeyImpl.forKey(keyDelegate, this);
         }
     }
 
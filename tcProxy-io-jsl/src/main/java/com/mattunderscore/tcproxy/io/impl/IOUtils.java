@@ -109,6 +109,9 @@ final class IOUtils {
         else if (option == IOSocketOption.REUSE_ADDRESS) {
             return (InternalIOSocketOption<T>) InternalIOSocketOption.REUSE_ADDRESS;
         }
+        else if (option == IOSocketOption.REUSE_PORT) {
+            return (InternalIOSocketOption<T>) InternalIOSocketOption.REUSE_PORT;
+        }
         else if (option == IOSocketOption.TCP_NO_DELAY) {
             return (InternalIOSocketOption<T>) InternalIOSocketOption.TCP_NO_DELAY;
         }
@@ -34,6 +34,7 @@ import static java.net.StandardSocketOptions.TCP_NODELAY;
 
 import java.io.IOException;
 import java.net.SocketOption;
+import java.net.StandardSocketOptions;
 import java.nio.channels.NetworkChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.ServerSocketChannel;
@@ -83,6 +84,10 @@ interface InternalIOSocketOption<T> {
      * Socket option for SO_REUSEADDR.
      */
     InternalIOSocketOption<Boolean> REUSE_ADDRESS = new BasicOption<>(SO_REUSEADDR);
+    /**
+     * Socket option for SO_REUSEPORT.
+     */
+    InternalIOSocketOption<Boolean> REUSE_PORT = new ReusePortOption();
     /**
      * Socket option for TCP_NODELAY.
      */
@@ -124,4 +129,42 @@ interface InternalIOSocketOption<T> {
             return option.name();
         }
     }
+
+    /**
+     * Apply SO_REUSEPORT. The standard option is only available from Java 9 so it is looked up when first used.
+     */
+    final class ReusePortOption implements InternalIOSocketOption<Boolean> {
+        private volatile SocketOption<Boolean> option;
+
+        private ReusePortOption() {
+        }
+
+        @Override
+        public void apply(Object channel, Boolean value) throws IOException {
+            ((NetworkChannel)channel).setOption(getOption(), value);
+        }
+
+        @Override
+        public Boolean lookup(Object channel) throws IOException {
+            return ((NetworkChannel)channel).getOption(getOption());
+        }
+
+        @SuppressWarnings("unchecked")
+        private SocketOption<Boolean> getOption() {
+            if (option == null) {
+                try {
+                    option = (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+                }
+                catch (NoSuchFieldException | IllegalAccessException e) {
+                    throw new UnsupportedOperationException("SO_REUSEPORT is not supported by this JVM", e);
+                }
+            }
+            return option;
+        }
+
+        @Override
+        public String toString() {
+            return "SO_REUSEPORT";
+        }
+    }
 }
@@ -91,7 +91,7 @@ final class KeySet implements Set<IOSelectionKey> {
 
         int i = 0;
         for (final SelectionKey key : setDelegate) {
-            array[i] = (T)new IOSelectionKeyImpl(key);
+            array[i] = (T)IOSelectionKeyImpl.forKey(key);
             i++;
         }
         return array;
@@ -149,7 +149,7 @@ final class KeySet implements Set<IOSelectionKey> {
 
         @Override
         public IOSelectionKey next() {
-            return new IOSelectionKeyImpl(iteratorDelegate.next());
+            return IOSelectionKeyImpl.forKey(iteratorDelegate.next());
         }
 
         @Override
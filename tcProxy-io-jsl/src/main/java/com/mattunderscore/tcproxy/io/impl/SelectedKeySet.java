@@ -92,7 +92,7 @@ public final class SelectedKeySet implements Set<IOSelectionKey> {
 
         int i = 0;
         for (final SelectionKey key : setDelegate) {
-            array[i] = (T)new IOSelectionKeyImpl(key);
+            array[i] = (T)IOSelectionKeyImpl.forKey(key);
             i++;
         }
         return array;
@@ -162,7 +162,7 @@ public final class SelectedKeySet implements Set<IOSelectionKey> {
 
         @Override
         public IOSelectionKey next() {
-            return new IOSelectionKeyImpl(iteratorDelegate.next());
+            return IOSelectionKeyImpl.forKey(iteratorDelegate.next());
         }
 
         @Override
@@ -0,0 +1,141 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.io.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mattunderscore.tcproxy.io.selection.IOSelectionKey;
+import com.mattunderscore.tcproxy.io.selection.IOSelector;
+
+/**
+ * Unit tests for {@link IOSelectorImpl}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class IOSelectorImplTest {
+    private Selector selector;
+    private Pipe pipe;
+
+    @Before
+    public void setUp() throws IOException {
+        selector = Selector.open();
+        pipe = Pipe.open();
+        pipe.sink().configureBlocking(false);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        pipe.sink().close();
+        pipe.source().close();
+        selector.close();
+    }
+
+    @Test
+    public void processSelectedKeys() throws IOException {
+        final IOSelectorImpl ioSelector = new IOSelectorImpl(selector);
+        pipe.sink().register(selector, SelectionKey.OP_WRITE, "attachment");
+        final List<IOSelectionKey> keys = new ArrayList<>();
+        final IOSelector.SelectedKeyHandler handler = new IOSelector.SelectedKeyHandler() {
+            @Override
+            public void handle(IOSelectionKey key) {
+                keys.add(key);
+            }
+        };
+
+        ioSelector.selectNow();
+        assertEquals(1, ioSelector.processSelectedKeys(handler));
+        assertTrue(selector.selectedKeys().isEmpty());
+
+        ioSelector.selectNow();
+        assertEquals(1, ioSelector.processSelectedKeys(handler));
+
+        assertEquals(2, keys.size());
+        assertSame(keys.get(0), keys.get(1));
+        assertEquals("attachment", keys.get(0).attachment());
+        assertTrue(keys.get(0).isWritable());
+    }
+
+    @Test
+    public void readyOperations() throws IOException {
+        final IOSelectorImpl ioSelector = new IOSelectorImpl(selector);
+        pipe.sink().register(selector, SelectionKey.OP_WRITE);
+        final List<IOSelectionKey> keys = new ArrayList<>();
+        final IOSelector.SelectedKeyHandler handler = new IOSelector.SelectedKeyHandler() {
+            @Override
+            public void handle(IOSelectionKey key) {
+                keys.add(key);
+            }
+        };
+
+        ioSelector.selectNow();
+        ioSelector.processSelectedKeys(handler);
+        final IOSelectionKey key = keys.get(0);
+        assertTrue(key.isInterestedIn(IOSelectionKey.Op.WRITE));
+
+        key.clearInterestedOperation(IOSelectionKey.Op.WRITE);
+
+        assertFalse(key.isInterestedIn(IOSelectionKey.Op.WRITE));
+        assertTrue(key.interestedOperations().isEmpty());
+        assertEquals(EnumSet.of(IOSelectionKey.Op.WRITE), key.readyOperations());
+    }
+
+    @Test
+    public void registerReusesKey() throws IOException {
+        final IOSelectorImpl ioSelector = new IOSelectorImpl(selector);
+        final SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            final IOSocketChannelImpl ioChannel = new IOSocketChannelImpl(channel);
+
+            final IOSelectionKey key0 = ioChannel.register(ioSelector, IOSelectionKey.Op.READ, "first");
+            final IOSelectionKey key1 = ioChannel.register(ioSelector, IOSelectionKey.Op.WRITE, "second");
+
+            assertSame(key0, key1);
+            assertSame(key0, ioChannel.keyFor(ioSelector));
+            assertSame(ioChannel, key0.socket());
+            assertEquals("second", key0.attachment());
+            assertEquals(SelectionKey.OP_WRITE, channel.keyFor(selector).interestOps());
+        }
+        finally {
+            channel.close();
+        }
+    }
+}
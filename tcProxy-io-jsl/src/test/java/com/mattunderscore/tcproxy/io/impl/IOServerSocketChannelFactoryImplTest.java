@@ -189,4 +189,20 @@ public final class IOServerSocketChannelFactoryImplTest {
         verify(socketChannel).bind(null);
         verifyNoMoreInteractions(socketChannel, ioFactory);
     }
+
+    @Test
+    public void createWithReusePort() throws IOException {
+        final IOOutboundSocketFactory<IOServerSocketChannel> factory =
+            new IOServerSocketChannelFactoryImpl(ioFactory, serverSocketChannel().reusePort(true));
+
+        final IOServerSocketChannel channel = factory.bind(address).create();
+
+        assertEquals(socketChannel, channel);
+        verify(ioFactory).openServerSocket();
+        verify(socketChannel).set(IOSocketOption.BLOCKING, true);
+        verify(socketChannel).set(IOSocketOption.REUSE_ADDRESS, false);
+        verify(socketChannel).set(IOSocketOption.REUSE_PORT, true);
+        verify(socketChannel).bind(address);
+        verifyNoMoreInteractions(socketChannel, ioFactory);
+    }
 }
@@ -199,8 +199,13 @@ public final class IOUtilsTest {
         assertEquals(InternalIOSocketOption.TCP_NO_DELAY, IOUtils.convertSocketOption(IOSocketOption.TCP_NO_DELAY));
     }
 
-    @Test(expected = IllegalArgumentException.class)
+    @Test
     public void convertToInternalOption7() {
+        assertEquals(InternalIOSocketOption.REUSE_PORT, IOUtils.convertSocketOption(IOSocketOption.REUSE_PORT));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void convertToInternalOption8() {
         IOUtils.convertSocketOption(null);
     }
 }
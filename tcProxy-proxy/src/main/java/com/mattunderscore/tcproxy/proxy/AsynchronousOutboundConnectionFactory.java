@@ -22,11 +22,20 @@ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
 ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
 (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
 SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
-
 package com.mattunderscore.tcproxy.proxy;
 
 import java.io.IOException;
+import java.net.ConnectException;
 import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.mattunderscore.tcproxy.io.socket.IOOutboundSocketChannel;
 import com.mattunderscore.tcproxy.io.factory.IOOutboundSocketChannelFactory;
@@ -35,68 +44,387 @@ import com.mattunderscore.tcproxy.io.selection.IOSelectionKey;
 import com.mattunderscore.tcproxy.io.socket.IOSocketChannel;
 import com.mattunderscore.tcproxy.io.impl.StaticIOFactory;
 import com.mattunderscore.tcproxy.proxy.settings.OutboundSocketSettings;
+import com.mattunderscore.tcproxy.proxy.upstream.Upstream;
+import com.mattunderscore.tcproxy.proxy.upstream.UpstreamGroup;
 import com.mattunderscore.tcproxy.selector.SelectionRunnable;
 import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
 import com.mattunderscore.tcproxy.selector.general.RegistrationHandle;
 
 /**
- * Asynchronous, non-blocking factory for outbound sockets. Sends all connections to the same place.
+ * Asynchronous, non-blocking factory for outbound sockets. Each connection is sent to an upstream chosen by the
+ * {@link UpstreamGroup}. The upstream is told when the connection is started, when it is established and if it
+ * fails, the owner of the connection must release it once it is closed.
+ * <p>
+ * Connects can be given a timeout, enforced by the timer of the selector. Connects can also be staggered across the
+ * addresses of the upstream, if a connect has not completed after the attempt delay a connect to the next address is
+ * started. The first to connect is used and the others are closed.
+ * <p>
+ * The factory can keep a pool of sockets that have already connected so accepted clients do not wait for a connection
+ * to be established. Idle sockets are watched for reads, the upstream closing the socket or sending unsolicited data
+ * causes it to be discarded. The pool is confined to the thread of the selector, when pooling connections must only
+ * be created on that thread.
  * @author Matt Champion on 18/02/14.
  */
 public final class AsynchronousOutboundConnectionFactory {
+    private static final Logger LOG = LoggerFactory.getLogger("outbound-pool");
+    private static final long RETRY_DELAY = 1000L;
     private final IOOutboundSocketFactory<IOOutboundSocketChannel> factory;
-    private final InetSocketAddress remote;
+    private final UpstreamGroup upstreams;
     private final SocketChannelSelector selector;
+    private final int minimumPooled;
+    private final int maximumPooled;
+    private final long connectTimeout;
+    private final long connectionAttemptDelay;
+    private final Deque<PooledChannel> idle = new ArrayDeque<>();
+    private int connecting;
+    private boolean retryScheduled;
 
     /**
-     * Constructor.
+     * Constructor for a factory that connects to the host and port of the settings.
      * @param settings The settings to use when creating the socket
      * @param selector The selector to use to connect the socket
      */
     public AsynchronousOutboundConnectionFactory(OutboundSocketSettings settings, SocketChannelSelector selector) {
+        this(settings, UpstreamGroup.create(settings, null), selector);
+    }
+
+    /**
+     * Constructor.
+     * @param settings The settings to use when creating the socket
+     * @param upstreams The upstreams to connect to
+     * @param selector The selector to use to connect the socket
+     */
+    public AsynchronousOutboundConnectionFactory(
+            OutboundSocketSettings settings,
+            UpstreamGroup upstreams,
+            SocketChannelSelector selector) {
         this.selector = selector;
+        this.upstreams = upstreams;
         factory = StaticIOFactory
             .socketFactory(IOOutboundSocketChannelFactory.class)
             .sendBuffer(settings.getSendBuffer())
             .receiveBuffer(settings.getReceiveBuffer())
             .blocking(false);
-        remote = new InetSocketAddress(settings.getHost(), settings.getPort());
+        minimumPooled = Math.max(0, settings.getMinimumPooled());
+        maximumPooled = Math.max(minimumPooled, settings.getMaximumPooled());
+        connectTimeout = settings.getConnectTimeout();
+        connectionAttemptDelay = settings.getConnectionAttemptDelay();
+
+        if (minimumPooled > 0) {
+            // Fill the pool on the thread of the selector
+            selector.execute(new Runnable() {
+                @Override
+                public void run() {
+                    refill();
+                }
+            });
+        }
     }
 
     /**
-     * Asynchronously create a connection.
+     * Asynchronously create a connection. If there is a pooled socket the callback is notified immediately.
      * @param connectionCallback The callback for when the connection has completed
      */
     public void createConnection(final ConnectionCallback connectionCallback) {
-        final IOOutboundSocketChannel channel;
-        try {
-            channel = factory.create();
-            channel.connect(remote);
+        if (minimumPooled > 0) {
+            final PooledChannel pooled = idle.pollLast();
+            refill();
+            if (pooled != null) {
+                pooled.taken = true;
+                pooled.upstream.taken();
+                connectionCallback.onConnected(pooled.channel, pooled.upstream);
+                return;
+            }
+            LOG.debug("No pooled connection available");
+        }
+
+        connect(connectionCallback, false);
+    }
+
+    /**
+     * @return The number of connected sockets waiting in the pool
+     */
+    public int getPooledCount() {
+        return idle.size();
+    }
+
+    private void connect(final ConnectionCallback connectionCallback, boolean pooled) {
+        final Upstream upstream = upstreams.select();
+        if (pooled) {
+            // Only active once a client connection takes it
+            upstream.pooling();
+        }
+        else {
+            upstream.connecting();
         }
-        catch (IOException e) {
-            connectionCallback.onException(e);
+        final InetSocketAddress[] addresses = connectionAttemptDelay > 0L ?
+            upstream.getSocketAddresses() :
+            new InetSocketAddress[] { upstream.getSocketAddress() };
+        new ConnectAttempt(upstream, addresses, connectionCallback, pooled).start();
+    }
+
+    /**
+     * Connect new sockets up to the maximum once the sockets connected or connecting fall below the minimum.
+     */
+    private void refill() {
+        if (retryScheduled || idle.size() + connecting >= minimumPooled) {
             return;
         }
 
-        selector.register(channel, IOSelectionKey.Op.CONNECT, new SelectionRunnable<IOSocketChannel>() {
+        while (!retryScheduled && idle.size() + connecting < maximumPooled) {
+            connecting++;
+            connect(new PoolCallback(), true);
+        }
+    }
+
+    /**
+     * Stop refilling the pool for a while after a connection failed.
+     */
+    private void retryLater() {
+        if (!retryScheduled) {
+            retryScheduled = true;
+            selector.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    retryScheduled = false;
+                    refill();
+                }
+            }, RETRY_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Adds the sockets connected for the pool to it.
+     */
+    private final class PoolCallback implements ConnectionCallback {
+        @Override
+        public void onConnected(IOOutboundSocketChannel channel, Upstream upstream) {
+            connecting--;
+            final PooledChannel pooled = new PooledChannel(channel, upstream);
+            idle.addLast(pooled);
+            selector.register(channel, IOSelectionKey.Op.READ, pooled);
+        }
+
+        @Override
+        public void onException(IOException e) {
+            connecting--;
+            LOG.warn("Failed to connect a pooled connection", e);
+            retryLater();
+        }
+    }
+
+    /**
+     * A connected socket in the pool. It watches the socket while it is idle. Once taken the read registration is
+     * replaced by the registration of the new owner.
+     */
+    private final class PooledChannel implements SelectionRunnable<IOSocketChannel> {
+        private final IOOutboundSocketChannel channel;
+        private final Upstream upstream;
+        private boolean taken;
+
+        private PooledChannel(IOOutboundSocketChannel channel, Upstream upstream) {
+            this.channel = channel;
+            this.upstream = upstream;
+        }
+
+        @Override
+        public void run(IOSocketChannel socket, RegistrationHandle handle) {
+            if (taken) {
+                // The new owner has not registered yet, leave the data for it
+                handle.suspend();
+                return;
+            }
+
+            LOG.debug("Discarding pooled connection to {} that became readable while idle", upstream);
+            idle.remove(this);
+            handle.cancel();
+            upstream.discarded();
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                LOG.debug("Failed to close a discarded pooled connection", e);
+            }
+            refill();
+        }
+    }
+
+    /**
+     * An attempt to connect to an upstream. Confined to the thread of the selector.
+     */
+    private final class ConnectAttempt implements Runnable {
+        private final Upstream upstream;
+        private final InetSocketAddress[] addresses;
+        private final ConnectionCallback callback;
+        private final boolean pooled;
+        private final List<IOOutboundSocketChannel> pending = new ArrayList<>(2);
+        private long connectStart;
+        private int nextAddress;
+        private IOException lastException;
+        private boolean done;
+
+        private ConnectAttempt(
+                Upstream upstream,
+                InetSocketAddress[] addresses,
+                ConnectionCallback callback,
+                boolean pooled) {
+            this.upstream = upstream;
+            this.addresses = addresses;
+            this.callback = callback;
+            this.pooled = pooled;
+        }
+
+        private void start() {
+            connectStart = System.nanoTime();
+            if (connectTimeout > 0L) {
+                selector.schedule(this, connectTimeout, TimeUnit.MILLISECONDS);
+            }
+            connectNext();
+        }
+
+        /**
+         * Start a connect to the next address that can be connected to. Fails the attempt if there are no more
+         * addresses and no connects pending.
+         */
+        private void connectNext() {
+            while (nextAddress < addresses.length) {
+                final InetSocketAddress address = addresses[nextAddress++];
+                if (address.isUnresolved()) {
+                    lastException = new UnknownHostException(address.getHostString());
+                    continue;
+                }
+
+                final IOOutboundSocketChannel channel;
+                try {
+                    channel = factory.create();
+                }
+                catch (IOException e) {
+                    lastException = e;
+                    continue;
+                }
+
+                try {
+                    channel.connect(address);
+                }
+                catch (IOException e) {
+                    lastException = e;
+                    close(channel);
+                    continue;
+                }
+
+                pending.add(channel);
+                selector.register(channel, IOSelectionKey.Op.CONNECT, new ConnectRunnable(channel));
+                if (nextAddress < addresses.length) {
+                    selector.schedule(new AttemptDelay(nextAddress), connectionAttemptDelay, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+
+            if (pending.isEmpty()) {
+                failed(lastException);
+            }
+        }
+
+        private void connected(IOOutboundSocketChannel channel) {
+            done = true;
+            pending.remove(channel);
+            closePending();
+            upstream.connected(System.nanoTime() - connectStart);
+            callback.onConnected(channel, upstream);
+        }
+
+        private void connectFailed(IOOutboundSocketChannel channel, IOException e) {
+            pending.remove(channel);
+            close(channel);
+            lastException = e;
+            if (pending.isEmpty()) {
+                // Do not wait for the attempt delay
+                connectNext();
+            }
+        }
+
+        private void failed(IOException e) {
+            done = true;
+            if (pooled) {
+                upstream.pooledConnectFailed();
+            }
+            else {
+                upstream.connectFailed();
+            }
+            callback.onException(e);
+        }
+
+        @Override
+        public void run() {
+            if (!done) {
+                LOG.debug("Timed out connecting to {}", upstream);
+                closePending();
+                failed(new ConnectException("Timed out connecting to " + upstream));
+            }
+        }
+
+        private void closePending() {
+            for (final IOOutboundSocketChannel channel : pending) {
+                close(channel);
+            }
+            pending.clear();
+        }
+
+        private void close(IOOutboundSocketChannel channel) {
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                LOG.debug("Failed to close an outbound connection", e);
+            }
+        }
+
+        /**
+         * Starts the connect to the next address if the previous connects have not completed.
+         */
+        private final class AttemptDelay implements Runnable {
+            private final int address;
+
+            private AttemptDelay(int address) {
+                this.address = address;
+            }
+
+            @Override
+            public void run() {
+                if (!done && nextAddress == address) {
+                    connectNext();
+                }
+            }
+        }
+
+        /**
+         * Completes the connect to one address.
+         */
+        private final class ConnectRunnable implements SelectionRunnable<IOSocketChannel> {
+            private final IOOutboundSocketChannel channel;
+
+            private ConnectRunnable(IOOutboundSocketChannel channel) {
+                this.channel = channel;
+            }
+
             @Override
             public void run(IOSocketChannel socket, RegistrationHandle handle) {
-                if (!handle.isConnectable()) {
+                if (done || !handle.isConnectable()) {
                     return;
                 }
 
                 try {
                     if (channel.finishConnect()) {
                         handle.cancel();
-                        connectionCallback.onConnected(channel);
+                        connected(channel);
                     }
                 }
                 catch (IOException e) {
                     handle.cancel();
-                    connectionCallback.onException(e);
+                    connectFailed(channel, e);
                 }
             }
-        });
+        }
     }
 
     /**
@@ -106,8 +434,9 @@ public final class AsynchronousOutboundConnectionFactory {
         /**
          * Called when the channel has been connected.
          * @param channel Channel
+         * @param upstream The upstream the channel is connected to, it must be released when the channel is closed
          */
-        void onConnected(IOOutboundSocketChannel channel);
+        void onConnected(IOOutboundSocketChannel channel, Upstream upstream);
 
         /**
          * Called if an exception was thrown when trying to connect.
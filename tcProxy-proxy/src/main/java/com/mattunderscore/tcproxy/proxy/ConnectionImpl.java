@@ -45,6 +45,8 @@ public final class ConnectionImpl implements Connection {
     private final ConnectionManager manager;
     private final AtomicBoolean halfClosed;
     private final SocketChannelSelector selector;
+    private final DirectionWriter clientToServerWriter;
+    private final DirectionWriter serverToClientWriter;
 
     public ConnectionImpl(ConnectionManager manager, Direction clientToServer, Direction serverToClient, SocketChannelSelector selector) {
         this.manager = manager;
@@ -52,6 +54,8 @@ public final class ConnectionImpl implements Connection {
         this.serverToClient = serverToClient;
         halfClosed = new AtomicBoolean(false);
         this.selector = selector;
+        clientToServerWriter = new DirectionWriter(clientToServer);
+        serverToClientWriter = new DirectionWriter(serverToClient);
 
         final DirectionListener listener = new DirectionListener();
         clientToServer.addListener(listener);
@@ -76,11 +80,15 @@ public final class ConnectionImpl implements Connection {
 
     @Override
     public void needsWrite(Direction direction) {
-        if (direction != clientToServer && direction != serverToClient) {
+        if (direction == clientToServer) {
+            clientToServerWriter.needsWrite();
+        }
+        else if (direction == serverToClient) {
+            serverToClientWriter.needsWrite();
+        }
+        else {
             throw new IllegalArgumentException("The direction is not valid for this connection");
         }
-
-        selector.register(direction.getTo(), IOSelectionKey.Op.WRITE, new WriteSelectionRunnable(direction.getQueue(), this));
     }
 
     /**
@@ -106,6 +114,30 @@ public final class ConnectionImpl implements Connection {
                 serverToClient);
     }
 
+    /**
+     * Registers the write task for a direction the first time it needs to write and resumes it after that. The task
+     * suspends itself when there is nothing left to write.
+     */
+    private final class DirectionWriter {
+        private final Direction direction;
+        private final WriteSelectionRunnable writeTask;
+        private final AtomicBoolean registered = new AtomicBoolean(false);
+
+        private DirectionWriter(Direction direction) {
+            this.direction = direction;
+            writeTask = new WriteSelectionRunnable(direction, ConnectionImpl.this, selector);
+        }
+
+        private void needsWrite() {
+            if (registered.compareAndSet(false, true)) {
+                selector.register(direction.getTo(), IOSelectionKey.Op.WRITE, writeTask);
+            }
+            else {
+                selector.resume(direction.getTo(), IOSelectionKey.Op.WRITE);
+            }
+        }
+    }
+
     /**
      * Listener for direction closes.
      */
@@ -124,5 +156,9 @@ public final class ConnectionImpl implements Connection {
                 manager.unregister(ConnectionImpl.this);
             }
         }
+
+        @Override
+        public void readFailed(Direction direction, IOException exception) {
+        }
     }
 }
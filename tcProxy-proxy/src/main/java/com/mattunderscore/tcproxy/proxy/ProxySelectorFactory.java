@@ -28,81 +28,74 @@ package com.mattunderscore.tcproxy.proxy;
 import static com.mattunderscore.tcproxy.io.impl.StaticIOFactory.openSelector;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.Collection;
 
 import com.mattunderscore.tcproxy.io.configuration.IOSocketConfiguration;
-import com.mattunderscore.tcproxy.io.selection.IOSelectionKey;
 import com.mattunderscore.tcproxy.io.socket.IOServerSocketChannel;
 import com.mattunderscore.tcproxy.io.socket.IOSocketChannel;
-import com.mattunderscore.tcproxy.proxy.connection.Connection;
-import com.mattunderscore.tcproxy.proxy.connection.ConnectionManager;
-import com.mattunderscore.tcproxy.proxy.direction.Direction;
-import com.mattunderscore.tcproxy.proxy.selector.ReadSelectionRunnable;
+import com.mattunderscore.tcproxy.proxy.selector.ProxyConnectionHandlerFactory;
 import com.mattunderscore.tcproxy.proxy.settings.ReadSelectorSettings;
 import com.mattunderscore.tcproxy.selector.SelectorBackoff;
 import com.mattunderscore.tcproxy.selector.SelectorFactory;
 import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
-import com.mattunderscore.tcproxy.selector.connecting.ConnectionHandlerFactory;
+import com.mattunderscore.tcproxy.selector.connecting.DistributingConnectionHandler;
+import com.mattunderscore.tcproxy.selector.connecting.DistributionTarget;
 import com.mattunderscore.tcproxy.selector.connecting.task.AcceptingTask;
+import com.mattunderscore.tcproxy.selector.general.DispatchOrder;
 import com.mattunderscore.tcproxy.selector.general.GeneralPurposeSelector;
 
 /**
- * {@link SelectorFactory} for a proxy server.
+ * {@link SelectorFactory} for a proxy server. If a {@link DistributingConnectionHandler} is provided the selectors do
+ * not accept connections but are added as targets for it.
  * @author Matt Champion on 30/03/2016
  */
 final class ProxySelectorFactory implements SelectorFactory<SocketChannelSelector> {
     private final Collection<IOServerSocketChannel> listenChannels;
     private final IOSocketConfiguration<IOSocketChannel, ?> socketSettings;
-    private final ConnectionHandlerFactory connectionHandlerFactory;
-    private final ConnectionManager manager;
+    private final ProxyConnectionHandlerFactory connectionHandlerFactory;
     private final ReadSelectorSettings readSelectorSettings;
     private final SelectorBackoff selectorBackoff;
+    private final DistributingConnectionHandler distributor;
 
     public ProxySelectorFactory(
-            ConnectionHandlerFactory connectionHandlerFactory,
-            ConnectionManager manager,
+            ProxyConnectionHandlerFactory connectionHandlerFactory,
             ReadSelectorSettings readSelectorSettings,
             SelectorBackoff selectorBackoff,
             Collection<IOServerSocketChannel> listenChannels,
-            IOSocketConfiguration<IOSocketChannel, ?> socketSettings) {
+            IOSocketConfiguration<IOSocketChannel, ?> socketSettings,
+            DistributingConnectionHandler distributor) {
         this.listenChannels = listenChannels;
         this.socketSettings = socketSettings;
         this.connectionHandlerFactory = connectionHandlerFactory;
-        this.manager = manager;
         this.readSelectorSettings = readSelectorSettings;
         this.selectorBackoff = selectorBackoff;
+        this.distributor = distributor;
     }
 
     @Override
     public SocketChannelSelector create() throws IOException {
-        final GeneralPurposeSelector selector =
-            new GeneralPurposeSelector(openSelector(), selectorBackoff);
+        final DispatchOrder dispatchOrder = readSelectorSettings.getDispatchOrder() != null ?
+            readSelectorSettings.getDispatchOrder() :
+            DispatchOrder.WRITE_FIRST;
+        final GeneralPurposeSelector selector = new GeneralPurposeSelector(
+            openSelector(),
+            selectorBackoff,
+            readSelectorSettings.getSelectTimeout(),
+            dispatchOrder);
+
+        // The connections accepted by this selector are read and written by it
+        final DistributionTarget connectionHandler = connectionHandlerFactory.create(selector);
+        if (distributor != null) {
+            distributor.addTarget(connectionHandler);
+            return selector;
+        }
 
         for (final IOServerSocketChannel serverSocketChannel : listenChannels) {
             selector.register(
                 serverSocketChannel,
-                new AcceptingTask(selector, connectionHandlerFactory.create(selector), socketSettings));
+                new AcceptingTask(selector, connectionHandler, socketSettings));
         }
 
-        final ByteBuffer readBuffer = ByteBuffer.allocateDirect(readSelectorSettings.getReadBufferSize());
-        manager.addListener(new ConnectionManager.Listener() {
-            @Override
-            public void newConnection(final Connection connection) {
-                final Direction cTs = connection.clientToServer();
-                final IOSocketChannel channel0 = cTs.getFrom();
-                selector.register(channel0, IOSelectionKey.Op.READ, new ReadSelectionRunnable(cTs, connection, readBuffer));
-
-                final Direction sTc = connection.serverToClient();
-                final IOSocketChannel channel1 = sTc.getFrom();
-                selector.register(channel1, IOSelectionKey.Op.READ, new ReadSelectionRunnable(sTc, connection, readBuffer));
-            }
-
-            @Override
-            public void closedConnection(final Connection connection) {
-            }
-        });
-
         return selector;
     }
 }
@@ -32,12 +32,19 @@ import com.mattunderscore.tcproxy.io.configuration.OpenIOSocketChannelConfigurat
 import com.mattunderscore.tcproxy.io.configuration.SocketConfiguration;
 import com.mattunderscore.tcproxy.io.factory.IOFactory;
 import com.mattunderscore.tcproxy.io.impl.JSLIOFactory;
+import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueueType;
+import com.mattunderscore.tcproxy.proxy.buffer.BufferPoolMonitor;
 import com.mattunderscore.tcproxy.proxy.connection.ConnectionManager;
+import com.mattunderscore.tcproxy.proxy.settings.BandwidthSettings;
 import com.mattunderscore.tcproxy.proxy.settings.ConnectionSettings;
+import com.mattunderscore.tcproxy.proxy.settings.HealthCheckSettings;
+import com.mattunderscore.tcproxy.proxy.settings.LoadBalancingSettings;
 import com.mattunderscore.tcproxy.proxy.settings.OutboundSocketSettings;
 import com.mattunderscore.tcproxy.proxy.settings.ReadSelectorSettings;
 import com.mattunderscore.tcproxy.selector.NoBackoff;
 import com.mattunderscore.tcproxy.selector.SelectorBackoff;
+import com.mattunderscore.tcproxy.selector.connecting.DistributionPolicy;
+import com.mattunderscore.tcproxy.selector.general.DispatchOrder;
 import com.mattunderscore.tcproxy.selector.server.AbstractServerBuilder;
 import com.mattunderscore.tcproxy.selector.server.AcceptSettings;
 import com.mattunderscore.tcproxy.selector.server.Server;
@@ -56,6 +63,11 @@ public final class ProxyServerBuilder extends AbstractServerBuilder<ProxyServerB
     private final IOFactory ioFactory;
     private final int selectorThreads;
     private final ConnectionManager manager;
+    private final BufferPoolMonitor bufferPoolMonitor;
+    private final DistributionPolicy distributionPolicy;
+    private final BandwidthSettings bandwidthSettings;
+    private final LoadBalancingSettings loadBalancingSettings;
+    private final HealthCheckSettings healthCheckSettings;
 
     protected ProxyServerBuilder(
             AcceptSettings acceptSettings,
@@ -66,7 +78,12 @@ public final class ProxyServerBuilder extends AbstractServerBuilder<ProxyServerB
             SelectorBackoff selectorBackoff,
             IOFactory ioFactory,
             int selectorThreads,
-            ConnectionManager manager) {
+            ConnectionManager manager,
+            BufferPoolMonitor bufferPoolMonitor,
+            DistributionPolicy distributionPolicy,
+            BandwidthSettings bandwidthSettings,
+            LoadBalancingSettings loadBalancingSettings,
+            HealthCheckSettings healthCheckSettings) {
         super(acceptSettings, socketSettings);
         this.connectionSettings = connectionSettings;
         this.outboundSocketSettings = outboundSocketSettings;
@@ -75,6 +92,11 @@ public final class ProxyServerBuilder extends AbstractServerBuilder<ProxyServerB
         this.ioFactory = ioFactory;
         this.selectorThreads = selectorThreads;
         this.manager = manager;
+        this.bufferPoolMonitor = bufferPoolMonitor;
+        this.distributionPolicy = distributionPolicy;
+        this.bandwidthSettings = bandwidthSettings;
+        this.loadBalancingSettings = loadBalancingSettings;
+        this.healthCheckSettings = healthCheckSettings;
     }
 
     public ProxyServerBuilder connectionSettings(ConnectionSettings connectionSettings) {
@@ -89,7 +111,12 @@ public final class ProxyServerBuilder extends AbstractServerBuilder<ProxyServerB
             selectorBackoff,
             ioFactory,
             selectorThreads,
-            manager);
+            manager,
+            bufferPoolMonitor,
+            distributionPolicy,
+            bandwidthSettings,
+            loadBalancingSettings,
+            healthCheckSettings);
     }
 
     public ProxyServerBuilder outboundSocketSettings(OutboundSocketSettings outboundSocketSettings) {
@@ -104,7 +131,12 @@ public final class ProxyServerBuilder extends AbstractServerBuilder<ProxyServerB
             selectorBackoff,
             ioFactory,
             selectorThreads,
-            manager);
+            manager,
+            bufferPoolMonitor,
+            distributionPolicy,
+            bandwidthSettings,
+            loadBalancingSettings,
+            healthCheckSettings);
     }
 
     public ProxyServerBuilder readSelectorSettings(ReadSelectorSettings readSelectorSettings) {
@@ -119,7 +151,12 @@ public final class ProxyServerBuilder extends AbstractServerBuilder<ProxyServerB
             selectorBackoff,
             ioFactory,
             selectorThreads,
-            manager);
+            manager,
+            bufferPoolMonitor,
+            distributionPolicy,
+            bandwidthSettings,
+            loadBalancingSettings,
+            healthCheckSettings);
     }
 
     public ProxyServerBuilder backoff(SelectorBackoff selectorBackoff) {
@@ -134,7 +171,12 @@ public final class ProxyServerBuilder extends AbstractServerBuilder<ProxyServerB
             selectorBackoff,
             ioFactory,
             selectorThreads,
-            manager);
+            manager,
+            bufferPoolMonitor,
+            distributionPolicy,
+            bandwidthSettings,
+            loadBalancingSettings,
+            healthCheckSettings);
     }
 
     public ProxyServerBuilder ioFactory(IOFactory ioFactory) {
@@ -149,7 +191,12 @@ public final class ProxyServerBuilder extends AbstractServerBuilder<ProxyServerB
             selectorBackoff,
             ioFactory,
             selectorThreads,
-            manager);
+            manager,
+            bufferPoolMonitor,
+            distributionPolicy,
+            bandwidthSettings,
+            loadBalancingSettings,
+            healthCheckSettings);
     }
 
     public ProxyServerBuilder selectorThreads(int selectorThreads) {
@@ -162,7 +209,12 @@ public final class ProxyServerBuilder extends AbstractServerBuilder<ProxyServerB
             selectorBackoff,
             ioFactory,
             selectorThreads,
-            manager);
+            manager,
+            bufferPoolMonitor,
+            distributionPolicy,
+            bandwidthSettings,
+            loadBalancingSettings,
+            healthCheckSettings);
     }
 
     public ProxyServerBuilder connectionManager(ConnectionManager manager) {
@@ -175,7 +227,132 @@ public final class ProxyServerBuilder extends AbstractServerBuilder<ProxyServerB
             selectorBackoff,
             ioFactory,
             selectorThreads,
-            manager);
+            manager,
+            bufferPoolMonitor,
+            distributionPolicy,
+            bandwidthSettings,
+            loadBalancingSettings,
+            healthCheckSettings);
+    }
+
+    public ProxyServerBuilder bufferPoolMonitor(BufferPoolMonitor bufferPoolMonitor) {
+        return new ProxyServerBuilder(
+            acceptSettings,
+            socketSettings,
+            connectionSettings,
+            outboundSocketSettings,
+            readSelectorSettings,
+            selectorBackoff,
+            ioFactory,
+            selectorThreads,
+            manager,
+            bufferPoolMonitor,
+            distributionPolicy,
+            bandwidthSettings,
+            loadBalancingSettings,
+            healthCheckSettings);
+    }
+
+    /**
+     * Accept connections on a dedicated selector thread and distribute them between the selector threads. By default
+     * each selector thread accepts connections.
+     * @param distributionPolicy The policy to distribute connections by
+     * @return A new builder
+     */
+    public ProxyServerBuilder distributionPolicy(DistributionPolicy distributionPolicy) {
+        requireNonNull(distributionPolicy, "Distribution policy cannot be null");
+
+        return new ProxyServerBuilder(
+            acceptSettings,
+            socketSettings,
+            connectionSettings,
+            outboundSocketSettings,
+            readSelectorSettings,
+            selectorBackoff,
+            ioFactory,
+            selectorThreads,
+            manager,
+            bufferPoolMonitor,
+            distributionPolicy,
+            bandwidthSettings,
+            loadBalancingSettings,
+            healthCheckSettings);
+    }
+
+    /**
+     * Limit the bandwidth of the proxy. By default the bandwidth is not limited.
+     * @param bandwidthSettings The bandwidth limits
+     * @return A new builder
+     */
+    public ProxyServerBuilder bandwidthSettings(BandwidthSettings bandwidthSettings) {
+        requireNonNull(bandwidthSettings, "Bandwidth settings cannot be null");
+
+        return new ProxyServerBuilder(
+            acceptSettings,
+            socketSettings,
+            connectionSettings,
+            outboundSocketSettings,
+            readSelectorSettings,
+            selectorBackoff,
+            ioFactory,
+            selectorThreads,
+            manager,
+            bufferPoolMonitor,
+            distributionPolicy,
+            bandwidthSettings,
+            loadBalancingSettings,
+            healthCheckSettings);
+    }
+
+    /**
+     * Balance connections between several upstreams. By default connections are forwarded to the host and port of the
+     * outbound socket settings.
+     * @param loadBalancingSettings The upstreams and the policy to choose between them
+     * @return A new builder
+     */
+    public ProxyServerBuilder loadBalancingSettings(LoadBalancingSettings loadBalancingSettings) {
+        requireNonNull(loadBalancingSettings, "Load balancing settings cannot be null");
+
+        return new ProxyServerBuilder(
+            acceptSettings,
+            socketSettings,
+            connectionSettings,
+            outboundSocketSettings,
+            readSelectorSettings,
+            selectorBackoff,
+            ioFactory,
+            selectorThreads,
+            manager,
+            bufferPoolMonitor,
+            distributionPolicy,
+            bandwidthSettings,
+            loadBalancingSettings,
+            healthCheckSettings);
+    }
+
+    /**
+     * Check the health of the upstreams. By default upstreams are never ejected.
+     * @param healthCheckSettings The health check settings
+     * @return A new builder
+     */
+    public ProxyServerBuilder healthCheckSettings(HealthCheckSettings healthCheckSettings) {
+        requireNonNull(healthCheckSettings, "Health check settings cannot be null");
+
+        return new ProxyServerBuilder(
+            acceptSettings,
+            socketSettings,
+            connectionSettings,
+            outboundSocketSettings,
+            readSelectorSettings,
+            selectorBackoff,
+            ioFactory,
+            selectorThreads,
+            manager,
+            bufferPoolMonitor,
+            distributionPolicy,
+            bandwidthSettings,
+            loadBalancingSettings,
+            healthCheckSettings);
     }
 
     @Override
@@ -188,16 +365,26 @@ public final class ProxyServerBuilder extends AbstractServerBuilder<ProxyServerB
             throw new IllegalStateException("Outbound socket settings not provided");
         }
 
+        if (acceptSettings.isReusePort() && distributionPolicy != null) {
+            throw new IllegalStateException("Reusing the port cannot be combined with a dedicated acceptor");
+        }
+
         final ProxyServerStarter serverStarter = new ProxyServerStarter(
             ioFactory,
             acceptSettings.getListenOn(),
             selectorThreads,
+            acceptSettings.isReusePort(),
             outboundSocketSettings,
             selectorBackoff,
             connectionSettings,
             manager != null ? manager : new ConnectionManager(),
             socketSettings,
-            readSelectorSettings);
+            readSelectorSettings,
+            bufferPoolMonitor != null ? bufferPoolMonitor : new BufferPoolMonitor(),
+            distributionPolicy,
+            bandwidthSettings,
+            loadBalancingSettings,
+            healthCheckSettings);
         return new ServerImpl(serverStarter);
     }
 
@@ -212,7 +399,12 @@ public final class ProxyServerBuilder extends AbstractServerBuilder<ProxyServerB
             selectorBackoff,
             ioFactory,
             selectorThreads,
-            manager);
+            manager,
+            bufferPoolMonitor,
+            distributionPolicy,
+            bandwidthSettings,
+            loadBalancingSettings,
+            healthCheckSettings);
     }
 
     /**
@@ -228,15 +420,25 @@ public final class ProxyServerBuilder extends AbstractServerBuilder<ProxyServerB
                 .builder()
                 .batchSize(1024)
                 .writeQueueSize(1024)
+                .spliceBufferSize(4096)
+                .actionQueueType(ActionQueueType.SINGLE_PRODUCER)
                 .build(),
             null,
             ReadSelectorSettings
                 .builder()
                 .readBufferSize(1024)
+                .selectTimeout(100L)
+                .buffersPerClass(64)
+                .dispatchOrder(DispatchOrder.WRITE_FIRST)
                 .build(),
             NoBackoff.get(),
             new JSLIOFactory(),
             1,
+            null,
+            null,
+            null,
+            null,
+            null,
             null);
     }
 }
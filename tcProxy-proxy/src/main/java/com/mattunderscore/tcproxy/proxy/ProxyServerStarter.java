@@ -26,9 +26,12 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 package com.mattunderscore.tcproxy.proxy;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.management.ObjectName;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,51 +39,87 @@ import com.mattunderscore.tcproxy.io.configuration.IOSocketConfiguration;
 import com.mattunderscore.tcproxy.io.factory.IOFactory;
 import com.mattunderscore.tcproxy.io.socket.IOServerSocketChannel;
 import com.mattunderscore.tcproxy.io.socket.IOSocketChannel;
+import com.mattunderscore.tcproxy.proxy.action.queue.MemoryGovernor;
+import com.mattunderscore.tcproxy.proxy.buffer.BufferPoolMonitor;
 import com.mattunderscore.tcproxy.proxy.connection.ConnectionManager;
 import com.mattunderscore.tcproxy.proxy.selector.ProxyConnectionHandlerFactory;
+import com.mattunderscore.tcproxy.proxy.settings.BandwidthSettings;
 import com.mattunderscore.tcproxy.proxy.settings.ConnectionSettings;
+import com.mattunderscore.tcproxy.proxy.settings.HealthCheckSettings;
+import com.mattunderscore.tcproxy.proxy.settings.LoadBalancingSettings;
 import com.mattunderscore.tcproxy.proxy.settings.OutboundSocketSettings;
 import com.mattunderscore.tcproxy.proxy.settings.ReadSelectorSettings;
+import com.mattunderscore.tcproxy.proxy.statistics.TrafficMonitor;
+import com.mattunderscore.tcproxy.proxy.upstream.Upstream;
+import com.mattunderscore.tcproxy.proxy.upstream.HealthChecker;
+import com.mattunderscore.tcproxy.proxy.upstream.UpstreamGroup;
 import com.mattunderscore.tcproxy.selector.SelectorBackoff;
 import com.mattunderscore.tcproxy.selector.SelectorFactory;
 import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
-import com.mattunderscore.tcproxy.selector.connecting.ConnectionHandlerFactory;
+import com.mattunderscore.tcproxy.selector.connecting.DistributingConnectionHandler;
+import com.mattunderscore.tcproxy.selector.connecting.DistributionPolicy;
 import com.mattunderscore.tcproxy.selector.server.AbstractServerStarter;
 import com.mattunderscore.tcproxy.selector.server.Server;
 
 /**
- * Starter for a proxy server.
+ * Starter for a proxy server. The connection manager, the bytes forwarded, the memory governor and the upstreams are
+ * provided as management beans as well as the statistics of the selectors.
  * @author Matt Champion on 26/11/2015
  */
 final class ProxyServerStarter extends AbstractServerStarter {
     private static final Logger LOG = LoggerFactory.getLogger("server");
     private static final AtomicInteger THREAD_COUNT = new AtomicInteger(0);
     private final SelectorBackoff selectorBackoff;
-    private final ConnectionManager manager;
     private final IOSocketConfiguration<IOSocketChannel, ?> socketSettings;
     private final ReadSelectorSettings readSelectorSettings;
-    private final ConnectionHandlerFactory connectionHandlerFactory;
+    private final ProxyConnectionHandlerFactory connectionHandlerFactory;
+    private final DistributingConnectionHandler distributor;
+    private final ConnectionManager manager;
+    private final TrafficMonitor trafficMonitor = new TrafficMonitor();
+    private final MemoryGovernor governor;
+    private final UpstreamGroup upstreams;
 
     protected ProxyServerStarter(
             IOFactory ioFactory,
             Iterable<Integer> portsToListenOn,
             int selectorThreads,
+            boolean reusePort,
             OutboundSocketSettings outboundSocketSettings,
             SelectorBackoff selectorBackoff,
             ConnectionSettings connectionSettings,
             ConnectionManager manager,
             IOSocketConfiguration<IOSocketChannel, ?> socketSettings,
-            ReadSelectorSettings readSelectorSettings) {
-        super(ioFactory, portsToListenOn, selectorThreads);
+            ReadSelectorSettings readSelectorSettings,
+            BufferPoolMonitor bufferPoolMonitor,
+            DistributionPolicy distributionPolicy,
+            BandwidthSettings bandwidthSettings,
+            LoadBalancingSettings loadBalancingSettings,
+            HealthCheckSettings healthCheckSettings) {
+        super(ioFactory, portsToListenOn, selectorThreads, reusePort);
         this.selectorBackoff = selectorBackoff;
-        this.manager = manager;
         this.socketSettings = socketSettings;
         this.readSelectorSettings = readSelectorSettings;
+        this.manager = manager;
+        governor = connectionSettings.getMemoryBudget() > 0L ?
+            new MemoryGovernor(connectionSettings.getMemoryBudget()) :
+            null;
+        upstreams = UpstreamGroup.create(outboundSocketSettings, loadBalancingSettings, healthCheckSettings);
+        final HealthChecker healthChecker = healthCheckSettings != null && healthCheckSettings.getProbeInterval() > 0L ?
+            new HealthChecker(upstreams, healthCheckSettings) :
+            null;
 
         connectionHandlerFactory = new ProxyConnectionHandlerFactory(
             outboundSocketSettings,
             connectionSettings,
-            manager);
+            manager,
+            readSelectorSettings,
+            bufferPoolMonitor,
+            trafficMonitor,
+            bandwidthSettings,
+            governor,
+            upstreams,
+            healthChecker);
+        distributor = distributionPolicy != null ? new DistributingConnectionHandler(distributionPolicy) : null;
     }
 
     @Override
@@ -104,13 +143,41 @@ final class ProxyServerStarter extends AbstractServerStarter {
     protected SelectorFactory<SocketChannelSelector> getSelectorFactory(final Collection<IOServerSocketChannel> listenChannels) {
         return new ProxySelectorFactory(
             connectionHandlerFactory,
-            manager,
+            readSelectorSettings,
+            selectorBackoff,
+            listenChannels,
+            socketSettings,
+            distributor);
+    }
+
+    @Override
+    protected SelectorFactory<SocketChannelSelector> getAcceptorFactory(final Collection<IOServerSocketChannel> listenChannels) {
+        if (distributor == null) {
+            return null;
+        }
+
+        return new AcceptorSelectorFactory(
+            distributor,
             readSelectorSettings,
             selectorBackoff,
             listenChannels,
             socketSettings);
     }
 
+    @Override
+    public Map<String, Object> getManagementBeans() {
+        final Map<String, Object> beans = super.getManagementBeans();
+        beans.put("type=ConnectionManager", manager);
+        beans.put("type=Traffic", trafficMonitor);
+        if (governor != null) {
+            beans.put("type=MemoryGovernor", governor);
+        }
+        for (final Upstream upstream : upstreams.getUpstreams()) {
+            beans.put("type=Upstream,name=" + ObjectName.quote(upstream.getAddress()), upstream);
+        }
+        return beans;
+    }
+
     private final class ExceptionHandler implements Thread.UncaughtExceptionHandler {
         private final Server server;
 
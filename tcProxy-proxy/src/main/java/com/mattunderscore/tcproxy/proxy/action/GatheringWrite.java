@@ -0,0 +1,174 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.action;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mattunderscore.tcproxy.proxy.direction.Direction;
+
+/**
+ * Write action that gathers the data of several write actions into a single write operation without copying it.
+ * Each write action is released once its data has been written. The action can be reset and reused once it is
+ * complete.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class GatheringWrite implements Action {
+    private static final Logger LOG = LoggerFactory.getLogger("proxy-data-write");
+    private final int batchCapacity;
+    private final WriteAction[] actions;
+    private final ByteBuffer[] buffers;
+    private volatile int offset;
+    private volatile int length;
+    private volatile int batchedBytes;
+    private volatile Direction direction;
+    private volatile boolean dequeued;
+
+    /**
+     * @param maxActions The maximum number of actions to gather
+     * @param batchCapacity The maximum number of bytes to gather
+     */
+    public GatheringWrite(final int maxActions, final int batchCapacity) {
+        this.batchCapacity = batchCapacity;
+        actions = new WriteAction[maxActions];
+        buffers = new ByteBuffer[maxActions];
+        reset();
+    }
+
+    @Override
+    public int writeToSocket() throws IOException {
+        if (LOG.isTraceEnabled()) {
+            for (int i = offset; i < length; i++) {
+                final ByteBuffer data = buffers[i];
+                final int position = data.position();
+
+                // Read data into byte array
+                final byte[] bytes = new byte[data.remaining()];
+                data.get(bytes);
+
+                // Log written data
+                LOG.trace("{} data: {}", direction, new String(bytes));
+
+                // Return to initial position
+                data.position(position);
+            }
+        }
+
+        if (!dequeued) {
+            dequeued = true;
+            for (int i = offset; i < length; i++) {
+                direction.dataDequeued(actions[i].getReadTime());
+            }
+        }
+
+        final long written = direction.write(buffers, offset, length - offset);
+        releaseWritten();
+        return (int) written;
+    }
+
+    @Override
+    public boolean writeComplete() {
+        releaseWritten();
+        return offset == length;
+    }
+
+    /**
+     * Add the action to the batch. The first action is always accepted.
+     * @param action The action
+     * @return {@code true} if the action was added
+     */
+    public boolean batch(final WriteAction action) {
+        final int bytes = action.getData().remaining();
+        if (length == actions.length || (length > 0 && batchedBytes + bytes > batchCapacity)) {
+            return false;
+        }
+
+        actions[length] = action;
+        buffers[length] = action.getData();
+        batchedBytes = batchedBytes + bytes;
+        direction = action.getDirection();
+        length = length + 1;
+        return true;
+    }
+
+    /**
+     * @return The number of actions in the batch
+     */
+    public int size() {
+        return length;
+    }
+
+    /**
+     * @return The number of bytes in the batch when it was gathered
+     */
+    public int bytes() {
+        return batchedBytes;
+    }
+
+    /**
+     * Empty the batch so it can be reused. Any actions that have not been written are discarded without being
+     * released.
+     */
+    public void reset() {
+        for (int i = offset; i < length; i++) {
+            actions[i] = null;
+            buffers[i] = null;
+        }
+        offset = 0;
+        length = 0;
+        batchedBytes = 0;
+        direction = null;
+        dequeued = false;
+    }
+
+    /**
+     * Release the actions that have not been written and empty the batch. Used when the batch will not be written.
+     */
+    public void release() {
+        for (int i = offset; i < length; i++) {
+            actions[i].release();
+        }
+        reset();
+    }
+
+    /**
+     * Release the actions that have been completely written.
+     */
+    private void releaseWritten() {
+        int newOffset = offset;
+        while (newOffset < length && !buffers[newOffset].hasRemaining()) {
+            direction.dataForwarded(actions[newOffset].getReadTime());
+            actions[newOffset].release();
+            actions[newOffset] = null;
+            buffers[newOffset] = null;
+            newOffset++;
+        }
+        offset = newOffset;
+    }
+}
@@ -25,6 +25,8 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 
 package com.mattunderscore.tcproxy.proxy.action;
 
+import com.mattunderscore.tcproxy.proxy.buffer.BufferPool;
+import com.mattunderscore.tcproxy.proxy.buffer.UnpooledBufferPool;
 import com.mattunderscore.tcproxy.proxy.direction.Direction;
 
 import java.io.IOException;
@@ -41,10 +43,37 @@ public final class Write implements Action, WriteAction {
     private static final Logger LOG = LoggerFactory.getLogger("proxy-data-write");
     final Direction direction;
     final ByteBuffer data;
+    private final BufferPool pool;
+    private final long readTime;
+    private volatile boolean dequeued;
+    private volatile boolean released;
 
     public Write(final Direction direction, final ByteBuffer data) {
+        this(direction, data, UnpooledBufferPool.get());
+    }
+
+    /**
+     * @param direction The direction to write to
+     * @param data The data to write
+     * @param pool The pool the data was acquired from, it is released once written
+     */
+    public Write(final Direction direction, final ByteBuffer data, final BufferPool pool) {
+        this(direction, data, pool, System.nanoTime());
+    }
+
+    /**
+     * @param direction The direction to write to
+     * @param data The data to write
+     * @param pool The pool the data was acquired from, it is released once written
+     * @param readTime The value of {@link System#nanoTime()} when the data was read
+     */
+    public Write(final Direction direction, final ByteBuffer data, final BufferPool pool, final long readTime) {
         this.direction = direction;
         this.data = data;
+        this.pool = pool;
+        this.readTime = readTime;
+        dequeued = false;
+        released = false;
     }
 
     @Override
@@ -63,12 +92,23 @@ public final class Write implements Action, WriteAction {
             data.position(position);
         }
 
-        return direction.write(data);
+        if (!dequeued) {
+            dequeued = true;
+            direction.dataDequeued(readTime);
+        }
+
+        final int written = direction.write(data);
+        if (data.remaining() == 0) {
+            direction.dataForwarded(readTime);
+            release();
+        }
+        return written;
     }
 
     @Override
     public boolean writeComplete() {
-        return data.remaining() == 0;
+        // Once released the buffer may have been reused
+        return released || data.remaining() == 0;
     }
 
     @Override
@@ -80,4 +120,17 @@ public final class Write implements Action, WriteAction {
     public Direction getDirection() {
         return direction;
     }
+
+    @Override
+    public long getReadTime() {
+        return readTime;
+    }
+
+    @Override
+    public void release() {
+        if (!released) {
+            released = true;
+            pool.release(data);
+        }
+    }
 }
@@ -37,4 +37,14 @@ public interface WriteAction extends Action {
     ByteBuffer getData();
 
     Direction getDirection();
+
+    /**
+     * @return The value of {@link System#nanoTime()} when the data was read
+     */
+    long getReadTime();
+
+    /**
+     * Release the data once it has been consumed. The data must not be used afterwards.
+     */
+    void release();
 }
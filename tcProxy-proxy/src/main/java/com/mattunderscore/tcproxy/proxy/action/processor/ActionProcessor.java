@@ -40,8 +40,9 @@ public interface ActionProcessor {
     void process(Action action);
 
     /**
-     * Block until the processor is finished
-     * @throws InterruptedException If interrupted while flushing
+     * Pass on the actions held by the processor as soon as the next processor can take them. Called by the selector
+     * thread of the direction until it returns true before the processor is removed from the chain.
+     * @return {@code true} if the processor holds no actions
      */
-    void flush() throws InterruptedException;
+    boolean flush();
 }
@@ -32,7 +32,8 @@ import com.mattunderscore.tcproxy.proxy.direction.Direction;
 
 /**
  * ActionProcessor that puts the action on the directions action queue and the direction on the new direction queue if
- * the action queue is empty.
+ * the action queue is empty. It must be called by the selector thread of the direction, which also consumes the queue,
+ * see {@link ActionQueue}.
  * @author Matt Champion on 22/03/14.
  */
 public final class DefaultActionProcessor implements ActionProcessor {
@@ -53,16 +54,15 @@ public final class DefaultActionProcessor implements ActionProcessor {
 
     @Override
     public void process(final Action action) {
-        synchronized (actionQueue) {
-            final boolean hasData = actionQueue.hasData();
-            actionQueue.add(action);
-            if (!hasData) {
-                connection.needsWrite(direction);
-            }
+        final boolean hasData = actionQueue.hasData() || direction.hasSplicedData();
+        actionQueue.add(action);
+        if (!hasData) {
+            connection.needsWrite(direction);
         }
     }
 
     @Override
-    public synchronized void flush() {
+    public boolean flush() {
+        return true;
     }
 }
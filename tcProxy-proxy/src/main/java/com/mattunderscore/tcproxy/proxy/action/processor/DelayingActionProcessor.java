@@ -25,59 +25,116 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 
 package com.mattunderscore.tcproxy.proxy.action.processor;
 
-import com.mattunderscore.tcproxy.proxy.action.Action;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.ArrayDeque;
+import java.util.Queue;
 import java.util.concurrent.TimeUnit;
 
+import com.mattunderscore.tcproxy.proxy.action.Action;
+import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueue;
+import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
+
 /**
- * ActionProcessor that delays calling the next processor in the chain.
+ * ActionProcessor that delays calling the next processor in the chain. Every action is delayed by the same amount so
+ * the actions are held in the order they were processed and only the oldest needs a timer. The timer is run by the
+ * selector that handles the direction, it passes on each action that is due and schedules itself again for the next.
+ * The delayed actions are held against the queue of the direction so reading is suspended while too many are delayed.
+ * No more actions are passed on than the queue has room for, the rest are retried shortly after.
  * @author Matt Champion on 22/03/14.
  */
 public final class DelayingActionProcessor implements ActionProcessor {
+    private static final long FULL_QUEUE_RETRY = MILLISECONDS.toNanos(1L);
     private final ActionProcessor processor;
-    private final ScheduledExecutorService executorService;
+    private final ActionQueue queue;
+    private final SocketChannelSelector selector;
     private final long delay;
-    private final TimeUnit delayUnits;
+    private final Queue<DelayedAction> delayedActions = new ArrayDeque<>();
+    private final Runnable releaseTask = new ReleaseTask();
+    private boolean releaseScheduled;
+    private boolean flushing;
 
     /**
      *
      * @param processor The next processor in the chain.
-     * @param executorService The executor that is used to call the next action processor after the delay
+     * @param queue The queue of the direction the delayed actions are held against
+     * @param selector The selector that is used to call the next action processor after the delay
      * @param delay The magnitude of the delay
      * @param delayUnits The unit of the delay
      */
-    public DelayingActionProcessor(ActionProcessor processor, ScheduledExecutorService executorService, long delay, TimeUnit delayUnits) {
+    public DelayingActionProcessor(ActionProcessor processor, ActionQueue queue, SocketChannelSelector selector,
+                                   long delay, TimeUnit delayUnits) {
         this.processor = processor;
-        this.executorService = executorService;
-        this.delay = delay;
-        this.delayUnits = delayUnits;
+        this.queue = queue;
+        this.selector = selector;
+        this.delay = delayUnits.toNanos(delay);
     }
 
     @Override
     public void process(final Action action) {
-        executorService.schedule(new DelayedTask(action), delay, delayUnits);
+        final long now = System.nanoTime();
+        queue.hold(action);
+        delayedActions.add(new DelayedAction(action, now + delay));
+        if (flushing) {
+            release(now);
+        }
+        else {
+            scheduleRelease(delay);
+        }
     }
 
     @Override
-    public void flush() throws InterruptedException {
-        executorService.shutdown();
-        executorService.awaitTermination(delay * 2, delayUnits);
+    public boolean flush() {
+        // Pass on the delayed actions without waiting so none are left behind when the processor is removed
+        flushing = true;
+        release(System.nanoTime());
+        return delayedActions.isEmpty();
+    }
+
+    private void release(long now) {
+        DelayedAction delayedAction = delayedActions.peek();
+        while (delayedAction != null && (flushing || delayedAction.deadline - now <= 0L) && !queue.queueFull()) {
+            delayedActions.poll();
+            queue.unhold(delayedAction.action);
+            processor.process(delayedAction.action);
+            delayedAction = delayedActions.peek();
+        }
+
+        if (delayedAction != null) {
+            final long untilDue = delayedAction.deadline - now;
+            scheduleRelease(flushing || untilDue <= 0L ? FULL_QUEUE_RETRY : untilDue);
+        }
+    }
+
+    private void scheduleRelease(long releaseDelay) {
+        if (!releaseScheduled) {
+            releaseScheduled = true;
+            selector.schedule(releaseTask, releaseDelay, NANOSECONDS);
+        }
     }
 
     /**
-     * Task for calling the next processor.
+     * An action and the time it can be passed on.
      */
-    private final class DelayedTask implements Runnable {
+    private static final class DelayedAction {
         private final Action action;
+        private final long deadline;
 
-        public DelayedTask(final Action action) {
+        public DelayedAction(Action action, long deadline) {
             this.action = action;
+            this.deadline = deadline;
         }
+    }
 
+    /**
+     * Task for calling the next processor.
+     */
+    private final class ReleaseTask implements Runnable {
         @Override
         public void run() {
-            processor.process(action);
+            releaseScheduled = false;
+            release(System.nanoTime());
         }
     }
 }
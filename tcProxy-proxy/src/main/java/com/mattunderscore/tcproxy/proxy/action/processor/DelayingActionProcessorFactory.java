@@ -26,12 +26,12 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 package com.mattunderscore.tcproxy.proxy.action.processor;
 
 import com.mattunderscore.tcproxy.proxy.direction.Direction;
+import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
+ * Factory for processors that delay actions. The delays are timed by the selector that handles the direction.
  * @author matt on 25/08/14.
  */
 public final class DelayingActionProcessorFactory implements ActionProcessorFactory {
@@ -45,7 +45,15 @@ public final class DelayingActionProcessorFactory implements ActionProcessorFact
 
     @Override
     public ActionProcessor create(Direction direction) {
-        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-        return new DelayingActionProcessor(direction.getProcessor(), executor, delay, delayUnits);
+        final SocketChannelSelector selector = direction.getSelector();
+        if (selector == null) {
+            throw new IllegalStateException("The direction is not handled by a selector");
+        }
+        return new DelayingActionProcessor(
+            direction.getProcessor(),
+            direction.getQueue(),
+            selector,
+            delay,
+            delayUnits);
     }
 }
@@ -0,0 +1,177 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.action.processor;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import com.mattunderscore.tcproxy.proxy.action.Action;
+import com.mattunderscore.tcproxy.proxy.action.Write;
+import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueue;
+import com.mattunderscore.tcproxy.proxy.buffer.UnpooledBufferPool;
+import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
+
+/**
+ * ActionProcessor that limits the rate data is passed to the next processor in the chain using a {@link TokenBucket}.
+ * Writes larger than the tokens available are split, the granted slice is passed on and the rest is held until the
+ * bucket has refilled. The slices share the buffer of the original write, which is released once the last slice has
+ * been written. The slices keep the time the original write was read so the time spent waiting for tokens is
+ * included in its latency. Other actions are held behind any held writes so the order is preserved. Held actions are
+ * released by a task run by the selector that handles the direction. The held actions are held against the queue of
+ * the direction so reading is suspended while too many are held. No more actions are passed on than the queue has room
+ * for, the rest are retried shortly after.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class ShapingActionProcessor implements ActionProcessor {
+    /**
+     * The smallest slice waited for. Avoids passing on many tiny writes while the bucket is empty.
+     */
+    private static final long MINIMUM_SLICE = 1024L;
+    private static final long FULL_QUEUE_RETRY = MILLISECONDS.toNanos(1L);
+    private final ActionProcessor processor;
+    private final ActionQueue queue;
+    private final SocketChannelSelector selector;
+    private final TokenBucket bucket;
+    private final Queue<Action> heldActions = new ArrayDeque<>();
+    private final Runnable releaseTask = new ReleaseTask();
+    private boolean releaseScheduled;
+    private boolean flushing;
+
+    /**
+     * @param processor The next processor in the chain
+     * @param queue The queue of the direction the held actions are held against
+     * @param selector The selector used to release held actions
+     * @param bucket The bucket to take tokens from
+     */
+    public ShapingActionProcessor(ActionProcessor processor, ActionQueue queue, SocketChannelSelector selector,
+                                  TokenBucket bucket) {
+        this.processor = processor;
+        this.queue = queue;
+        this.selector = selector;
+        this.bucket = bucket;
+    }
+
+    @Override
+    public void process(Action action) {
+        final long now = System.nanoTime();
+        if (heldActions.isEmpty() && !queue.queueFull() && forward(action, now)) {
+            return;
+        }
+
+        // Held after forwarding so only the remainder of a split write is counted
+        queue.hold(action);
+        heldActions.add(action);
+        scheduleRelease(now);
+    }
+
+    @Override
+    public boolean flush() {
+        // Pass on the held actions without waiting for tokens so none are left behind when the processor is removed
+        flushing = true;
+        release(System.nanoTime());
+        return heldActions.isEmpty();
+    }
+
+    /**
+     * Pass on as much of an action as the bucket allows.
+     * @return True if the whole action was passed on
+     */
+    private boolean forward(Action action, long now) {
+        if (!(action instanceof Write) || flushing) {
+            processor.process(action);
+            return true;
+        }
+
+        final Write write = (Write) action;
+        final ByteBuffer data = write.getData();
+        final int remaining = data.remaining();
+        final int granted = (int) bucket.take(remaining, now);
+        if (granted == remaining) {
+            processor.process(write);
+            return true;
+        }
+        else if (granted > 0) {
+            final ByteBuffer slice = data.duplicate();
+            slice.limit(data.position() + granted);
+            data.position(data.position() + granted);
+            // Releasing a slice must not return the shared buffer to the pool
+            processor.process(new Write(write.getDirection(), slice, UnpooledBufferPool.get(), write.getReadTime()));
+        }
+        return false;
+    }
+
+    private void release(long now) {
+        Action action = heldActions.peek();
+        while (action != null && !queue.queueFull()) {
+            queue.unhold(action);
+            if (!forward(action, now)) {
+                queue.hold(action);
+                break;
+            }
+            heldActions.poll();
+            action = heldActions.peek();
+        }
+
+        if (action != null) {
+            scheduleRelease(now);
+        }
+    }
+
+    private void scheduleRelease(long now) {
+        if (releaseScheduled) {
+            return;
+        }
+
+        final long releaseDelay;
+        if (flushing || queue.queueFull()) {
+            releaseDelay = FULL_QUEUE_RETRY;
+        }
+        else {
+            final Action action = heldActions.peek();
+            final long wanted = action instanceof Write ?
+                Math.min(((Write) action).getData().remaining(), MINIMUM_SLICE) :
+                0L;
+            releaseDelay = bucket.nanosUntilAvailable(wanted, now);
+        }
+        releaseScheduled = true;
+        selector.schedule(releaseTask, releaseDelay, NANOSECONDS);
+    }
+
+    /**
+     * Task for releasing held actions.
+     */
+    private final class ReleaseTask implements Runnable {
+        @Override
+        public void run() {
+            releaseScheduled = false;
+            release(System.nanoTime());
+        }
+    }
+}
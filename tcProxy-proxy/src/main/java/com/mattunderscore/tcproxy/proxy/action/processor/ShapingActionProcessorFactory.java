@@ -0,0 +1,75 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.action.processor;
+
+import com.mattunderscore.tcproxy.proxy.direction.Direction;
+import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
+
+/**
+ * Factory for processors that limit the rate of each direction they are chained to. Each direction gets its own
+ * {@link TokenBucket}, the buckets share a parent to limit several directions together. Without a rate for the
+ * directions the parent is used directly.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class ShapingActionProcessorFactory implements ActionProcessorFactory {
+    private final TokenBucket parent;
+    private final long bytesPerSecond;
+    private final long burstSize;
+
+    /**
+     * Constructor for a factory that limits each direction independently.
+     * @param bytesPerSecond The rate each direction is limited to
+     * @param burstSize The largest burst each direction is allowed
+     */
+    public ShapingActionProcessorFactory(long bytesPerSecond, long burstSize) {
+        this(null, bytesPerSecond, burstSize);
+    }
+
+    /**
+     * @param parent The bucket shared by the directions, may be null
+     * @param bytesPerSecond The rate each direction is limited to, zero to only apply the parent
+     * @param burstSize The largest burst each direction is allowed
+     */
+    public ShapingActionProcessorFactory(TokenBucket parent, long bytesPerSecond, long burstSize) {
+        if (parent == null && bytesPerSecond <= 0L) {
+            throw new IllegalArgumentException("Either a parent bucket or a rate is required");
+        }
+        this.parent = parent;
+        this.bytesPerSecond = bytesPerSecond;
+        this.burstSize = burstSize;
+    }
+
+    @Override
+    public ActionProcessor create(Direction direction) {
+        final SocketChannelSelector selector = direction.getSelector();
+        if (selector == null) {
+            throw new IllegalStateException("The direction is not handled by a selector");
+        }
+
+        final TokenBucket bucket = bytesPerSecond > 0L ? new TokenBucket(bytesPerSecond, burstSize, parent) : parent;
+        return new ShapingActionProcessor(direction.getProcessor(), direction.getQueue(), selector, bucket);
+    }
+}
@@ -0,0 +1,138 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.action.processor;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * A token bucket that limits the rate bytes can be sent at. The bucket is refilled when tokens are taken, using the
+ * time provided by the caller, so it needs no timer thread. A bucket can have a parent, bytes are only granted when
+ * both buckets have tokens for them. A parent can be shared by the buckets of several directions, connections or
+ * selectors to apply a combined limit.
+ * @author Matt Champion on 18/10/2016
+ */
+@ThreadSafe
+public final class TokenBucket {
+    private static final long NANOS_PER_SECOND = SECONDS.toNanos(1L);
+    private final long bytesPerSecond;
+    private final long capacity;
+    private final long nanosToFill;
+    private final TokenBucket parent;
+    @GuardedBy("this")
+    private long tokens;
+    @GuardedBy("this")
+    private long lastRefill;
+
+    /**
+     * Constructor for a bucket without a parent.
+     * @param bytesPerSecond The rate the bucket is refilled at
+     * @param capacity The number of bytes the bucket can hold, the largest burst allowed
+     */
+    public TokenBucket(long bytesPerSecond, long capacity) {
+        this(bytesPerSecond, capacity, null);
+    }
+
+    /**
+     * Constructor. The bucket starts full.
+     * @param bytesPerSecond The rate the bucket is refilled at
+     * @param capacity The number of bytes the bucket can hold, the largest burst allowed
+     * @param parent The bucket bytes must also be taken from, may be null
+     */
+    public TokenBucket(long bytesPerSecond, long capacity, TokenBucket parent) {
+        if (bytesPerSecond <= 0L) {
+            throw new IllegalArgumentException("The rate must be greater than zero");
+        }
+        if (capacity <= 0L || capacity > Long.MAX_VALUE / NANOS_PER_SECOND) {
+            throw new IllegalArgumentException("The capacity must be greater than zero and fewer than 2^33 bytes");
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        this.capacity = capacity;
+        this.parent = parent;
+        nanosToFill = capacity * NANOS_PER_SECOND / bytesPerSecond;
+        tokens = capacity;
+        lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take up to the requested number of bytes from this bucket and its parents.
+     * @param requested The number of bytes wanted
+     * @param now The value of {@link System#nanoTime()}
+     * @return The number of bytes granted, between zero and the number requested
+     */
+    public synchronized long take(long requested, long now) {
+        refill(now);
+        long granted = Math.min(requested, tokens);
+        if (granted <= 0L) {
+            return 0L;
+        }
+
+        if (parent != null) {
+            granted = parent.take(granted, now);
+        }
+        tokens -= granted;
+        return granted;
+    }
+
+    /**
+     * @param bytes The number of bytes wanted, limited to the capacity of the buckets
+     * @param now The value of {@link System#nanoTime()}
+     * @return The time in nanoseconds until this bucket and its parents can grant the bytes
+     */
+    public synchronized long nanosUntilAvailable(long bytes, long now) {
+        refill(now);
+        final long wanted = Math.min(bytes, capacity);
+        final long missing = wanted - tokens;
+        final long wait = missing <= 0L ? 0L : (missing * NANOS_PER_SECOND + bytesPerSecond - 1L) / bytesPerSecond;
+        if (parent != null) {
+            return Math.max(wait, parent.nanosUntilAvailable(wanted, now));
+        }
+        return wait;
+    }
+
+    @GuardedBy("this")
+    private void refill(long now) {
+        final long elapsed = now - lastRefill;
+        if (elapsed <= 0L) {
+            return;
+        }
+
+        if (elapsed >= nanosToFill) {
+            tokens = capacity;
+            lastRefill = now;
+        }
+        else {
+            final long added = elapsed * bytesPerSecond / NANOS_PER_SECOND;
+            if (added > 0L) {
+                tokens = Math.min(capacity, tokens + added);
+                // Keep the time not yet turned into tokens
+                lastRefill += added * NANOS_PER_SECOND / bytesPerSecond;
+            }
+        }
+    }
+}
@@ -46,12 +46,16 @@ public final class WriteDroppingActionProcessor implements ActionProcessor {
 
     @Override
     public void process(final Action action) {
-        if (!(action instanceof Write)) {
+        if (action instanceof Write) {
+            ((Write) action).release();
+        }
+        else {
             processor.process(action);
         }
     }
 
     @Override
-    public void flush() {
+    public boolean flush() {
+        return true;
     }
 }
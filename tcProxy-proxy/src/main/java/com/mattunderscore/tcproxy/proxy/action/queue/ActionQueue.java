@@ -28,7 +28,9 @@ package com.mattunderscore.tcproxy.proxy.action.queue;
 import com.mattunderscore.tcproxy.proxy.action.Action;
 
 /**
- * The queue of actions for a single direction. Exposes the head head of the queue.
+ * The queue of actions for a single direction. Exposes the head head of the queue. The queue is confined to the
+ * selector thread of the direction, it is the only thread that adds actions and consumes them. Callers do not lock
+ * the queue, a queue of type {@link ActionQueueType#SINGLE_PRODUCER} relies on this.
  * @author Matt Champion on 19/02/14.
  */
 public interface ActionQueue {
@@ -38,9 +40,42 @@ public interface ActionQueue {
      */
     boolean queueFull();
 
+    /**
+     * Reading the source of the direction should be suspended when the queue is above the high watermark.
+     * @return If the queue is at or above the high watermark
+     */
+    boolean aboveHighWatermark();
+
+    /**
+     * Reading the source of the direction can be resumed when the queue is below the low watermark.
+     * @return If the queue is at or below the low watermark
+     */
+    boolean belowLowWatermark();
+
+    /**
+     * @return The number of bytes held by the queue, including the head action until it is complete and the actions
+     * held by processors
+     */
+    long queuedBytes();
+
+    /**
+     * Count an action held by a processor of the direction before it is added to the queue. Held actions count towards
+     * the watermarks and their bytes are counted as queued, so reading is suspended while processors hold too much.
+     * @param action The held action
+     */
+    void hold(Action action);
+
+    /**
+     * Stop counting an action held by a processor. Called before the action is passed on and must not be called after
+     * the data of the action has been changed.
+     * @param action The held action
+     */
+    void unhold(Action action);
+
     /**
      * Queue a new action
      * @param action The action
+     * @throws IllegalStateException If the queue is full
      */
     void add(final Action action);
 
@@ -53,4 +88,11 @@ public interface ActionQueue {
      * @return If there are any queued actions
      */
     boolean hasData();
+
+    /**
+     * Discard the queued actions once the direction is closed and will not write them. The bytes they hold are no
+     * longer counted. Write actions added afterwards are released without being counted. Must be called by the thread
+     * that consumes the queue.
+     */
+    void discard();
 }
@@ -25,35 +25,164 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 
 package com.mattunderscore.tcproxy.proxy.action.queue;
 
+import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.mattunderscore.tcproxy.proxy.action.Action;
-import com.mattunderscore.tcproxy.proxy.action.BatchedWrite;
+import com.mattunderscore.tcproxy.proxy.action.GatheringWrite;
 import com.mattunderscore.tcproxy.proxy.action.WriteAction;
 
 /**
- * Implementation of {@link ActionQueue}.
+ * Implementation of {@link ActionQueue}. The actions can be held by a lock based queue or a lock-free ring buffer,
+ * see {@link ActionQueueType}. The watermarks are compared against the number of queued actions. By default the high
+ * watermark is the size of the queue and the low watermark is half of it. The bytes held by write actions are counted
+ * from when they are added until they have been completely written. If a byte limit is set the queue is above its
+ * high watermark once it holds that many bytes and below its low watermark once it holds half of them. The bytes are
+ * also charged to a {@link MemoryGovernor} shared with other queues if one is provided. Actions held by processors
+ * before they are added are counted in the same way. Once discarded the queue releases any write actions added to it
+ * without charging them.
  * @author Matt Champion on 19/02/14.
  */
 public final class ActionQueueImpl implements ActionQueue {
-    private final int batchSize;
-    private final BlockingQueue<Action> actions;
+    private static final int MAX_GATHERED_WRITES = 64;
+    private final int queueSize;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final long maxQueuedBytes;
+    private final MemoryGovernor governor;
+    private final AtomicLong queuedBytes = new AtomicLong(0L);
+    private final Queue<Action> actions;
+    private final GatheringWrite gatheringWrite;
     private volatile Action current = null;
+    private volatile int currentBytes = 0;
+    private volatile int heldActions = 0;
+    private volatile boolean discarded = false;
 
     public ActionQueueImpl(final int queueSize, final int batchSize) {
-        this.batchSize = batchSize;
-        this.actions = new ArrayBlockingQueue<>(queueSize);
+        this(queueSize, batchSize, ActionQueueType.BLOCKING);
+    }
+
+    /**
+     * @param queueSize The maximum number of actions queued
+     * @param batchSize The maximum number of bytes gathered into a single write
+     * @param type The type of queue to hold the actions in
+     */
+    public ActionQueueImpl(final int queueSize, final int batchSize, final ActionQueueType type) {
+        this(queueSize, batchSize, type, queueSize, queueSize / 2);
+    }
+
+    /**
+     * @param queueSize The maximum number of actions queued
+     * @param batchSize The maximum number of bytes gathered into a single write
+     * @param type The type of queue to hold the actions in
+     * @param highWatermark The number of queued actions at or above which reading is suspended
+     * @param lowWatermark The number of queued actions at or below which reading is resumed
+     */
+    public ActionQueueImpl(
+            final int queueSize,
+            final int batchSize,
+            final ActionQueueType type,
+            final int highWatermark,
+            final int lowWatermark) {
+        this(queueSize, batchSize, type, highWatermark, lowWatermark, 0L, null);
+    }
+
+    /**
+     * @param queueSize The maximum number of actions queued
+     * @param batchSize The maximum number of bytes gathered into a single write
+     * @param type The type of queue to hold the actions in
+     * @param highWatermark The number of queued actions at or above which reading is suspended
+     * @param lowWatermark The number of queued actions at or below which reading is resumed
+     * @param maxQueuedBytes The number of queued bytes at or above which reading is suspended, zero for no limit
+     * @param governor The governor to charge the queued bytes to, may be null
+     */
+    public ActionQueueImpl(
+            final int queueSize,
+            final int batchSize,
+            final ActionQueueType type,
+            final int highWatermark,
+            final int lowWatermark,
+            final long maxQueuedBytes,
+            final MemoryGovernor governor) {
+        if (highWatermark <= 0 || highWatermark > queueSize) {
+            throw new IllegalArgumentException("The high watermark must be greater than zero and no more than the queue size");
+        }
+        if (lowWatermark < 0 || lowWatermark >= highWatermark) {
+            throw new IllegalArgumentException("The low watermark must be less than the high watermark");
+        }
+        if (maxQueuedBytes < 0L) {
+            throw new IllegalArgumentException("The maximum number of queued bytes must not be negative");
+        }
+        this.queueSize = queueSize;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.governor = governor;
+        this.actions = createQueue(queueSize, type);
+        gatheringWrite = new GatheringWrite(Math.min(queueSize, MAX_GATHERED_WRITES), batchSize);
     }
 
     @Override
     public boolean queueFull() {
-        return actions.remainingCapacity() == 0;
+        return actions.size() >= queueSize;
+    }
+
+    @Override
+    public boolean aboveHighWatermark() {
+        final long bytes = queuedBytes.get();
+        return actions.size() + heldActions >= highWatermark ||
+            (maxQueuedBytes > 0L && bytes >= maxQueuedBytes) ||
+            (governor != null && governor.shouldPause(bytes));
+    }
+
+    @Override
+    public boolean belowLowWatermark() {
+        final long bytes = queuedBytes.get();
+        return actions.size() + heldActions <= lowWatermark &&
+            (maxQueuedBytes == 0L || bytes <= maxQueuedBytes / 2) &&
+            (governor == null || governor.canResume(bytes));
+    }
+
+    @Override
+    public long queuedBytes() {
+        return queuedBytes.get();
+    }
+
+    @Override
+    public void hold(final Action action) {
+        heldActions++;
+        charge(bytes(action));
+    }
+
+    @Override
+    public void unhold(final Action action) {
+        heldActions--;
+        credit(bytes(action));
     }
 
     @Override
     public void add(final Action action) {
-        actions.add(action);
+        if (discarded) {
+            // Nothing will consume the action
+            release(action);
+            return;
+        }
+
+        final int bytes = bytes(action);
+        // Charge the bytes before the action can be consumed
+        charge(bytes);
+        if (!actions.offer(action)) {
+            credit(bytes);
+            throw new IllegalStateException("Queue full");
+        }
+
+        if (discarded) {
+            // Discarded while the action was added, it may have been missed
+            synchronized (this) {
+                drain();
+            }
+        }
     }
 
     @Override
@@ -64,6 +193,8 @@ public final class ActionQueueImpl implements ActionQueue {
             return currentAction;
         }
         else {
+            credit(currentBytes);
+            currentBytes = 0;
             final Action batchedAction = pollActions();
             current = batchedAction;
             return batchedAction;
@@ -71,34 +202,35 @@ public final class ActionQueueImpl implements ActionQueue {
     }
 
     /**
-     * Polls the next action from the queue, batching multiple write actions.
+     * Polls the next action from the queue, gathering consecutive write actions into a single write. The gathering
+     * write is reused, it is only polled for once the previous head action is complete.
      */
     private Action pollActions() {
-        final BatchedWrite batchedWrite = new BatchedWrite(batchSize);
-        boolean batchedData = false;
+        final Action firstAction = actions.poll();
+        if (!(firstAction instanceof WriteAction)) {
+            return firstAction;
+        }
+        else if (!(actions.peek() instanceof WriteAction)) {
+            currentBytes = ((WriteAction) firstAction).getData().remaining();
+            return firstAction;
+        }
+
+        gatheringWrite.reset();
+        gatheringWrite.batch((WriteAction) firstAction);
         while (true) {
             final Action nextAction = actions.peek();
-            if (nextAction != null && nextAction instanceof WriteAction) {
-                if (batchedWrite.batch((WriteAction)nextAction)) {
-                    batchedData = true;
-                    actions.poll();
-                }
-                else {
-                    if (batchedData) {
-                        return batchedWrite;
-                    }
-                    else {
-                        return actions.poll();
-                    }
-                }
+            if (nextAction instanceof WriteAction && gatheringWrite.batch((WriteAction) nextAction)) {
+                actions.poll();
+            }
+            else if (gatheringWrite.size() == 1) {
+                // Nothing could be gathered with the first action
+                gatheringWrite.reset();
+                currentBytes = ((WriteAction) firstAction).getData().remaining();
+                return firstAction;
             }
             else {
-                if (batchedData) {
-                    return batchedWrite;
-                }
-                else {
-                    return actions.poll();
-                }
+                currentBytes = gatheringWrite.bytes();
+                return gatheringWrite;
             }
         }
     }
@@ -108,4 +240,78 @@ public final class ActionQueueImpl implements ActionQueue {
         return head() != null;
     }
 
+    @Override
+    public synchronized void discard() {
+        if (discarded) {
+            return;
+        }
+
+        discarded = true;
+        drain();
+        // The head may hold data that has not been written
+        final Action currentAction = current;
+        current = null;
+        release(currentAction);
+        credit(currentBytes);
+        currentBytes = 0;
+    }
+
+    /**
+     * Remove and release the queued actions, crediting the bytes they hold. Only called once the queue is discarded
+     * and while holding the lock, so the queue is only polled by one thread at a time.
+     */
+    private void drain() {
+        Action action = actions.poll();
+        while (action != null) {
+            if (action instanceof WriteAction) {
+                credit(((WriteAction) action).getData().remaining());
+            }
+            release(action);
+            action = actions.poll();
+        }
+    }
+
+    private static int bytes(final Action action) {
+        return action instanceof WriteAction ? ((WriteAction) action).getData().remaining() : 0;
+    }
+
+    private static void release(final Action action) {
+        if (action instanceof WriteAction) {
+            ((WriteAction) action).release();
+        }
+        else if (action instanceof GatheringWrite) {
+            ((GatheringWrite) action).release();
+        }
+    }
+
+    private void charge(final int bytes) {
+        if (bytes > 0) {
+            final long previousBytes = queuedBytes.getAndAdd(bytes);
+            if (governor != null) {
+                governor.charge(bytes, previousBytes == 0L);
+            }
+        }
+    }
+
+    private void credit(final int bytes) {
+        if (bytes > 0) {
+            final long remainingBytes = queuedBytes.addAndGet(-bytes);
+            if (governor != null) {
+                governor.credit(bytes, remainingBytes == 0L);
+            }
+        }
+    }
+
+    private static Queue<Action> createQueue(final int queueSize, final ActionQueueType type) {
+        switch (type) {
+            case BLOCKING:
+                return new ArrayBlockingQueue<>(queueSize);
+            case SINGLE_PRODUCER:
+                return new SingleProducerRingBuffer<>(queueSize);
+            case MULTI_PRODUCER:
+                return new MultiProducerRingBuffer<>(queueSize);
+            default:
+                throw new IllegalArgumentException("Unsupported queue type " + type);
+        }
+    }
 }
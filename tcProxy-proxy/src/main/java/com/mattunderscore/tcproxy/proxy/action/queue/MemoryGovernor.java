@@ -0,0 +1,131 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.action.queue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * A budget for the bytes held by all the action queues of a server. Each queue charges the bytes it holds against the
+ * budget. Once three quarters of the budget is used the governor is under pressure and queues holding more than their
+ * fair share of the budget should stop reading, so the largest consumers are paused first. Once the whole budget is
+ * used every queue holding data should stop reading. A paused queue can resume reading when it holds less than half
+ * its fair share or when usage has fallen below half the budget. The budget is not a hard limit, a queue can go over
+ * it by the data already read.
+ * @author Matt Champion on 18/10/2016
+ */
+@ThreadSafe
+public final class MemoryGovernor implements MemoryGovernorMBean {
+    private final long budget;
+    private final long pressureThreshold;
+    private final long reliefThreshold;
+    private final AtomicLong queuedBytes = new AtomicLong(0L);
+    private final AtomicInteger consumerCount = new AtomicInteger(0);
+
+    /**
+     * @param budget The number of bytes that can be queued by all the action queues
+     */
+    public MemoryGovernor(long budget) {
+        if (budget <= 0L) {
+            throw new IllegalArgumentException("The budget must be greater than zero");
+        }
+        this.budget = budget;
+        pressureThreshold = budget - (budget / 4);
+        reliefThreshold = budget / 2;
+    }
+
+    /**
+     * Charge bytes queued by a consumer against the budget.
+     * @param bytes The number of bytes
+     * @param firstBytes If the consumer was not holding any bytes before
+     */
+    public void charge(int bytes, boolean firstBytes) {
+        if (firstBytes) {
+            consumerCount.incrementAndGet();
+        }
+        queuedBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Credit bytes released by a consumer to the budget.
+     * @param bytes The number of bytes
+     * @param lastBytes If the consumer is no longer holding any bytes
+     */
+    public void credit(int bytes, boolean lastBytes) {
+        queuedBytes.addAndGet(-bytes);
+        if (lastBytes) {
+            consumerCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * @param consumerBytes The number of bytes held by a consumer
+     * @return If the consumer should stop reading
+     */
+    public boolean shouldPause(long consumerBytes) {
+        if (consumerBytes <= 0L) {
+            return false;
+        }
+
+        final long used = queuedBytes.get();
+        return used >= budget || (used >= pressureThreshold && consumerBytes >= getFairShare());
+    }
+
+    /**
+     * @param consumerBytes The number of bytes held by a consumer
+     * @return If a paused consumer can resume reading
+     */
+    public boolean canResume(long consumerBytes) {
+        return queuedBytes.get() < reliefThreshold || consumerBytes < getFairShare() / 2;
+    }
+
+    @Override
+    public long getBudget() {
+        return budget;
+    }
+
+    @Override
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    @Override
+    public int getConsumerCount() {
+        return consumerCount.get();
+    }
+
+    @Override
+    public long getFairShare() {
+        return budget / Math.max(1, consumerCount.get());
+    }
+
+    @Override
+    public boolean isUnderPressure() {
+        return queuedBytes.get() >= pressureThreshold;
+    }
+}
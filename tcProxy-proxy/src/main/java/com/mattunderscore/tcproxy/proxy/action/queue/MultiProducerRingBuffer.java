@@ -0,0 +1,127 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.action.queue;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue for multiple producer threads and a single consumer thread. Producers claim a slot by
+ * advancing the tail and then publish the element into it. The capacity is rounded up to a power of two. Does not
+ * support iteration.
+ * @author Matt Champion on 18/10/2016
+ */
+/*package*/ final class MultiProducerRingBuffer<E> extends AbstractQueue<E> {
+    private final AtomicReferenceArray<E> buffer;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(0L);
+    private final AtomicLong tail = new AtomicLong(0L);
+
+    /*package*/ MultiProducerRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be greater than zero");
+        }
+
+        final int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        buffer = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    @Override
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException("Null elements are not supported");
+        }
+
+        while (true) {
+            final long currentTail = tail.get();
+            if (currentTail - head.get() > mask) {
+                return false;
+            }
+
+            if (tail.compareAndSet(currentTail, currentTail + 1)) {
+                buffer.lazySet(index(currentTail), element);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public E poll() {
+        final long currentHead = head.get();
+        final int index = index(currentHead);
+        final E element = awaitElement(currentHead, index);
+        if (element == null) {
+            return null;
+        }
+
+        buffer.lazySet(index, null);
+        head.lazySet(currentHead + 1);
+        return element;
+    }
+
+    @Override
+    public E peek() {
+        final long currentHead = head.get();
+        return awaitElement(currentHead, index(currentHead));
+    }
+
+    @Override
+    public int size() {
+        // Read the head first so the size can never be negative
+        final long currentHead = head.get();
+        return (int) (tail.get() - currentHead);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        throw new UnsupportedOperationException("Iteration is not supported");
+    }
+
+    /**
+     * Get the element at the head of the queue. If a producer has claimed the slot but not yet published the element
+     * wait for it.
+     */
+    private E awaitElement(long currentHead, int index) {
+        E element = buffer.get(index);
+        if (element == null) {
+            if (currentHead == tail.get()) {
+                return null;
+            }
+
+            do {
+                element = buffer.get(index);
+            } while (element == null);
+        }
+        return element;
+    }
+
+    private int index(long sequence) {
+        return (int) sequence & mask;
+    }
+}
@@ -0,0 +1,58 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.buffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A pool of buffers to reuse for data passing through the proxy.
+ * @author Matt Champion on 18/10/2016
+ */
+public interface BufferPool {
+
+    /**
+     * Acquire a buffer from the pool. The buffer will have a position of zero and a limit of the requested size.
+     * @param size The number of bytes required
+     * @return A buffer
+     */
+    ByteBuffer acquire(int size);
+
+    /**
+     * Return a buffer to the pool. The buffer must not be used after it has been released.
+     * @param buffer The buffer
+     */
+    void release(ByteBuffer buffer);
+
+    /**
+     * @return The number of buffers acquired that were taken from the pool
+     */
+    long getHits();
+
+    /**
+     * @return The number of buffers acquired that had to be allocated
+     */
+    long getMisses();
+}
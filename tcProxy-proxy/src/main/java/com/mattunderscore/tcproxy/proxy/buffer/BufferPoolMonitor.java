@@ -0,0 +1,67 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.buffer;
+
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Collects the {@link BufferPool}s used by a server so their statistics can be inspected.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class BufferPoolMonitor {
+    private final Collection<BufferPool> pools = new CopyOnWriteArrayList<>();
+
+    /**
+     * Add a pool to monitor.
+     * @param pool The pool
+     */
+    public void register(BufferPool pool) {
+        pools.add(pool);
+    }
+
+    /**
+     * @return The number of buffers acquired that were taken from any pool
+     */
+    public long getHits() {
+        long hits = 0L;
+        for (final BufferPool pool : pools) {
+            hits += pool.getHits();
+        }
+        return hits;
+    }
+
+    /**
+     * @return The number of buffers acquired that had to be allocated by any pool
+     */
+    public long getMisses() {
+        long misses = 0L;
+        for (final BufferPool pool : pools) {
+            misses += pool.getMisses();
+        }
+        return misses;
+    }
+}
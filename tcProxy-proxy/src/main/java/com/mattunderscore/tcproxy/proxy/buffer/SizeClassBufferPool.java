@@ -0,0 +1,124 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link BufferPool} of direct buffers divided into power of two size classes. A request is served from the smallest
+ * class that can hold it. Requests larger than the largest class are allocated on the heap and not pooled. Buffers
+ * may be released from a different thread to the one that acquired them.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class SizeClassBufferPool implements BufferPool {
+    private static final int MINIMUM_CLASS_SIZE = 64;
+    private final int minimumShift;
+    private final int maximumSize;
+    private final BlockingQueue<ByteBuffer>[] classes;
+    private final AtomicLong hits = new AtomicLong(0L);
+    private final AtomicLong misses = new AtomicLong(0L);
+
+    /**
+     * @param maximumSize The size of the largest buffer to pool
+     * @param buffersPerClass The maximum number of free buffers retained in each size class
+     */
+    @SuppressWarnings("unchecked")
+    public SizeClassBufferPool(int maximumSize, int buffersPerClass) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("The maximum size must be greater than zero");
+        }
+        if (buffersPerClass <= 0) {
+            throw new IllegalArgumentException("The number of buffers per class must be greater than zero");
+        }
+
+        minimumShift = shiftFor(MINIMUM_CLASS_SIZE);
+        this.maximumSize = Math.max(MINIMUM_CLASS_SIZE, Integer.highestOneBit(maximumSize - 1) << 1);
+        final int numberOfClasses = shiftFor(this.maximumSize) - minimumShift + 1;
+        classes = new BlockingQueue[numberOfClasses];
+        for (int i = 0; i < numberOfClasses; i++) {
+            classes[i] = new ArrayBlockingQueue<>(buffersPerClass);
+        }
+    }
+
+    @Override
+    public ByteBuffer acquire(int size) {
+        if (size > maximumSize) {
+            misses.incrementAndGet();
+            return ByteBuffer.allocate(size);
+        }
+
+        final int index = classIndex(size);
+        final ByteBuffer pooledBuffer = classes[index].poll();
+        final ByteBuffer buffer;
+        if (pooledBuffer == null) {
+            misses.incrementAndGet();
+            buffer = ByteBuffer.allocateDirect(MINIMUM_CLASS_SIZE << index);
+        }
+        else {
+            hits.incrementAndGet();
+            buffer = pooledBuffer;
+            buffer.clear();
+        }
+        buffer.limit(size);
+        return buffer;
+    }
+
+    @Override
+    public void release(ByteBuffer buffer) {
+        final int capacity = buffer.capacity();
+        if (buffer.isDirect() && Integer.bitCount(capacity) == 1 && capacity >= MINIMUM_CLASS_SIZE &&
+            capacity <= maximumSize) {
+            // If the class is full the buffer is left to the garbage collector
+            classes[classIndex(capacity)].offer(buffer);
+        }
+    }
+
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private int classIndex(int size) {
+        if (size <= MINIMUM_CLASS_SIZE) {
+            return 0;
+        }
+        else {
+            return shiftFor(Integer.highestOneBit(size - 1) << 1) - minimumShift;
+        }
+    }
+
+    private static int shiftFor(int powerOfTwo) {
+        return Integer.numberOfTrailingZeros(powerOfTwo);
+    }
+}
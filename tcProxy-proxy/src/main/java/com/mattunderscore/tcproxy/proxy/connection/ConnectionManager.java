@@ -25,35 +25,79 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 
 package com.mattunderscore.tcproxy.proxy.connection;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
 
+import com.mattunderscore.tcproxy.proxy.statistics.LatencyStatistics;
+import com.mattunderscore.tcproxy.proxy.statistics.RateMeter;
+
 /**
- * Manager for connections.
+ * Manager for connections. Connections are held in a concurrent set and listeners are notified through an
+ * {@link Executor}, by default a dedicated daemon thread so that listeners do not run on the selector threads.
  * @author Matt Champion on 22/02/14.
  */
 @ThreadSafe
-public final class ConnectionManager {
-    @GuardedBy("connections")
-    private final Set<Connection> connections = new HashSet<>();
+public final class ConnectionManager implements ConnectionManagerMBean {
+    private static final int LARGEST_CONSUMERS = 10;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger(0);
+    private final Set<Connection> connections =
+        Collections.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
+    private final Set<Connection> connectionsView = Collections.unmodifiableSet(connections);
+    private final AtomicInteger connectionCount = new AtomicInteger(0);
+    private final RateMeter accepted = new RateMeter();
+    private final RateMeter closed = new RateMeter();
     private final Set<Listener> listeners = new CopyOnWriteArraySet<>();
+    private final List<LatencyStatistics> clientToServerLatency = new CopyOnWriteArrayList<>();
+    private final List<LatencyStatistics> serverToClientLatency = new CopyOnWriteArrayList<>();
+    private final Executor listenerExecutor;
+
+    /**
+     * Create a connection manager that notifies listeners on a dedicated daemon thread.
+     */
+    public ConnectionManager() {
+        this(createListenerExecutor());
+    }
+
+    /**
+     * Create a connection manager that notifies listeners using an executor. The executor should run the tasks in
+     * order to preserve the order of events, see {@link SameThreadExecutor}.
+     * @param listenerExecutor The executor to notify listeners with
+     */
+    public ConnectionManager(Executor listenerExecutor) {
+        this.listenerExecutor = listenerExecutor;
+    }
 
     /**
      * Register a new connection.
      * @param connection The new connection
      */
-    public void register(Connection connection) {
-        final boolean add;
-        synchronized (connections) {
-            add = connections.add(connection);
-        }
-        if (add) {
-            for (final Listener listener : listeners) {
-                listener.newConnection(connection);
+    public void register(final Connection connection) {
+        if (connections.add(connection)) {
+            connectionCount.incrementAndGet();
+            accepted.mark();
+            if (!listeners.isEmpty()) {
+                listenerExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (final Listener listener : listeners) {
+                            listener.newConnection(connection);
+                        }
+                    }
+                });
             }
         }
     }
@@ -62,23 +106,116 @@ public final class ConnectionManager {
      * Unregister an existing connection.
      * @param connection The existing connection
      */
-    public void unregister(Connection connection) {
-        final boolean remove;
-        synchronized (connections) {
-            remove = connections.remove(connection);
-        }
-        if (remove) {
-            for (final Listener listener : listeners) {
-                listener.closedConnection(connection);
+    public void unregister(final Connection connection) {
+        if (connections.remove(connection)) {
+            connectionCount.decrementAndGet();
+            closed.mark();
+            if (!listeners.isEmpty()) {
+                listenerExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (final Listener listener : listeners) {
+                            listener.closedConnection(connection);
+                        }
+                    }
+                });
             }
         }
     }
 
     /**
-     * @return The current connections
+     * @return A weakly consistent, unmodifiable view of the current connections
      */
     public Set<Connection> getConnections() {
-        return connections;
+        return connectionsView;
+    }
+
+    @Override
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    @Override
+    public long getAcceptedCount() {
+        return accepted.getCount();
+    }
+
+    @Override
+    public long getClosedCount() {
+        return closed.getCount();
+    }
+
+    @Override
+    public double getAcceptRate() {
+        return accepted.getRate();
+    }
+
+    @Override
+    public double getCloseRate() {
+        return closed.getRate();
+    }
+
+    @Override
+    public long getQueuedBytes() {
+        long queuedBytes = 0L;
+        for (final Connection connection : connections) {
+            queuedBytes += queuedBytes(connection);
+        }
+        return queuedBytes;
+    }
+
+    @Override
+    public String[] getLargestConsumers() {
+        final List<QueuedBytes> consumers = new ArrayList<>();
+        for (final Connection connection : connections) {
+            final long queuedBytes = queuedBytes(connection);
+            if (queuedBytes > 0L) {
+                consumers.add(new QueuedBytes(connection, queuedBytes));
+            }
+        }
+        Collections.sort(consumers, LargestFirst.INSTANCE);
+
+        final int size = Math.min(LARGEST_CONSUMERS, consumers.size());
+        final String[] largestConsumers = new String[size];
+        for (int i = 0; i < size; i++) {
+            final QueuedBytes consumer = consumers.get(i);
+            largestConsumers[i] = consumer.connection + " : " + consumer.bytes;
+        }
+        return largestConsumers;
+    }
+
+    /**
+     * Create statistics for a selector to record the latency of the data forwarded from clients to servers.
+     * @return The statistics
+     */
+    public LatencyStatistics createClientToServerLatency() {
+        final LatencyStatistics statistics = new LatencyStatistics();
+        clientToServerLatency.add(statistics);
+        return statistics;
+    }
+
+    /**
+     * Create statistics for a selector to record the latency of the data forwarded from servers to clients.
+     * @return The statistics
+     */
+    public LatencyStatistics createServerToClientLatency() {
+        final LatencyStatistics statistics = new LatencyStatistics();
+        serverToClientLatency.add(statistics);
+        return statistics;
+    }
+
+    /**
+     * @return A snapshot of the latency of the data forwarded from clients to servers by all the connections managed
+     */
+    public LatencyStatistics getClientToServerLatency() {
+        return LatencyStatistics.merge(clientToServerLatency);
+    }
+
+    /**
+     * @return A snapshot of the latency of the data forwarded from servers to clients by all the connections managed
+     */
+    public LatencyStatistics getServerToClientLatency() {
+        return LatencyStatistics.merge(serverToClientLatency);
     }
 
     /**
@@ -105,4 +242,67 @@ public final class ConnectionManager {
          */
         void closedConnection(Connection connection);
     }
+
+    private static long queuedBytes(Connection connection) {
+        return connection.clientToServer().getQueue().queuedBytes() +
+            connection.serverToClient().getQueue().queuedBytes();
+    }
+
+    /**
+     * The bytes queued by a connection at a point in time.
+     */
+    private static final class QueuedBytes {
+        private final Connection connection;
+        private final long bytes;
+
+        private QueuedBytes(Connection connection, long bytes) {
+            this.connection = connection;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Orders the connections queuing the most bytes first.
+     */
+    private enum LargestFirst implements Comparator<QueuedBytes> {
+        INSTANCE;
+
+        @Override
+        public int compare(QueuedBytes o1, QueuedBytes o2) {
+            return Long.compare(o2.bytes, o1.bytes);
+        }
+    }
+
+    private static Executor createListenerExecutor() {
+        // A single daemon thread that stops when idle
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            1,
+            1,
+            60L,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r);
+                    thread.setName("tcProxy - Connection Listeners - " + THREAD_COUNT.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Executor that runs tasks on the calling thread. Listeners notified by it run on the selector threads.
+     */
+    public enum SameThreadExecutor implements Executor {
+        INSTANCE;
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    }
 }
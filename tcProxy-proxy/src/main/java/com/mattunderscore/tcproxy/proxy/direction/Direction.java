@@ -32,6 +32,8 @@ import com.mattunderscore.tcproxy.io.socket.IOSocketChannel;
 import com.mattunderscore.tcproxy.proxy.action.processor.ActionProcessor;
 import com.mattunderscore.tcproxy.proxy.action.processor.ActionProcessorFactory;
 import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueue;
+import com.mattunderscore.tcproxy.proxy.statistics.LatencyStatistics;
+import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
 
 /**
  * A direction.
@@ -57,7 +59,9 @@ public interface Direction {
     void chainProcessor(ActionProcessorFactory processorFactory);
 
     /**
-     * Removes the last chained action processor.
+     * Removes the last chained action processor. The processor is flushed by the selector thread of the direction, if
+     * there is one, as the actions it holds are passed to the queue. It stays in the chain until the queue has taken
+     * all of them.
      */
     void unchainProcessor();
 
@@ -67,8 +71,84 @@ public interface Direction {
 
     int write(ByteBuffer data) throws IOException;
 
+    /**
+     * Write a sequence of buffers to the destination in a single operation.
+     * @param data The buffers
+     * @param offset The index of the first buffer to write
+     * @param length The number of buffers to write
+     * @return The number of bytes written
+     * @throws IOException If the write fails
+     */
+    long write(ByteBuffer[] data, int offset, int length) throws IOException;
+
     int read(ByteBuffer data) throws IOException;
 
+    /**
+     * Record the first attempt to write data.
+     * @param readTime The value of {@link System#nanoTime()} when the data was read
+     */
+    void dataDequeued(long readTime);
+
+    /**
+     * Record data being completely written.
+     * @param readTime The value of {@link System#nanoTime()} when the data was read
+     */
+    void dataForwarded(long readTime);
+
+    /**
+     * @return The latency of the data forwarded in this direction
+     */
+    LatencyStatistics getLatency();
+
+    /**
+     * @return The selector that reads and writes this direction, null if it is not handled by a selector
+     */
+    SocketChannelSelector getSelector();
+
+    /**
+     * Data can be spliced when only the default action processor is chained. Spliced data is read from the source
+     * straight into a buffer owned by the direction and written from it to the destination without being copied.
+     * @return {@code true} if data read can be spliced
+     */
+    boolean canSplice();
+
+    /**
+     * Read from the source into the splice buffer.
+     * @return The number of bytes read or -1 if the end of the stream has been reached
+     * @throws IOException If the read fails
+     * @throws IllegalStateException If splicing is not enabled
+     */
+    int spliceRead() throws IOException;
+
+    /**
+     * Write from the splice buffer to the destination.
+     * @return The number of bytes written
+     * @throws IOException If the write fails
+     * @throws IllegalStateException If splicing is not enabled
+     */
+    int spliceWrite() throws IOException;
+
+    /**
+     * @return {@code true} if there is spliced data waiting to be written
+     */
+    boolean hasSplicedData();
+
+    /**
+     * Record that selecting the source for reads has been suspended because the destination is not keeping up.
+     */
+    void readSuspended();
+
+    /**
+     * Clear the record that reads have been suspended. The caller that clears it is responsible for resuming them.
+     * @return {@code true} if reads had been suspended
+     */
+    boolean clearReadSuspended();
+
+    /**
+     * @return {@code true} if reads have been suspended
+     */
+    boolean isReadSuspended();
+
     void close() throws IOException;
 
     void addListener(Listener listener);
@@ -82,5 +162,10 @@ public interface Direction {
         void dataWritten(Direction direction, int bytesWritten);
 
         void closed(Direction direction);
+
+        /**
+         * Called when reading from the source fails, for example because the connection was reset.
+         */
+        void readFailed(Direction direction, IOException exception);
     }
 }
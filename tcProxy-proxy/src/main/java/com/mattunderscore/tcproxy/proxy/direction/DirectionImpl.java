@@ -27,18 +27,25 @@ package com.mattunderscore.tcproxy.proxy.direction;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mattunderscore.tcproxy.io.data.CircularBuffer;
+import com.mattunderscore.tcproxy.io.impl.CircularBufferImpl;
 import com.mattunderscore.tcproxy.io.socket.IOSocketChannel;
 import com.mattunderscore.tcproxy.proxy.action.processor.ActionProcessor;
 import com.mattunderscore.tcproxy.proxy.action.processor.ActionProcessorFactory;
+import com.mattunderscore.tcproxy.proxy.action.processor.DefaultActionProcessor;
 import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueue;
+import com.mattunderscore.tcproxy.proxy.statistics.LatencyStatistics;
+import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
 
 /**
  * Implementation of {@link Direction}.
@@ -46,6 +53,7 @@ import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueue;
  */
 public final class DirectionImpl implements Direction {
     private static final Logger LOG = LoggerFactory.getLogger("direction");
+    private static final long FLUSH_RETRY = 1L;
     private final IOSocketChannel from;
     private final IOSocketChannel to;
     private final ActionQueue queue;
@@ -53,14 +61,68 @@ public final class DirectionImpl implements Direction {
     private final Set<Listener> listeners = new CopyOnWriteArraySet<>();
     private final Stack<ActionProcessor> processorChain;
     private final ReentrantReadWriteLock chainLock;
+    private final CircularBuffer spliceBuffer;
+    private final LatencyStatistics latency;
+    private final SocketChannelSelector selector;
+    private volatile long spliceReadTime;
+    private volatile boolean spliceDequeued;
     private volatile int read;
     private volatile int written;
     private volatile boolean open;
+    private volatile boolean readSuspended;
+    private volatile boolean onlyDefaultProcessor;
 
     public DirectionImpl(final IOSocketChannel from, final IOSocketChannel to, final ActionQueue queue) {
+        this(from, to, queue, 0);
+    }
+
+    /**
+     * @param from The source
+     * @param to The destination
+     * @param queue The action queue
+     * @param spliceBufferSize The size of the direct buffer used to splice data, zero disables splicing
+     */
+    public DirectionImpl(final IOSocketChannel from, final IOSocketChannel to, final ActionQueue queue, final int spliceBufferSize) {
+        this(from, to, queue, spliceBufferSize, null);
+    }
+
+    /**
+     * @param from The source
+     * @param to The destination
+     * @param queue The action queue
+     * @param spliceBufferSize The size of the direct buffer used to splice data, zero disables splicing
+     * @param parentLatency The statistics to also record the latency of this direction to, may be null
+     */
+    public DirectionImpl(
+            final IOSocketChannel from,
+            final IOSocketChannel to,
+            final ActionQueue queue,
+            final int spliceBufferSize,
+            final LatencyStatistics parentLatency) {
+        this(from, to, queue, spliceBufferSize, parentLatency, null);
+    }
+
+    /**
+     * @param from The source
+     * @param to The destination
+     * @param queue The action queue
+     * @param spliceBufferSize The size of the direct buffer used to splice data, zero disables splicing
+     * @param parentLatency The statistics to also record the latency of this direction to, may be null
+     * @param selector The selector that reads and writes this direction, may be null
+     */
+    public DirectionImpl(
+            final IOSocketChannel from,
+            final IOSocketChannel to,
+            final ActionQueue queue,
+            final int spliceBufferSize,
+            final LatencyStatistics parentLatency,
+            final SocketChannelSelector selector) {
         this.from = from;
         this.to = to;
         this.queue = queue;
+        spliceBuffer = spliceBufferSize > 0 ? CircularBufferImpl.allocateDirect(spliceBufferSize) : null;
+        latency = new LatencyStatistics(parentLatency);
+        this.selector = selector;
         read = 0;
         written = 0;
         open = true;
@@ -100,6 +162,7 @@ public final class DirectionImpl implements Direction {
         chainLock.writeLock().lock();
         try {
             processorChain.push(processorFactory.create(this));
+            chainChanged();
         }
         finally {
             chainLock.writeLock().unlock();
@@ -108,19 +171,12 @@ public final class DirectionImpl implements Direction {
 
     @Override
     public void unchainProcessor() {
-        chainLock.writeLock().lock();
-        try {
-            if (processorChain.size() > 1) {
-                final ActionProcessor processor = processorChain.pop();
-                try {
-                    processor.flush();
-                } catch (InterruptedException e) {
-                    LOG.debug("Interrupted while flushing processor", e);
-                }
-            }
+        if (selector == null) {
+            removeProcessor();
         }
-        finally {
-            chainLock.writeLock().unlock();
+        else {
+            // The queue is only added to by the selector thread
+            selector.execute(new RemoveProcessorTask());
         }
     }
 
@@ -137,33 +193,131 @@ public final class DirectionImpl implements Direction {
     @Override
     public int write(final ByteBuffer destination) throws IOException {
         final int newlyWritten = to.write(destination);
-        if (newlyWritten > 0) {
-            written += newlyWritten;
-            for (final Listener listener : listeners) {
-                listener.dataWritten(this, newlyWritten);
-            }
-        }
+        dataWritten(newlyWritten);
+        return newlyWritten;
+    }
+
+    @Override
+    public long write(final ByteBuffer[] data, final int offset, final int length) throws IOException {
+        final long newlyWritten = to.write(data, offset, length);
+        dataWritten((int) newlyWritten);
         return newlyWritten;
     }
 
     @Override
     public int read(final ByteBuffer destination) throws IOException {
-        final int newlyRead = from.read(destination);
-        if (newlyRead > 0) {
-            read += newlyRead;
-            for (final Listener listener : listeners) {
-                listener.dataRead(this, newlyRead);
-            }
+        final int newlyRead;
+        try {
+            newlyRead = from.read(destination);
+        }
+        catch (final IOException e) {
+            readFailed(e);
+            throw e;
         }
+        dataRead(newlyRead);
         return newlyRead;
     }
 
+    @Override
+    public void dataDequeued(long readTime) {
+        latency.dataDequeued(readTime);
+    }
+
+    @Override
+    public void dataForwarded(long readTime) {
+        latency.dataForwarded(readTime);
+    }
+
+    @Override
+    public LatencyStatistics getLatency() {
+        return latency;
+    }
+
+    @Override
+    public SocketChannelSelector getSelector() {
+        return selector;
+    }
+
+    @Override
+    public boolean canSplice() {
+        // Checked for every read, the chain is not locked
+        return spliceBuffer != null && onlyDefaultProcessor;
+    }
+
+    @Override
+    public int spliceRead() throws IOException {
+        if (spliceBuffer == null) {
+            throw new IllegalStateException("Splicing is not enabled");
+        }
+
+        final boolean hadData = spliceBuffer.usedCapacity() > 0;
+        final int newlyRead;
+        try {
+            newlyRead = from.read(spliceBuffer);
+        }
+        catch (final IOException e) {
+            readFailed(e);
+            throw e;
+        }
+        if (!hadData && newlyRead > 0) {
+            // Latency is measured from the oldest spliced data
+            spliceReadTime = System.nanoTime();
+            spliceDequeued = false;
+        }
+        dataRead(newlyRead);
+        return newlyRead;
+    }
+
+    @Override
+    public int spliceWrite() throws IOException {
+        if (spliceBuffer == null) {
+            throw new IllegalStateException("Splicing is not enabled");
+        }
+
+        if (!spliceDequeued) {
+            spliceDequeued = true;
+            dataDequeued(spliceReadTime);
+        }
+
+        final int newlyWritten = to.write(spliceBuffer);
+        if (newlyWritten > 0 && spliceBuffer.usedCapacity() == 0) {
+            dataForwarded(spliceReadTime);
+        }
+        dataWritten(newlyWritten);
+        return newlyWritten;
+    }
+
+    @Override
+    public boolean hasSplicedData() {
+        return spliceBuffer != null && spliceBuffer.usedCapacity() > 0;
+    }
+
+    @Override
+    public void readSuspended() {
+        readSuspended = true;
+    }
+
+    @Override
+    public boolean clearReadSuspended() {
+        if (readSuspended) {
+            readSuspended = false;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isReadSuspended() {
+        return readSuspended;
+    }
+
     @Override
     public void close() throws IOException {
         if (open) {
             LOG.info("{} : Closed", this);
             to.close();
             open = false;
+            discardQueue();
             for (final Listener listener : listeners) {
                 listener.closed(this);
             }
@@ -175,6 +329,79 @@ public final class DirectionImpl implements Direction {
         listeners.add(listener);
     }
 
+    /**
+     * Remove the last chained processor once it holds no actions.
+     * @return {@code true} if the processor was removed or there was none to remove
+     */
+    private boolean removeProcessor() {
+        chainLock.writeLock().lock();
+        try {
+            if (processorChain.size() > 1) {
+                // Without a selector there is nothing to retry on so the processor is removed regardless
+                if (!processorChain.peek().flush() && selector != null) {
+                    return false;
+                }
+                processorChain.pop();
+                chainChanged();
+            }
+            return true;
+        }
+        finally {
+            chainLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Update the state derived from the processor chain. Must be called holding the write lock of the chain.
+     */
+    private void chainChanged() {
+        onlyDefaultProcessor = processorChain.size() == 1 && processorChain.peek() instanceof DefaultActionProcessor;
+    }
+
+    private void discardQueue() {
+        if (selector == null) {
+            queue.discard();
+        }
+        else {
+            // The queue is discarded by the selector thread that consumes it
+            selector.execute(new Runnable() {
+                @Override
+                public void run() {
+                    queue.discard();
+                }
+            });
+        }
+    }
+
+    private void dataWritten(final int newlyWritten) {
+        if (newlyWritten > 0) {
+            written += newlyWritten;
+            for (final Listener listener : listeners) {
+                listener.dataWritten(this, newlyWritten);
+            }
+        }
+    }
+
+    private void readFailed(final IOException exception) {
+        if (exception instanceof ClosedChannelException) {
+            // Closed locally, not a failure of the source
+            return;
+        }
+
+        for (final Listener listener : listeners) {
+            listener.readFailed(this, exception);
+        }
+    }
+
+    private void dataRead(final int newlyRead) {
+        if (newlyRead > 0) {
+            read += newlyRead;
+            for (final Listener listener : listeners) {
+                listener.dataRead(this, newlyRead);
+            }
+        }
+    }
+
     private String asString() {
         final String unknown = "unknown";
         final String separator = " -> ";
@@ -213,4 +440,17 @@ public final class DirectionImpl implements Direction {
     public String toString() {
         return stringValue;
     }
+
+    /**
+     * Task for removing the last chained processor. The processor stays in the chain until it has passed on the
+     * actions it holds so that actions processed in the meantime are not reordered.
+     */
+    private final class RemoveProcessorTask implements Runnable {
+        @Override
+        public void run() {
+            if (!removeProcessor()) {
+                selector.schedule(this, FLUSH_RETRY, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
 }
@@ -27,82 +27,250 @@ package com.mattunderscore.tcproxy.proxy.selector;
 
 import java.io.IOException;
 import java.net.ConnectException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mattunderscore.tcproxy.io.selection.IOSelectionKey;
 import com.mattunderscore.tcproxy.io.socket.IOOutboundSocketChannel;
 import com.mattunderscore.tcproxy.io.socket.IOSocketChannel;
 import com.mattunderscore.tcproxy.proxy.AsynchronousOutboundConnectionFactory;
 import com.mattunderscore.tcproxy.proxy.ConnectionImpl;
 import com.mattunderscore.tcproxy.proxy.action.processor.ActionProcessorFactory;
 import com.mattunderscore.tcproxy.proxy.action.processor.DefaultActionProcessorFactory;
+import com.mattunderscore.tcproxy.proxy.action.processor.ShapingActionProcessorFactory;
+import com.mattunderscore.tcproxy.proxy.action.processor.TokenBucket;
 import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueue;
 import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueueImpl;
+import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueueType;
+import com.mattunderscore.tcproxy.proxy.action.queue.MemoryGovernor;
+import com.mattunderscore.tcproxy.proxy.buffer.BufferPool;
 import com.mattunderscore.tcproxy.proxy.connection.Connection;
 import com.mattunderscore.tcproxy.proxy.connection.ConnectionManager;
 import com.mattunderscore.tcproxy.proxy.direction.Direction;
 import com.mattunderscore.tcproxy.proxy.direction.DirectionImpl;
+import com.mattunderscore.tcproxy.proxy.settings.BandwidthSettings;
 import com.mattunderscore.tcproxy.proxy.settings.ConnectionSettings;
+import com.mattunderscore.tcproxy.proxy.statistics.LatencyStatistics;
+import com.mattunderscore.tcproxy.proxy.statistics.TrafficCounter;
+import com.mattunderscore.tcproxy.proxy.upstream.Upstream;
 import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
 import com.mattunderscore.tcproxy.selector.connecting.ConnectionHandler;
+import com.mattunderscore.tcproxy.selector.connecting.DistributionTarget;
 import com.mattunderscore.tcproxy.selector.server.Server;
 
 /**
- * Implementation of {@link ConnectionHandler} for the proxy {@link Server}.
+ * Implementation of {@link ConnectionHandler} for the proxy {@link Server}. Counts the connections it has opened so
+ * accepted connections can be distributed between selectors. Counts the bytes forwarded by its connections. If
+ * bandwidth limits are set a shaping processor is chained to each direction. The bytes queued by the directions are
+ * charged to the memory governor of the server, if there is one. The latency of its connections is recorded by
+ * statistics owned by the handler, so it is only recorded by its selector.
  * @author Matt Champion on 18/11/2015
  */
-/*package*/ final class ProxyConnectionHandler implements ConnectionHandler {
+/*package*/ final class ProxyConnectionHandler implements DistributionTarget {
     private static final Logger LOG = LoggerFactory.getLogger("acceptor");
     private final AsynchronousOutboundConnectionFactory factory;
     private final ConnectionSettings settings;
     private final ConnectionManager manager;
     private final SocketChannelSelector selector;
+    private final ByteBuffer readBuffer;
+    private final BufferPool pool;
+    private final TrafficCounter trafficCounter;
+    private final BandwidthSettings bandwidthSettings;
+    private final TokenBucket serverBucket;
+    private final MemoryGovernor governor;
+    private final LatencyStatistics clientToServerLatency;
+    private final LatencyStatistics serverToClientLatency;
+    private final AtomicInteger connectionCount = new AtomicInteger(0);
 
     public ProxyConnectionHandler(
             AsynchronousOutboundConnectionFactory factory,
             ConnectionSettings settings,
             ConnectionManager manager,
-            SocketChannelSelector selector) {
+            SocketChannelSelector selector,
+            ByteBuffer readBuffer,
+            BufferPool pool,
+            TrafficCounter trafficCounter,
+            BandwidthSettings bandwidthSettings,
+            TokenBucket serverBucket,
+            MemoryGovernor governor) {
         this.factory = factory;
         this.settings = settings;
         this.manager = manager;
         this.selector = selector;
+        this.readBuffer = readBuffer;
+        this.pool = pool;
+        this.trafficCounter = trafficCounter;
+        this.bandwidthSettings = bandwidthSettings;
+        this.serverBucket = serverBucket;
+        this.governor = governor;
+        clientToServerLatency = manager.createClientToServerLatency();
+        serverToClientLatency = manager.createServerToClientLatency();
     }
 
     @Override
     public void onConnect(final IOSocketChannel clientSide) {
         LOG.info("Accepted {}", this, clientSide);
+        connectionCount.incrementAndGet();
         factory.createConnection(new AsynchronousOutboundConnectionFactory.ConnectionCallback() {
             @Override
-            public void onConnected(IOOutboundSocketChannel serverSide) {
+            public void onConnected(IOOutboundSocketChannel serverSide, Upstream upstream) {
                 LOG.info("Opened {}", this, serverSide);
-                final ActionQueue actionQueue0 = new ActionQueueImpl(settings.getWriteQueueSize(), settings.getBatchSize());
-                final ActionQueue actionQueue1 = new ActionQueueImpl(settings.getWriteQueueSize(), settings.getBatchSize());
-                final Direction direction0 = new DirectionImpl(clientSide, serverSide, actionQueue0);
-                final Direction direction1 = new DirectionImpl(serverSide, clientSide, actionQueue1);
+                final ActionQueue actionQueue0 = createQueue();
+                final ActionQueue actionQueue1 = createQueue();
+                final Direction direction0 = new DirectionImpl(
+                    clientSide,
+                    serverSide,
+                    actionQueue0,
+                    settings.getSpliceBufferSize(),
+                    clientToServerLatency,
+                    selector);
+                final Direction direction1 = new DirectionImpl(
+                    serverSide,
+                    clientSide,
+                    actionQueue1,
+                    settings.getSpliceBufferSize(),
+                    serverToClientLatency,
+                    selector);
                 final Connection conn = new ConnectionImpl(manager, direction0, direction1, selector);
+                final Direction.Listener closeListener = new CloseListener(upstream, direction1);
+                direction0.addListener(closeListener);
+                direction1.addListener(closeListener);
                 final ActionProcessorFactory processorFactory = new DefaultActionProcessorFactory(conn);
-                manager.register(conn);
                 direction0.chainProcessor(processorFactory);
                 direction1.chainProcessor(processorFactory);
+                final ActionProcessorFactory shapingFactory = createShapingFactory();
+                if (shapingFactory != null) {
+                    direction0.chainProcessor(shapingFactory);
+                    direction1.chainProcessor(shapingFactory);
+                }
+                manager.register(conn);
+
+                // Reads are handled by the same selector as the writes
+                selector.register(
+                    clientSide,
+                    IOSelectionKey.Op.READ,
+                    new ReadSelectionRunnable(direction0, conn, readBuffer, pool));
+                selector.register(
+                    serverSide,
+                    IOSelectionKey.Op.READ,
+                    new ReadSelectionRunnable(direction1, conn, readBuffer, pool));
             }
 
             @Override
             public void onException(IOException e) {
+                connectionCount.decrementAndGet();
                 if (e instanceof ConnectException) {
                     LOG.warn("The target server did not accept the outbound connection");
-                    try {
-                        clientSide.abort();
-                    }
-                    catch (IOException e1) {
-                        LOG.warn("There was an exception attempting to close the inbound connection", e1);
-                    }
                 }
                 else {
                     LOG.warn("There was an exception attempting to connect an outbound channel", e);
                 }
+
+                // Do not leave the client waiting for a connection that will never be established
+                try {
+                    clientSide.abort();
+                }
+                catch (IOException e1) {
+                    LOG.warn("There was an exception attempting to close the inbound connection", e1);
+                }
             }
         });
     }
+
+    @Override
+    public SocketChannelSelector getSelector() {
+        return selector;
+    }
+
+    @Override
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * @return A factory for the processors that limit the bandwidth of a new connection or null if not limited
+     */
+    private ActionProcessorFactory createShapingFactory() {
+        if (bandwidthSettings == null) {
+            return null;
+        }
+
+        final long connectionBytesPerSecond = bandwidthSettings.getConnectionBytesPerSecond();
+        final TokenBucket connectionBucket = connectionBytesPerSecond > 0L ?
+            new TokenBucket(
+                connectionBytesPerSecond,
+                bandwidthSettings.burstSizeFor(connectionBytesPerSecond),
+                serverBucket) :
+            serverBucket;
+        final long directionBytesPerSecond = bandwidthSettings.getDirectionBytesPerSecond();
+        if (connectionBucket == null && directionBytesPerSecond <= 0L) {
+            return null;
+        }
+
+        return new ShapingActionProcessorFactory(
+            connectionBucket,
+            directionBytesPerSecond,
+            bandwidthSettings.burstSizeFor(directionBytesPerSecond));
+    }
+
+    private ActionQueue createQueue() {
+        final ActionQueueType queueType = settings.getActionQueueType();
+        final int highWatermark = settings.getHighWatermark() > 0 ?
+            settings.getHighWatermark() :
+            settings.getWriteQueueSize();
+        final int lowWatermark = settings.getLowWatermark() > 0 ? settings.getLowWatermark() : highWatermark / 2;
+        return new ActionQueueImpl(
+            settings.getWriteQueueSize(),
+            settings.getBatchSize(),
+            queueType != null ? queueType : ActionQueueType.BLOCKING,
+            highWatermark,
+            lowWatermark,
+            settings.getWriteQueueBytes(),
+            governor);
+    }
+
+    /**
+     * Listener for the directions of a connection forwarding data and closing. The upstream is released once both
+     * directions have closed. A failed read from the upstream is counted as a reset of it.
+     */
+    private final class CloseListener implements Direction.Listener {
+        private final AtomicBoolean halfClosed = new AtomicBoolean(false);
+        private final Upstream upstream;
+        private final Direction fromUpstream;
+
+        private CloseListener(Upstream upstream, Direction fromUpstream) {
+            this.upstream = upstream;
+            this.fromUpstream = fromUpstream;
+        }
+
+        @Override
+        public void dataRead(Direction direction, int bytesRead) {
+            trafficCounter.dataRead(bytesRead);
+        }
+
+        @Override
+        public void dataWritten(Direction direction, int bytesWritten) {
+            trafficCounter.dataWritten(bytesWritten);
+        }
+
+        @Override
+        public void closed(Direction direction) {
+            if (!halfClosed.compareAndSet(false, true)) {
+                connectionCount.decrementAndGet();
+                upstream.released();
+            }
+        }
+
+        @Override
+        public void readFailed(Direction direction, IOException exception) {
+            if (direction == fromUpstream) {
+                LOG.debug("Connection reset by {}", upstream, exception);
+                upstream.reset();
+            }
+        }
+    }
 }
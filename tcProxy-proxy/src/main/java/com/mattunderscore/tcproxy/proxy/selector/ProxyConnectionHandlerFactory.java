@@ -25,35 +25,110 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 
 package com.mattunderscore.tcproxy.proxy.selector;
 
+import java.nio.ByteBuffer;
+
 import com.mattunderscore.tcproxy.proxy.AsynchronousOutboundConnectionFactory;
+import com.mattunderscore.tcproxy.proxy.action.processor.TokenBucket;
+import com.mattunderscore.tcproxy.proxy.action.queue.MemoryGovernor;
+import com.mattunderscore.tcproxy.proxy.buffer.BufferPool;
+import com.mattunderscore.tcproxy.proxy.buffer.BufferPoolMonitor;
+import com.mattunderscore.tcproxy.proxy.buffer.SizeClassBufferPool;
+import com.mattunderscore.tcproxy.proxy.buffer.UnpooledBufferPool;
 import com.mattunderscore.tcproxy.proxy.connection.ConnectionManager;
+import com.mattunderscore.tcproxy.proxy.settings.BandwidthSettings;
 import com.mattunderscore.tcproxy.proxy.settings.ConnectionSettings;
 import com.mattunderscore.tcproxy.proxy.settings.OutboundSocketSettings;
+import com.mattunderscore.tcproxy.proxy.settings.ReadSelectorSettings;
+import com.mattunderscore.tcproxy.proxy.statistics.TrafficCounter;
+import com.mattunderscore.tcproxy.proxy.statistics.TrafficMonitor;
+import com.mattunderscore.tcproxy.proxy.upstream.HealthChecker;
+import com.mattunderscore.tcproxy.proxy.upstream.UpstreamGroup;
 import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
 import com.mattunderscore.tcproxy.selector.connecting.ConnectionHandler;
 import com.mattunderscore.tcproxy.selector.connecting.ConnectionHandlerFactory;
+import com.mattunderscore.tcproxy.selector.connecting.DistributionTarget;
 import com.mattunderscore.tcproxy.selector.server.Server;
 
 /**
- * Implementation of {@link ConnectionHandlerFactory} for the proxy {@link Server}.
+ * Implementation of {@link ConnectionHandlerFactory} for the proxy {@link Server}. Each handler has its own read buffer
+ * buffer pool and traffic counter so should only be used by the selector it was created for. If the upstreams are
+ * probed the probes run on the first selector a handler is created for.
  * @author Matt Champion on 18/11/2015
  */
 public final class ProxyConnectionHandlerFactory implements ConnectionHandlerFactory {
     private final OutboundSocketSettings outboundSocketSettings;
     private final ConnectionSettings settings;
     private final ConnectionManager manager;
+    private final ReadSelectorSettings readSelectorSettings;
+    private final BufferPoolMonitor bufferPoolMonitor;
+    private final TrafficMonitor trafficMonitor;
+    private final BandwidthSettings bandwidthSettings;
+    private final TokenBucket serverBucket;
+    private final MemoryGovernor governor;
+    private final UpstreamGroup upstreams;
+    private final HealthChecker healthChecker;
 
     public ProxyConnectionHandlerFactory(
             OutboundSocketSettings outboundSocketSettings,
             ConnectionSettings settings,
-            ConnectionManager manager) {
+            ConnectionManager manager,
+            ReadSelectorSettings readSelectorSettings,
+            BufferPoolMonitor bufferPoolMonitor,
+            TrafficMonitor trafficMonitor,
+            BandwidthSettings bandwidthSettings,
+            MemoryGovernor governor,
+            UpstreamGroup upstreams,
+            HealthChecker healthChecker) {
         this.outboundSocketSettings = outboundSocketSettings;
         this.settings = settings;
         this.manager = manager;
+        this.readSelectorSettings = readSelectorSettings;
+        this.bufferPoolMonitor = bufferPoolMonitor;
+        this.trafficMonitor = trafficMonitor;
+        this.bandwidthSettings = bandwidthSettings;
+        this.governor = governor;
+        this.upstreams = upstreams;
+        this.healthChecker = healthChecker;
+
+        // The server limit is shared by every selector
+        if (bandwidthSettings != null && bandwidthSettings.getServerBytesPerSecond() > 0L) {
+            final long bytesPerSecond = bandwidthSettings.getServerBytesPerSecond();
+            serverBucket = new TokenBucket(bytesPerSecond, bandwidthSettings.burstSizeFor(bytesPerSecond));
+        }
+        else {
+            serverBucket = null;
+        }
     }
 
     @Override
-    public ConnectionHandler create(final SocketChannelSelector selector) {
-        return new ProxyConnectionHandler(new AsynchronousOutboundConnectionFactory(outboundSocketSettings, selector), settings, manager, selector);
+    public DistributionTarget create(final SocketChannelSelector selector) {
+        final TrafficCounter trafficCounter = new TrafficCounter();
+        trafficMonitor.register(trafficCounter);
+        if (healthChecker != null) {
+            // Probes run on the first selector
+            healthChecker.start(selector);
+        }
+        return new ProxyConnectionHandler(
+            new AsynchronousOutboundConnectionFactory(outboundSocketSettings, upstreams, selector),
+            settings,
+            manager,
+            selector,
+            ByteBuffer.allocateDirect(readSelectorSettings.getReadBufferSize()),
+            createBufferPool(),
+            trafficCounter,
+            bandwidthSettings,
+            serverBucket,
+            governor);
+    }
+
+    private BufferPool createBufferPool() {
+        final int buffersPerClass = readSelectorSettings.getBuffersPerClass();
+        if (buffersPerClass == 0) {
+            return UnpooledBufferPool.get();
+        }
+
+        final BufferPool pool = new SizeClassBufferPool(readSelectorSettings.getReadBufferSize(), buffersPerClass);
+        bufferPoolMonitor.register(pool);
+        return pool;
     }
 }
@@ -38,13 +38,17 @@ import com.mattunderscore.tcproxy.proxy.ConnectionImpl;
 import com.mattunderscore.tcproxy.proxy.action.Close;
 import com.mattunderscore.tcproxy.proxy.action.Write;
 import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueue;
+import com.mattunderscore.tcproxy.proxy.buffer.BufferPool;
 import com.mattunderscore.tcproxy.proxy.connection.Connection;
 import com.mattunderscore.tcproxy.proxy.direction.Direction;
 import com.mattunderscore.tcproxy.selector.SelectionRunnable;
 import com.mattunderscore.tcproxy.selector.general.RegistrationHandle;
 
 /**
- * Proxy read task.
+ * Proxy read task. When the destination cannot keep up, because the action queue is above its high watermark or the
+ * splice buffer is full, the task stops selecting the source for reads. The write task resumes reading once it has
+ * drained enough. The TCP receive window of the source then fills, pushing back on the peer instead of the selector
+ * spinning on a socket it cannot read from.
  * @author Matt Champion on 18/11/2015
  */
 public final class ReadSelectionRunnable implements SelectionRunnable<IOSocketChannel> {
@@ -53,11 +57,13 @@ public final class ReadSelectionRunnable implements SelectionRunnable<IOSocketCh
     private final Direction direction;
     private final Connection connection;
     private final ByteBuffer readBuffer;
+    private final BufferPool pool;
 
-    public ReadSelectionRunnable(Direction direction, Connection connection, ByteBuffer readBuffer) {
+    public ReadSelectionRunnable(Direction direction, Connection connection, ByteBuffer readBuffer, BufferPool pool) {
         this.direction = direction;
         this.connection = connection;
         this.readBuffer = readBuffer;
+        this.pool = pool;
     }
 
     @Override
@@ -73,7 +79,16 @@ public final class ReadSelectionRunnable implements SelectionRunnable<IOSocketCh
         }
         else if (handle.isReadable()) {
             final ActionQueue queue = direction.getQueue();
-            if (!queue.queueFull()) {
+            if (direction.canSplice() && !queue.hasData()) {
+                // Nothing is waiting on the action queue so data can bypass it
+                splice(handle);
+                return;
+            }
+
+            if (queue.aboveHighWatermark()) {
+                suspendRead(handle);
+            }
+            else {
                 final ByteChannel channel = direction.getFrom();
                 try {
 
@@ -83,7 +98,7 @@ public final class ReadSelectionRunnable implements SelectionRunnable<IOSocketCh
                     if (bytes > 0) {
                         readBuffer.flip();
                         // Copy the data read to a write buffer and prepare for the next read
-                        final ByteBuffer writeBuffer = ByteBuffer.allocate(readBuffer.remaining());
+                        final ByteBuffer writeBuffer = pool.acquire(readBuffer.remaining());
                         writeBuffer.put(readBuffer);
                         writeBuffer.flip();
 
@@ -102,18 +117,12 @@ public final class ReadSelectionRunnable implements SelectionRunnable<IOSocketCh
                             writeBuffer.position(position);
                         }
 
-                        direction.getProcessor().process(new Write(direction, writeBuffer));
+                        direction.getProcessor().process(new Write(direction, writeBuffer, pool));
 
                         assert readBuffer.remaining() == 0 : "The read buffer should have been completely drained";
                     }
                     else if (bytes == -1) {
-                        // Close the connection
-                        handle.cancel();
-                        direction.getProcessor().process(new Close(direction));
-                        final ConnectionImpl conn = (ConnectionImpl) connection;
-                        final Direction otherDirection = conn.otherDirection(direction);
-                        LOG.debug("{} : Closed {} ", this, otherDirection);
-                        otherDirection.close();
+                        endOfStream(handle);
                     }
                 }
                 catch (final ClosedChannelException e) {
@@ -132,4 +141,49 @@ public final class ReadSelectionRunnable implements SelectionRunnable<IOSocketCh
             LOG.warn("{} : Unexpected key state {}", this, handle);
         }
     }
+
+    /**
+     * Read into the splice buffer of the direction. Must only be called when the action queue is empty.
+     */
+    private void splice(RegistrationHandle handle) {
+        final ByteChannel channel = direction.getFrom();
+        try {
+            final boolean hadData = direction.hasSplicedData();
+            final int bytes = direction.spliceRead();
+
+            if (bytes > 0 && !hadData) {
+                connection.needsWrite(direction);
+            }
+            else if (bytes == 0) {
+                // The socket is readable so the splice buffer must be full
+                suspendRead(handle);
+            }
+            else if (bytes == -1) {
+                endOfStream(handle);
+            }
+        }
+        catch (final ClosedChannelException e) {
+            LOG.debug("{} : Channel {} already closed", this, channel);
+            handle.cancel();
+        }
+        catch (final IOException e) {
+            LOG.debug("{} : Error on channel {}, {}", this, channel, handle, e);
+        }
+    }
+
+    private void suspendRead(RegistrationHandle handle) {
+        LOG.debug("{} : Destination is not keeping up, suspend reading", this);
+        direction.readSuspended();
+        handle.suspend();
+    }
+
+    private void endOfStream(RegistrationHandle handle) throws IOException {
+        // Close the connection
+        handle.cancel();
+        direction.getProcessor().process(new Close(direction));
+        final ConnectionImpl conn = (ConnectionImpl) connection;
+        final Direction otherDirection = conn.otherDirection(direction);
+        LOG.debug("{} : Closed {} ", this, otherDirection);
+        otherDirection.close();
+    }
 }
@@ -30,25 +30,39 @@ import java.io.IOException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mattunderscore.tcproxy.io.selection.IOSelectionKey;
 import com.mattunderscore.tcproxy.io.socket.IOSocketChannel;
 import com.mattunderscore.tcproxy.proxy.action.Action;
 import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueue;
 import com.mattunderscore.tcproxy.proxy.connection.Connection;
+import com.mattunderscore.tcproxy.proxy.direction.Direction;
 import com.mattunderscore.tcproxy.selector.SelectionRunnable;
+import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
 import com.mattunderscore.tcproxy.selector.general.RegistrationHandle;
 
 /**
- * Proxy write task.
+ * Proxy write task. The task is registered once for each direction and suspends itself when there is nothing to
+ * write. If reading the source of the direction was suspended it is resumed once the action queue has drained to its
+ * low watermark or spliced data has been written.
  * @author Matt Champion on 22/11/2015
  */
 public final class WriteSelectionRunnable implements SelectionRunnable<IOSocketChannel> {
     public static final Logger LOG = LoggerFactory.getLogger("writer");
+    private final Direction direction;
     private final ActionQueue actionQueue;
     private final Connection connection;
+    private final SocketChannelSelector selector;
 
-    public WriteSelectionRunnable(ActionQueue actionQueue, Connection connection) {
-        this.actionQueue = actionQueue;
+    /**
+     * @param direction The direction to write
+     * @param connection The connection of the direction
+     * @param selector The selector to resume reading the source of the direction with
+     */
+    public WriteSelectionRunnable(Direction direction, Connection connection, SocketChannelSelector selector) {
+        this.direction = direction;
+        this.actionQueue = direction.getQueue();
         this.connection = connection;
+        this.selector = selector;
     }
 
     @Override
@@ -63,37 +77,45 @@ public final class WriteSelectionRunnable implements SelectionRunnable<IOSocketC
             }
         }
         else if (handle.isWritable()) {
-            synchronized (actionQueue) {
-                try {
-                    if (actionQueue.hasData()) {
-                        if (handle.isValid()) {
-                            final Action data = actionQueue.head();
-                            data.writeToSocket();
-                        }
-                        else {
-                            LOG.debug("{} : Selected key no longer valid, closing connection", this);
-                            try {
-                                connection.close();
-                            }
-                            catch (IOException e) {
-                                LOG.warn("{} : Error closing connection", this, e);
-                            }
+            try {
+                if (direction.hasSplicedData()) {
+                    // Spliced data is always older than any queued actions
+                    if (direction.spliceWrite() > 0) {
+                        resumeRead();
+                    }
+                }
+                else if (actionQueue.hasData()) {
+                    if (handle.isValid()) {
+                        final Action data = actionQueue.head();
+                        data.writeToSocket();
+                        if (direction.isReadSuspended() && actionQueue.belowLowWatermark()) {
+                            resumeRead();
                         }
                     }
                     else {
-                        LOG.debug("{} : Finished queued actions, cancel key", this);
-                        handle.cancel();
+                        LOG.debug("{} : Selected key no longer valid, closing connection", this);
+                        try {
+                            connection.close();
+                        }
+                        catch (IOException e) {
+                            LOG.warn("{} : Error closing connection", this, e);
+                        }
                     }
                 }
-                catch (final IOException e) {
-                    LOG.warn("{} : Error writing", this, e);
-                    handle.cancel();
-                    try {
-                        connection.close();
-                    }
-                    catch (IOException closeError) {
-                        LOG.warn("{} : Error closing connection", this, closeError);
-                    }
+                else {
+                    LOG.debug("{} : Finished queued actions, suspend writing", this);
+                    handle.suspend();
+                    resumeRead();
+                }
+            }
+            catch (final IOException e) {
+                LOG.warn("{} : Error writing", this, e);
+                handle.cancel();
+                try {
+                    connection.close();
+                }
+                catch (IOException closeError) {
+                    LOG.warn("{} : Error closing connection", this, closeError);
                 }
             }
         }
@@ -101,4 +123,11 @@ public final class WriteSelectionRunnable implements SelectionRunnable<IOSocketC
             LOG.warn("{} : Unexpected key state {}", this, handle);
         }
     }
+
+    private void resumeRead() {
+        if (direction.clearReadSuspended()) {
+            LOG.debug("{} : Destination has drained, resume reading", this);
+            selector.resume(direction.getFrom(), IOSelectionKey.Op.READ);
+        }
+    }
 }
@@ -0,0 +1,64 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.settings;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Settings for limiting the bandwidth of the proxy. Each limit is in bytes per second and applies to the data
+ * forwarded, zero disables it. The limits are hierarchical, data is only forwarded when the direction, its connection
+ * and the whole server are all within their limits.
+ * @author Matt Champion on 18/10/2016
+ */
+@Value
+@Builder
+public final class BandwidthSettings {
+    /**
+     * The limit for each direction of a connection.
+     */
+    long directionBytesPerSecond;
+    /**
+     * The limit for both directions of a connection together.
+     */
+    long connectionBytesPerSecond;
+    /**
+     * The limit for all the connections of the server together.
+     */
+    long serverBytesPerSecond;
+    /**
+     * The largest burst each limit allows. If zero each limit allows a tenth of a second of data.
+     */
+    long burstSize;
+
+    /**
+     * @param bytesPerSecond A limit
+     * @return The largest burst the limit allows
+     */
+    public long burstSizeFor(long bytesPerSecond) {
+        return burstSize > 0L ? burstSize : Math.max(1L, bytesPerSecond / 10L);
+    }
+}
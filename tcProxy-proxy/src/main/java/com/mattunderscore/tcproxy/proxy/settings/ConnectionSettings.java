@@ -25,6 +25,7 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 
 package com.mattunderscore.tcproxy.proxy.settings;
 
+import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueueType;
 import lombok.Builder;
 import lombok.Value;
 
@@ -37,4 +38,34 @@ import lombok.Value;
 public final class ConnectionSettings {
     int writeQueueSize;
     int batchSize;
+    /**
+     * The size of the buffer each direction splices data through while no action processors are chained. Zero
+     * disables splicing.
+     */
+    int spliceBufferSize;
+    /**
+     * The type of queue used to hold the actions of each direction. If not set a {@link ActionQueueType#BLOCKING}
+     * queue is used. A {@link ActionQueueType#SINGLE_PRODUCER} queue relies on the producers being serialised.
+     */
+    ActionQueueType actionQueueType;
+    /**
+     * The number of queued actions at which reading the source of a direction is suspended. Zero uses the write queue
+     * size.
+     */
+    int highWatermark;
+    /**
+     * The number of queued actions at which reading the source of a direction is resumed. Zero resumes at half the
+     * high watermark.
+     */
+    int lowWatermark;
+    /**
+     * The number of bytes queued by a direction at which reading its source is suspended. Zero only limits the number
+     * of queued actions.
+     */
+    int writeQueueBytes;
+    /**
+     * The number of bytes that can be queued by all the connections of the server before the directions holding the
+     * most data are suspended. Zero for no limit.
+     */
+    long memoryBudget;
 }
@@ -0,0 +1,61 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.settings;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Settings for checking the health of the upstreams. Failed connects, failed probes and connections reset by an
+ * upstream are counted against it. After enough consecutive failures the upstream is ejected and new connections are
+ * sent to the other upstreams. Each time an upstream is ejected again without succeeding in between it is ejected for
+ * twice as long, up to the maximum. Times are in milliseconds.
+ * @author Matt Champion on 18/10/2016
+ */
+@Value
+@Builder
+public final class HealthCheckSettings {
+    /**
+     * The number of consecutive failures that eject an upstream. If zero five is used.
+     */
+    int failureThreshold;
+    /**
+     * The time an upstream is first ejected for. If zero one second is used.
+     */
+    long ejectionTime;
+    /**
+     * The longest time an upstream is ejected for. If zero thirty seconds is used.
+     */
+    long maximumEjectionTime;
+    /**
+     * The time between probing each upstream with a connect. If zero the upstreams are not probed.
+     */
+    long probeInterval;
+    /**
+     * The time a probe has to connect before it fails. If zero one second is used.
+     */
+    long probeTimeout;
+}
@@ -39,4 +39,28 @@ public final class OutboundSocketSettings {
     String host;
     int receiveBuffer;
     int sendBuffer;
+    /**
+     * The number of connected sockets each selector keeps ready for accepted clients. The pool is refilled when the
+     * number of sockets connected or connecting falls below it. Zero disables the pool.
+     */
+    int minimumPooled;
+    /**
+     * The number of sockets the pool is refilled to. If less than the minimum the minimum is used.
+     */
+    int maximumPooled;
+    /**
+     * The time in milliseconds the addresses of an upstream are used before resolving it again. If zero thirty
+     * seconds is used.
+     */
+    long addressTimeToLive;
+    /**
+     * The time in milliseconds a connection has to be established before it fails. Zero disables the timeout.
+     */
+    long connectTimeout;
+    /**
+     * The time in milliseconds to wait for a connect to an address before also connecting to the next address of the
+     * upstream. The first connection established is used and the others are closed. Zero disables connecting to
+     * several addresses, only one address is connected to.
+     */
+    long connectionAttemptDelay;
 }
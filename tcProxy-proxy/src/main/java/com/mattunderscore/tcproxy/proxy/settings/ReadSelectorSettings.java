@@ -25,6 +25,8 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 
 package com.mattunderscore.tcproxy.proxy.settings;
 
+import com.mattunderscore.tcproxy.selector.general.DispatchOrder;
+
 import lombok.Builder;
 import lombok.Value;
 
@@ -36,4 +38,16 @@ import lombok.Value;
 @Builder
 public final class ReadSelectorSettings {
     int readBufferSize;
+    /**
+     * The maximum time in milliseconds the selector blocks for waiting for keys. Zero polls without blocking.
+     */
+    long selectTimeout;
+    /**
+     * The number of free buffers each selector keeps for each size class. Zero disables pooling.
+     */
+    int buffersPerClass;
+    /**
+     * The order to run the reads and writes of a key that is ready for both. Writes are run first if not set.
+     */
+    DispatchOrder dispatchOrder;
 }
@@ -0,0 +1,180 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Fixed memory histogram of non-negative values. Values are counted in logarithmic buckets, each power of two is
+ * divided into {@value #SUB_BUCKETS} linear sub-buckets so a value is reported to within about 6% of the recorded
+ * value. Values larger than the range of the histogram are counted in the last bucket, the exact maximum is kept
+ * separately. Recording does not allocate. Values recorded are also recorded by the parent histogram. Histograms
+ * recorded to by different threads can be merged when they are read.
+ * @author Matt Champion on 18/10/2016
+ */
+@ThreadSafe
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 24;
+    private static final int BUCKETS = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalCount = new AtomicLong(0L);
+    private final AtomicLong max = new AtomicLong(0L);
+    private final LatencyHistogram parent;
+
+    /**
+     * Constructor for a histogram without a parent.
+     */
+    public LatencyHistogram() {
+        this(null);
+    }
+
+    /**
+     * @param parent The histogram to also record values to, may be null
+     */
+    public LatencyHistogram(LatencyHistogram parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Record a value. Negative values are recorded as zero.
+     * @param value The value
+     */
+    public void record(long value) {
+        final long recordedValue = value < 0L ? 0L : value;
+        counts.incrementAndGet(bucketIndex(recordedValue));
+        totalCount.incrementAndGet();
+
+        long currentMax = max.get();
+        while (recordedValue > currentMax && !max.compareAndSet(currentMax, recordedValue)) {
+            currentMax = max.get();
+        }
+
+        if (parent != null) {
+            parent.record(recordedValue);
+        }
+    }
+
+    /**
+     * Add the values recorded by another histogram to this one. Values recorded by the other histogram while it is
+     * being added may be missed.
+     * @param other The other histogram
+     */
+    public void add(LatencyHistogram other) {
+        long count = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            final long bucketCount = other.counts.get(i);
+            if (bucketCount > 0L) {
+                counts.addAndGet(i, bucketCount);
+                count += bucketCount;
+            }
+        }
+        totalCount.addAndGet(count);
+
+        final long otherMax = other.max.get();
+        long currentMax = max.get();
+        while (otherMax > currentMax && !max.compareAndSet(currentMax, otherMax)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * @return The number of values recorded
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * @return The largest value recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile The percentile, greater than zero and no more than one hundred
+     * @return The largest value equivalent to the values at the percentile, zero if no values have been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile <= 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("The percentile must be greater than zero and no more than 100");
+        }
+
+        final long count = totalCount.get();
+        if (count == 0L) {
+            return 0L;
+        }
+
+        final long target = Math.max(1L, (long) Math.ceil(percentile / 100.0 * count));
+        long cumulative = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= target) {
+                // The last bucket also counts the values out of range
+                return i == BUCKETS - 1 ? max.get() : Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @param value A non-negative value
+     * @return The index of the bucket for the value
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude > MAX_MAGNITUDE) {
+            return BUCKETS - 1;
+        }
+
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @param index The index of a bucket
+     * @return The largest value counted by the bucket
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        final int shift = index / SUB_BUCKETS - 1;
+        final long subBucket = index % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
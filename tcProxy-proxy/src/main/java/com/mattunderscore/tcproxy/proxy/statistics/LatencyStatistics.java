@@ -0,0 +1,110 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.statistics;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.Collection;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Latency of data forwarded by the proxy. The queueing delay is the time from the data being read to the first
+ * attempt to write it. The forwarding latency is the time from the data being read to it being completely written.
+ * Latencies are recorded in microseconds. Values recorded are also recorded by the parent statistics. Statistics
+ * recorded to by different threads can be merged when they are read.
+ * @author Matt Champion on 18/10/2016
+ */
+@ThreadSafe
+public final class LatencyStatistics {
+    private final LatencyHistogram queueingDelay;
+    private final LatencyHistogram forwardingLatency;
+
+    /**
+     * Constructor for statistics without a parent.
+     */
+    public LatencyStatistics() {
+        this(null);
+    }
+
+    /**
+     * @param parent The statistics to also record to, may be null
+     */
+    public LatencyStatistics(LatencyStatistics parent) {
+        if (parent == null) {
+            queueingDelay = new LatencyHistogram();
+            forwardingLatency = new LatencyHistogram();
+        }
+        else {
+            queueingDelay = new LatencyHistogram(parent.queueingDelay);
+            forwardingLatency = new LatencyHistogram(parent.forwardingLatency);
+        }
+    }
+
+    /**
+     * Merge statistics.
+     * @param statistics The statistics to merge
+     * @return New statistics containing the values recorded by all the statistics
+     */
+    public static LatencyStatistics merge(Collection<LatencyStatistics> statistics) {
+        final LatencyStatistics merged = new LatencyStatistics();
+        for (final LatencyStatistics latencyStatistics : statistics) {
+            merged.queueingDelay.add(latencyStatistics.queueingDelay);
+            merged.forwardingLatency.add(latencyStatistics.forwardingLatency);
+        }
+        return merged;
+    }
+
+    /**
+     * Record the first attempt to write data.
+     * @param readTime The value of {@link System#nanoTime()} when the data was read
+     */
+    public void dataDequeued(long readTime) {
+        queueingDelay.record(NANOSECONDS.toMicros(System.nanoTime() - readTime));
+    }
+
+    /**
+     * Record data being completely written.
+     * @param readTime The value of {@link System#nanoTime()} when the data was read
+     */
+    public void dataForwarded(long readTime) {
+        forwardingLatency.record(NANOSECONDS.toMicros(System.nanoTime() - readTime));
+    }
+
+    /**
+     * @return The queueing delay in microseconds
+     */
+    public LatencyHistogram getQueueingDelay() {
+        return queueingDelay;
+    }
+
+    /**
+     * @return The forwarding latency in microseconds
+     */
+    public LatencyHistogram getForwardingLatency() {
+        return forwardingLatency;
+    }
+}
@@ -0,0 +1,118 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.statistics;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Measures the rate events occur at. The rate is an exponentially weighted moving average over one minute, updated
+ * every five seconds. The average is brought up to date when events are marked or the rate is read so no timer thread
+ * is needed. Events are counted without locks.
+ * @author Matt Champion on 18/10/2016
+ */
+@ThreadSafe
+public final class RateMeter {
+    private static final long TICK_INTERVAL = SECONDS.toNanos(5L);
+    private static final double ALPHA = 1.0 - Math.exp(-5.0 / 60.0);
+    private final AtomicLong count = new AtomicLong(0L);
+    private final AtomicLong uncounted = new AtomicLong(0L);
+    private final AtomicLong lastTick;
+    private volatile boolean initialised;
+    private volatile double rate;
+
+    /**
+     * Constructor.
+     */
+    public RateMeter() {
+        this(System.nanoTime());
+    }
+
+    /*package*/ RateMeter(long startTime) {
+        lastTick = new AtomicLong(startTime);
+    }
+
+    /**
+     * Mark an event.
+     */
+    public void mark() {
+        mark(System.nanoTime());
+    }
+
+    /*package*/ void mark(long now) {
+        tickIfNecessary(now);
+        uncounted.incrementAndGet();
+        count.incrementAndGet();
+    }
+
+    /**
+     * @return The number of events marked
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return The one minute average rate of events per second
+     */
+    public double getRate() {
+        return getRate(System.nanoTime());
+    }
+
+    /*package*/ double getRate(long now) {
+        tickIfNecessary(now);
+        return rate * SECONDS.toNanos(1L);
+    }
+
+    private void tickIfNecessary(long now) {
+        final long oldTick = lastTick.get();
+        final long age = now - oldTick;
+        if (age >= TICK_INTERVAL) {
+            // Only the thread that advances the last tick updates the average
+            final long newTick = now - age % TICK_INTERVAL;
+            if (lastTick.compareAndSet(oldTick, newTick)) {
+                final long ticks = age / TICK_INTERVAL;
+                for (long i = 0; i < ticks; i++) {
+                    tick();
+                }
+            }
+        }
+    }
+
+    private void tick() {
+        final double instantRate = (double) uncounted.getAndSet(0L) / TICK_INTERVAL;
+        if (initialised) {
+            rate += ALPHA * (instantRate - rate);
+        }
+        else {
+            rate = instantRate;
+            initialised = true;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.statistics;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Counts the bytes read and written by the connections of a single selector. The counters must only be updated by
+ * the selector thread so they are updated without locks or atomic read-modify-write operations. They can be read
+ * from any thread.
+ * @author Matt Champion on 18/10/2016
+ */
+@ThreadSafe
+public final class TrafficCounter {
+    private volatile long bytesRead;
+    private volatile long bytesWritten;
+
+    /**
+     * Count bytes read. Must only be called by the selector thread.
+     * @param bytes The number of bytes read
+     */
+    public void dataRead(int bytes) {
+        bytesRead = bytesRead + bytes;
+    }
+
+    /**
+     * Count bytes written. Must only be called by the selector thread.
+     * @param bytes The number of bytes written
+     */
+    public void dataWritten(int bytes) {
+        bytesWritten = bytesWritten + bytes;
+    }
+
+    /**
+     * @return The number of bytes read
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return The number of bytes written
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+}
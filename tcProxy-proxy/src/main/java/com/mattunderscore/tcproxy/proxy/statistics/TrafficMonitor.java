@@ -0,0 +1,67 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.statistics;
+
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Collects the {@link TrafficCounter}s used by a server so the bytes forwarded by all the selectors can be inspected.
+ * Each selector updates its own counter so the selectors do not contend with each other.
+ * @author Matt Champion on 18/10/2016
+ */
+@ThreadSafe
+public final class TrafficMonitor implements TrafficMonitorMBean {
+    private final Collection<TrafficCounter> counters = new CopyOnWriteArrayList<>();
+
+    /**
+     * Add a counter to monitor.
+     * @param counter The counter
+     */
+    public void register(TrafficCounter counter) {
+        counters.add(counter);
+    }
+
+    @Override
+    public long getBytesRead() {
+        long bytesRead = 0L;
+        for (final TrafficCounter counter : counters) {
+            bytesRead += counter.getBytesRead();
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        long bytesWritten = 0L;
+        for (final TrafficCounter counter : counters) {
+            bytesWritten += counter.getBytesWritten();
+        }
+        return bytesWritten;
+    }
+}
@@ -0,0 +1,185 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.upstream;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mattunderscore.tcproxy.io.factory.IOOutboundSocketChannelFactory;
+import com.mattunderscore.tcproxy.io.factory.IOOutboundSocketFactory;
+import com.mattunderscore.tcproxy.io.impl.StaticIOFactory;
+import com.mattunderscore.tcproxy.io.selection.IOSelectionKey;
+import com.mattunderscore.tcproxy.io.socket.IOOutboundSocketChannel;
+import com.mattunderscore.tcproxy.io.socket.IOSocketChannel;
+import com.mattunderscore.tcproxy.proxy.settings.HealthCheckSettings;
+import com.mattunderscore.tcproxy.selector.SelectionRunnable;
+import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
+import com.mattunderscore.tcproxy.selector.general.RegistrationHandle;
+
+/**
+ * Periodically probes the upstreams with a non-blocking connect. The probes run on the thread of a selector, a probe
+ * that connects is closed immediately and counts as a success for the upstream. A probe that fails or does not
+ * connect within the timeout counts as a failure.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class HealthChecker {
+    private static final Logger LOG = LoggerFactory.getLogger("health-check");
+    private final IOOutboundSocketFactory<IOOutboundSocketChannel> factory;
+    private final List<Upstream> upstreams;
+    private final long probeInterval;
+    private final long probeTimeout;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    /**
+     * @param upstreams The upstreams to probe
+     * @param settings The health check settings, the probe interval must be greater than zero
+     */
+    public HealthChecker(UpstreamGroup upstreams, HealthCheckSettings settings) {
+        if (settings.getProbeInterval() <= 0L) {
+            throw new IllegalArgumentException("The probe interval must be greater than zero");
+        }
+        this.upstreams = upstreams.getUpstreams();
+        probeInterval = settings.getProbeInterval();
+        probeTimeout = settings.getProbeTimeout() > 0L ? settings.getProbeTimeout() : 1000L;
+        factory = StaticIOFactory.socketFactory(IOOutboundSocketChannelFactory.class).blocking(false);
+    }
+
+    /**
+     * Start probing the upstreams on the thread of a selector. Only the first selector is used, later calls are
+     * ignored.
+     * @param selector The selector
+     */
+    public void start(SocketChannelSelector selector) {
+        if (started.compareAndSet(false, true)) {
+            selector.schedule(new ProbeTask(selector), probeInterval, MILLISECONDS);
+        }
+    }
+
+    private void probe(SocketChannelSelector selector, Upstream upstream) {
+        final IOOutboundSocketChannel channel;
+        try {
+            channel = factory.create();
+        }
+        catch (IOException e) {
+            LOG.warn("Failed to create a probe", e);
+            return;
+        }
+
+        final Probe probe = new Probe(channel, upstream);
+        try {
+            channel.connect(upstream.getProbeAddress());
+        }
+        catch (IOException e) {
+            probe.failed();
+            return;
+        }
+
+        selector.register(channel, IOSelectionKey.Op.CONNECT, probe);
+        selector.schedule(probe, probeTimeout, MILLISECONDS);
+    }
+
+    /**
+     * Probes each upstream and schedules the next probes.
+     */
+    private final class ProbeTask implements Runnable {
+        private final SocketChannelSelector selector;
+
+        private ProbeTask(SocketChannelSelector selector) {
+            this.selector = selector;
+        }
+
+        @Override
+        public void run() {
+            for (final Upstream upstream : upstreams) {
+                probe(selector, upstream);
+            }
+            selector.schedule(this, probeInterval, MILLISECONDS);
+        }
+    }
+
+    /**
+     * A single probe. Completes when the socket connects, fails to connect or the timeout runs.
+     */
+    private static final class Probe implements SelectionRunnable<IOSocketChannel>, Runnable {
+        private final IOOutboundSocketChannel channel;
+        private final Upstream upstream;
+        private boolean done;
+
+        private Probe(IOOutboundSocketChannel channel, Upstream upstream) {
+            this.channel = channel;
+            this.upstream = upstream;
+        }
+
+        @Override
+        public void run(IOSocketChannel socket, RegistrationHandle handle) {
+            if (done || !handle.isConnectable()) {
+                return;
+            }
+
+            try {
+                if (channel.finishConnect()) {
+                    handle.cancel();
+                    done = true;
+                    upstream.probeSucceeded();
+                    close();
+                }
+            }
+            catch (IOException e) {
+                handle.cancel();
+                failed();
+            }
+        }
+
+        @Override
+        public void run() {
+            if (!done) {
+                LOG.debug("Probe of {} timed out", upstream);
+                failed();
+            }
+        }
+
+        private void failed() {
+            done = true;
+            upstream.probeFailed();
+            close();
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                LOG.debug("Failed to close a probe", e);
+            }
+        }
+    }
+}
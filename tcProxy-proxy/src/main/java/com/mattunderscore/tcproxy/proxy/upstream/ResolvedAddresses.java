@@ -0,0 +1,235 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.upstream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * The addresses a host resolves to. The host is resolved when created, after the time to live the next lookup
+ * resolves it again in the background and the previous addresses are used until it completes, so lookups never
+ * block. If resolving fails the previous addresses are kept. Each lookup returns the next address so connects are
+ * spread across all the A and AAAA records of the host. Probes take the addresses in turn separately, so probing does
+ * not change the address used by the next connection. The addresses alternate between IPv6 and IPv4, so when
+ * connecting to several addresses in turn an unreachable family does not delay the other.
+ * <p>
+ * Resolved addresses are also cached by the JVM, changes are not seen until the JVM cache has expired.
+ * @author Matt Champion on 18/10/2016
+ */
+@ThreadSafe
+public final class ResolvedAddresses {
+    private static final Logger LOG = LoggerFactory.getLogger("resolver");
+    private static final long RETRY_TIME = SECONDS.toNanos(1L);
+    private static final Executor RESOLVER = createResolver();
+    private final String host;
+    private final int port;
+    private final long timeToLive;
+    private final Executor executor;
+    private final AtomicBoolean resolving = new AtomicBoolean(false);
+    private final AtomicInteger next = new AtomicInteger(0);
+    private final AtomicInteger nextProbe = new AtomicInteger(0);
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                resolve(System.nanoTime());
+            }
+            finally {
+                resolving.set(false);
+            }
+        }
+    };
+    private volatile InetSocketAddress[] addresses;
+    private volatile long expires;
+
+    /**
+     * @param host The host
+     * @param port The port
+     * @param timeToLive The time in nanoseconds to use the addresses for before resolving the host again
+     */
+    public ResolvedAddresses(String host, int port, long timeToLive) {
+        this(host, port, timeToLive, RESOLVER);
+    }
+
+    /*package*/ ResolvedAddresses(String host, int port, long timeToLive, Executor executor) {
+        this.host = host;
+        this.port = port;
+        this.timeToLive = timeToLive;
+        this.executor = executor;
+        resolve(System.nanoTime());
+    }
+
+    /**
+     * @return The address to use for the next connection
+     */
+    public InetSocketAddress next() {
+        return next(System.nanoTime());
+    }
+
+    /**
+     * @return The address to use for the next probe
+     */
+    public InetSocketAddress nextProbe() {
+        return nextProbe(System.nanoTime());
+    }
+
+    /**
+     * @return Every address, starting from the address to use for the next connection
+     */
+    public InetSocketAddress[] nextAll() {
+        return nextAll(System.nanoTime());
+    }
+
+    /**
+     * @return The addresses the host currently resolves to
+     */
+    public List<InetSocketAddress> getAddresses() {
+        return Collections.unmodifiableList(Arrays.asList(addresses));
+    }
+
+    /*package*/ InetSocketAddress next(long now) {
+        final InetSocketAddress[] current = current(now);
+        return current[nextIndex(next, current.length)];
+    }
+
+    /*package*/ InetSocketAddress nextProbe(long now) {
+        final InetSocketAddress[] current = current(now);
+        return current[nextIndex(nextProbe, current.length)];
+    }
+
+    /*package*/ InetSocketAddress[] nextAll(long now) {
+        final InetSocketAddress[] current = current(now);
+        final int start = nextIndex(next, current.length);
+        final InetSocketAddress[] all = new InetSocketAddress[current.length];
+        for (int i = 0; i < current.length; i++) {
+            all[i] = current[(start + i) % current.length];
+        }
+        return all;
+    }
+
+    private InetSocketAddress[] current(long now) {
+        if (now - expires >= 0L && resolving.compareAndSet(false, true)) {
+            try {
+                executor.execute(refresh);
+            }
+            catch (RejectedExecutionException e) {
+                resolving.set(false);
+            }
+        }
+        return addresses;
+    }
+
+    private static int nextIndex(AtomicInteger cursor, int size) {
+        return (cursor.getAndIncrement() & Integer.MAX_VALUE) % size;
+    }
+
+    private void resolve(long now) {
+        try {
+            addresses = interleave(InetAddress.getAllByName(host));
+            expires = now + timeToLive;
+        }
+        catch (UnknownHostException e) {
+            if (addresses == null) {
+                LOG.warn("Failed to resolve {}", host);
+                addresses = new InetSocketAddress[] { InetSocketAddress.createUnresolved(host, port) };
+            }
+            else {
+                LOG.warn("Failed to resolve {}, using the previous addresses", host);
+            }
+            expires = now + Math.min(timeToLive, RETRY_TIME);
+        }
+    }
+
+    private InetSocketAddress[] interleave(InetAddress[] resolved) {
+        final List<InetSocketAddress> ipv6 = new ArrayList<>(resolved.length);
+        final List<InetSocketAddress> ipv4 = new ArrayList<>(resolved.length);
+        for (final InetAddress address : resolved) {
+            if (address instanceof Inet6Address) {
+                ipv6.add(new InetSocketAddress(address, port));
+            }
+            else {
+                ipv4.add(new InetSocketAddress(address, port));
+            }
+        }
+
+        // Start with the family of the first address the resolver preferred
+        final boolean ipv6First = resolved[0] instanceof Inet6Address;
+        final List<InetSocketAddress> first = ipv6First ? ipv6 : ipv4;
+        final List<InetSocketAddress> second = ipv6First ? ipv4 : ipv6;
+        final InetSocketAddress[] interleaved = new InetSocketAddress[resolved.length];
+        int index = 0;
+        for (int i = 0; i < Math.max(first.size(), second.size()); i++) {
+            if (i < first.size()) {
+                interleaved[index++] = first.get(i);
+            }
+            if (i < second.size()) {
+                interleaved[index++] = second.get(i);
+            }
+        }
+        return interleaved;
+    }
+
+    private static Executor createResolver() {
+        // A single daemon thread that stops when idle
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            1,
+            1,
+            60L,
+            SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r);
+                    thread.setName("tcProxy - Resolver");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,385 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.upstream;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * A target the proxy can forward connections to. Tracks the connections that are active and the time taken to
+ * connect. Connections made in advance for a pool are idle rather than active until a client connection takes them.
+ * The connect time is a peak weighted moving average, a slower connection is taken immediately and faster connections
+ * decay it over ten seconds. The host is resolved again in the background once its addresses have been used for the
+ * time to live, see {@link ResolvedAddresses}.
+ * <p>
+ * Failures to connect and connections reset by the upstream are counted. If there is a failure threshold the upstream
+ * is ejected once that many failures happen without a success in between. Ejection lasts for the ejection time,
+ * doubling each time the upstream is ejected again, up to the maximum. When the ejection has expired the upstream is
+ * available again but the next failure ejects it again. A success ends the ejection and the back off.
+ * @author Matt Champion on 18/10/2016
+ */
+@ThreadSafe
+public final class Upstream implements UpstreamMBean {
+    private static final Logger LOG = LoggerFactory.getLogger("upstream");
+    private static final double DECAY_TIME = SECONDS.toNanos(10L);
+    private static final long DEFAULT_TIME_TO_LIVE = SECONDS.toNanos(30L);
+    private final String host;
+    private final int port;
+    private final int weight;
+    private final ResolvedAddresses addresses;
+    private final AtomicInteger active = new AtomicInteger(0);
+    private final AtomicInteger idle = new AtomicInteger(0);
+    private final AtomicLong connects = new AtomicLong(0L);
+    private final AtomicLong failures = new AtomicLong(0L);
+    private final AtomicLong resets = new AtomicLong(0L);
+    private final AtomicLong ejections = new AtomicLong(0L);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
+    private final int failureThreshold;
+    private final long ejectionNanos;
+    private final long maximumEjectionNanos;
+    private volatile boolean ejected;
+    private volatile long ejectedUntil;
+    @GuardedBy("this")
+    private int backOff;
+    @GuardedBy("this")
+    private double connectTime;
+    @GuardedBy("this")
+    private long lastSample;
+
+    /**
+     * @param host The host
+     * @param port The port
+     * @param weight The weight, must be greater than zero
+     */
+    public Upstream(String host, int port, int weight) {
+        this(host, port, weight, 0, 0L, 0L);
+    }
+
+    /**
+     * @param host The host
+     * @param port The port
+     * @param weight The weight, must be greater than zero
+     * @param failureThreshold The number of consecutive failures that eject the upstream, zero never ejects it
+     * @param ejectionNanos The time the upstream is first ejected for in nanoseconds
+     * @param maximumEjectionNanos The longest time the upstream is ejected for in nanoseconds
+     */
+    public Upstream(
+            String host,
+            int port,
+            int weight,
+            int failureThreshold,
+            long ejectionNanos,
+            long maximumEjectionNanos) {
+        this(host, port, weight, DEFAULT_TIME_TO_LIVE, failureThreshold, ejectionNanos, maximumEjectionNanos);
+    }
+
+    /**
+     * @param host The host
+     * @param port The port
+     * @param weight The weight, must be greater than zero
+     * @param addressTimeToLive The time in nanoseconds the addresses of the host are used before resolving it again
+     * @param failureThreshold The number of consecutive failures that eject the upstream, zero never ejects it
+     * @param ejectionNanos The time the upstream is first ejected for in nanoseconds
+     * @param maximumEjectionNanos The longest time the upstream is ejected for in nanoseconds
+     */
+    public Upstream(
+            String host,
+            int port,
+            int weight,
+            long addressTimeToLive,
+            int failureThreshold,
+            long ejectionNanos,
+            long maximumEjectionNanos) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("The weight must be greater than zero");
+        }
+        if (failureThreshold < 0) {
+            throw new IllegalArgumentException("The failure threshold must not be negative");
+        }
+        this.host = host;
+        this.port = port;
+        this.weight = weight;
+        this.failureThreshold = failureThreshold;
+        this.ejectionNanos = ejectionNanos;
+        this.maximumEjectionNanos = Math.max(ejectionNanos, maximumEjectionNanos);
+        addresses = new ResolvedAddresses(host, port, addressTimeToLive);
+    }
+
+    /**
+     * @return The address to connect to, each address the host resolves to is used in turn
+     */
+    public InetSocketAddress getSocketAddress() {
+        return addresses.next();
+    }
+
+    /**
+     * @return The address to probe, each address the host resolves to is probed in turn without changing the address
+     * to connect to
+     */
+    public InetSocketAddress getProbeAddress() {
+        return addresses.nextProbe();
+    }
+
+    /**
+     * @return Every address of the upstream, starting from the address to connect to
+     */
+    public InetSocketAddress[] getSocketAddresses() {
+        return addresses.nextAll();
+    }
+
+    /**
+     * A connection to the upstream has been started.
+     */
+    public void connecting() {
+        active.incrementAndGet();
+    }
+
+    /**
+     * A connection to the upstream has been established.
+     * @param connectNanos The time taken to connect in nanoseconds
+     */
+    public void connected(long connectNanos) {
+        connected(connectNanos, System.nanoTime());
+    }
+
+    /**
+     * A connection to the upstream for a pool has been started.
+     */
+    public void pooling() {
+        idle.incrementAndGet();
+    }
+
+    /**
+     * A connection to the upstream could not be established.
+     */
+    public void connectFailed() {
+        active.decrementAndGet();
+        countFailure();
+    }
+
+    /**
+     * A connection to the upstream for a pool could not be established.
+     */
+    public void pooledConnectFailed() {
+        idle.decrementAndGet();
+        countFailure();
+    }
+
+    /**
+     * A pooled connection to the upstream has been taken by a client connection.
+     */
+    public void taken() {
+        active.incrementAndGet();
+        idle.decrementAndGet();
+    }
+
+    /**
+     * A connection to the upstream has been reset by it.
+     */
+    public void reset() {
+        resets.incrementAndGet();
+        failed(System.nanoTime());
+    }
+
+    /**
+     * A probe of the upstream connected.
+     */
+    public void probeSucceeded() {
+        succeeded();
+    }
+
+    /**
+     * A probe of the upstream failed to connect.
+     */
+    public void probeFailed() {
+        failed(System.nanoTime());
+    }
+
+    /**
+     * @param now The current value of {@link System#nanoTime()}
+     * @return {@code false} if the upstream is ejected
+     */
+    public boolean isAvailable(long now) {
+        return !ejected || now - ejectedUntil >= 0L;
+    }
+
+    /**
+     * A connection to the upstream has been closed.
+     */
+    public void released() {
+        active.decrementAndGet();
+    }
+
+    /**
+     * A pooled connection to the upstream has been closed without being taken.
+     */
+    public void discarded() {
+        idle.decrementAndGet();
+    }
+
+    /**
+     * @return The cost of connecting to the upstream used by {@link LoadBalancingPolicy#PEAK_EWMA}
+     */
+    public synchronized double cost() {
+        // Add one so the active connections still count before any connect times are known
+        return (connectTime + 1.0) * (active.get() + 1);
+    }
+
+    @Override
+    public String getAddress() {
+        return host + ":" + port;
+    }
+
+    @Override
+    public String[] getResolvedAddresses() {
+        final List<InetSocketAddress> resolved = addresses.getAddresses();
+        final String[] result = new String[resolved.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = resolved.get(i).toString();
+        }
+        return result;
+    }
+
+    @Override
+    public int getWeight() {
+        return weight;
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return active.get();
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return idle.get();
+    }
+
+    @Override
+    public long getConnectCount() {
+        return connects.get();
+    }
+
+    @Override
+    public long getFailedConnectCount() {
+        return failures.get();
+    }
+
+    @Override
+    public synchronized double getConnectTime() {
+        return connectTime / MILLISECONDS.toNanos(1L);
+    }
+
+    @Override
+    public long getResetCount() {
+        return resets.get();
+    }
+
+    @Override
+    public boolean isEjected() {
+        return !isAvailable(System.nanoTime());
+    }
+
+    @Override
+    public long getEjectionCount() {
+        return ejections.get();
+    }
+
+    @Override
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    @Override
+    public String toString() {
+        return getAddress();
+    }
+
+    private void countFailure() {
+        failures.incrementAndGet();
+        failed(System.nanoTime());
+    }
+
+    /*package*/ void failed(long now) {
+        final int failed = consecutiveFailures.incrementAndGet();
+        if (failureThreshold > 0 && failed >= failureThreshold && isAvailable(now)) {
+            eject(now);
+        }
+    }
+
+    private synchronized void eject(long now) {
+        if (!isAvailable(now)) {
+            // Ejected by another thread
+            return;
+        }
+
+        long ejectionTime = ejectionNanos;
+        for (int i = 0; i < backOff && ejectionTime < maximumEjectionNanos; i++) {
+            ejectionTime = ejectionTime * 2L;
+        }
+        ejectionTime = Math.min(ejectionTime, maximumEjectionNanos);
+        backOff++;
+        ejectedUntil = now + ejectionTime;
+        ejected = true;
+        ejections.incrementAndGet();
+        LOG.warn("Ejecting upstream {} for {} ms", this, MILLISECONDS.convert(ejectionTime, NANOSECONDS));
+    }
+
+    private void succeeded() {
+        consecutiveFailures.set(0);
+        if (ejected) {
+            synchronized (this) {
+                ejected = false;
+                backOff = 0;
+            }
+        }
+    }
+
+    /*package*/ synchronized void connected(long connectNanos, long now) {
+        succeeded();
+        connects.incrementAndGet();
+        if (connects.get() == 1L || connectNanos > connectTime) {
+            connectTime = connectNanos;
+        }
+        else {
+            final double decay = Math.exp(-Math.max(0L, now - lastSample) / DECAY_TIME);
+            connectTime = connectTime * decay + connectNanos * (1.0 - decay);
+        }
+        lastSample = now;
+    }
+}
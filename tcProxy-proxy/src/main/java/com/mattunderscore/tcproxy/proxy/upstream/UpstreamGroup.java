@@ -0,0 +1,257 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.upstream;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import com.mattunderscore.tcproxy.proxy.settings.HealthCheckSettings;
+import com.mattunderscore.tcproxy.proxy.settings.LoadBalancingSettings;
+import com.mattunderscore.tcproxy.proxy.settings.OutboundSocketSettings;
+import com.mattunderscore.tcproxy.proxy.settings.UpstreamSettings;
+
+/**
+ * The upstreams of a server and the policy used to choose between them. Shared by the selectors of the server.
+ * {@link LoadBalancingPolicy#WEIGHTED} uses smooth weighted round robin, spreading the connections to an upstream
+ * between the other upstreams rather than sending them in a burst. Ejected upstreams are skipped unless every upstream
+ * is ejected, then the policy chooses between all of them.
+ * @author Matt Champion on 18/10/2016
+ */
+@ThreadSafe
+public final class UpstreamGroup {
+    private final List<Upstream> upstreams;
+    private final LoadBalancingPolicy policy;
+    private final AtomicInteger next = new AtomicInteger(0);
+    @GuardedBy("this")
+    private final int[] currentWeights;
+
+    /**
+     * @param upstreams The upstreams
+     * @param policy The policy to choose an upstream with
+     */
+    public UpstreamGroup(List<Upstream> upstreams, LoadBalancingPolicy policy) {
+        if (upstreams.isEmpty()) {
+            throw new IllegalArgumentException("There must be at least one upstream");
+        }
+        this.upstreams = Collections.unmodifiableList(new ArrayList<>(upstreams));
+        this.policy = policy;
+        currentWeights = new int[upstreams.size()];
+    }
+
+    /**
+     * @return The upstream to use for the next connection
+     */
+    public Upstream select() {
+        return select(System.nanoTime());
+    }
+
+    /**
+     * @return The upstreams
+     */
+    public List<Upstream> getUpstreams() {
+        return upstreams;
+    }
+
+    /*package*/ Upstream select(long now) {
+        final int size = upstreams.size();
+        if (size == 1) {
+            return upstreams.get(0);
+        }
+
+        final boolean anyAvailable = isAnyAvailable(now);
+        switch (policy) {
+            case ROUND_ROBIN:
+                final int index = nextIndex(size);
+                for (int i = 0; i < size; i++) {
+                    final Upstream upstream = upstreams.get((index + i) % size);
+                    if (!anyAvailable || upstream.isAvailable(now)) {
+                        return upstream;
+                    }
+                }
+                return upstreams.get(index);
+            case WEIGHTED:
+                return selectWeighted(now, anyAvailable);
+            case LEAST_ACTIVE:
+                // Scan from the round robin position so ties are spread between the upstreams
+                final int start = nextIndex(size);
+                Upstream selected = null;
+                int fewest = Integer.MAX_VALUE;
+                for (int i = 0; i < size && fewest > 0; i++) {
+                    final Upstream upstream = upstreams.get((start + i) % size);
+                    final int active = upstream.getActiveConnections();
+                    if ((!anyAvailable || upstream.isAvailable(now)) && active < fewest) {
+                        selected = upstream;
+                        fewest = active;
+                    }
+                }
+                return selected;
+            case PEAK_EWMA:
+                // Compare two different upstreams chosen at random
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                final int first = random.nextInt(size);
+                final int second = (first + 1 + random.nextInt(size - 1)) % size;
+                final Upstream firstUpstream = upstreams.get(first);
+                final Upstream secondUpstream = upstreams.get(second);
+                if (anyAvailable && !firstUpstream.isAvailable(now)) {
+                    return secondUpstream.isAvailable(now) ? secondUpstream : firstAvailable(second, now);
+                }
+                else if (anyAvailable && !secondUpstream.isAvailable(now)) {
+                    return firstUpstream;
+                }
+                return firstUpstream.cost() <= secondUpstream.cost() ? firstUpstream : secondUpstream;
+            default:
+                throw new IllegalStateException("Unknown load balancing policy " + policy);
+        }
+    }
+
+    private boolean isAnyAvailable(long now) {
+        for (int i = 0; i < upstreams.size(); i++) {
+            if (upstreams.get(i).isAvailable(now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Upstream firstAvailable(int start, long now) {
+        final int size = upstreams.size();
+        for (int i = 1; i < size; i++) {
+            final Upstream upstream = upstreams.get((start + i) % size);
+            if (upstream.isAvailable(now)) {
+                return upstream;
+            }
+        }
+        return upstreams.get(start);
+    }
+
+    private int nextIndex(int size) {
+        return (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+    }
+
+    private synchronized Upstream selectWeighted(long now, boolean anyAvailable) {
+        // Only the available upstreams take part
+        int selected = -1;
+        int availableWeight = 0;
+        for (int i = 0; i < currentWeights.length; i++) {
+            final Upstream upstream = upstreams.get(i);
+            if (!anyAvailable || upstream.isAvailable(now)) {
+                currentWeights[i] += upstream.getWeight();
+                availableWeight += upstream.getWeight();
+                if (selected == -1 || currentWeights[i] > currentWeights[selected]) {
+                    selected = i;
+                }
+            }
+        }
+        currentWeights[selected] -= availableWeight;
+        return upstreams.get(selected);
+    }
+
+    /**
+     * Create the upstreams of a server. If there are no load balancing settings the host and port of the outbound
+     * settings are the only upstream.
+     * @param outboundSocketSettings The outbound socket settings
+     * @param loadBalancingSettings The load balancing settings, may be null
+     * @return The upstreams
+     */
+    public static UpstreamGroup create(
+            OutboundSocketSettings outboundSocketSettings,
+            LoadBalancingSettings loadBalancingSettings) {
+        return create(outboundSocketSettings, loadBalancingSettings, null);
+    }
+
+    /**
+     * Create the upstreams of a server. If there are no load balancing settings the host and port of the outbound
+     * settings are the only upstream. If there are no health check settings the upstreams are never ejected.
+     * @param outboundSocketSettings The outbound socket settings
+     * @param loadBalancingSettings The load balancing settings, may be null
+     * @param healthCheckSettings The health check settings, may be null
+     * @return The upstreams
+     */
+    public static UpstreamGroup create(
+            OutboundSocketSettings outboundSocketSettings,
+            LoadBalancingSettings loadBalancingSettings,
+            HealthCheckSettings healthCheckSettings) {
+        if (loadBalancingSettings == null || loadBalancingSettings.getUpstreams().isEmpty()) {
+            return new UpstreamGroup(
+                Collections.singletonList(
+                    createUpstream(
+                        outboundSocketSettings.getHost(),
+                        outboundSocketSettings.getPort(),
+                        1,
+                        outboundSocketSettings,
+                        healthCheckSettings)),
+                LoadBalancingPolicy.ROUND_ROBIN);
+        }
+
+        final List<Upstream> upstreams = new ArrayList<>();
+        for (final UpstreamSettings settings : loadBalancingSettings.getUpstreams()) {
+            upstreams.add(createUpstream(
+                settings.getHost(),
+                settings.getPort(),
+                settings.getWeight() > 0 ? settings.getWeight() : 1,
+                outboundSocketSettings,
+                healthCheckSettings));
+        }
+        final LoadBalancingPolicy policy = loadBalancingSettings.getPolicy();
+        return new UpstreamGroup(upstreams, policy != null ? policy : LoadBalancingPolicy.ROUND_ROBIN);
+    }
+
+    private static Upstream createUpstream(
+            String host,
+            int port,
+            int weight,
+            OutboundSocketSettings outboundSocketSettings,
+            HealthCheckSettings settings) {
+        final long addressTimeToLive = outboundSocketSettings.getAddressTimeToLive() > 0L ?
+            outboundSocketSettings.getAddressTimeToLive() :
+            30000L;
+        if (settings == null) {
+            return new Upstream(host, port, weight, MILLISECONDS.toNanos(addressTimeToLive), 0, 0L, 0L);
+        }
+
+        final int failureThreshold = settings.getFailureThreshold() > 0 ? settings.getFailureThreshold() : 5;
+        final long ejectionTime = settings.getEjectionTime() > 0L ? settings.getEjectionTime() : 1000L;
+        final long maximumEjectionTime = settings.getMaximumEjectionTime() > 0L ?
+            settings.getMaximumEjectionTime() :
+            30000L;
+        return new Upstream(
+            host,
+            port,
+            weight,
+            MILLISECONDS.toNanos(addressTimeToLive),
+            failureThreshold,
+            MILLISECONDS.toNanos(ejectionTime),
+            MILLISECONDS.toNanos(maximumEjectionTime));
+    }
+}
@@ -0,0 +1,92 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.upstream;
+
+/**
+ * Management interface for an {@link Upstream}.
+ * @author Matt Champion on 18/10/2016
+ */
+public interface UpstreamMBean {
+    /**
+     * @return The host and port of the upstream
+     */
+    String getAddress();
+
+    /**
+     * @return The addresses the host of the upstream currently resolves to
+     */
+    String[] getResolvedAddresses();
+
+    /**
+     * @return The weight of the upstream
+     */
+    int getWeight();
+
+    /**
+     * @return The number of connections to the upstream that are connecting or forwarding data for a client
+     */
+    int getActiveConnections();
+
+    /**
+     * @return The number of connections to the upstream that are connecting or waiting in a pool
+     */
+    int getIdleConnections();
+
+    /**
+     * @return The number of connections to the upstream that have been established
+     */
+    long getConnectCount();
+
+    /**
+     * @return The number of connections to the upstream that failed to be established
+     */
+    long getFailedConnectCount();
+
+    /**
+     * @return The peak weighted moving average of the time taken to connect in milliseconds
+     */
+    double getConnectTime();
+
+    /**
+     * @return The number of connections reset by the upstream
+     */
+    long getResetCount();
+
+    /**
+     * @return {@code true} if the upstream is ejected and new connections are sent to the other upstreams
+     */
+    boolean isEjected();
+
+    /**
+     * @return The number of times the upstream has been ejected
+     */
+    long getEjectionCount();
+
+    /**
+     * @return The number of failures since the last success
+     */
+    int getConsecutiveFailures();
+}
@@ -0,0 +1,209 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+import com.mattunderscore.tcproxy.io.selection.IOSelectionKey;
+import com.mattunderscore.tcproxy.io.socket.IOOutboundSocketChannel;
+import com.mattunderscore.tcproxy.io.socket.IOSocketChannel;
+import com.mattunderscore.tcproxy.proxy.settings.OutboundSocketSettings;
+import com.mattunderscore.tcproxy.proxy.upstream.LoadBalancingPolicy;
+import com.mattunderscore.tcproxy.proxy.upstream.Upstream;
+import com.mattunderscore.tcproxy.proxy.upstream.UpstreamGroup;
+import com.mattunderscore.tcproxy.selector.SelectionRunnable;
+import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
+import com.mattunderscore.tcproxy.selector.general.RegistrationHandle;
+
+/**
+ * Unit tests for {@link AsynchronousOutboundConnectionFactory}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class AsynchronousOutboundConnectionFactoryTest {
+    @Mock
+    private SocketChannelSelector selector;
+    @Mock
+    private AsynchronousOutboundConnectionFactory.ConnectionCallback callback;
+    @Mock
+    private RegistrationHandle handle;
+
+    private ServerSocket serverSocket;
+    private Upstream upstream;
+    private UpstreamGroup upstreams;
+
+    @Before
+    public void setUp() throws IOException {
+        initMocks(this);
+        when(handle.isConnectable()).thenReturn(true);
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress("127.0.0.1", 0));
+        upstream = new Upstream("127.0.0.1", serverSocket.getLocalPort(), 1);
+        upstreams = new UpstreamGroup(singletonList(upstream), LoadBalancingPolicy.ROUND_ROBIN);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        serverSocket.close();
+    }
+
+    @Test
+    public void noTimeout() {
+        final AsynchronousOutboundConnectionFactory factory = new AsynchronousOutboundConnectionFactory(
+            OutboundSocketSettings.builder().build(),
+            upstreams,
+            selector);
+
+        factory.createConnection(callback);
+
+        verify(selector).register(
+            any(IOSocketChannel.class),
+            eq(IOSelectionKey.Op.CONNECT),
+            any(SelectionRunnable.class));
+        verify(selector, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void timesOut() {
+        final AsynchronousOutboundConnectionFactory factory = new AsynchronousOutboundConnectionFactory(
+            OutboundSocketSettings.builder().connectTimeout(100L).build(),
+            upstreams,
+            selector);
+
+        factory.createConnection(callback);
+
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(selector).schedule(captor.capture(), eq(100L), eq(TimeUnit.MILLISECONDS));
+        captor.getValue().run();
+
+        verify(callback).onException(any(ConnectException.class));
+        assertEquals(1L, upstream.getFailedConnectCount());
+        assertEquals(0, upstream.getActiveConnections());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void connectsBeforeTimeout() throws IOException {
+        final AsynchronousOutboundConnectionFactory factory = new AsynchronousOutboundConnectionFactory(
+            OutboundSocketSettings.builder().connectTimeout(100L).build(),
+            upstreams,
+            selector);
+
+        factory.createConnection(callback);
+
+        final ArgumentCaptor<IOSocketChannel> channelCaptor = ArgumentCaptor.forClass(IOSocketChannel.class);
+        final ArgumentCaptor<SelectionRunnable> runnableCaptor = ArgumentCaptor.forClass(SelectionRunnable.class);
+        verify(selector).register(channelCaptor.capture(), eq(IOSelectionKey.Op.CONNECT), runnableCaptor.capture());
+        final ArgumentCaptor<Runnable> timeoutCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(selector).schedule(timeoutCaptor.capture(), eq(100L), eq(TimeUnit.MILLISECONDS));
+
+        // Run the selection until the loopback connect has completed
+        final IOSocketChannel channel = channelCaptor.getValue();
+        final long deadline = System.currentTimeMillis() + 5000L;
+        while (upstream.getConnectCount() == 0L && System.currentTimeMillis() < deadline) {
+            runnableCaptor.getValue().run(channel, handle);
+        }
+        verify(callback).onConnected(any(IOOutboundSocketChannel.class), eq(upstream));
+
+        timeoutCaptor.getValue().run();
+        verify(callback, never()).onException(any(IOException.class));
+        channel.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void pooledConnectionIdleUntilTaken() throws IOException {
+        final AsynchronousOutboundConnectionFactory factory = new AsynchronousOutboundConnectionFactory(
+            OutboundSocketSettings.builder().minimumPooled(1).maximumPooled(1).build(),
+            upstreams,
+            selector);
+
+        // Fill the pool
+        final ArgumentCaptor<Runnable> refillCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(selector).execute(refillCaptor.capture());
+        refillCaptor.getValue().run();
+        assertEquals(0, upstream.getActiveConnections());
+        assertEquals(1, upstream.getIdleConnections());
+
+        final ArgumentCaptor<IOSocketChannel> channelCaptor = ArgumentCaptor.forClass(IOSocketChannel.class);
+        final ArgumentCaptor<SelectionRunnable> runnableCaptor = ArgumentCaptor.forClass(SelectionRunnable.class);
+        verify(selector).register(channelCaptor.capture(), eq(IOSelectionKey.Op.CONNECT), runnableCaptor.capture());
+        final IOSocketChannel channel = channelCaptor.getValue();
+        final long deadline = System.currentTimeMillis() + 5000L;
+        while (upstream.getConnectCount() == 0L && System.currentTimeMillis() < deadline) {
+            runnableCaptor.getValue().run(channel, handle);
+        }
+        assertEquals(1, factory.getPooledCount());
+        assertEquals(0, upstream.getActiveConnections());
+        assertEquals(1, upstream.getIdleConnections());
+
+        // Taking it makes it active and starts connecting a replacement for the pool
+        factory.createConnection(callback);
+        verify(callback).onConnected(any(IOOutboundSocketChannel.class), eq(upstream));
+        assertEquals(1, upstream.getActiveConnections());
+        assertEquals(1, upstream.getIdleConnections());
+        channel.close();
+    }
+
+    @Test
+    public void pooledConnectTimesOut() {
+        new AsynchronousOutboundConnectionFactory(
+            OutboundSocketSettings.builder().minimumPooled(1).maximumPooled(1).connectTimeout(100L).build(),
+            upstreams,
+            selector);
+
+        final ArgumentCaptor<Runnable> refillCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(selector).execute(refillCaptor.capture());
+        refillCaptor.getValue().run();
+
+        final ArgumentCaptor<Runnable> timeoutCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(selector).schedule(timeoutCaptor.capture(), eq(100L), eq(TimeUnit.MILLISECONDS));
+        timeoutCaptor.getValue().run();
+
+        assertEquals(1L, upstream.getFailedConnectCount());
+        assertEquals(0, upstream.getActiveConnections());
+        assertEquals(0, upstream.getIdleConnections());
+    }
+}
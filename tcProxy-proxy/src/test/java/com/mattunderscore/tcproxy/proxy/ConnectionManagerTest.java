@@ -26,13 +26,21 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 package com.mattunderscore.tcproxy.proxy;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 import java.io.IOException;
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -42,8 +50,10 @@ import com.mattunderscore.tcproxy.io.socket.IOSocketChannel;
 import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueue;
 import com.mattunderscore.tcproxy.proxy.connection.Connection;
 import com.mattunderscore.tcproxy.proxy.connection.ConnectionManager;
+import com.mattunderscore.tcproxy.proxy.connection.ConnectionManager.SameThreadExecutor;
 import com.mattunderscore.tcproxy.proxy.direction.Direction;
 import com.mattunderscore.tcproxy.proxy.direction.DirectionImpl;
+import com.mattunderscore.tcproxy.proxy.statistics.LatencyStatistics;
 import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
 
 /**
@@ -62,6 +72,8 @@ public final class ConnectionManagerTest {
     @Mock
     private ActionQueue actionQueue;
     @Mock
+    private ActionQueue largeActionQueue;
+    @Mock
     private ConnectionManager.Listener listener;
     @Mock
     private Direction.Listener directionListener;
@@ -83,7 +95,7 @@ public final class ConnectionManagerTest {
 
     @Test
     public void listenerTest0() throws IOException {
-        final ConnectionManager manager = new ConnectionManager();
+        final ConnectionManager manager = new ConnectionManager(SameThreadExecutor.INSTANCE);
 
         final Direction dir0 = new DirectionImpl(channel0, channel1, actionQueue);
         final Direction dir1 = new DirectionImpl(channel1, channel0, actionQueue);
@@ -104,7 +116,7 @@ public final class ConnectionManagerTest {
 
     @Test
     public void listenerTest1() throws IOException {
-        final ConnectionManager manager = new ConnectionManager();
+        final ConnectionManager manager = new ConnectionManager(SameThreadExecutor.INSTANCE);
 
         final Direction dir0 = new DirectionImpl(channel0, channel1, actionQueue);
         final Direction dir1 = new DirectionImpl(channel1, channel0, actionQueue);
@@ -138,4 +150,137 @@ public final class ConnectionManagerTest {
         conn.close();
         assertEquals(0, manager.getConnections().size());
     }
+
+    @Test
+    public void connectionCount() throws IOException {
+        final ConnectionManager manager = new ConnectionManager();
+
+        final Direction dir0 = new DirectionImpl(channel0, channel1, actionQueue);
+        final Direction dir1 = new DirectionImpl(channel1, channel0, actionQueue);
+        final Connection conn = new ConnectionImpl(manager, dir0, dir1, selector);
+
+        assertEquals(0, manager.getConnectionCount());
+        manager.register(conn);
+        manager.register(conn);
+        assertEquals(1, manager.getConnectionCount());
+
+        conn.close();
+        assertEquals(0, manager.getConnectionCount());
+        manager.unregister(conn);
+        assertEquals(0, manager.getConnectionCount());
+        assertEquals(1L, manager.getAcceptedCount());
+        assertEquals(1L, manager.getClosedCount());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void connectionsUnmodifiable() throws IOException {
+        final ConnectionManager manager = new ConnectionManager();
+
+        final Direction dir0 = new DirectionImpl(channel0, channel1, actionQueue);
+        final Direction dir1 = new DirectionImpl(channel1, channel0, actionQueue);
+        final Connection conn = new ConnectionImpl(manager, dir0, dir1, selector);
+
+        manager.getConnections().add(conn);
+    }
+
+    @Test
+    public void largestConsumers() throws IOException {
+        final ConnectionManager manager = new ConnectionManager();
+        when(actionQueue.queuedBytes()).thenReturn(100L);
+        when(largeActionQueue.queuedBytes()).thenReturn(500L);
+
+        final Connection conn0 = new ConnectionImpl(
+            manager,
+            new DirectionImpl(channel0, channel1, actionQueue),
+            new DirectionImpl(channel1, channel0, actionQueue),
+            selector);
+        final Connection conn1 = new ConnectionImpl(
+            manager,
+            new DirectionImpl(channel0, channel1, largeActionQueue),
+            new DirectionImpl(channel1, channel0, actionQueue),
+            selector);
+        manager.register(conn0);
+        manager.register(conn1);
+
+        assertEquals(800L, manager.getQueuedBytes());
+        final String[] consumers = manager.getLargestConsumers();
+        assertEquals(2, consumers.length);
+        assertEquals(conn1 + " : 600", consumers[0]);
+        assertEquals(conn0 + " : 200", consumers[1]);
+    }
+
+    @Test
+    public void listenerExecutor() throws IOException {
+        final List<Runnable> tasks = new ArrayList<>();
+        final ConnectionManager manager = new ConnectionManager(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+
+        final Direction dir0 = new DirectionImpl(channel0, channel1, actionQueue);
+        final Direction dir1 = new DirectionImpl(channel1, channel0, actionQueue);
+        final Connection conn = new ConnectionImpl(manager, dir0, dir1, selector);
+        manager.addListener(listener);
+
+        manager.register(conn);
+        conn.close();
+        verifyZeroInteractions(listener);
+        assertEquals(2, tasks.size());
+
+        tasks.get(0).run();
+        verify(listener).newConnection(conn);
+        tasks.get(1).run();
+        verify(listener).closedConnection(conn);
+    }
+
+    @Test
+    public void latencyMergedFromSelectors() {
+        final ConnectionManager manager = new ConnectionManager(SameThreadExecutor.INSTANCE);
+        final LatencyStatistics selector0 = manager.createClientToServerLatency();
+        final LatencyStatistics selector1 = manager.createClientToServerLatency();
+        final long now = System.nanoTime();
+
+        selector0.dataForwarded(now);
+        selector1.dataForwarded(now);
+        selector1.dataDequeued(now);
+
+        final LatencyStatistics merged = manager.getClientToServerLatency();
+        assertEquals(2L, merged.getForwardingLatency().getCount());
+        assertEquals(1L, merged.getQueueingDelay().getCount());
+        assertEquals(0L, manager.getServerToClientLatency().getForwardingLatency().getCount());
+    }
+
+    @Test
+    public void listenersNotifiedOffCallingThread() throws IOException, InterruptedException {
+        final ConnectionManager manager = new ConnectionManager();
+        final CountDownLatch latch = new CountDownLatch(2);
+        final AtomicReference<Thread> newThread = new AtomicReference<>();
+        final AtomicReference<Thread> closedThread = new AtomicReference<>();
+        manager.addListener(new ConnectionManager.Listener() {
+            @Override
+            public void newConnection(Connection connection) {
+                newThread.set(Thread.currentThread());
+                latch.countDown();
+            }
+
+            @Override
+            public void closedConnection(Connection connection) {
+                closedThread.set(Thread.currentThread());
+                latch.countDown();
+            }
+        });
+
+        final Direction dir0 = new DirectionImpl(channel0, channel1, actionQueue);
+        final Direction dir1 = new DirectionImpl(channel1, channel0, actionQueue);
+        final Connection conn = new ConnectionImpl(manager, dir0, dir1, selector);
+        manager.register(conn);
+        conn.close();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), newThread.get());
+        assertNotSame(Thread.currentThread(), closedThread.get());
+        assertTrue(newThread.get().isDaemon());
+    }
 }
@@ -0,0 +1,211 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.action;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.mattunderscore.tcproxy.proxy.direction.Direction;
+
+/**
+ * Unit tests for {@link GatheringWrite}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class GatheringWriteTest {
+    @Mock
+    private WriteAction write0;
+    @Mock
+    private WriteAction write1;
+    @Mock
+    private Direction direction;
+    private ByteBuffer buffer0;
+    private ByteBuffer buffer1;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        when(write0.getDirection()).thenReturn(direction);
+        when(write1.getDirection()).thenReturn(direction);
+        buffer0 = ByteBuffer.allocate(64);
+        buffer0.put("Hello ".getBytes());
+        buffer0.flip();
+        when(write0.getData()).thenReturn(buffer0);
+        buffer1 = ByteBuffer.allocate(64);
+        buffer1.put("world".getBytes());
+        buffer1.flip();
+        when(write1.getData()).thenReturn(buffer1);
+    }
+
+    @Test
+    public void batch() {
+        final GatheringWrite gatheringWrite = new GatheringWrite(4, 64);
+
+        assertTrue(gatheringWrite.batch(write0));
+        assertTrue(gatheringWrite.batch(write1));
+        assertEquals(2, gatheringWrite.size());
+    }
+
+    @Test
+    public void batchFirstAlwaysAccepted() {
+        final GatheringWrite gatheringWrite = new GatheringWrite(4, 1);
+
+        assertTrue(gatheringWrite.batch(write0));
+        assertFalse(gatheringWrite.batch(write1));
+        assertEquals(1, gatheringWrite.size());
+    }
+
+    @Test
+    public void batchMaxActions() {
+        final GatheringWrite gatheringWrite = new GatheringWrite(1, 64);
+
+        assertTrue(gatheringWrite.batch(write0));
+        assertFalse(gatheringWrite.batch(write1));
+    }
+
+    @Test
+    public void partialWrite() throws IOException {
+        when(direction.write(isA(ByteBuffer[].class), eq(0), eq(2))).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) throws Throwable {
+                buffer0.position(buffer0.limit());
+                buffer1.position(2);
+                return 8L;
+            }
+        });
+        final GatheringWrite gatheringWrite = new GatheringWrite(4, 64);
+        gatheringWrite.batch(write0);
+        gatheringWrite.batch(write1);
+
+        assertEquals(8, gatheringWrite.writeToSocket());
+
+        assertFalse(gatheringWrite.writeComplete());
+        verify(write0).release();
+        verify(write1, never()).release();
+    }
+
+    @Test
+    public void releaseUnwritten() throws IOException {
+        when(direction.write(isA(ByteBuffer[].class), eq(0), eq(2))).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) throws Throwable {
+                buffer0.position(buffer0.limit());
+                return 6L;
+            }
+        });
+        final GatheringWrite gatheringWrite = new GatheringWrite(4, 64);
+        gatheringWrite.batch(write0);
+        gatheringWrite.batch(write1);
+        gatheringWrite.writeToSocket();
+
+        gatheringWrite.release();
+
+        verify(write0, times(1)).release();
+        verify(write1).release();
+        assertEquals(0, gatheringWrite.size());
+    }
+
+    @Test
+    public void latencyRecorded() throws IOException {
+        when(write0.getReadTime()).thenReturn(1L);
+        when(write1.getReadTime()).thenReturn(2L);
+        when(direction.write(isA(ByteBuffer[].class), eq(0), eq(2))).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) throws Throwable {
+                buffer0.position(buffer0.limit());
+                return 6L;
+            }
+        });
+        when(direction.write(isA(ByteBuffer[].class), eq(1), eq(1))).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) throws Throwable {
+                buffer1.position(buffer1.limit());
+                return 5L;
+            }
+        });
+        final GatheringWrite gatheringWrite = new GatheringWrite(4, 64);
+        gatheringWrite.batch(write0);
+        gatheringWrite.batch(write1);
+
+        gatheringWrite.writeToSocket();
+        verify(direction).dataDequeued(1L);
+        verify(direction).dataDequeued(2L);
+        verify(direction).dataForwarded(1L);
+        verify(direction, never()).dataForwarded(2L);
+
+        gatheringWrite.writeToSocket();
+        verify(direction, times(1)).dataDequeued(2L);
+        verify(direction).dataForwarded(2L);
+    }
+
+    @Test
+    public void completeWrite() throws IOException {
+        when(direction.write(isA(ByteBuffer[].class), eq(0), eq(2))).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) throws Throwable {
+                buffer0.position(buffer0.limit());
+                buffer1.position(buffer1.limit());
+                return 11L;
+            }
+        });
+        final GatheringWrite gatheringWrite = new GatheringWrite(4, 64);
+        gatheringWrite.batch(write0);
+        gatheringWrite.batch(write1);
+
+        assertEquals(11, gatheringWrite.writeToSocket());
+
+        assertTrue(gatheringWrite.writeComplete());
+        verify(write0).release();
+        verify(write1).release();
+    }
+
+    @Test
+    public void reset() {
+        final GatheringWrite gatheringWrite = new GatheringWrite(4, 64);
+        gatheringWrite.batch(write0);
+
+        gatheringWrite.reset();
+
+        assertEquals(0, gatheringWrite.size());
+        assertTrue(gatheringWrite.writeComplete());
+    }
+}
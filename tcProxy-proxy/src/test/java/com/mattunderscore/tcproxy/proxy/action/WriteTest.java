@@ -28,6 +28,9 @@ package com.mattunderscore.tcproxy.proxy.action;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -38,7 +41,10 @@ import java.nio.ByteBuffer;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import com.mattunderscore.tcproxy.proxy.buffer.BufferPool;
 import com.mattunderscore.tcproxy.proxy.direction.Direction;
 
 /**
@@ -49,6 +55,8 @@ import com.mattunderscore.tcproxy.proxy.direction.Direction;
 public final class WriteTest {
     @Mock
     private Direction direction;
+    @Mock
+    private BufferPool pool;
 
     private ByteBuffer buffer;
 
@@ -92,4 +100,58 @@ public final class WriteTest {
         final Write action = new Write(direction, buffer);
         assertEquals(direction, action.getDirection());
     }
+
+    @Test
+    public void releasedWhenWritten() throws IOException {
+        when(direction.write(isA(ByteBuffer.class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                final ByteBuffer data = (ByteBuffer) invocation.getArguments()[0];
+                final int remaining = data.remaining();
+                data.position(data.limit());
+                return remaining;
+            }
+        });
+        final Action action = new Write(direction, buffer, pool);
+
+        action.writeToSocket();
+        buffer.clear();
+
+        verify(pool).release(buffer);
+        assertTrue(action.writeComplete());
+    }
+
+    @Test
+    public void latencyRecorded() throws IOException {
+        final Write action = new Write(direction, buffer, pool);
+
+        action.writeToSocket();
+        verify(direction).dataDequeued(action.getReadTime());
+        verify(direction, never()).dataForwarded(action.getReadTime());
+
+        buffer.position(1);
+        action.writeToSocket();
+        verify(direction, times(1)).dataDequeued(action.getReadTime());
+        verify(direction).dataForwarded(action.getReadTime());
+    }
+
+    @Test
+    public void notReleasedWhenPartiallyWritten() throws IOException {
+        final Action action = new Write(direction, buffer, pool);
+
+        action.writeToSocket();
+
+        verify(pool, never()).release(buffer);
+        assertFalse(action.writeComplete());
+    }
+
+    @Test
+    public void releaseOnce() {
+        final Write action = new Write(direction, buffer, pool);
+
+        action.release();
+        action.release();
+
+        verify(pool, times(1)).release(buffer);
+    }
 }
@@ -0,0 +1,159 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.action.processor;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+
+import com.mattunderscore.tcproxy.proxy.action.Action;
+import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueue;
+import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
+
+/**
+ * Unit tests for {@link DelayingActionProcessor}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class DelayingActionProcessorTest {
+    @Mock
+    private ActionProcessor next;
+    @Mock
+    private ActionQueue queue;
+    @Mock
+    private SocketChannelSelector selector;
+    @Mock
+    private Action action0;
+    @Mock
+    private Action action1;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+    }
+
+    @Test
+    public void singleTimerForQueuedActions() {
+        final DelayingActionProcessor processor =
+            new DelayingActionProcessor(next, queue, selector, 0L, TimeUnit.SECONDS);
+        processor.process(action0);
+        processor.process(action1);
+
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(selector).schedule(captor.capture(), eq(0L), eq(TimeUnit.NANOSECONDS));
+        verify(next, never()).process(action0);
+
+        captor.getValue().run();
+
+        final InOrder order = inOrder(queue, next);
+        order.verify(queue).hold(action0);
+        order.verify(queue).hold(action1);
+        order.verify(queue).unhold(action0);
+        order.verify(next).process(action0);
+        order.verify(queue).unhold(action1);
+        order.verify(next).process(action1);
+    }
+
+    @Test
+    public void releaseStopsWhenQueueFull() {
+        final DelayingActionProcessor processor =
+            new DelayingActionProcessor(next, queue, selector, 0L, TimeUnit.SECONDS);
+        processor.process(action0);
+        processor.process(action1);
+        when(queue.queueFull()).thenReturn(false, true);
+
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(selector).schedule(captor.capture(), eq(0L), eq(TimeUnit.NANOSECONDS));
+        captor.getValue().run();
+
+        verify(next).process(action0);
+        verify(next, never()).process(action1);
+        verify(queue, never()).unhold(action1);
+        verify(selector).schedule(captor.getValue(), TimeUnit.MILLISECONDS.toNanos(1L), TimeUnit.NANOSECONDS);
+
+        when(queue.queueFull()).thenReturn(false);
+        captor.getValue().run();
+        verify(next).process(action1);
+    }
+
+    @Test
+    public void reschedulesForActionsNotDue() {
+        final DelayingActionProcessor processor =
+            new DelayingActionProcessor(next, queue, selector, 1L, TimeUnit.HOURS);
+        processor.process(action0);
+
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(selector).schedule(captor.capture(), anyLong(), eq(TimeUnit.NANOSECONDS));
+
+        captor.getValue().run();
+
+        verify(next, never()).process(action0);
+        verify(selector, times(2)).schedule(eq(captor.getValue()), anyLong(), eq(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void flushPassesOnActions() {
+        final DelayingActionProcessor processor =
+            new DelayingActionProcessor(next, queue, selector, 1L, TimeUnit.HOURS);
+        processor.process(action0);
+        processor.process(action1);
+
+        processor.flush();
+
+        final InOrder order = inOrder(next);
+        order.verify(next).process(action0);
+        order.verify(next).process(action1);
+    }
+
+    @Test
+    public void flushWhileQueueFull() {
+        final DelayingActionProcessor processor =
+            new DelayingActionProcessor(next, queue, selector, 1L, TimeUnit.HOURS);
+        processor.process(action0);
+        when(queue.queueFull()).thenReturn(true);
+
+        assertFalse(processor.flush());
+        verify(next, never()).process(action0);
+
+        when(queue.queueFull()).thenReturn(false);
+        assertTrue(processor.flush());
+        verify(next).process(action0);
+    }
+}
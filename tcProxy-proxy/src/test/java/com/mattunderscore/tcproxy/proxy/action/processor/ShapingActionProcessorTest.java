@@ -0,0 +1,207 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.action.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+
+import com.mattunderscore.tcproxy.proxy.action.Action;
+import com.mattunderscore.tcproxy.proxy.action.Write;
+import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueue;
+import com.mattunderscore.tcproxy.proxy.buffer.UnpooledBufferPool;
+import com.mattunderscore.tcproxy.proxy.direction.Direction;
+import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
+
+/**
+ * Unit tests for {@link ShapingActionProcessor}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class ShapingActionProcessorTest {
+    @Mock
+    private ActionProcessor next;
+    @Mock
+    private ActionQueue queue;
+    @Mock
+    private SocketChannelSelector selector;
+    @Mock
+    private Direction direction;
+    @Mock
+    private Action close;
+
+    private ShapingActionProcessor processor;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        // Refills too slowly to affect the tests
+        processor = new ShapingActionProcessor(next, queue, selector, new TokenBucket(1L, 100L));
+    }
+
+    @Test
+    public void passesWithinLimit() {
+        final Write write = new Write(direction, ByteBuffer.allocate(50));
+
+        processor.process(write);
+
+        verify(next).process(write);
+        verify(queue, never()).hold(write);
+        verify(selector, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void splitsLargeWrite() {
+        final Write write = new Write(direction, ByteBuffer.allocate(150));
+
+        processor.process(write);
+
+        final ArgumentCaptor<Action> captor = ArgumentCaptor.forClass(Action.class);
+        verify(next).process(captor.capture());
+        final Write slice = (Write) captor.getValue();
+        assertNotSame(write, slice);
+        assertEquals(100, slice.getData().remaining());
+        assertEquals(50, write.getData().remaining());
+        verify(selector).schedule(any(Runnable.class), anyLong(), eq(TimeUnit.NANOSECONDS));
+        verify(queue).hold(write);
+    }
+
+    @Test
+    public void sliceKeepsReadTime() {
+        final long readTime = System.nanoTime() - 5000000L;
+        final Write write = new Write(direction, ByteBuffer.allocate(150), UnpooledBufferPool.get(), readTime);
+
+        processor.process(write);
+
+        final ArgumentCaptor<Action> captor = ArgumentCaptor.forClass(Action.class);
+        verify(next).process(captor.capture());
+        final Write slice = (Write) captor.getValue();
+        assertEquals(readTime, slice.getReadTime());
+
+        processor.flush();
+        verify(next).process(write);
+        assertEquals(readTime, write.getReadTime());
+    }
+
+    @Test
+    public void holdsActionsBehindHeldWrite() {
+        final Write write = new Write(direction, ByteBuffer.allocate(150));
+        processor.process(write);
+        processor.process(close);
+
+        verify(next, never()).process(close);
+
+        processor.flush();
+
+        final InOrder order = inOrder(queue, next);
+        order.verify(queue).unhold(write);
+        order.verify(next).process(write);
+        order.verify(queue).unhold(close);
+        order.verify(next).process(close);
+    }
+
+    @Test
+    public void holdsWhileQueueFull() {
+        final Write write = new Write(direction, ByteBuffer.allocate(50));
+        when(queue.queueFull()).thenReturn(true);
+
+        processor.process(write);
+
+        verify(next, never()).process(write);
+        verify(queue).hold(write);
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(selector).schedule(captor.capture(), eq(TimeUnit.MILLISECONDS.toNanos(1L)), eq(TimeUnit.NANOSECONDS));
+
+        when(queue.queueFull()).thenReturn(false);
+        captor.getValue().run();
+
+        verify(queue).unhold(write);
+        verify(next).process(write);
+    }
+
+    @Test
+    public void releaseStopsWhenQueueFull() {
+        final Action open = mock(Action.class);
+        when(queue.queueFull()).thenReturn(true);
+        processor.process(open);
+        processor.process(close);
+
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(selector).schedule(captor.capture(), anyLong(), eq(TimeUnit.NANOSECONDS));
+        when(queue.queueFull()).thenReturn(false, true);
+        captor.getValue().run();
+
+        verify(next).process(open);
+        verify(next, never()).process(close);
+        verify(queue, never()).unhold(close);
+        verify(selector, times(2)).schedule(captor.getValue(), TimeUnit.MILLISECONDS.toNanos(1L), TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    public void flushWhileQueueFull() {
+        processor.process(new Write(direction, ByteBuffer.allocate(150)));
+        when(queue.queueFull()).thenReturn(true);
+
+        assertFalse(processor.flush());
+        verify(next, times(1)).process(any(Action.class));
+
+        when(queue.queueFull()).thenReturn(false);
+        assertTrue(processor.flush());
+        verify(next, times(2)).process(any(Action.class));
+    }
+
+    @Test
+    public void releaseReschedulesWhileEmpty() {
+        processor.process(new Write(direction, ByteBuffer.allocate(150)));
+
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(selector).schedule(captor.capture(), anyLong(), eq(TimeUnit.NANOSECONDS));
+
+        captor.getValue().run();
+
+        verify(next, times(1)).process(any(Action.class));
+        verify(selector, times(2)).schedule(eq(captor.getValue()), anyLong(), eq(TimeUnit.NANOSECONDS));
+    }
+}
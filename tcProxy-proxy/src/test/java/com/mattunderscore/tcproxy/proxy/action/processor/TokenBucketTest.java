@@ -0,0 +1,89 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.action.processor;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TokenBucket}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class TokenBucketTest {
+
+    @Test
+    public void startsFull() {
+        final TokenBucket bucket = new TokenBucket(1000L, 100L);
+        final long now = System.nanoTime();
+
+        assertEquals(60L, bucket.take(60L, now));
+        assertEquals(40L, bucket.take(60L, now));
+        assertEquals(0L, bucket.take(60L, now));
+    }
+
+    @Test
+    public void refills() {
+        final TokenBucket bucket = new TokenBucket(1000L, 100L);
+        final long now = System.nanoTime();
+        bucket.take(100L, now);
+
+        assertEquals(50L, bucket.take(100L, now + MILLISECONDS.toNanos(50L)));
+        // Never holds more than the capacity
+        assertEquals(100L, bucket.take(1000L, now + SECONDS.toNanos(10L)));
+    }
+
+    @Test
+    public void limitedByParent() {
+        final TokenBucket parent = new TokenBucket(1000L, 100L);
+        final TokenBucket child0 = new TokenBucket(1000L, 80L, parent);
+        final TokenBucket child1 = new TokenBucket(1000L, 80L, parent);
+        final long now = System.nanoTime();
+
+        assertEquals(80L, child0.take(100L, now));
+        assertEquals(20L, child1.take(100L, now));
+        assertEquals(0L, child1.take(100L, now));
+    }
+
+    @Test
+    public void nanosUntilAvailable() {
+        final TokenBucket parent = new TokenBucket(100L, 100L);
+        final TokenBucket child = new TokenBucket(1000L, 100L, parent);
+        final long now = System.nanoTime();
+        child.take(100L, now);
+
+        assertEquals(MILLISECONDS.toNanos(50L), child.nanosUntilAvailable(5L, now));
+        // Limited to the capacity
+        assertEquals(SECONDS.toNanos(1L), child.nanosUntilAvailable(1000L, now));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noRate() {
+        new TokenBucket(0L, 100L);
+    }
+}
@@ -28,6 +28,7 @@ package com.mattunderscore.tcproxy.proxy.action.queue;
 import com.mattunderscore.tcproxy.proxy.connection.Connection;
 import com.mattunderscore.tcproxy.proxy.direction.Direction;
 import com.mattunderscore.tcproxy.proxy.action.Action;
+import com.mattunderscore.tcproxy.proxy.action.Write;
 import com.mattunderscore.tcproxy.proxy.action.WriteAction;
 import org.junit.Before;
 import org.junit.Test;
@@ -39,6 +40,8 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -60,6 +63,10 @@ public final class ActionQueueImplTest {
     private WriteAction write2;
     @Captor
     private ArgumentCaptor<ByteBuffer> outBufferCaptor;
+    @Captor
+    private ArgumentCaptor<ByteBuffer[]> outBuffersCaptor;
+    @Captor
+    private ArgumentCaptor<Integer> lengthCaptor;
 
     @Before
     public void setUp() {
@@ -92,28 +99,15 @@ public final class ActionQueueImplTest {
         assertSame(action, duplicateAction);
         assertTrue(queue.hasData());
         action.writeToSocket();
-        verify(direction).write(outBufferCaptor.capture());
-        final ByteBuffer outBuffer = outBufferCaptor.getValue();
-        assertEquals(17, outBuffer.limit());
-        assertEquals('H', outBuffer.get());
-        assertEquals('e', outBuffer.get());
-        assertEquals('l', outBuffer.get());
-        assertEquals('l', outBuffer.get());
-        assertEquals('o', outBuffer.get());
-        assertEquals(' ', outBuffer.get());
-        assertEquals('w', outBuffer.get());
-        assertEquals('o', outBuffer.get());
-        assertEquals('r', outBuffer.get());
-        assertEquals('l', outBuffer.get());
-        assertEquals('d', outBuffer.get());
-        assertEquals(',', outBuffer.get());
-        assertEquals(' ', outBuffer.get());
-        assertEquals('b', outBuffer.get());
-        assertEquals('a', outBuffer.get());
-        assertEquals('b', outBuffer.get());
-        assertEquals('y', outBuffer.get());
+        verify(direction).write(outBuffersCaptor.capture(), eq(0), lengthCaptor.capture());
+        final ByteBuffer[] outBuffers = outBuffersCaptor.getValue();
+        assertEquals(3, (int) lengthCaptor.getValue());
+        assertEquals("Hello world, baby", consume(outBuffers, 3));
         assertFalse(queue.hasData());
         assertNull(queue.head());
+        verify(write0).release();
+        verify(write1).release();
+        verify(write2).release();
     }
 
     @Test
@@ -127,34 +121,21 @@ public final class ActionQueueImplTest {
         assertSame(action, duplicateAction);
         assertTrue(queue.hasData());
         action.writeToSocket();
-        verify(direction).write(outBufferCaptor.capture());
-        final ByteBuffer outBuffer = outBufferCaptor.getValue();
-        assertEquals(17, outBuffer.limit());
-        assertEquals('H', outBuffer.get());
-        assertEquals('e', outBuffer.get());
-        assertEquals('l', outBuffer.get());
-        assertEquals('l', outBuffer.get());
-        assertEquals('o', outBuffer.get());
-        assertEquals(' ', outBuffer.get());
-        assertEquals('w', outBuffer.get());
-        assertEquals('o', outBuffer.get());
-        assertEquals('r', outBuffer.get());
-        assertEquals('l', outBuffer.get());
-        assertEquals('d', outBuffer.get());
-        assertEquals(',', outBuffer.get());
-        assertEquals(' ', outBuffer.get());
-        assertEquals('b', outBuffer.get());
-        assertEquals('a', outBuffer.get());
-        assertEquals('b', outBuffer.get());
-        assertEquals('y', outBuffer.get());
+        verify(direction).write(outBuffersCaptor.capture(), eq(0), lengthCaptor.capture());
+        final ByteBuffer[] outBuffers = outBuffersCaptor.getValue();
+        assertEquals(3, (int) lengthCaptor.getValue());
+        assertEquals("Hello world, baby", consume(outBuffers, 3));
         assertFalse(queue.hasData());
         assertNull(queue.head());
+        verify(write0).release();
+        verify(write1).release();
+        verify(write2).release();
     }
 
     @Test
     public void write() throws IOException {
         final ActionQueueImpl queue = new ActionQueueImpl(3, 64);
-        queue.add(write0);
+        queue.add(new Write(direction, write0.getData()));
         final Action action = queue.head();
         final Action duplicateAction = queue.head();
         assertSame(action, duplicateAction);
@@ -174,4 +155,198 @@ public final class ActionQueueImplTest {
         assertFalse(queue.hasData());
         assertNull(queue.head());
     }
+
+    @Test
+    public void batchLimit() throws IOException {
+        final ActionQueueImpl queue = new ActionQueueImpl(5, 12);
+        queue.add(write0);
+        queue.add(write1);
+        queue.add(write2);
+        final Action action = queue.head();
+        action.writeToSocket();
+        verify(direction).write(outBuffersCaptor.capture(), eq(0), lengthCaptor.capture());
+        assertEquals(2, (int) lengthCaptor.getValue());
+        assertEquals("Hello world", consume(outBuffersCaptor.getValue(), 2));
+
+        final Action nextAction = queue.head();
+        assertSame(write2, nextAction);
+    }
+
+    @Test
+    public void ringBuffer() throws IOException {
+        final ActionQueueImpl queue = new ActionQueueImpl(5, 64, ActionQueueType.SINGLE_PRODUCER);
+        queue.add(write0);
+        queue.add(write1);
+        final Action action = queue.head();
+        action.writeToSocket();
+        verify(direction).write(outBuffersCaptor.capture(), eq(0), anyInt());
+        assertEquals("Hello world", consume(outBuffersCaptor.getValue(), 2));
+        assertFalse(queue.hasData());
+    }
+
+    @Test
+    public void watermarks() throws IOException {
+        final ActionQueueImpl queue = new ActionQueueImpl(5, 64, ActionQueueType.BLOCKING, 3, 1);
+        assertFalse(queue.aboveHighWatermark());
+        assertTrue(queue.belowLowWatermark());
+        queue.add(write0);
+        queue.add(write1);
+        assertFalse(queue.aboveHighWatermark());
+        assertFalse(queue.belowLowWatermark());
+        queue.add(write2);
+        assertTrue(queue.aboveHighWatermark());
+        assertFalse(queue.queueFull());
+        queue.head().writeToSocket();
+        assertFalse(queue.aboveHighWatermark());
+        assertTrue(queue.belowLowWatermark());
+    }
+
+    @Test
+    public void defaultWatermarks() {
+        final ActionQueueImpl queue = new ActionQueueImpl(2, 64);
+        assertTrue(queue.belowLowWatermark());
+        queue.add(write0);
+        assertTrue(queue.belowLowWatermark());
+        assertFalse(queue.aboveHighWatermark());
+        queue.add(write1);
+        assertTrue(queue.aboveHighWatermark());
+        assertTrue(queue.queueFull());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void highWatermarkAboveQueueSize() {
+        new ActionQueueImpl(5, 64, ActionQueueType.BLOCKING, 6, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lowWatermarkNotBelowHighWatermark() {
+        new ActionQueueImpl(5, 64, ActionQueueType.BLOCKING, 3, 3);
+    }
+
+    @Test
+    public void byteLimit() throws IOException {
+        final ActionQueueImpl queue = new ActionQueueImpl(5, 64, ActionQueueType.BLOCKING, 5, 2, 10L, null);
+        queue.add(write0);
+        assertEquals(6L, queue.queuedBytes());
+        assertFalse(queue.aboveHighWatermark());
+        queue.add(write1);
+        assertEquals(11L, queue.queuedBytes());
+        assertTrue(queue.aboveHighWatermark());
+        assertFalse(queue.belowLowWatermark());
+
+        queue.head().writeToSocket();
+        verify(direction).write(outBuffersCaptor.capture(), eq(0), anyInt());
+        // The bytes are held until the head action is complete
+        assertEquals(11L, queue.queuedBytes());
+        consume(outBuffersCaptor.getValue(), 2);
+        assertFalse(queue.hasData());
+        assertEquals(0L, queue.queuedBytes());
+        assertTrue(queue.belowLowWatermark());
+    }
+
+    @Test
+    public void chargesGovernor() throws IOException {
+        final MemoryGovernor governor = new MemoryGovernor(1000L);
+        final ActionQueueImpl queue = new ActionQueueImpl(5, 64, ActionQueueType.BLOCKING, 5, 2, 0L, governor);
+        queue.add(write0);
+        queue.add(write1);
+        assertEquals(11L, governor.getQueuedBytes());
+        assertEquals(1, governor.getConsumerCount());
+
+        queue.head().writeToSocket();
+        verify(direction).write(outBuffersCaptor.capture(), eq(0), anyInt());
+        consume(outBuffersCaptor.getValue(), 2);
+        assertFalse(queue.hasData());
+        assertEquals(0L, governor.getQueuedBytes());
+        assertEquals(0, governor.getConsumerCount());
+    }
+
+    @Test
+    public void discard() {
+        final MemoryGovernor governor = new MemoryGovernor(1000L);
+        final ActionQueueImpl queue = new ActionQueueImpl(5, 64, ActionQueueType.BLOCKING, 5, 2, 0L, governor);
+        queue.add(write0);
+        queue.add(write1);
+        assertTrue(queue.hasData());
+        queue.add(write2);
+
+        queue.discard();
+        assertFalse(queue.hasData());
+        assertEquals(0L, queue.queuedBytes());
+        assertEquals(0L, governor.getQueuedBytes());
+        assertEquals(0, governor.getConsumerCount());
+        // The gathered head is released as well as the queued action
+        verify(write0).release();
+        verify(write1).release();
+        verify(write2).release();
+    }
+
+    @Test
+    public void heldActions() {
+        final MemoryGovernor governor = new MemoryGovernor(1000L);
+        final ActionQueueImpl queue = new ActionQueueImpl(5, 64, ActionQueueType.BLOCKING, 3, 1, 0L, governor);
+        queue.hold(write0);
+        queue.hold(write1);
+        assertEquals(11L, queue.queuedBytes());
+        assertEquals(11L, governor.getQueuedBytes());
+        assertFalse(queue.aboveHighWatermark());
+        assertFalse(queue.belowLowWatermark());
+        queue.add(write2);
+        assertTrue(queue.aboveHighWatermark());
+        assertFalse(queue.queueFull());
+
+        queue.unhold(write0);
+        queue.unhold(write1);
+        assertEquals(6L, queue.queuedBytes());
+        assertFalse(queue.aboveHighWatermark());
+        assertTrue(queue.belowLowWatermark());
+    }
+
+    @Test
+    public void addWhenFull() {
+        final MemoryGovernor governor = new MemoryGovernor(1000L);
+        final ActionQueueImpl queue = new ActionQueueImpl(2, 64, ActionQueueType.SINGLE_PRODUCER, 2, 1, 0L, governor);
+        queue.add(write0);
+        queue.add(write1);
+        try {
+            queue.add(write2);
+            fail("The queue should be full");
+        }
+        catch (IllegalStateException e) {
+            // The bytes of the rejected action are not left charged
+            assertEquals(11L, queue.queuedBytes());
+            assertEquals(11L, governor.getQueuedBytes());
+        }
+    }
+
+    @Test
+    public void addAfterDiscard() {
+        final MemoryGovernor governor = new MemoryGovernor(1000L);
+        final ActionQueueImpl queue = new ActionQueueImpl(5, 64, ActionQueueType.BLOCKING, 5, 2, 0L, governor);
+        queue.add(write0);
+        queue.discard();
+
+        queue.add(write1);
+        queue.add(write2);
+
+        assertFalse(queue.hasData());
+        assertEquals(0L, queue.queuedBytes());
+        assertEquals(0L, governor.getQueuedBytes());
+        assertEquals(0, governor.getConsumerCount());
+        verify(write1).release();
+        verify(write2).release();
+    }
+
+    /**
+     * Read all the data from the buffers, as a write to a socket would.
+     */
+    private static String consume(ByteBuffer[] buffers, int length) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            final byte[] bytes = new byte[buffers[i].remaining()];
+            buffers[i].get(bytes);
+            builder.append(new String(bytes));
+        }
+        return builder.toString();
+    }
 }
@@ -0,0 +1,98 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.action.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link MemoryGovernor}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class MemoryGovernorTest {
+
+    @Test
+    public void chargeAndCredit() {
+        final MemoryGovernor governor = new MemoryGovernor(1000L);
+        governor.charge(100, true);
+        governor.charge(50, false);
+        governor.charge(200, true);
+        assertEquals(350L, governor.getQueuedBytes());
+        assertEquals(2, governor.getConsumerCount());
+        assertEquals(500L, governor.getFairShare());
+
+        governor.credit(150, true);
+        assertEquals(200L, governor.getQueuedBytes());
+        assertEquals(1, governor.getConsumerCount());
+        assertEquals(1000L, governor.getFairShare());
+    }
+
+    @Test
+    public void largestConsumersPausedFirst() {
+        final MemoryGovernor governor = new MemoryGovernor(1000L);
+        governor.charge(600, true);
+        governor.charge(200, true);
+
+        assertTrue(governor.isUnderPressure());
+        assertTrue(governor.shouldPause(600L));
+        assertFalse(governor.shouldPause(200L));
+        assertFalse(governor.canResume(600L));
+        assertTrue(governor.canResume(200L));
+    }
+
+    @Test
+    public void budgetExhausted() {
+        final MemoryGovernor governor = new MemoryGovernor(1000L);
+        governor.charge(900, true);
+        governor.charge(100, true);
+
+        assertTrue(governor.shouldPause(900L));
+        assertTrue(governor.shouldPause(100L));
+        assertFalse(governor.shouldPause(0L));
+    }
+
+    @Test
+    public void relieved() {
+        final MemoryGovernor governor = new MemoryGovernor(1000L);
+        governor.charge(700, true);
+        governor.charge(100, true);
+        assertTrue(governor.shouldPause(700L));
+        assertFalse(governor.canResume(700L));
+
+        governor.credit(400, false);
+        assertFalse(governor.isUnderPressure());
+        assertFalse(governor.shouldPause(300L));
+        assertTrue(governor.canResume(300L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBudget() {
+        new MemoryGovernor(0L);
+    }
+}
@@ -0,0 +1,138 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.action.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link MultiProducerRingBuffer}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class MultiProducerRingBufferTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCapacity() {
+        new MultiProducerRingBuffer<>(0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void offerNull() {
+        new MultiProducerRingBuffer<>(4).offer(null);
+    }
+
+    @Test
+    public void empty() {
+        final Queue<String> queue = new MultiProducerRingBuffer<>(4);
+
+        assertEquals(0, queue.size());
+        assertNull(queue.peek());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void offerAndPoll() {
+        final Queue<String> queue = new MultiProducerRingBuffer<>(4);
+
+        assertTrue(queue.offer("a"));
+        assertTrue(queue.offer("b"));
+
+        assertEquals(2, queue.size());
+        assertEquals("a", queue.peek());
+        assertEquals("a", queue.poll());
+        assertEquals("b", queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void full() {
+        final Queue<String> queue = new MultiProducerRingBuffer<>(3);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer("a"));
+        }
+        assertFalse(queue.offer("b"));
+    }
+
+    @Test
+    public void wrap() {
+        final Queue<Integer> queue = new MultiProducerRingBuffer<>(2);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(queue.offer(i));
+            assertTrue(queue.offer(i + 100));
+            assertEquals(Integer.valueOf(i), queue.poll());
+            assertEquals(Integer.valueOf(i + 100), queue.poll());
+        }
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void concurrentProducers() throws InterruptedException {
+        final Queue<Integer> queue = new MultiProducerRingBuffer<>(16);
+        final int producers = 4;
+        final int perProducer = 10000;
+        final CountDownLatch latch = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perProducer; i++) {
+                        while (!queue.offer(producer)) {
+                            Thread.yield();
+                        }
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+
+        final int[] received = new int[producers];
+        int total = 0;
+        while (total < producers * perProducer) {
+            final Integer value = queue.poll();
+            if (value != null) {
+                received[value]++;
+                total++;
+            }
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (int p = 0; p < producers; p++) {
+            assertEquals(perProducer, received[p]);
+        }
+        assertNull(queue.poll());
+    }
+}
@@ -0,0 +1,140 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link SizeClassBufferPool}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class SizeClassBufferPoolTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidMaximumSize() {
+        new SizeClassBufferPool(0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBuffersPerClass() {
+        new SizeClassBufferPool(1024, 0);
+    }
+
+    @Test
+    public void acquire() {
+        final BufferPool pool = new SizeClassBufferPool(1024, 1);
+
+        final ByteBuffer buffer = pool.acquire(100);
+
+        assertTrue(buffer.isDirect());
+        assertEquals(128, buffer.capacity());
+        assertEquals(0, buffer.position());
+        assertEquals(100, buffer.limit());
+        assertEquals(0L, pool.getHits());
+        assertEquals(1L, pool.getMisses());
+    }
+
+    @Test
+    public void acquireSmall() {
+        final BufferPool pool = new SizeClassBufferPool(1024, 1);
+
+        final ByteBuffer buffer = pool.acquire(1);
+
+        assertEquals(64, buffer.capacity());
+        assertEquals(1, buffer.limit());
+    }
+
+    @Test
+    public void acquireLarge() {
+        final BufferPool pool = new SizeClassBufferPool(1024, 1);
+
+        final ByteBuffer buffer = pool.acquire(2000);
+
+        assertFalse(buffer.isDirect());
+        assertEquals(2000, buffer.capacity());
+        assertEquals(1L, pool.getMisses());
+    }
+
+    @Test
+    public void reuse() {
+        final BufferPool pool = new SizeClassBufferPool(1024, 1);
+
+        final ByteBuffer buffer0 = pool.acquire(1024);
+        buffer0.position(10);
+        pool.release(buffer0);
+        final ByteBuffer buffer1 = pool.acquire(600);
+
+        assertSame(buffer0, buffer1);
+        assertEquals(0, buffer1.position());
+        assertEquals(600, buffer1.limit());
+        assertEquals(1L, pool.getHits());
+        assertEquals(1L, pool.getMisses());
+    }
+
+    @Test
+    public void differentClass() {
+        final BufferPool pool = new SizeClassBufferPool(1024, 1);
+
+        final ByteBuffer buffer0 = pool.acquire(1024);
+        pool.release(buffer0);
+        final ByteBuffer buffer1 = pool.acquire(100);
+
+        assertNotSame(buffer0, buffer1);
+        assertEquals(0L, pool.getHits());
+        assertEquals(2L, pool.getMisses());
+    }
+
+    @Test
+    public void classFull() {
+        final BufferPool pool = new SizeClassBufferPool(1024, 1);
+
+        final ByteBuffer buffer0 = pool.acquire(100);
+        final ByteBuffer buffer1 = pool.acquire(100);
+        pool.release(buffer0);
+        pool.release(buffer1);
+
+        assertSame(buffer0, pool.acquire(100));
+        assertNotSame(buffer1, pool.acquire(100));
+    }
+
+    @Test
+    public void releaseForeignBuffer() {
+        final BufferPool pool = new SizeClassBufferPool(1024, 1);
+
+        pool.release(ByteBuffer.allocate(128));
+        pool.acquire(128);
+
+        assertEquals(0L, pool.getHits());
+    }
+}
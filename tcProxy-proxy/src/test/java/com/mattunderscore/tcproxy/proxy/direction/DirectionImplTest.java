@@ -0,0 +1,207 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.direction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.mattunderscore.tcproxy.io.data.CircularBuffer;
+import com.mattunderscore.tcproxy.io.socket.IOSocketChannel;
+import com.mattunderscore.tcproxy.proxy.action.Action;
+import com.mattunderscore.tcproxy.proxy.action.processor.ActionProcessor;
+import com.mattunderscore.tcproxy.proxy.action.processor.ActionProcessorFactory;
+import com.mattunderscore.tcproxy.proxy.action.processor.DefaultActionProcessorFactory;
+import com.mattunderscore.tcproxy.proxy.action.processor.WriteDroppingActionProcessorFactory;
+import com.mattunderscore.tcproxy.proxy.action.queue.ActionQueue;
+import com.mattunderscore.tcproxy.proxy.connection.Connection;
+import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
+
+/**
+ * Unit tests for {@link DirectionImpl}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class DirectionImplTest {
+    @Mock
+    private SocketAddress address;
+    @Mock
+    private IOSocketChannel from;
+    @Mock
+    private IOSocketChannel to;
+    @Mock
+    private ActionQueue queue;
+    @Mock
+    private Connection connection;
+    @Mock
+    private SocketChannelSelector selector;
+    @Mock
+    private ActionProcessorFactory processorFactory;
+    @Mock
+    private ActionProcessor processor;
+    @Mock
+    private Action action;
+
+    @Before
+    public void setUp() throws IOException {
+        initMocks(this);
+
+        when(address.toString()).thenReturn("address");
+        when(from.getRemoteAddress()).thenReturn(address);
+        when(from.getLocalAddress()).thenReturn(address);
+        when(to.getRemoteAddress()).thenReturn(address);
+        when(to.getLocalAddress()).thenReturn(address);
+    }
+
+    @Test
+    public void spliceDisabled() {
+        final Direction direction = new DirectionImpl(from, to, queue);
+        direction.chainProcessor(new DefaultActionProcessorFactory(connection));
+
+        assertFalse(direction.canSplice());
+        assertFalse(direction.hasSplicedData());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void spliceReadDisabled() throws IOException {
+        final Direction direction = new DirectionImpl(from, to, queue);
+
+        direction.spliceRead();
+    }
+
+    @Test
+    public void canSplice() {
+        final Direction direction = new DirectionImpl(from, to, queue, 64);
+        direction.chainProcessor(new DefaultActionProcessorFactory(connection));
+
+        assertTrue(direction.canSplice());
+    }
+
+    @Test
+    public void cannotSpliceWithProcessorChained() {
+        final Direction direction = new DirectionImpl(from, to, queue, 64);
+        direction.chainProcessor(new DefaultActionProcessorFactory(connection));
+        direction.chainProcessor(new WriteDroppingActionProcessorFactory());
+
+        assertFalse(direction.canSplice());
+
+        direction.unchainProcessor();
+
+        assertTrue(direction.canSplice());
+    }
+
+    @Test
+    public void splice() throws IOException {
+        when(from.read(isA(CircularBuffer.class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                ((CircularBuffer) invocation.getArguments()[0]).put(new byte[] {1, 2, 3});
+                return 3;
+            }
+        });
+        when(to.write(isA(CircularBuffer.class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                ((CircularBuffer) invocation.getArguments()[0]).advance(3);
+                return 3;
+            }
+        });
+        final Direction direction = new DirectionImpl(from, to, queue, 64);
+
+        assertEquals(3, direction.spliceRead());
+        assertTrue(direction.hasSplicedData());
+        assertEquals(3, direction.read());
+
+        assertEquals(3, direction.spliceWrite());
+        assertFalse(direction.hasSplicedData());
+        assertEquals(3, direction.written());
+    }
+
+    @Test
+    public void closeDiscardsQueueOnSelector() throws IOException {
+        final Direction direction = new DirectionImpl(from, to, queue, 0, null, selector);
+
+        direction.close();
+
+        verify(queue, never()).discard();
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(selector).execute(captor.capture());
+        captor.getValue().run();
+        verify(queue).discard();
+    }
+
+    @Test
+    public void unchainOnSelector() {
+        final Direction direction = new DirectionImpl(from, to, queue, 64, null, selector);
+        direction.chainProcessor(new DefaultActionProcessorFactory(connection));
+        direction.chainProcessor(new WriteDroppingActionProcessorFactory());
+
+        direction.unchainProcessor();
+
+        assertFalse(direction.canSplice());
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(selector).execute(captor.capture());
+        captor.getValue().run();
+        assertTrue(direction.canSplice());
+    }
+
+    @Test
+    public void unchainWaitsForFlush() {
+        final Direction direction = new DirectionImpl(from, to, queue, 64, null, selector);
+        direction.chainProcessor(new DefaultActionProcessorFactory(connection));
+        when(processorFactory.create(direction)).thenReturn(processor);
+        direction.chainProcessor(processorFactory);
+        when(processor.flush()).thenReturn(false, true);
+
+        direction.unchainProcessor();
+
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(selector).execute(captor.capture());
+        captor.getValue().run();
+        // The processor still holds actions so stays in the chain
+        assertEquals(processor, direction.getProcessor());
+        verify(selector).schedule(eq(captor.getValue()), eq(1L), eq(TimeUnit.MILLISECONDS));
+
+        captor.getValue().run();
+        assertTrue(direction.canSplice());
+    }
+}
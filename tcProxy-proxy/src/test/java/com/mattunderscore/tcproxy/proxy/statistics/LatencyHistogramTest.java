@@ -0,0 +1,140 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link LatencyHistogram}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class LatencyHistogramTest {
+
+    @Test
+    public void empty() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0L, histogram.getCount());
+        assertEquals(0L, histogram.getMax());
+        assertEquals(0L, histogram.getValueAtPercentile(50.0));
+    }
+
+    @Test
+    public void bucketsContainTheirValues() {
+        for (long value = 0L; value < 1L << 20; value = value + 1L + value / 7L) {
+            final long highest = LatencyHistogram.highestEquivalentValue(LatencyHistogram.bucketIndex(value));
+            assertTrue("Value " + value + " reported as " + highest, highest >= value);
+            assertTrue("Value " + value + " reported as " + highest, highest - value <= value / 16L);
+        }
+    }
+
+    @Test
+    public void smallValuesExact() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1L; value <= 10L; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(10L, histogram.getCount());
+        assertEquals(5L, histogram.getValueAtPercentile(50.0));
+        assertEquals(9L, histogram.getValueAtPercentile(90.0));
+        assertEquals(10L, histogram.getValueAtPercentile(100.0));
+        assertEquals(10L, histogram.getMax());
+    }
+
+    @Test
+    public void percentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1L; value <= 10000L; value++) {
+            histogram.record(value);
+        }
+
+        assertWithin(5000L, histogram.getValueAtPercentile(50.0));
+        assertWithin(9900L, histogram.getValueAtPercentile(99.0));
+        assertWithin(9990L, histogram.getValueAtPercentile(99.9));
+        assertEquals(10000L, histogram.getValueAtPercentile(100.0));
+    }
+
+    @Test
+    public void valuesOutOfRange() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(-5L);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0L, histogram.getValueAtPercentile(50.0));
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100.0));
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+    }
+
+    @Test
+    public void recordedByParent() {
+        final LatencyHistogram parent = new LatencyHistogram();
+        final LatencyHistogram child0 = new LatencyHistogram(parent);
+        final LatencyHistogram child1 = new LatencyHistogram(parent);
+
+        child0.record(3L);
+        child1.record(7L);
+
+        assertEquals(1L, child0.getCount());
+        assertEquals(1L, child1.getCount());
+        assertEquals(2L, parent.getCount());
+        assertEquals(7L, parent.getMax());
+    }
+
+    @Test
+    public void add() {
+        final LatencyHistogram histogram0 = new LatencyHistogram();
+        final LatencyHistogram histogram1 = new LatencyHistogram();
+        for (long i = 1L; i <= 50L; i++) {
+            histogram0.record(i);
+            histogram1.record(i + 50L);
+        }
+
+        final LatencyHistogram merged = new LatencyHistogram();
+        merged.add(histogram0);
+        merged.add(histogram1);
+
+        assertEquals(100L, merged.getCount());
+        assertEquals(100L, merged.getMax());
+        assertWithin(50L, merged.getValueAtPercentile(50.0));
+        assertEquals(100L, merged.getValueAtPercentile(100.0));
+        assertEquals(50L, histogram0.getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPercentile() {
+        new LatencyHistogram().getValueAtPercentile(0.0);
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("Expected " + expected + " but was " + actual, actual >= expected);
+        assertTrue("Expected " + expected + " but was " + actual, actual - expected <= expected / 16L);
+    }
+}
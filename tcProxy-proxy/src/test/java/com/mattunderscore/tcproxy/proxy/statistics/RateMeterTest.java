@@ -0,0 +1,86 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.statistics;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link RateMeter}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class RateMeterTest {
+
+    @Test
+    public void noEvents() {
+        final RateMeter meter = new RateMeter(0L);
+
+        assertEquals(0L, meter.getCount());
+        assertEquals(0.0, meter.getRate(SECONDS.toNanos(60L)), 0.0);
+    }
+
+    @Test
+    public void firstTick() {
+        final RateMeter meter = new RateMeter(0L);
+        for (int i = 0; i < 50; i++) {
+            meter.mark(SECONDS.toNanos(1L));
+        }
+
+        assertEquals(50L, meter.getCount());
+        // The rate is not updated until the first tick
+        assertEquals(0.0, meter.getRate(SECONDS.toNanos(4L)), 0.0);
+        assertEquals(10.0, meter.getRate(SECONDS.toNanos(5L)), 0.0001);
+    }
+
+    @Test
+    public void decays() {
+        final RateMeter meter = new RateMeter(0L);
+        for (int i = 0; i < 50; i++) {
+            meter.mark(SECONDS.toNanos(1L));
+        }
+
+        final double initialRate = meter.getRate(SECONDS.toNanos(5L));
+        final double laterRate = meter.getRate(SECONDS.toNanos(60L));
+        assertTrue(laterRate < initialRate);
+        assertTrue(laterRate > 0.0);
+        assertEquals(50L, meter.getCount());
+    }
+
+    @Test
+    public void steadyRate() {
+        final RateMeter meter = new RateMeter(0L);
+        for (long second = 0L; second < 300L; second++) {
+            for (int i = 0; i < 20; i++) {
+                meter.mark(SECONDS.toNanos(second));
+            }
+        }
+
+        assertEquals(20.0, meter.getRate(SECONDS.toNanos(300L)), 0.0001);
+    }
+}
@@ -0,0 +1,116 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.upstream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ResolvedAddresses}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class ResolvedAddressesTest {
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final Executor executor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+    };
+
+    @Test
+    public void resolved() {
+        final ResolvedAddresses addresses = new ResolvedAddresses("localhost", 8080, SECONDS.toNanos(30L), executor);
+        final List<InetSocketAddress> resolved = addresses.getAddresses();
+        assertFalse(resolved.isEmpty());
+        for (final InetSocketAddress address : resolved) {
+            assertFalse(address.isUnresolved());
+            assertEquals(8080, address.getPort());
+        }
+    }
+
+    @Test
+    public void usedInTurn() {
+        final ResolvedAddresses addresses = new ResolvedAddresses("localhost", 8080, SECONDS.toNanos(30L), executor);
+        final List<InetSocketAddress> resolved = addresses.getAddresses();
+        for (int i = 0; i < resolved.size() * 2; i++) {
+            assertEquals(resolved.get(i % resolved.size()), addresses.next());
+        }
+    }
+
+    @Test
+    public void probesInTurnSeparately() {
+        final ResolvedAddresses addresses = new ResolvedAddresses("localhost", 8080, SECONDS.toNanos(30L), executor);
+        final List<InetSocketAddress> resolved = addresses.getAddresses();
+        assertEquals(resolved.get(0), addresses.next());
+        for (int i = 0; i < resolved.size() * 2 + 1; i++) {
+            assertEquals(resolved.get(i % resolved.size()), addresses.nextProbe());
+        }
+
+        // Probing does not move the address used by the next connection
+        assertEquals(resolved.get(1 % resolved.size()), addresses.next());
+        assertEquals(resolved.get(2 % resolved.size()), addresses.nextAll()[0]);
+    }
+
+    @Test
+    public void allFromNext() {
+        final ResolvedAddresses addresses = new ResolvedAddresses("localhost", 8080, SECONDS.toNanos(30L), executor);
+        final List<InetSocketAddress> resolved = addresses.getAddresses();
+        addresses.next();
+        final InetSocketAddress[] all = addresses.nextAll();
+        assertEquals(resolved.size(), all.length);
+        for (int i = 0; i < all.length; i++) {
+            assertEquals(resolved.get((1 + i) % resolved.size()), all[i]);
+        }
+    }
+
+    @Test
+    public void refreshedInBackground() {
+        final ResolvedAddresses addresses = new ResolvedAddresses("localhost", 8080, SECONDS.toNanos(30L), executor);
+        final long now = System.nanoTime();
+        addresses.next(now);
+        assertTrue(tasks.isEmpty());
+
+        // Expired addresses are still used while resolving
+        final long expired = now + SECONDS.toNanos(30L);
+        assertTrue(addresses.getAddresses().contains(addresses.next(expired)));
+        addresses.next(expired);
+        assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+        addresses.next(expired);
+        assertEquals(1, tasks.size());
+    }
+}
@@ -0,0 +1,177 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.upstream;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.mattunderscore.tcproxy.proxy.settings.HealthCheckSettings;
+import com.mattunderscore.tcproxy.proxy.settings.LoadBalancingSettings;
+import com.mattunderscore.tcproxy.proxy.settings.OutboundSocketSettings;
+import com.mattunderscore.tcproxy.proxy.settings.UpstreamSettings;
+
+/**
+ * Unit tests for {@link UpstreamGroup}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class UpstreamGroupTest {
+    private final Upstream upstream0 = new Upstream("localhost", 8080, 5);
+    private final Upstream upstream1 = new Upstream("localhost", 8081, 1);
+    private final Upstream upstream2 = new Upstream("localhost", 8082, 1);
+
+    @Test
+    public void roundRobin() {
+        final UpstreamGroup group =
+            new UpstreamGroup(asList(upstream0, upstream1, upstream2), LoadBalancingPolicy.ROUND_ROBIN);
+        assertSame(upstream0, group.select());
+        assertSame(upstream1, group.select());
+        assertSame(upstream2, group.select());
+        assertSame(upstream0, group.select());
+    }
+
+    @Test
+    public void weighted() {
+        final UpstreamGroup group =
+            new UpstreamGroup(asList(upstream0, upstream1, upstream2), LoadBalancingPolicy.WEIGHTED);
+        // Smooth weighted round robin spreads the heavier upstream out
+        assertSame(upstream0, group.select());
+        assertSame(upstream0, group.select());
+        assertSame(upstream1, group.select());
+        assertSame(upstream0, group.select());
+        assertSame(upstream2, group.select());
+        assertSame(upstream0, group.select());
+        assertSame(upstream0, group.select());
+        assertSame(upstream0, group.select());
+    }
+
+    @Test
+    public void leastActive() {
+        final UpstreamGroup group =
+            new UpstreamGroup(asList(upstream0, upstream1, upstream2), LoadBalancingPolicy.LEAST_ACTIVE);
+        upstream0.connecting();
+        upstream1.connecting();
+        assertSame(upstream2, group.select());
+        upstream2.connecting();
+        upstream2.connecting();
+        upstream0.released();
+        assertSame(upstream0, group.select());
+    }
+
+    @Test
+    public void peakEwma() {
+        final UpstreamGroup group = new UpstreamGroup(asList(upstream0, upstream1), LoadBalancingPolicy.PEAK_EWMA);
+        upstream0.connected(1000000L, System.nanoTime());
+        upstream1.connected(1000L, System.nanoTime());
+        for (int i = 0; i < 10; i++) {
+            assertSame(upstream1, group.select());
+        }
+    }
+
+    @Test
+    public void skipsEjected() {
+        final Upstream ejected = new Upstream("localhost", 8083, 5, 1, SECONDS.toNanos(10L), SECONDS.toNanos(10L));
+        ejected.probeFailed();
+        for (final LoadBalancingPolicy policy : LoadBalancingPolicy.values()) {
+            final UpstreamGroup group = new UpstreamGroup(asList(ejected, upstream1, upstream2), policy);
+            for (int i = 0; i < 10; i++) {
+                assertNotSame(ejected, group.select());
+            }
+        }
+    }
+
+    @Test
+    public void allEjected() {
+        final Upstream ejected0 = new Upstream("localhost", 8083, 1, 1, SECONDS.toNanos(10L), SECONDS.toNanos(10L));
+        final Upstream ejected1 = new Upstream("localhost", 8084, 1, 1, SECONDS.toNanos(10L), SECONDS.toNanos(10L));
+        ejected0.probeFailed();
+        ejected1.probeFailed();
+        final UpstreamGroup group = new UpstreamGroup(asList(ejected0, ejected1), LoadBalancingPolicy.ROUND_ROBIN);
+        assertSame(ejected0, group.select());
+        assertSame(ejected1, group.select());
+    }
+
+    @Test
+    public void ejectionExpires() {
+        final Upstream ejected = new Upstream("localhost", 8083, 1, 1, SECONDS.toNanos(1L), SECONDS.toNanos(1L));
+        final long now = System.nanoTime();
+        ejected.failed(now);
+        final UpstreamGroup group = new UpstreamGroup(asList(ejected, upstream1), LoadBalancingPolicy.ROUND_ROBIN);
+        assertSame(upstream1, group.select(now));
+        assertSame(upstream1, group.select(now));
+        assertSame(ejected, group.select(now + SECONDS.toNanos(1L)));
+    }
+
+    @Test
+    public void createFromOutboundSettings() {
+        final UpstreamGroup group = UpstreamGroup.create(
+            OutboundSocketSettings.builder().host("localhost").port(8080).build(),
+            null);
+        assertEquals(1, group.getUpstreams().size());
+        assertEquals("localhost:8080", group.getUpstreams().get(0).getAddress());
+    }
+
+    @Test
+    public void createFromLoadBalancingSettings() {
+        final UpstreamGroup group = UpstreamGroup.create(
+            OutboundSocketSettings.builder().host("localhost").port(8080).build(),
+            LoadBalancingSettings
+                .builder()
+                .upstream(UpstreamSettings.builder().host("localhost").port(8081).weight(3).build())
+                .upstream(UpstreamSettings.builder().host("localhost").port(8082).build())
+                .build());
+        assertEquals(2, group.getUpstreams().size());
+        assertEquals("localhost:8081", group.getUpstreams().get(0).getAddress());
+        assertEquals(3, group.getUpstreams().get(0).getWeight());
+        assertEquals(1, group.getUpstreams().get(1).getWeight());
+    }
+
+    @Test
+    public void createWithHealthChecks() {
+        final UpstreamGroup group = UpstreamGroup.create(
+            OutboundSocketSettings.builder().host("localhost").port(8080).build(),
+            null,
+            HealthCheckSettings.builder().failureThreshold(2).build());
+        final Upstream upstream = group.getUpstreams().get(0);
+        upstream.probeFailed();
+        assertFalse(upstream.isEjected());
+        upstream.probeFailed();
+        assertTrue(upstream.isEjected());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noUpstreams() {
+        new UpstreamGroup(Collections.<Upstream>emptyList(), LoadBalancingPolicy.ROUND_ROBIN);
+    }
+}
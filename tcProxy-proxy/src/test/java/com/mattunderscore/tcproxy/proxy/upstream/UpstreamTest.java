@@ -0,0 +1,163 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.proxy.upstream;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link Upstream}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class UpstreamTest {
+
+    @Test
+    public void activeConnections() {
+        final Upstream upstream = new Upstream("localhost", 8080, 1);
+        upstream.connecting();
+        upstream.connecting();
+        upstream.connected(MILLISECONDS.toNanos(1L));
+        upstream.connectFailed();
+        assertEquals(1, upstream.getActiveConnections());
+        assertEquals(1L, upstream.getConnectCount());
+        assertEquals(1L, upstream.getFailedConnectCount());
+
+        upstream.released();
+        assertEquals(0, upstream.getActiveConnections());
+    }
+
+    @Test
+    public void idleConnections() {
+        final Upstream upstream = new Upstream("localhost", 8080, 1);
+        upstream.pooling();
+        upstream.pooling();
+        upstream.pooling();
+        upstream.connected(MILLISECONDS.toNanos(1L));
+        upstream.connected(MILLISECONDS.toNanos(1L));
+        upstream.pooledConnectFailed();
+        assertEquals(0, upstream.getActiveConnections());
+        assertEquals(2, upstream.getIdleConnections());
+        assertEquals(1L, upstream.getFailedConnectCount());
+
+        upstream.taken();
+        upstream.discarded();
+        assertEquals(1, upstream.getActiveConnections());
+        assertEquals(0, upstream.getIdleConnections());
+    }
+
+    @Test
+    public void peakConnectTime() {
+        final Upstream upstream = new Upstream("localhost", 8080, 1);
+        final long now = System.nanoTime();
+        upstream.connected(MILLISECONDS.toNanos(2L), now);
+        assertEquals(2.0, upstream.getConnectTime(), 0.001);
+
+        // A slower connection is taken immediately
+        upstream.connected(MILLISECONDS.toNanos(10L), now + 1L);
+        assertEquals(10.0, upstream.getConnectTime(), 0.001);
+
+        // A faster connection decays it
+        upstream.connected(MILLISECONDS.toNanos(2L), now + SECONDS.toNanos(10L));
+        final double decayed = upstream.getConnectTime();
+        assertTrue(decayed < 10.0 && decayed > 2.0);
+        assertEquals(2.0 + 8.0 * Math.exp(-1.0), decayed, 0.001);
+    }
+
+    @Test
+    public void cost() {
+        final Upstream upstream = new Upstream("localhost", 8080, 1);
+        upstream.connecting();
+        upstream.connected(1000L, System.nanoTime());
+        assertEquals(2002.0, upstream.cost(), 0.001);
+    }
+
+    @Test
+    public void ejection() {
+        final Upstream upstream = new Upstream("localhost", 8080, 1, 2, SECONDS.toNanos(1L), SECONDS.toNanos(3L));
+        final long now = System.nanoTime();
+        upstream.failed(now);
+        assertTrue(upstream.isAvailable(now));
+        upstream.failed(now);
+        assertFalse(upstream.isAvailable(now));
+        assertTrue(upstream.isAvailable(now + SECONDS.toNanos(1L)));
+        assertEquals(1L, upstream.getEjectionCount());
+
+        // Failures while ejected do not extend the ejection
+        upstream.failed(now);
+        assertEquals(1L, upstream.getEjectionCount());
+
+        // The next failure ejects it again for twice as long
+        final long expired = now + SECONDS.toNanos(1L);
+        upstream.failed(expired);
+        assertFalse(upstream.isAvailable(expired + SECONDS.toNanos(1L)));
+        assertTrue(upstream.isAvailable(expired + SECONDS.toNanos(2L)));
+
+        // Up to the maximum
+        final long expiredAgain = expired + SECONDS.toNanos(2L);
+        upstream.failed(expiredAgain);
+        assertTrue(upstream.isAvailable(expiredAgain + SECONDS.toNanos(3L)));
+        assertEquals(3L, upstream.getEjectionCount());
+        assertEquals(5, upstream.getConsecutiveFailures());
+    }
+
+    @Test
+    public void successEndsEjection() {
+        final Upstream upstream = new Upstream("localhost", 8080, 1, 1, SECONDS.toNanos(1L), SECONDS.toNanos(3L));
+        final long now = System.nanoTime();
+        upstream.reset();
+        assertFalse(upstream.isAvailable(now));
+        assertEquals(1L, upstream.getResetCount());
+
+        upstream.probeSucceeded();
+        assertTrue(upstream.isAvailable(now));
+        assertEquals(0, upstream.getConsecutiveFailures());
+
+        // The back off starts again
+        upstream.failed(now);
+        assertTrue(upstream.isAvailable(now + SECONDS.toNanos(1L)));
+    }
+
+    @Test
+    public void neverEjected() {
+        final Upstream upstream = new Upstream("localhost", 8080, 1);
+        for (int i = 0; i < 10; i++) {
+            upstream.connecting();
+            upstream.connectFailed();
+        }
+        assertFalse(upstream.isEjected());
+        assertEquals(10, upstream.getConsecutiveFailures());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidWeight() {
+        new Upstream("localhost", 8080, 0);
+    }
+}
@@ -26,6 +26,7 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 package com.mattunderscore.tcproxy.selector;
 
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import com.mattunderscore.tcproxy.io.selection.IOSelectionKey;
 import com.mattunderscore.tcproxy.io.socket.IOSocketChannel;
@@ -52,4 +53,29 @@ public interface SocketChannelSelector extends WorkerRunnable {
      * @param runnable The runnable
      */
     void register(IOSocketChannel channel, Set<IOSelectionKey.Op> ops, SelectionRunnable<IOSocketChannel> runnable);
+
+    /**
+     * Resume selecting for an operation that has been suspended. Unlike registering this does not create a
+     * registration request, the runnable registered for the operation is used. Called from the selector thread it takes
+     * effect immediately, from other threads it is handed to the selector thread. Has no effect if the channel is not
+     * registered.
+     * @param channel The channel
+     * @param op The operation
+     */
+    void resume(IOSocketChannel channel, IOSelectionKey.Op op);
+
+    /**
+     * Run a task on the selector thread. The task will be run before the next selection.
+     * @param task The task
+     */
+    void execute(Runnable task);
+
+    /**
+     * Run a task on the selector thread after a delay. The task will not be run before the delay has elapsed but may
+     * be run later if the selector is busy.
+     * @param task The task
+     * @param delay The delay
+     * @param unit The unit of the delay
+     */
+    void schedule(Runnable task, long delay, TimeUnit unit);
 }
@@ -0,0 +1,119 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.selector.connecting;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.jcip.annotations.ThreadSafe;
+
+import com.mattunderscore.tcproxy.io.socket.IOSocketChannel;
+
+/**
+ * A {@link ConnectionHandler} that hands connections to {@link DistributionTarget}s. The target is called on its own
+ * selector thread, allowing a dedicated selector to accept connections for a set of I/O selectors.
+ * @author Matt Champion on 18/10/2016
+ */
+@ThreadSafe
+public final class DistributingConnectionHandler implements ConnectionHandler {
+    private final List<Target> targets = new CopyOnWriteArrayList<>();
+    private final AtomicInteger next = new AtomicInteger(0);
+    private final DistributionPolicy policy;
+
+    public DistributingConnectionHandler(DistributionPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Add a target to hand connections to.
+     * @param target The target
+     */
+    public void addTarget(DistributionTarget target) {
+        targets.add(new Target(target));
+    }
+
+    @Override
+    public void onConnect(final IOSocketChannel socket) {
+        if (targets.isEmpty()) {
+            throw new IllegalStateException("No targets to distribute connections to");
+        }
+
+        final Target target = selectTarget();
+        target.handedOff.incrementAndGet();
+        target.delegate.getSelector().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    target.delegate.onConnect(socket);
+                }
+                finally {
+                    target.handedOff.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    private Target selectTarget() {
+        final int size = targets.size();
+        final int start = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+        switch (policy) {
+            case ROUND_ROBIN:
+                return targets.get(start);
+            case LEAST_CONNECTIONS:
+                // Scan from the round robin position so ties are spread between the targets
+                Target selected = targets.get(start);
+                int fewest = selected.connections();
+                for (int i = 1; i < size && fewest > 0; i++) {
+                    final Target target = targets.get((start + i) % size);
+                    final int connections = target.connections();
+                    if (connections < fewest) {
+                        selected = target;
+                        fewest = connections;
+                    }
+                }
+                return selected;
+            default:
+                throw new IllegalStateException("Unknown distribution policy " + policy);
+        }
+    }
+
+    /**
+     * Target with a count of connections that have been handed off but not yet handled.
+     */
+    private static final class Target {
+        private final DistributionTarget delegate;
+        private final AtomicInteger handedOff = new AtomicInteger(0);
+
+        private Target(DistributionTarget delegate) {
+            this.delegate = delegate;
+        }
+
+        private int connections() {
+            return delegate.getConnectionCount() + handedOff.get();
+        }
+    }
+}
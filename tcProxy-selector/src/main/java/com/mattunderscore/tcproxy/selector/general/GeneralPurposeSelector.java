@@ -25,17 +25,18 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 
 package com.mattunderscore.tcproxy.selector.general;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
 import java.io.IOException;
-import java.nio.channels.ClosedChannelException;
-import java.util.Collection;
+import java.nio.channels.CancelledKeyException;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import com.mattunderscore.tcproxy.io.socket.IOSocket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,81 +53,288 @@ import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
  * A general purpose selector. {@link SelectionRunnable}s can be registered against it for both
  * {@link IOServerSocketChannel} and {@link IOSocketChannel}. These tasks can be registered from any thread. Selected
  * keys will be removed from the selected set when they are processed but will not be cancelled.
+ * <P>
+ * If a select timeout is provided the selector will block waiting for keys to be selected and registering a task
+ * will wake it up. Otherwise the selector polls and relies on the {@link SelectorBackoff} when idle.
+ * <P>
+ * Delayed tasks are held in a {@link HashedTimerWheel} owned by the selector thread and run by it. Tasks scheduled
+ * from the selector thread are added to the wheel directly, tasks scheduled from other threads are handed over in the
+ * same way as executed tasks. While delayed tasks are waiting a blocking selector does not block for longer than a
+ * tick of the wheel.
+ * <P>
+ * A task that throws an exception is logged and does not stop the selector.
  * @author Matt Champion on 24/10/2015
  */
 public final class GeneralPurposeSelector implements SocketChannelSelector, ServerSocketChannelSelector {
     private static final Logger LOG = LoggerFactory.getLogger("selector");
-    private final BlockingQueue<RegistrationRequest> registrations = new ArrayBlockingQueue<>(64);
+    private static final long TIMER_TICK = MILLISECONDS.toNanos(1L);
+    private static final int TIMER_WHEEL_SIZE = 512;
+    private final Queue<RegistrationRequest> registrations = new ConcurrentLinkedQueue<>();
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean parked = new AtomicBoolean(false);
+    private final IOSelector.SelectedKeyHandler keyHandler = new RegistrationRunner();
+    private final SelectorStatistics statistics = new SelectorStatistics();
+    private final HashedTimerWheel timers = new HashedTimerWheel(TIMER_TICK, TIMER_WHEEL_SIZE, System.nanoTime());
     private final IOSelector selector;
     private final SelectorBackoff backoff;
+    private final long selectTimeout;
+    private final DispatchOrder dispatchOrder;
+    private volatile Thread selectorThread;
 
+    /**
+     * Constructor for a polling selector.
+     * @param selector The selector
+     * @param backoff The backoff to apply after each selection
+     */
     public GeneralPurposeSelector(IOSelector selector, SelectorBackoff backoff) {
+        this(selector, backoff, 0L);
+    }
+
+    /**
+     * Constructor for a selector that blocks when there are no selected keys.
+     * @param selector The selector
+     * @param backoff The backoff to apply after each selection
+     * @param selectTimeout The maximum time in milliseconds to block for, zero to poll without blocking
+     */
+    public GeneralPurposeSelector(IOSelector selector, SelectorBackoff backoff, long selectTimeout) {
+        this(selector, backoff, selectTimeout, DispatchOrder.WRITE_FIRST);
+    }
+
+    /**
+     * Constructor for a selector that blocks when there are no selected keys.
+     * @param selector The selector
+     * @param backoff The backoff to apply after each selection
+     * @param selectTimeout The maximum time in milliseconds to block for, zero to poll without blocking
+     * @param dispatchOrder The order to run the reads and writes of a key that is ready for both
+     */
+    public GeneralPurposeSelector(
+            IOSelector selector,
+            SelectorBackoff backoff,
+            long selectTimeout,
+            DispatchOrder dispatchOrder) {
+        if (selectTimeout < 0L) {
+            throw new IllegalArgumentException("The select timeout cannot be negative");
+        }
         this.selector = selector;
         this.backoff = backoff;
+        this.selectTimeout = selectTimeout;
+        this.dispatchOrder = dispatchOrder;
     }
 
     @Override
     public void onStart() {
+        selectorThread = Thread.currentThread();
     }
 
     @Override
     public void run() {
-        // Populate the selected set
-        try {
-            selector.selectNow();
-        }
-        catch (final IOException e) {
-            LOG.debug("{} : Error selecting keys", this, e);
+        // Run any tasks handed to this selector, these may request registrations
+        Runnable task = tasks.poll();
+        while (task != null) {
+            try {
+                task.run();
+            }
+            catch (RuntimeException e) {
+                LOG.warn("{} : Task failed", this, e);
+            }
+            task = tasks.poll();
         }
 
         // Process any new registrations that have been requested
-        final Collection<RegistrationRequest> newRegistrations = new HashSet<>();
-        registrations.drainTo(newRegistrations);
-        for (final RegistrationRequest registrationRequest : newRegistrations) {
+        int registrationCount = 0;
+        RegistrationRequest registrationRequest = registrations.poll();
+        while (registrationRequest != null) {
+            registrationCount++;
             try {
                 registrationRequest.register(selector);
             }
-            catch (ClosedChannelException e) {
+            catch (IOException e) {
                 LOG.debug("{} : Problem registering key", this, e);
             }
+            registrationRequest = registrations.poll();
         }
 
-        // Process the selector set
-        final Set<IOSelectionKey> selectedKeySet = selector.selectedKeys();
-        final int selectedSize = selectedKeySet.size();
-        final Iterator<IOSelectionKey> selectedKeys = selectedKeySet.iterator();
-        while (selectedKeys.hasNext()) {
-            final IOSelectionKey key = selectedKeys.next();
-            final IOSocket socket = key.socket();
-            selectedKeys.remove();
-            final Registration registration = (Registration) key.attachment();
-            registration.run(socket, key);
+        // Run any delayed tasks that are due
+        if (timers.size() > 0) {
+            timers.expire(System.nanoTime());
+        }
+
+        // Populate the selected set
+        try {
+            if (selectTimeout > 0L) {
+                parked.set(true);
+                try {
+                    if (registrations.isEmpty() && tasks.isEmpty() && selector.selectedKeys().isEmpty()) {
+                        selector.select(blockingTimeout());
+                    }
+                    else {
+                        // Work was requested after it was drained or a registration selected keys, do not block
+                        selector.selectNow();
+                    }
+                }
+                finally {
+                    parked.set(false);
+                }
+            }
+            else {
+                selector.selectNow();
+            }
         }
+        catch (final IOException e) {
+            LOG.debug("{} : Error selecting keys", this, e);
+        }
+
+        // Process the selector set
+        final long handlerStart = System.nanoTime();
+        final int selectedSize = selector.processSelectedKeys(keyHandler);
+        final long handlerTime = selectedSize > 0 ? System.nanoTime() - handlerStart : 0L;
+        statistics.loopCompleted(registrationCount, selectedSize, handlerTime);
 
         backoff.backoff(selectedSize);
     }
 
     @Override
     public void onStop() {
+        selectorThread = null;
     }
 
     @Override
     public void register(IOSocketChannel channel, IOSelectionKey.Op op, SelectionRunnable<IOSocketChannel> runnable) {
-        registrations.add(new IOSocketChannelRegistrationRequest(channel, Collections.singleton(op), runnable));
+        registrations.add(
+            new IOSocketChannelRegistrationRequest(channel, Collections.singleton(op), runnable, dispatchOrder));
+        wakeupIfParked();
     }
 
     @Override
     public void register(IOSocketChannel channel, Set<IOSelectionKey.Op> ops, SelectionRunnable<IOSocketChannel> runnable) {
-        registrations.add(new IOSocketChannelRegistrationRequest(channel, ops, runnable));
+        registrations.add(new IOSocketChannelRegistrationRequest(channel, ops, runnable, dispatchOrder));
+        wakeupIfParked();
     }
 
     @Override
     public void register(IOServerSocketChannel channel, SelectionRunnable<IOServerSocketChannel> runnable) {
         registrations.add(new IOServerSocketChannelRegistrationRequest(channel, runnable));
+        wakeupIfParked();
+    }
+
+    @Override
+    public void resume(IOSocketChannel channel, IOSelectionKey.Op op) {
+        if (Thread.currentThread() == selectorThread) {
+            resumeNow(channel, op);
+        }
+        else {
+            // Updating the interest set is not atomic, only the selector thread changes it
+            execute(new ResumeTask(channel, op));
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        wakeupIfParked();
+    }
+
+    @Override
+    public void schedule(Runnable task, long delay, TimeUnit unit) {
+        final long deadline = System.nanoTime() + unit.toNanos(delay);
+        if (Thread.currentThread() == selectorThread) {
+            timers.schedule(task, deadline);
+        }
+        else {
+            execute(new ScheduleTask(task, deadline));
+        }
+    }
+
+    /**
+     * @return The statistics of this selector
+     */
+    public SelectorStatistics getStatistics() {
+        return statistics;
+    }
+
+    private void resumeNow(IOSocketChannel channel, IOSelectionKey.Op op) {
+        final IOSelectionKey key = channel.keyFor(selector);
+        if (key != null && key.isValid()) {
+            try {
+                key.setInterestedOperation(op);
+            }
+            catch (CancelledKeyException e) {
+                LOG.debug("{} : Key cancelled while resuming {}", this, op);
+            }
+        }
+    }
+
+    /**
+     * @return The time in milliseconds to block for, no longer than the next tick of the timer wheel if it has tasks
+     */
+    private long blockingTimeout() {
+        if (timers.size() == 0) {
+            return selectTimeout;
+        }
+
+        final long untilNextTick = NANOSECONDS.toMillis(timers.nanosToNextTick(System.nanoTime()));
+        return Math.min(selectTimeout, Math.max(1L, untilNextTick));
+    }
+
+    /**
+     * Wake up the selector if it is blocked so new registrations are processed without waiting for the timeout. The
+     * registration must be queued before this is called.
+     */
+    private void wakeupIfParked() {
+        if (parked.compareAndSet(true, false)) {
+            selector.wakeup();
+        }
     }
 
     @Override
     public String toString() {
         return "General Purpose selector";
     }
+
+    /**
+     * Adds a task scheduled from another thread to the timer wheel.
+     */
+    private final class ScheduleTask implements Runnable {
+        private final Runnable task;
+        private final long deadline;
+
+        private ScheduleTask(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            timers.schedule(task, deadline);
+        }
+    }
+
+    /**
+     * Resumes an operation requested from another thread.
+     */
+    private final class ResumeTask implements Runnable {
+        private final IOSocketChannel channel;
+        private final IOSelectionKey.Op op;
+
+        private ResumeTask(IOSocketChannel channel, IOSelectionKey.Op op) {
+            this.channel = channel;
+            this.op = op;
+        }
+
+        @Override
+        public void run() {
+            resumeNow(channel, op);
+        }
+    }
+
+    /**
+     * Runs the registration attached to a selected key.
+     */
+    private static final class RegistrationRunner implements IOSelector.SelectedKeyHandler {
+        @Override
+        public void handle(IOSelectionKey key) {
+            final Registration registration = (Registration) key.attachment();
+            registration.run(key.socket(), key);
+        }
+    }
 }
@@ -0,0 +1,184 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.selector.general;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * A hashed timer wheel. Tasks are hashed into buckets by the tick their deadline falls in and the wheel is advanced
+ * by the thread that owns it, running the tasks whose deadlines have passed. Scheduling and expiring tasks take
+ * constant time. Deadlines are rounded up to the next tick so tasks never run early.
+ * <P>
+ * The entries of the wheel are pooled so scheduling does not allocate once the wheel has held as many tasks as it
+ * needs to. The wheel must only be used by a single thread. A task that throws an exception is logged and does not
+ * stop the other tasks from running.
+ * @author Matt Champion on 18/10/2016
+ */
+@NotThreadSafe
+/*package*/ final class HashedTimerWheel {
+    private static final Logger LOG = LoggerFactory.getLogger("timer");
+    private final long tickDuration;
+    private final long startTime;
+    private final int mask;
+    private final Entry[] buckets;
+    private Entry freeEntries;
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickDuration The duration of a tick in nanoseconds
+     * @param wheelSize The number of buckets, must be a power of two
+     * @param startTime The value of {@link System#nanoTime()} to measure ticks from
+     */
+    HashedTimerWheel(long tickDuration, int wheelSize, long startTime) {
+        if (tickDuration <= 0L) {
+            throw new IllegalArgumentException("The tick duration must be greater than zero");
+        }
+        if (wheelSize <= 0 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("The wheel size must be a power of two");
+        }
+        this.tickDuration = tickDuration;
+        this.startTime = startTime;
+        mask = wheelSize - 1;
+        buckets = new Entry[wheelSize];
+    }
+
+    /**
+     * Schedule a task.
+     * @param task The task
+     * @param deadline The value of {@link System#nanoTime()} to run the task after
+     */
+    void schedule(Runnable task, long deadline) {
+        // Round up to the next tick, a task due in the current tick runs when the wheel next advances
+        final long elapsed = deadline - startTime;
+        final long deadlineTick = Math.max(currentTick + 1L, (elapsed + tickDuration - 1L) / tickDuration);
+
+        final Entry entry = newEntry();
+        entry.task = task;
+        entry.deadlineTick = deadlineTick;
+        final int index = (int) (deadlineTick & mask);
+        entry.next = buckets[index];
+        buckets[index] = entry;
+        size++;
+    }
+
+    /**
+     * Advance the wheel, running any tasks whose deadline has passed. Tasks run may schedule further tasks.
+     * @param now The value of {@link System#nanoTime()}
+     * @return The number of tasks run
+     */
+    int expire(long now) {
+        final long targetTick = (now - startTime) / tickDuration;
+        if (targetTick <= currentTick) {
+            return 0;
+        }
+
+        final long previousTick = currentTick;
+        currentTick = targetTick;
+        if (size == 0) {
+            return 0;
+        }
+
+        // Each bucket needs to be visited at most once however long the wheel was not advanced for
+        final long ticksToVisit = Math.min(targetTick - previousTick, buckets.length);
+        int expired = 0;
+        for (long tick = previousTick + 1L; tick <= previousTick + ticksToVisit; tick++) {
+            expired += expireBucket((int) (tick & mask), targetTick);
+        }
+        return expired;
+    }
+
+    /**
+     * @return The number of tasks waiting to run
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param now The value of {@link System#nanoTime()}
+     * @return The time in nanoseconds until the wheel next needs advancing
+     */
+    long nanosToNextTick(long now) {
+        final long elapsed = now - startTime;
+        return tickDuration - elapsed % tickDuration;
+    }
+
+    private int expireBucket(int index, long targetTick) {
+        // Detach the bucket so tasks scheduled while running others are not visited
+        Entry entry = buckets[index];
+        buckets[index] = null;
+        int expired = 0;
+        while (entry != null) {
+            final Entry next = entry.next;
+            if (entry.deadlineTick <= targetTick) {
+                final Runnable task = entry.task;
+                releaseEntry(entry);
+                size--;
+                expired++;
+                try {
+                    task.run();
+                }
+                catch (RuntimeException e) {
+                    LOG.warn("Delayed task failed", e);
+                }
+            }
+            else {
+                entry.next = buckets[index];
+                buckets[index] = entry;
+            }
+            entry = next;
+        }
+        return expired;
+    }
+
+    private Entry newEntry() {
+        final Entry entry = freeEntries;
+        if (entry == null) {
+            return new Entry();
+        }
+        freeEntries = entry.next;
+        return entry;
+    }
+
+    private void releaseEntry(Entry entry) {
+        entry.task = null;
+        entry.next = freeEntries;
+        freeEntries = entry;
+    }
+
+    /**
+     * A scheduled task.
+     */
+    private static final class Entry {
+        private Runnable task;
+        private long deadlineTick;
+        private Entry next;
+    }
+}
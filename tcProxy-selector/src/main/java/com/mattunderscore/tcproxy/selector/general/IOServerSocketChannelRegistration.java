@@ -42,7 +42,9 @@ import static com.mattunderscore.tcproxy.io.selection.IOSelectionKey.Op.ACCEPT;
  */
 @NotThreadSafe
 public final class IOServerSocketChannelRegistration implements Registration<IOServerSocketChannel> {
+    private final RegistrationHandleImpl handle = new RegistrationHandleImpl();
     private SelectionRunnable<IOServerSocketChannel> acceptOperation;
+    private IOSelectionKey key;
 
     @Override
     public void addRegistration(Op op, SelectionRunnable<IOServerSocketChannel> registration) {
@@ -56,24 +58,21 @@ public final class IOServerSocketChannelRegistration implements Registration<IOS
     }
 
     @Override
-    public void run(IOServerSocketChannel socket, IOSelectionKey key) {
-        if (!key.isValid()) {
+    public void run(IOServerSocketChannel socket, IOSelectionKey selectedKey) {
+        if (!selectedKey.isValid()) {
             return;
         }
 
-        final Set<Op> interestedOperations = key.interestedOperations();
-
-        if (key.isAcceptable() && interestedOperations.contains(ACCEPT)) {
-            acceptOperation.run(socket, new RegistrationHandleImpl(key));
+        key = selectedKey;
+        if (selectedKey.isAcceptable() && selectedKey.isInterestedIn(ACCEPT)) {
+            acceptOperation.run(socket, handle);
         }
     }
 
-    public final class RegistrationHandleImpl implements RegistrationHandle {
-        private final IOSelectionKey key;
-
-        public RegistrationHandleImpl(IOSelectionKey key) {
-            this.key = key;
-        }
+    /**
+     * Reusable handle for the accept operation.
+     */
+    private final class RegistrationHandleImpl implements RegistrationHandle {
 
         @Override
         public boolean isValid() {
@@ -107,6 +106,11 @@ public final class IOServerSocketChannelRegistration implements Registration<IOS
             key.cancel();
         }
 
+        @Override
+        public void suspend() {
+            key.clearInterestedOperation(ACCEPT);
+        }
+
         @Override
         public Set<Op> readyOperations() {
             return key.readyOperations();
@@ -38,27 +38,46 @@ import static com.mattunderscore.tcproxy.io.selection.IOSelectionKey.Op.READ;
 import static com.mattunderscore.tcproxy.io.selection.IOSelectionKey.Op.WRITE;
 
 /**
- * Attachment for sockets that links the {@link SelectionRunnable} to an operation for a {@link IOSocketChannel}.
+ * Attachment for sockets that links the {@link SelectionRunnable} to an operation for a {@link IOSocketChannel}. Each
+ * ready operation is run when the key is selected. A runnable registered for several operations is only run once for
+ * each selection. The handles passed to the runnables are reused.
  *
  * @author Matt Champion on 29/11/2015
  */
 @NotThreadSafe
 /*package*/ final class IOSocketChannelRegistration implements Registration<IOSocketChannel> {
-    private SelectionRunnable<IOSocketChannel> connectOperation;
-    private SelectionRunnable<IOSocketChannel> readOperation;
-    private SelectionRunnable<IOSocketChannel> writeOperation;
+    private final OperationHandle connectHandle = new OperationHandle(CONNECT);
+    private final OperationHandle readHandle = new OperationHandle(READ);
+    private final OperationHandle writeHandle = new OperationHandle(WRITE);
+    private final OperationHandle firstHandle;
+    private final OperationHandle secondHandle;
+    private IOSelectionKey key;
+
+    /**
+     * @param order The order to run reads and writes in
+     */
+    IOSocketChannelRegistration(DispatchOrder order) {
+        if (order == DispatchOrder.WRITE_FIRST) {
+            firstHandle = writeHandle;
+            secondHandle = readHandle;
+        }
+        else {
+            firstHandle = readHandle;
+            secondHandle = writeHandle;
+        }
+    }
 
     @Override
     public void addRegistration(Op op, SelectionRunnable<IOSocketChannel> registration) {
         switch (op) {
             case CONNECT:
-                connectOperation = registration;
+                connectHandle.runnable = registration;
                 break;
             case READ:
-                readOperation = registration;
+                readHandle.runnable = registration;
                 break;
             case WRITE:
-                writeOperation = registration;
+                writeHandle.runnable = registration;
                 break;
             default:
                 throw new IllegalArgumentException("Operation " + op + " not supported");
@@ -66,33 +85,69 @@ import static com.mattunderscore.tcproxy.io.selection.IOSelectionKey.Op.WRITE;
     }
 
     @Override
-    public void run(IOSocketChannel socket, IOSelectionKey key) {
-        if (!key.isValid()) {
-            return;
-        }
+    public void run(IOSocketChannel socket, IOSelectionKey selectedKey) {
+        key = selectedKey;
 
-        final Set<Op> interestedOperations = key.interestedOperations();
-
-        if (key.isConnectable() && interestedOperations.contains(CONNECT)) {
-            connectOperation.run(socket, new RegistrationHandleImpl(key, CONNECT));
-        }
-        else if (key.isReadable() && interestedOperations.contains(READ)) {
-            readOperation.run(socket, new RegistrationHandleImpl(key, READ));
-        }
-        else if (key.isWritable() && interestedOperations.contains(WRITE)) {
-            writeOperation.run(socket, new RegistrationHandleImpl(key, WRITE));
-        }
+        // An operation may be resumed before the registration of its runnable has been processed
+        final SelectionRunnable<IOSocketChannel> connectRunnable = connectHandle.runIfReady(socket, null, null);
+        final SelectionRunnable<IOSocketChannel> firstRunnable = firstHandle.runIfReady(socket, connectRunnable, null);
+        secondHandle.runIfReady(socket, connectRunnable, firstRunnable);
     }
 
-    public final class RegistrationHandleImpl implements RegistrationHandle {
-        private final IOSelectionKey key;
+    /**
+     * Reusable handle for a single operation.
+     */
+    private final class OperationHandle implements RegistrationHandle {
         private final Op op;
+        private SelectionRunnable<IOSocketChannel> runnable;
 
-        public RegistrationHandleImpl(IOSelectionKey key, Op op) {
-            this.key = key;
+        OperationHandle(Op op) {
             this.op = op;
         }
 
+        /**
+         * Run the runnable if the operation is ready and has not already been run for this selection.
+         * @param socket The socket
+         * @param alreadyRun A runnable that has been run for this selection, may be null
+         * @param alsoAlreadyRun Another runnable that has been run for this selection, may be null
+         * @return The runnable if it was run, otherwise null
+         */
+        SelectionRunnable<IOSocketChannel> runIfReady(
+                IOSocketChannel socket,
+                SelectionRunnable<IOSocketChannel> alreadyRun,
+                SelectionRunnable<IOSocketChannel> alsoAlreadyRun) {
+            final SelectionRunnable<IOSocketChannel> currentRunnable = runnable;
+            if (currentRunnable == null ||
+                currentRunnable == alreadyRun ||
+                currentRunnable == alsoAlreadyRun ||
+                !isReady()) {
+                return null;
+            }
+
+            currentRunnable.run(socket, this);
+            return currentRunnable;
+        }
+
+        /**
+         * @return {@code true} if the key is still valid, ready for the operation and interested in it
+         */
+        private boolean isReady() {
+            if (!key.isValid() || !key.isInterestedIn(op)) {
+                return false;
+            }
+
+            switch (op) {
+                case CONNECT:
+                    return key.isConnectable();
+                case READ:
+                    return key.isReadable();
+                case WRITE:
+                    return key.isWritable();
+                default:
+                    return false;
+            }
+        }
+
         @Override
         public boolean isValid() {
             return key.isValid();
@@ -121,23 +176,18 @@ import static com.mattunderscore.tcproxy.io.selection.IOSelectionKey.Op.WRITE;
         @Override
         public void cancel() {
             key.clearInterestedOperation(op);
-            switch (op) {
-                case CONNECT:
-                    connectOperation = null;
-                    break;
-                case READ:
-                    readOperation = null;
-                    break;
-                case WRITE:
-                    writeOperation = null;
-                    break;
-            }
+            runnable = null;
 
-            if (connectOperation == null && readOperation == null && writeOperation == null) {
+            if (connectHandle.runnable == null && readHandle.runnable == null && writeHandle.runnable == null) {
                 key.cancel();
             }
         }
 
+        @Override
+        public void suspend() {
+            key.clearInterestedOperation(op);
+        }
+
         @Override
         public Set<Op> readyOperations() {
             return key.readyOperations();
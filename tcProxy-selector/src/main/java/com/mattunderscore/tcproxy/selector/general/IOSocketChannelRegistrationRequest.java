@@ -31,7 +31,7 @@ import com.mattunderscore.tcproxy.io.selection.IOSelector;
 import com.mattunderscore.tcproxy.io.socket.IOSocketChannel;
 import com.mattunderscore.tcproxy.selector.SelectionRunnable;
 
-import java.nio.channels.ClosedChannelException;
+import java.io.IOException;
 import java.util.Set;
 
 /**
@@ -42,19 +42,27 @@ import java.util.Set;
     private final IOSocketChannel channel;
     private final Set<Op> ops;
     private final SelectionRunnable<IOSocketChannel> runnable;
+    private final DispatchOrder order;
 
     IOSocketChannelRegistrationRequest(
             IOSocketChannel channel,
             Set<Op> ops,
-            SelectionRunnable<IOSocketChannel> runnable) {
+            SelectionRunnable<IOSocketChannel> runnable,
+            DispatchOrder order) {
         this.channel = channel;
         this.ops = ops;
         this.runnable = runnable;
+        this.order = order;
     }
 
     @Override
-    public void register(IOSelector selector) throws ClosedChannelException {
-        final IOSelectionKey key = channel.keyFor(selector);
+    public void register(IOSelector selector) throws IOException {
+        IOSelectionKey key = channel.keyFor(selector);
+        if (key != null && !key.isValid()) {
+            // The key was cancelled since the last selection, select to deregister it before registering again
+            selector.selectNow();
+            key = channel.keyFor(selector);
+        }
         if (key != null) {
             final IOSocketChannelRegistration registration = (IOSocketChannelRegistration) key.attachment();
             for (Op op : ops) {
@@ -63,7 +71,7 @@ import java.util.Set;
             }
         }
         else {
-            final IOSocketChannelRegistration registration = new IOSocketChannelRegistration();
+            final IOSocketChannelRegistration registration = new IOSocketChannelRegistration(order);
             for (Op op : ops) {
                 registration.addRegistration(op, runnable);
             }
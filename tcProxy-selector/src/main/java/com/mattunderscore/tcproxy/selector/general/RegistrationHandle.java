@@ -21,5 +21,11 @@ public interface RegistrationHandle {
 
     void cancel();
 
+    /**
+     * Stop selecting for the operation but keep the runnable registered. Selection can be resumed with
+     * {@link com.mattunderscore.tcproxy.selector.SocketChannelSelector#resume}.
+     */
+    void suspend();
+
     Set<IOSelectionKey.Op> readyOperations();
 }
@@ -25,7 +25,7 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 
 package com.mattunderscore.tcproxy.selector.general;
 
-import java.nio.channels.ClosedChannelException;
+import java.io.IOException;
 
 import com.mattunderscore.tcproxy.io.selection.IOSelector;
 
@@ -38,7 +38,7 @@ interface RegistrationRequest {
     /**
      * Perform the registration.
      * @param selector The selector
-     * @throws ClosedChannelException
+     * @throws IOException If the channel is closed or the selector could not be used
      */
-    void register(IOSelector selector) throws ClosedChannelException;
+    void register(IOSelector selector) throws IOException;
 }
@@ -0,0 +1,93 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.selector.general;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Statistics for a {@link GeneralPurposeSelector}. The counters are only written by the selector thread so they are
+ * updated without locks or atomic read-modify-write operations and can be read from any thread.
+ * @author Matt Champion on 18/10/2016
+ */
+@ThreadSafe
+public final class SelectorStatistics implements SelectorStatisticsMBean {
+    private volatile long loopCount;
+    private volatile long idleLoopCount;
+    private volatile long selectedKeyCount;
+    private volatile long registrationCount;
+    private volatile long handlerNanos;
+
+    /**
+     * Record a run of the selector. Must only be called by the selector thread.
+     * @param registrations The number of registrations drained
+     * @param selectedKeys The number of keys selected
+     * @param handlerTime The time spent in handlers in nanoseconds
+     */
+    /*package*/ void loopCompleted(int registrations, int selectedKeys, long handlerTime) {
+        loopCount = loopCount + 1L;
+        if (selectedKeys == 0) {
+            idleLoopCount = idleLoopCount + 1L;
+        }
+        else {
+            selectedKeyCount = selectedKeyCount + selectedKeys;
+            handlerNanos = handlerNanos + handlerTime;
+        }
+        if (registrations > 0) {
+            registrationCount = registrationCount + registrations;
+        }
+    }
+
+    @Override
+    public long getLoopCount() {
+        return loopCount;
+    }
+
+    @Override
+    public long getIdleLoopCount() {
+        return idleLoopCount;
+    }
+
+    @Override
+    public long getSelectedKeyCount() {
+        return selectedKeyCount;
+    }
+
+    @Override
+    public double getKeysSelectedPerLoop() {
+        final long loops = loopCount;
+        return loops == 0L ? 0.0 : (double) selectedKeyCount / loops;
+    }
+
+    @Override
+    public long getRegistrationCount() {
+        return registrationCount;
+    }
+
+    @Override
+    public long getHandlerNanos() {
+        return handlerNanos;
+    }
+}
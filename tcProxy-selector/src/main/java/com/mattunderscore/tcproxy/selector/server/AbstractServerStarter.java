@@ -30,8 +30,12 @@ import static java.lang.String.format;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -39,10 +43,12 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mattunderscore.tcproxy.io.configuration.IOServerSocketChannelConfiguration;
 import com.mattunderscore.tcproxy.io.factory.IOFactory;
 import com.mattunderscore.tcproxy.io.factory.IOOutboundSocketFactory;
 import com.mattunderscore.tcproxy.io.socket.IOServerSocketChannel;
 import com.mattunderscore.tcproxy.selector.SelectorFactory;
+import com.mattunderscore.tcproxy.selector.general.GeneralPurposeSelector;
 import com.mattunderscore.tcproxy.workers.WorkerRunnable;
 import com.mattunderscore.tcproxy.workers.WorkerSet;
 import com.mattunderscore.tcproxy.workers.WorkerThread;
@@ -50,6 +56,11 @@ import com.mattunderscore.tcproxy.workers.WorkerThread;
 /**
  * Abstract implementation of {@link ServerStarter}. The accessor for the {@link SelectorFactory} must be implemented.
  * The accessor for the {@link ThreadFactory} can be overridden.
+ * <P>
+ * By default one socket is bound to each port and shared by all the selectors. If the port is reused each selector
+ * binds its own socket to each port with SO_REUSEPORT and the kernel distributes connections between them.
+ * <P>
+ * The statistics of any {@link GeneralPurposeSelector}s created are provided as management beans.
  * @author Matt Champion on 25/11/2015
  */
 public abstract class AbstractServerStarter implements ServerStarter {
@@ -57,28 +68,43 @@ public abstract class AbstractServerStarter implements ServerStarter {
     protected final IOFactory ioFactory;
     protected final Iterable<Integer> portsToListenOn;
     protected final int selectorThreads;
+    protected final boolean reusePort;
+    private volatile Map<String, Object> managementBeans = new LinkedHashMap<>();
 
     protected AbstractServerStarter(IOFactory ioFactory, Iterable<Integer> portsToListenOn, int selectorThreads) {
+        this(ioFactory, portsToListenOn, selectorThreads, false);
+    }
+
+    protected AbstractServerStarter(
+            IOFactory ioFactory,
+            Iterable<Integer> portsToListenOn,
+            int selectorThreads,
+            boolean reusePort) {
         this.ioFactory = ioFactory;
         this.portsToListenOn = portsToListenOn;
         this.selectorThreads = selectorThreads;
+        this.reusePort = reusePort;
     }
 
     @Override
     public final Collection<IOServerSocketChannel> bindServerSockets() throws IOException {
+        final IOServerSocketChannelConfiguration configuration = serverSocketChannel()
+            .blocking(false)
+            .reuseAddress(true);
         final IOOutboundSocketFactory<IOServerSocketChannel> factory = ioFactory
-            .socketFactory(
-                serverSocketChannel()
-                    .blocking(false)
-                    .reuseAddress(true));
+            .socketFactory(reusePort ? configuration.reusePort(true) : configuration);
 
-        final Collection<IOServerSocketChannel> listenChannels = new HashSet<>();
+        // The sockets for each selector are kept together
+        final int socketsPerPort = reusePort ? selectorThreads : 1;
+        final List<IOServerSocketChannel> listenChannels = new ArrayList<>();
         try {
-            for (final Integer port : portsToListenOn) {
-                listenChannels.add(
-                    factory
-                        .bind(new InetSocketAddress(port))
-                        .create());
+            for (int i = 0; i < socketsPerPort; i++) {
+                for (final Integer port : portsToListenOn) {
+                    listenChannels.add(
+                        factory
+                            .bind(new InetSocketAddress(port))
+                            .create());
+                }
             }
 
             return listenChannels;
@@ -101,18 +127,56 @@ public abstract class AbstractServerStarter implements ServerStarter {
 
     @Override
     public final WorkerSet createServerThreads(Collection<IOServerSocketChannel> listenChannels, Server server) throws IOException {
-        final SelectorFactory<? extends WorkerRunnable> selectorFactory =
-            getSelectorFactory(listenChannels);
-
         final ThreadFactory threadFactory = getThreadFactory(server);
         final Set<WorkerThread> threads = new HashSet<>();
-        for (int i = 0; i < selectorThreads; i++) {
-            threads.add(new WorkerThread(threadFactory, selectorFactory.create()));
+        final Map<String, Object> beans = new LinkedHashMap<>();
+        if (reusePort) {
+            // Each selector listens on its own sockets
+            final List<IOServerSocketChannel> channels = new ArrayList<>(listenChannels);
+            final int socketsPerSelector = channels.size() / selectorThreads;
+            for (int i = 0; i < selectorThreads; i++) {
+                final SelectorFactory<? extends WorkerRunnable> selectorFactory = getSelectorFactory(
+                    channels.subList(i * socketsPerSelector, (i + 1) * socketsPerSelector));
+                threads.add(createThread(threadFactory, selectorFactory.create(), "selector-" + i, beans));
+            }
+        }
+        else {
+            final SelectorFactory<? extends WorkerRunnable> selectorFactory =
+                getSelectorFactory(listenChannels);
+            for (int i = 0; i < selectorThreads; i++) {
+                threads.add(createThread(threadFactory, selectorFactory.create(), "selector-" + i, beans));
+            }
+        }
+
+        final SelectorFactory<? extends WorkerRunnable> acceptorFactory = getAcceptorFactory(listenChannels);
+        if (acceptorFactory != null) {
+            threads.add(createThread(threadFactory, acceptorFactory.create(), "acceptor", beans));
         }
 
+        managementBeans = beans;
         return new WorkerSet(threads);
     }
 
+    /**
+     * Returns the statistics of the selectors created. This method can be overridden to add further beans.
+     * @return The management beans
+     */
+    @Override
+    public Map<String, Object> getManagementBeans() {
+        return new LinkedHashMap<>(managementBeans);
+    }
+
+    private static WorkerThread createThread(
+            ThreadFactory threadFactory,
+            WorkerRunnable runnable,
+            String name,
+            Map<String, Object> beans) {
+        if (runnable instanceof GeneralPurposeSelector) {
+            beans.put("type=Selector,name=" + name, ((GeneralPurposeSelector) runnable).getStatistics());
+        }
+        return new WorkerThread(threadFactory, runnable);
+    }
+
     /**
      * Return a thread factory. A basic factory is returned by default but this method can be overridden.
      * @return A thread factory
@@ -144,4 +208,14 @@ public abstract class AbstractServerStarter implements ServerStarter {
      * @return A selector factory
      */
     protected abstract SelectorFactory<? extends WorkerRunnable> getSelectorFactory(Collection<IOServerSocketChannel> listenChannels);
+
+    /**
+     * Factory for a dedicated acceptor task. Called after the selectors have been created. By default there is no
+     * dedicated acceptor but this method can be overridden.
+     * @param listenChannels Channels to listen on
+     * @return A selector factory or null if the selectors accept connections
+     */
+    protected SelectorFactory<? extends WorkerRunnable> getAcceptorFactory(Collection<IOServerSocketChannel> listenChannels) {
+        return null;
+    }
 }
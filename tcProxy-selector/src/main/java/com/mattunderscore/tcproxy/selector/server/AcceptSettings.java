@@ -34,29 +34,48 @@ import java.util.List;
  */
 public final class AcceptSettings {
     private final List<Integer> listenOn;
+    private final boolean reusePort;
 
     public AcceptSettings(List<Integer> listenOn) {
+        this(listenOn, false);
+    }
+
+    public AcceptSettings(List<Integer> listenOn, boolean reusePort) {
         this.listenOn = listenOn;
+        this.reusePort = reusePort;
     }
 
     public Iterable<Integer> getListenOn() {
         return listenOn;
     }
 
+    /**
+     * @return If each selector should bind its own socket to each port using SO_REUSEPORT
+     */
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
 
     public static final class Builder {
         private final List<Integer> listenOn = new ArrayList<>();
+        private boolean reusePort;
 
         public Builder listenOn(int port) {
             listenOn.add(port);
             return this;
         }
 
+        public Builder reusePort(boolean reusePort) {
+            this.reusePort = reusePort;
+            return this;
+        }
+
         public AcceptSettings build() {
-            return new AcceptSettings(listenOn);
+            return new AcceptSettings(listenOn, reusePort);
         }
     }
 }
@@ -26,7 +26,16 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 package com.mattunderscore.tcproxy.selector.server;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
@@ -41,17 +50,25 @@ import com.mattunderscore.tcproxy.workers.WorkerSet;
 /**
  * A basic server implementation. Relies on a {@link ServerStarter} to bind the sockets and create the selector threads.
  * The listening sockets are closed if the server fails to start and on shutdown.
+ * <P>
+ * The management beans provided by the {@link ServerStarter} are registered with the platform MBean server when the
+ * server starts and unregistered when it stops. Each server is given its own key so several can run in one process.
  * @author Matt Champion on 09/11/2015
  */
 @ThreadSafe
 public final class ServerImpl implements Server {
     private static final Logger LOG = LoggerFactory.getLogger(ServerImpl.class);
+    private static final String DOMAIN = "com.mattunderscore.tcproxy";
+    private static final AtomicInteger SERVER_COUNT = new AtomicInteger(0);
+    private final int serverId = SERVER_COUNT.getAndIncrement();
     private final LifecycleState state = new LifecycleState();
     private final ServerStarter serverStarter;
     @GuardedBy("this")
     private WorkerSet serverThreads;
     @GuardedBy("this")
     private Collection<IOServerSocketChannel> serverSockets;
+    @GuardedBy("this")
+    private final List<ObjectName> registeredBeans = new ArrayList<>();
 
     /**
      * Constructor.
@@ -74,6 +91,7 @@ public final class ServerImpl implements Server {
             throw new IllegalStateException(e);
         }
 
+        registerManagementBeans();
         serverThreads.start();
     }
 
@@ -85,6 +103,7 @@ public final class ServerImpl implements Server {
         serverThreads.waitForStopped();
         serverThreads = null;
         shutdownSockets();
+        unregisterManagementBeans();
 
         state.endShutdown();
     }
@@ -109,6 +128,33 @@ public final class ServerImpl implements Server {
         state.waitForStopped();
     }
 
+    private synchronized void registerManagementBeans() {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (final Map.Entry<String, Object> bean : serverStarter.getManagementBeans().entrySet()) {
+            try {
+                final ObjectName name = new ObjectName(DOMAIN + ":server=" + serverId + "," + bean.getKey());
+                mBeanServer.registerMBean(bean.getValue(), name);
+                registeredBeans.add(name);
+            }
+            catch (JMException e) {
+                LOG.warn("Failed to register management bean {}", bean.getKey(), e);
+            }
+        }
+    }
+
+    private synchronized void unregisterManagementBeans() {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (final ObjectName name : registeredBeans) {
+            try {
+                mBeanServer.unregisterMBean(name);
+            }
+            catch (JMException e) {
+                LOG.warn("Failed to unregister management bean {}", name, e);
+            }
+        }
+        registeredBeans.clear();
+    }
+
     private synchronized void shutdownSockets() {
         if (serverSockets != null) {
             for (final IOServerSocketChannel serverSocketChannel : serverSockets) {
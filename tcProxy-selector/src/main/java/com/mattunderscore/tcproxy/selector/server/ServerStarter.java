@@ -27,6 +27,7 @@ package com.mattunderscore.tcproxy.selector.server;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Map;
 
 import com.mattunderscore.tcproxy.io.socket.IOServerSocketChannel;
 import com.mattunderscore.tcproxy.workers.WorkerSet;
@@ -49,4 +50,12 @@ public interface ServerStarter {
      * @throws IOException If there was a problem setting up the selectors
      */
     WorkerSet createServerThreads(Collection<IOServerSocketChannel> listenChannels, Server server) throws IOException;
+
+    /**
+     * The management beans are keyed by the object name properties that identify them within the server, for example
+     * {@code type=Selector,name=selector-0}.
+     * @return The management beans for the server threads created by the last call to
+     * {@link #createServerThreads(Collection, Server)}
+     */
+    Map<String, Object> getManagementBeans();
 }
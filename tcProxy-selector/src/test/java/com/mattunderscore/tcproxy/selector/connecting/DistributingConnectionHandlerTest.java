@@ -0,0 +1,135 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.selector.connecting;
+
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.mattunderscore.tcproxy.io.socket.IOSocketChannel;
+import com.mattunderscore.tcproxy.selector.SocketChannelSelector;
+
+/**
+ * Unit tests for {@link DistributingConnectionHandler}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class DistributingConnectionHandlerTest {
+    @Mock
+    private SocketChannelSelector selector0;
+    @Mock
+    private SocketChannelSelector selector1;
+    @Mock
+    private SocketChannelSelector pendingSelector;
+    @Mock
+    private DistributionTarget target0;
+    @Mock
+    private DistributionTarget target1;
+    @Mock
+    private IOSocketChannel channel0;
+    @Mock
+    private IOSocketChannel channel1;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        when(target0.getSelector()).thenReturn(selector0);
+        when(target1.getSelector()).thenReturn(selector1);
+        runTasks(selector0);
+        runTasks(selector1);
+    }
+
+    @Test
+    public void roundRobin() {
+        final DistributingConnectionHandler handler = new DistributingConnectionHandler(DistributionPolicy.ROUND_ROBIN);
+        handler.addTarget(target0);
+        handler.addTarget(target1);
+
+        handler.onConnect(channel0);
+        handler.onConnect(channel1);
+
+        verify(target0).onConnect(channel0);
+        verify(target1).onConnect(channel1);
+    }
+
+    @Test
+    public void leastConnections() {
+        when(target0.getConnectionCount()).thenReturn(5);
+        when(target1.getConnectionCount()).thenReturn(2);
+        final DistributingConnectionHandler handler = new DistributingConnectionHandler(DistributionPolicy.LEAST_CONNECTIONS);
+        handler.addTarget(target0);
+        handler.addTarget(target1);
+
+        handler.onConnect(channel0);
+        handler.onConnect(channel1);
+
+        verify(target1).onConnect(channel0);
+        verify(target1).onConnect(channel1);
+        verify(target0, never()).onConnect(isA(IOSocketChannel.class));
+    }
+
+    @Test
+    public void leastConnectionsCountsHandOffs() {
+        final DistributingConnectionHandler handler = new DistributingConnectionHandler(DistributionPolicy.LEAST_CONNECTIONS);
+        handler.addTarget(target0);
+        handler.addTarget(target1);
+        // Hand offs to the first target are not run so remain pending against it
+        when(target0.getSelector()).thenReturn(pendingSelector);
+
+        handler.onConnect(channel0);
+        handler.onConnect(channel1);
+        handler.onConnect(channel1);
+
+        verify(pendingSelector).execute(isA(Runnable.class));
+        verify(target1, times(2)).onConnect(channel1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void noTargets() {
+        final DistributingConnectionHandler handler = new DistributingConnectionHandler(DistributionPolicy.ROUND_ROBIN);
+
+        handler.onConnect(channel0);
+    }
+
+    private static void runTasks(SocketChannelSelector selector) {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocationOnMock) throws Throwable {
+                ((Runnable) invocationOnMock.getArguments()[0]).run();
+                return null;
+            }
+        }).when(selector).execute(isA(Runnable.class));
+    }
+}
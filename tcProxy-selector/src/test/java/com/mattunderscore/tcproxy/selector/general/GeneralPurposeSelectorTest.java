@@ -26,18 +26,26 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 package com.mattunderscore.tcproxy.selector.general;
 
 import static com.mattunderscore.tcproxy.io.selection.IOSelectionKey.Op.READ;
+import static com.mattunderscore.tcproxy.io.selection.IOSelectionKey.Op.WRITE;
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
+import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
 import java.util.Collections;
 import java.util.EnumSet;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -64,6 +72,8 @@ public final class GeneralPurposeSelectorTest {
     private IOSelectionKey key;
     @Mock
     private SelectionRunnable<IOSocketChannel> runnable;
+    @Mock
+    private Runnable task;
 
     @Before
     public void setUp() {
@@ -71,6 +81,7 @@ public final class GeneralPurposeSelectorTest {
         when(key.isValid()).thenReturn(true);
         when(key.isReadable()).thenReturn(true);
         when(key.interestedOperations()).thenReturn(EnumSet.allOf(IOSelectionKey.Op.class));
+        when(key.isInterestedIn(isA(IOSelectionKey.Op.class))).thenReturn(true);
         when(key.socket()).thenReturn(channel);
     }
 
@@ -84,9 +95,13 @@ public final class GeneralPurposeSelectorTest {
                 return key;
             }
         });
-        final Set<IOSelectionKey> selectionKeySet = new HashSet<>();
-        selectionKeySet.add(key);
-        when(ioSelector.selectedKeys()).thenReturn(selectionKeySet);
+        when(ioSelector.processSelectedKeys(isA(IOSelector.SelectedKeyHandler.class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocationOnMock) throws Throwable {
+                ((IOSelector.SelectedKeyHandler) invocationOnMock.getArguments()[0]).handle(key);
+                return 1;
+            }
+        });
 
         final GeneralPurposeSelector selector = new GeneralPurposeSelector(ioSelector, NoBackoff.get());
         selector.register(channel, READ, runnable);
@@ -95,4 +110,164 @@ public final class GeneralPurposeSelectorTest {
 
         verify(runnable).run(eq(channel), isA(RegistrationHandle.class));
     }
+
+    @Test
+    public void statistics() throws ClosedChannelException {
+        when(channel.register(eq(ioSelector), eq(Collections.singleton(READ)), any())).thenAnswer(new Answer<IOSelectionKey>() {
+            @Override
+            public IOSelectionKey answer(InvocationOnMock invocationOnMock) throws Throwable {
+                when(key.attachment()).thenReturn(invocationOnMock.getArguments()[2]);
+                return key;
+            }
+        });
+        when(ioSelector.processSelectedKeys(isA(IOSelector.SelectedKeyHandler.class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocationOnMock) throws Throwable {
+                ((IOSelector.SelectedKeyHandler) invocationOnMock.getArguments()[0]).handle(key);
+                return 1;
+            }
+        }).thenReturn(0);
+
+        final GeneralPurposeSelector selector = new GeneralPurposeSelector(ioSelector, NoBackoff.get());
+        selector.register(channel, READ, runnable);
+
+        selector.run();
+        selector.run();
+
+        final SelectorStatistics statistics = selector.getStatistics();
+        assertEquals(2L, statistics.getLoopCount());
+        assertEquals(1L, statistics.getIdleLoopCount());
+        assertEquals(1L, statistics.getSelectedKeyCount());
+        assertEquals(0.5, statistics.getKeysSelectedPerLoop(), 0.0);
+        assertEquals(1L, statistics.getRegistrationCount());
+    }
+
+    @Test
+    public void scheduleFromAnotherThread() throws InterruptedException {
+        final GeneralPurposeSelector selector = new GeneralPurposeSelector(ioSelector, NoBackoff.get());
+        selector.schedule(task, 50L, TimeUnit.MILLISECONDS);
+
+        selector.run();
+        verify(task, never()).run();
+
+        Thread.sleep(100L);
+        selector.run();
+        verify(task).run();
+    }
+
+    @Test
+    public void manyRegistrationsFromTasks() throws ClosedChannelException {
+        final GeneralPurposeSelector selector = new GeneralPurposeSelector(ioSelector, NoBackoff.get());
+        for (int i = 0; i < 200; i++) {
+            selector.execute(new Runnable() {
+                @Override
+                public void run() {
+                    selector.register(channel, READ, runnable);
+                }
+            });
+        }
+
+        selector.run();
+
+        verify(channel, times(200)).register(eq(ioSelector), eq(Collections.singleton(READ)), any());
+    }
+
+    @Test
+    public void failingTaskDoesNotStopOthers() {
+        final GeneralPurposeSelector selector = new GeneralPurposeSelector(ioSelector, NoBackoff.get());
+        final Runnable failingTask = mock(Runnable.class);
+        doThrow(new IllegalStateException()).when(failingTask).run();
+        selector.execute(failingTask);
+        selector.execute(task);
+
+        selector.run();
+
+        verify(failingTask).run();
+        verify(task).run();
+    }
+
+    @Test
+    public void blockingSelect() throws IOException {
+        final GeneralPurposeSelector selector = new GeneralPurposeSelector(ioSelector, NoBackoff.get(), 100L);
+
+        selector.run();
+
+        verify(ioSelector).select(100L);
+        verify(ioSelector, never()).selectNow();
+        verify(ioSelector, never()).wakeup();
+    }
+
+    @Test
+    public void registrationWakesUpBlockedSelector() throws IOException {
+        final GeneralPurposeSelector selector = new GeneralPurposeSelector(ioSelector, NoBackoff.get(), 100L);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocationOnMock) throws Throwable {
+                // Register while the selector is blocked
+                selector.register(channel, READ, runnable);
+                return null;
+            }
+        }).when(ioSelector).select(100L);
+
+        selector.run();
+
+        verify(ioSelector).wakeup();
+    }
+
+    @Test
+    public void executeWakesUpBlockedSelector() throws IOException {
+        final GeneralPurposeSelector selector = new GeneralPurposeSelector(ioSelector, NoBackoff.get(), 100L);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocationOnMock) throws Throwable {
+                // Hand off a task while the selector is blocked
+                selector.execute(task);
+                return null;
+            }
+        }).when(ioSelector).select(100L);
+
+        selector.run();
+
+        verify(ioSelector).wakeup();
+        verify(task, never()).run();
+
+        selector.run();
+
+        verify(task).run();
+    }
+
+    @Test
+    public void resume() throws IOException {
+        when(channel.keyFor(ioSelector)).thenReturn(key);
+
+        final GeneralPurposeSelector selector = new GeneralPurposeSelector(ioSelector, NoBackoff.get(), 100L);
+        selector.resume(channel, WRITE);
+
+        // Resumed by the selector thread
+        verify(key, never()).setInterestedOperation(WRITE);
+        selector.run();
+        verify(key).setInterestedOperation(WRITE);
+        verify(channel, never()).register(eq(ioSelector), isA(Set.class), any());
+    }
+
+    @Test
+    public void resumeOnSelectorThread() throws IOException {
+        when(channel.keyFor(ioSelector)).thenReturn(key);
+
+        final GeneralPurposeSelector selector = new GeneralPurposeSelector(ioSelector, NoBackoff.get(), 100L);
+        selector.onStart();
+        selector.resume(channel, WRITE);
+
+        verify(key).setInterestedOperation(WRITE);
+        selector.onStop();
+    }
+
+    @Test
+    public void resumeUnregistered() throws IOException {
+        final GeneralPurposeSelector selector = new GeneralPurposeSelector(ioSelector, NoBackoff.get(), 100L);
+        selector.resume(channel, WRITE);
+        selector.run();
+
+        verify(key, never()).setInterestedOperation(WRITE);
+    }
 }
@@ -0,0 +1,151 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.selector.general;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+
+/**
+ * Unit tests for {@link HashedTimerWheel}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class HashedTimerWheelTest {
+    @Mock
+    private Runnable task0;
+    @Mock
+    private Runnable task1;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wheelSizeNotPowerOfTwo() {
+        new HashedTimerWheel(10L, 12, 0L);
+    }
+
+    @Test
+    public void notRunEarly() {
+        final HashedTimerWheel wheel = new HashedTimerWheel(10L, 8, 0L);
+        wheel.schedule(task0, 25L);
+
+        assertEquals(0, wheel.expire(29L));
+        verify(task0, never()).run();
+        assertEquals(1, wheel.size());
+
+        assertEquals(1, wheel.expire(30L));
+        verify(task0).run();
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void pastDeadlineRunsOnNextTick() {
+        final HashedTimerWheel wheel = new HashedTimerWheel(10L, 8, 0L);
+        wheel.expire(50L);
+        wheel.schedule(task0, 0L);
+
+        assertEquals(0, wheel.expire(55L));
+        assertEquals(1, wheel.expire(60L));
+        verify(task0).run();
+    }
+
+    @Test
+    public void laterRotation() {
+        final HashedTimerWheel wheel = new HashedTimerWheel(10L, 8, 0L);
+        // Both tasks hash to the same bucket
+        wheel.schedule(task0, 20L);
+        wheel.schedule(task1, 100L);
+
+        assertEquals(1, wheel.expire(20L));
+        verify(task0).run();
+        verify(task1, never()).run();
+
+        assertEquals(0, wheel.expire(90L));
+        assertEquals(1, wheel.expire(100L));
+        verify(task1).run();
+    }
+
+    @Test
+    public void advancedAfterLongGap() {
+        final HashedTimerWheel wheel = new HashedTimerWheel(10L, 8, 0L);
+        wheel.schedule(task1, 70L);
+        wheel.schedule(task0, 30L);
+
+        assertEquals(2, wheel.expire(10000L));
+        final InOrder order = inOrder(task0, task1);
+        order.verify(task0).run();
+        order.verify(task1).run();
+    }
+
+    @Test
+    public void failingTaskDoesNotStopOthers() {
+        final HashedTimerWheel wheel = new HashedTimerWheel(10L, 8, 0L);
+        final Runnable task2 = mock(Runnable.class);
+        wheel.schedule(task0, 15L);
+        wheel.schedule(task1, 15L);
+        wheel.schedule(task2, 95L);
+        doThrow(new IllegalStateException()).when(task1).run();
+
+        assertEquals(2, wheel.expire(20L));
+        verify(task0).run();
+        verify(task1).run();
+        assertEquals(1, wheel.size());
+
+        // The entry that shares the bucket but is due later is still held
+        assertEquals(1, wheel.expire(100L));
+        verify(task2).run();
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void taskSchedulesTask() {
+        final HashedTimerWheel wheel = new HashedTimerWheel(10L, 8, 0L);
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                wheel.schedule(task0, 20L);
+            }
+        }, 10L);
+
+        assertEquals(1, wheel.expire(10L));
+        assertEquals(1, wheel.size());
+        verify(task0, never()).run();
+
+        assertEquals(1, wheel.expire(20L));
+        verify(task0).run();
+    }
+}
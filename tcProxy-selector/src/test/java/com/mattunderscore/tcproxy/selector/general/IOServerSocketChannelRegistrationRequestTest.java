@@ -30,7 +30,7 @@ import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.verify;
 import static org.mockito.MockitoAnnotations.initMocks;
 
-import java.nio.channels.ClosedChannelException;
+import java.io.IOException;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -60,7 +60,7 @@ public final class IOServerSocketChannelRegistrationRequestTest {
 
 
     @Test
-    public void register() throws ClosedChannelException {
+    public void register() throws IOException {
         final RegistrationRequest registrationRequest = new IOServerSocketChannelRegistrationRequest(channel, task);
 
         registrationRequest.register(selector);
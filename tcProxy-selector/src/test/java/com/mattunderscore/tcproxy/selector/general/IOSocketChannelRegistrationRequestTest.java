@@ -30,14 +30,16 @@ import static java.util.EnumSet.of;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.isA;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
-import java.nio.channels.ClosedChannelException;
+import java.io.IOException;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 
+import com.mattunderscore.tcproxy.io.selection.IOSelectionKey;
 import com.mattunderscore.tcproxy.io.selection.IOSelector;
 import com.mattunderscore.tcproxy.io.socket.IOSocketChannel;
 import com.mattunderscore.tcproxy.selector.SelectionRunnable;
@@ -54,6 +56,8 @@ public final class IOSocketChannelRegistrationRequestTest {
     private IOSocketChannel channel;
     @Mock
     private SelectionRunnable<IOSocketChannel> task;
+    @Mock
+    private IOSelectionKey cancelledKey;
 
     @Before
     public void setUp() {
@@ -62,12 +66,25 @@ public final class IOSocketChannelRegistrationRequestTest {
 
 
     @Test
-    public void register() throws ClosedChannelException {
+    public void register() throws IOException {
+        final RegistrationRequest registrationRequest =
+            new IOSocketChannelRegistrationRequest(channel, of(READ), task, DispatchOrder.WRITE_FIRST);
+
+        registrationRequest.register(selector);
+
+        verify(channel).register(eq(selector), eq(of(READ)), isA(IOSocketChannelRegistration.class));
+    }
+
+    @Test
+    public void registerAfterCancel() throws IOException {
+        when(cancelledKey.isValid()).thenReturn(false);
+        when(channel.keyFor(selector)).thenReturn(cancelledKey, null);
         final RegistrationRequest registrationRequest =
-            new IOSocketChannelRegistrationRequest(channel, of(READ), task);
+            new IOSocketChannelRegistrationRequest(channel, of(READ), task, DispatchOrder.WRITE_FIRST);
 
         registrationRequest.register(selector);
 
+        verify(selector).selectNow();
         verify(channel).register(eq(selector), eq(of(READ)), isA(IOSocketChannelRegistration.class));
     }
 }
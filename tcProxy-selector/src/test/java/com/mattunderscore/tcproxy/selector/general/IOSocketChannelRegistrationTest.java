@@ -0,0 +1,188 @@
+/* Copyright © 2016 Matthew Champion
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright
+      notice, this list of conditions and the following disclaimer in the
+      documentation and/or other materials provided with the distribution.
+ * Neither the name of mattunderscore.com nor the
+      names of its contributors may be used to endorse or promote products
+      derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL MATTHEW CHAMPION BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+package com.mattunderscore.tcproxy.selector.general;
+
+import static com.mattunderscore.tcproxy.io.selection.IOSelectionKey.Op.READ;
+import static com.mattunderscore.tcproxy.io.selection.IOSelectionKey.Op.WRITE;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.mattunderscore.tcproxy.io.selection.IOSelectionKey;
+import com.mattunderscore.tcproxy.io.socket.IOSocketChannel;
+import com.mattunderscore.tcproxy.selector.SelectionRunnable;
+
+/**
+ * Unit tests for {@link IOSocketChannelRegistration}.
+ * @author Matt Champion on 18/10/2016
+ */
+public final class IOSocketChannelRegistrationTest {
+    @Mock
+    private IOSocketChannel channel;
+    @Mock
+    private IOSelectionKey key;
+    @Mock
+    private SelectionRunnable<IOSocketChannel> readRunnable;
+    @Mock
+    private SelectionRunnable<IOSocketChannel> writeRunnable;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        when(key.isValid()).thenReturn(true);
+        when(key.isReadable()).thenReturn(true);
+        when(key.isWritable()).thenReturn(true);
+        when(key.isInterestedIn(isA(IOSelectionKey.Op.class))).thenReturn(true);
+    }
+
+    @Test
+    public void runWriteFirst() {
+        final IOSocketChannelRegistration registration = new IOSocketChannelRegistration(DispatchOrder.WRITE_FIRST);
+        registration.addRegistration(READ, readRunnable);
+        registration.addRegistration(WRITE, writeRunnable);
+
+        registration.run(channel, key);
+
+        final InOrder order = inOrder(readRunnable, writeRunnable);
+        order.verify(writeRunnable).run(eq(channel), isA(RegistrationHandle.class));
+        order.verify(readRunnable).run(eq(channel), isA(RegistrationHandle.class));
+    }
+
+    @Test
+    public void runReadFirst() {
+        final IOSocketChannelRegistration registration = new IOSocketChannelRegistration(DispatchOrder.READ_FIRST);
+        registration.addRegistration(READ, readRunnable);
+        registration.addRegistration(WRITE, writeRunnable);
+
+        registration.run(channel, key);
+
+        final InOrder order = inOrder(readRunnable, writeRunnable);
+        order.verify(readRunnable).run(eq(channel), isA(RegistrationHandle.class));
+        order.verify(writeRunnable).run(eq(channel), isA(RegistrationHandle.class));
+    }
+
+    @Test
+    public void runOnlyReady() {
+        when(key.isWritable()).thenReturn(false);
+        final IOSocketChannelRegistration registration = new IOSocketChannelRegistration(DispatchOrder.WRITE_FIRST);
+        registration.addRegistration(READ, readRunnable);
+        registration.addRegistration(WRITE, writeRunnable);
+
+        registration.run(channel, key);
+
+        verify(readRunnable).run(eq(channel), isA(RegistrationHandle.class));
+        verify(writeRunnable, never()).run(any(IOSocketChannel.class), any(RegistrationHandle.class));
+    }
+
+    @Test
+    public void runOnlyInterested() {
+        when(key.isInterestedIn(WRITE)).thenReturn(false);
+        final IOSocketChannelRegistration registration = new IOSocketChannelRegistration(DispatchOrder.WRITE_FIRST);
+        registration.addRegistration(READ, readRunnable);
+        registration.addRegistration(WRITE, writeRunnable);
+
+        registration.run(channel, key);
+
+        verify(readRunnable).run(eq(channel), isA(RegistrationHandle.class));
+        verify(writeRunnable, never()).run(any(IOSocketChannel.class), any(RegistrationHandle.class));
+    }
+
+    @Test
+    public void runSharedRunnableOnce() {
+        final IOSocketChannelRegistration registration = new IOSocketChannelRegistration(DispatchOrder.WRITE_FIRST);
+        registration.addRegistration(READ, readRunnable);
+        registration.addRegistration(WRITE, readRunnable);
+
+        registration.run(channel, key);
+
+        verify(readRunnable).run(eq(channel), isA(RegistrationHandle.class));
+    }
+
+    @Test
+    public void stopAfterInvalidated() {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                when(key.isValid()).thenReturn(false);
+                return null;
+            }
+        }).when(writeRunnable).run(eq(channel), isA(RegistrationHandle.class));
+        final IOSocketChannelRegistration registration = new IOSocketChannelRegistration(DispatchOrder.WRITE_FIRST);
+        registration.addRegistration(READ, readRunnable);
+        registration.addRegistration(WRITE, writeRunnable);
+
+        registration.run(channel, key);
+
+        verify(readRunnable, never()).run(any(IOSocketChannel.class), any(RegistrationHandle.class));
+    }
+
+    @Test
+    public void reuseHandles() {
+        final IOSocketChannelRegistration registration = new IOSocketChannelRegistration(DispatchOrder.WRITE_FIRST);
+        registration.addRegistration(READ, readRunnable);
+
+        registration.run(channel, key);
+        registration.run(channel, key);
+
+        final ArgumentCaptor<RegistrationHandle> captor = ArgumentCaptor.forClass(RegistrationHandle.class);
+        verify(readRunnable, times(2)).run(eq(channel), captor.capture());
+        assertSame(captor.getAllValues().get(0), captor.getAllValues().get(1));
+    }
+
+    @Test
+    public void cancelLastOperation() {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((RegistrationHandle) invocation.getArguments()[1]).cancel();
+                return null;
+            }
+        }).when(readRunnable).run(eq(channel), isA(RegistrationHandle.class));
+        final IOSocketChannelRegistration registration = new IOSocketChannelRegistration(DispatchOrder.WRITE_FIRST);
+        registration.addRegistration(READ, readRunnable);
+
+        registration.run(channel, key);
+
+        verify(key).clearInterestedOperation(READ);
+        verify(key).cancel();
+    }
+}
@@ -77,6 +77,7 @@ public final class SimpleProxyBuilder extends AbstractServerBuilder<SimpleProxyB
                 ioFactory,
                 acceptSettings.getListenOn(),
                 selectorThreads,
+                acceptSettings.isReusePort(),
                 selectorBackoff,
                 socketSettings,
                 remote));
@@ -61,10 +61,11 @@ import com.mattunderscore.tcproxy.selector.server.Server;
         IOFactory ioFactory,
         Iterable<Integer> portsToListenOn,
         int selectorThreads,
+        boolean reusePort,
         SelectorBackoff selectorBackoff,
         IOSocketConfiguration<IOSocketChannel, ?> socketSettings,
         InetSocketAddress remote) {
-        super(ioFactory, portsToListenOn, selectorThreads);
+        super(ioFactory, portsToListenOn, selectorThreads, reusePort);
         this.selectorBackoff = selectorBackoff;
         this.socketSettings = socketSettings;
         this.remote = remote;